@@ -44,6 +44,37 @@ public class ApiConfiguration {
 	private static final String JWT_SIGNATURE_ALGORITHM_KEY = "jwt.signature.algorithm";
 	private static final String JWT_ISSUER_KEY = "jwt.issuer";
 	private static final String JWT_EXPIRATION_TIME_KEY = "jwt.expiration.time";
+	private static final String CMS_CACHE_MAX_ENTRIES_KEY = "cms.cache.max.entries";
+	private static final String VALIDATION_TREE_PARALLELISM_KEY = "validation.tree.parallelism";
+	private static final String REPOSITORY_FILE_INDEX_LOCATION_KEY = "repository.file.index.location";
+	private static final String REPOSITORY_INGESTION_WORKERS_KEY = "repository.ingestion.workers";
+	private static final String REPOSITORY_INGESTION_QUEUE_SIZE_KEY = "repository.ingestion.queue.size";
+	private static final String REPOSITORY_INGESTION_BATCH_SIZE_KEY = "repository.ingestion.batch.size";
+	private static final String RPKI_OBJECT_CLEANUP_BATCH_SIZE_KEY = "rpki.object.cleanup.batch.size";
+	private static final String RPKI_OBJECT_CLEANUP_DELETE_PAUSE_KEY = "rpki.object.cleanup.delete.pause";
+	private static final String RPKI_OBJECT_CLEANUP_DELETE_SIZE_KEY = "rpki.object.cleanup.delete.size";
+	private static final String TRUST_ANCHOR_VALIDATION_PARALLELISM_KEY = "trust.anchor.validation.parallelism";
+	private static final String REPOSITORY_WATCHER_DEBOUNCE_KEY = "repository.watcher.debounce";
+	private static final String DECODED_OBJECT_CACHE_MAX_BYTES_KEY = "decoded.object.cache.max.bytes";
+	private static final String VRP_DELTA_HISTORY_KEY = "vrp.delta.history";
+	private static final String RTR_PORT_KEY = "rtr.port";
+
+	// Default values of optional properties
+	private static final int CMS_CACHE_MAX_ENTRIES_DEFAULT = 1000;
+	private static final int VALIDATION_TREE_PARALLELISM_DEFAULT = Runtime.getRuntime().availableProcessors();
+	private static final int REPOSITORY_INGESTION_WORKERS_DEFAULT = Runtime.getRuntime().availableProcessors();
+	private static final int REPOSITORY_INGESTION_QUEUE_SIZE_DEFAULT = 1000;
+	private static final int REPOSITORY_INGESTION_BATCH_SIZE_DEFAULT = 1000;
+	private static final int RPKI_OBJECT_CLEANUP_BATCH_SIZE_DEFAULT = 1000;
+	private static final int RPKI_OBJECT_CLEANUP_DELETE_PAUSE_DEFAULT = 100;
+	private static final int RPKI_OBJECT_CLEANUP_DELETE_SIZE_DEFAULT = 1000;
+	private static final int TRUST_ANCHOR_VALIDATION_PARALLELISM_DEFAULT = Math.max(1,
+			Runtime.getRuntime().availableProcessors() / 2);
+	private static final int REPOSITORY_WATCHER_DEBOUNCE_DEFAULT = 30000;
+	private static final int DECODED_OBJECT_CACHE_MAX_BYTES_DEFAULT = 64 * 1024 * 1024;
+	private static final int VRP_DELTA_HISTORY_DEFAULT = 10;
+	private static final int RTR_PORT_DEFAULT = 0;
+	private static final int RTR_PORT_MAX = 65535;
 
 	// Properties to configure
 	private static String serverLanguage;
@@ -60,6 +91,20 @@ public class ApiConfiguration {
 	private static SignatureAlgorithm jwtSignatureAlgorithm;
 	private static String jwtIssuer;
 	private static Long jwtExpirationTime;
+	private static Integer cmsCacheMaxEntries;
+	private static Integer validationTreeParallelism;
+	private static String repositoryFileIndexLocation;
+	private static Integer repositoryIngestionWorkers;
+	private static Integer repositoryIngestionQueueSize;
+	private static Integer repositoryIngestionBatchSize;
+	private static Integer rpkiObjectCleanupBatchSize;
+	private static Integer rpkiObjectCleanupDeletePause;
+	private static Integer rpkiObjectCleanupDeleteSize;
+	private static Integer trustAnchorValidationParallelism;
+	private static Integer repositoryWatcherDebounce;
+	private static Integer decodedObjectCacheMaxBytes;
+	private static Integer vrpDeltaHistory;
+	private static Integer rtrPort;
 
 	private ApiConfiguration() {
 		// No code
@@ -227,6 +272,48 @@ public class ApiConfiguration {
 			}
 		}
 
+		cmsCacheMaxEntries = getOptionalInteger(CMS_CACHE_MAX_ENTRIES_KEY, CMS_CACHE_MAX_ENTRIES_DEFAULT, 0,
+				invalidProperties, exceptions);
+		validationTreeParallelism = getOptionalInteger(VALIDATION_TREE_PARALLELISM_KEY,
+				VALIDATION_TREE_PARALLELISM_DEFAULT, 1, invalidProperties, exceptions);
+
+		if (!isPropertyNullOrEmpty(REPOSITORY_FILE_INDEX_LOCATION_KEY)) {
+			repositoryFileIndexLocation = systemProperties.getProperty(REPOSITORY_FILE_INDEX_LOCATION_KEY).trim();
+			// The file is created if it doesn't exist, so only its directory is validated
+			File parentDirectory = new File(repositoryFileIndexLocation).getAbsoluteFile().getParentFile();
+			if (parentDirectory == null || !isValidLocation(parentDirectory.getPath(), true, exceptions)) {
+				invalidProperties.add(REPOSITORY_FILE_INDEX_LOCATION_KEY);
+			}
+		}
+
+		repositoryIngestionWorkers = getOptionalInteger(REPOSITORY_INGESTION_WORKERS_KEY,
+				REPOSITORY_INGESTION_WORKERS_DEFAULT, 1, invalidProperties, exceptions);
+		repositoryIngestionQueueSize = getOptionalInteger(REPOSITORY_INGESTION_QUEUE_SIZE_KEY,
+				REPOSITORY_INGESTION_QUEUE_SIZE_DEFAULT, 1, invalidProperties, exceptions);
+		repositoryIngestionBatchSize = getOptionalInteger(REPOSITORY_INGESTION_BATCH_SIZE_KEY,
+				REPOSITORY_INGESTION_BATCH_SIZE_DEFAULT, 1, invalidProperties, exceptions);
+		rpkiObjectCleanupBatchSize = getOptionalInteger(RPKI_OBJECT_CLEANUP_BATCH_SIZE_KEY,
+				RPKI_OBJECT_CLEANUP_BATCH_SIZE_DEFAULT, 1, invalidProperties, exceptions);
+		rpkiObjectCleanupDeletePause = getOptionalInteger(RPKI_OBJECT_CLEANUP_DELETE_PAUSE_KEY,
+				RPKI_OBJECT_CLEANUP_DELETE_PAUSE_DEFAULT, 0, invalidProperties, exceptions);
+		rpkiObjectCleanupDeleteSize = getOptionalInteger(RPKI_OBJECT_CLEANUP_DELETE_SIZE_KEY,
+				RPKI_OBJECT_CLEANUP_DELETE_SIZE_DEFAULT, 1, invalidProperties, exceptions);
+
+		trustAnchorValidationParallelism = getOptionalInteger(TRUST_ANCHOR_VALIDATION_PARALLELISM_KEY,
+				TRUST_ANCHOR_VALIDATION_PARALLELISM_DEFAULT, 1, invalidProperties, exceptions);
+		repositoryWatcherDebounce = getOptionalInteger(REPOSITORY_WATCHER_DEBOUNCE_KEY,
+				REPOSITORY_WATCHER_DEBOUNCE_DEFAULT, 0, invalidProperties, exceptions);
+		decodedObjectCacheMaxBytes = getOptionalInteger(DECODED_OBJECT_CACHE_MAX_BYTES_KEY,
+				DECODED_OBJECT_CACHE_MAX_BYTES_DEFAULT, 0, invalidProperties, exceptions);
+		vrpDeltaHistory = getOptionalInteger(VRP_DELTA_HISTORY_KEY, VRP_DELTA_HISTORY_DEFAULT, 0, invalidProperties,
+				exceptions);
+		rtrPort = getOptionalInteger(RTR_PORT_KEY, RTR_PORT_DEFAULT, 0, invalidProperties, exceptions);
+		if (rtrPort > RTR_PORT_MAX) {
+			invalidProperties.add(RTR_PORT_KEY);
+			exceptions.add(
+					new IllegalArgumentException(RTR_PORT_KEY + " must be less than or equal to " + RTR_PORT_MAX));
+		}
+
 		if (!invalidProperties.isEmpty()) {
 			InitializationException invalidValueException = new InitializationException(
 					"The following required properties were not found or have invalid values in configuration file : "
@@ -250,6 +337,39 @@ public class ApiConfiguration {
 		return systemProperty == null || systemProperty.trim().isEmpty();
 	}
 
+	/**
+	 * Get the value of an optional integer property, if the property isn't present
+	 * then the <code>defaultValue</code> is returned. If the value isn't a number
+	 * or is less than <code>minValue</code>, the property is added to the
+	 * <code>invalidProperties</code>.
+	 * 
+	 * @param propertyKey
+	 * @param defaultValue
+	 * @param minValue
+	 * @param invalidProperties
+	 * @param exceptions
+	 * @return the value of the property, or the default value
+	 */
+	private static Integer getOptionalInteger(String propertyKey, int defaultValue, int minValue,
+			List<String> invalidProperties, List<Exception> exceptions) {
+		if (isPropertyNullOrEmpty(propertyKey)) {
+			return defaultValue;
+		}
+		try {
+			Integer value = Integer.parseInt(systemProperties.getProperty(propertyKey).trim());
+			if (value < minValue) {
+				invalidProperties.add(propertyKey);
+				exceptions.add(
+						new IllegalArgumentException(propertyKey + " must be greater than or equal to " + minValue));
+			}
+			return value;
+		} catch (NumberFormatException e) {
+			invalidProperties.add(propertyKey);
+			exceptions.add(e);
+		}
+		return defaultValue;
+	}
+
 	/**
 	 * Validate that the <code>location</code> is a valid path and a directory (if
 	 * <code>isDir</code> is <code>true</code>)
@@ -368,4 +488,60 @@ public class ApiConfiguration {
 	public static Long getJwtExpirationTime() {
 		return jwtExpirationTime;
 	}
+
+	public static Integer getCmsCacheMaxEntries() {
+		return cmsCacheMaxEntries;
+	}
+
+	public static Integer getValidationTreeParallelism() {
+		return validationTreeParallelism;
+	}
+
+	public static String getRepositoryFileIndexLocation() {
+		return repositoryFileIndexLocation;
+	}
+
+	public static Integer getRepositoryIngestionWorkers() {
+		return repositoryIngestionWorkers;
+	}
+
+	public static Integer getRepositoryIngestionQueueSize() {
+		return repositoryIngestionQueueSize;
+	}
+
+	public static Integer getRepositoryIngestionBatchSize() {
+		return repositoryIngestionBatchSize;
+	}
+
+	public static Integer getRpkiObjectCleanupBatchSize() {
+		return rpkiObjectCleanupBatchSize;
+	}
+
+	public static Integer getRpkiObjectCleanupDeletePause() {
+		return rpkiObjectCleanupDeletePause;
+	}
+
+	public static Integer getRpkiObjectCleanupDeleteSize() {
+		return rpkiObjectCleanupDeleteSize;
+	}
+
+	public static Integer getTrustAnchorValidationParallelism() {
+		return trustAnchorValidationParallelism;
+	}
+
+	public static Integer getRepositoryWatcherDebounce() {
+		return repositoryWatcherDebounce;
+	}
+
+	public static Integer getDecodedObjectCacheMaxBytes() {
+		return decodedObjectCacheMaxBytes;
+	}
+
+	public static Integer getVrpDeltaHistory() {
+		return vrpDeltaHistory;
+	}
+
+	public static Integer getRtrPort() {
+		return rtrPort;
+	}
 }
@@ -12,8 +12,11 @@ import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
 
 import mx.nic.lab.rpki.api.config.ApiConfiguration;
+import mx.nic.lab.rpki.api.rtr.RtrServer;
 import mx.nic.lab.rpki.api.slurm.SlurmManager;
+import mx.nic.lab.rpki.api.validation.CertificateTreeValidationService;
 import mx.nic.lab.rpki.api.validation.MasterScheduler;
+import mx.nic.lab.rpki.api.validation.RepositoryFileIndex;
 import mx.nic.lab.rpki.db.exception.InitializationException;
 import mx.nic.lab.rpki.db.service.DataAccessService;
 
@@ -59,10 +62,15 @@ public class ApiInitializer implements ServletContextListener {
 			// Load DA configuration
 			Properties dataAccessConfig = loadConfig(DATA_ACCESS_FILE, USER_DATA_ACCESS_PARAM_NAME);
 			DataAccessService.initialize(dataAccessConfig);
+			RepositoryFileIndex.setDatabaseIdentity(dataAccessConfig);
 
 			// Load the SLURM (if configured)
 			SlurmManager.initSlurm();
 
+			// Start serving the routers (if configured), the data is available once
+			// the validations end
+			RtrServer.start();
+
 			// Everything is ok for now, run initial validations
 			MasterScheduler.initSchedule();
 		} catch (IOException | InitializationException e) {
@@ -100,6 +108,8 @@ public class ApiInitializer implements ServletContextListener {
 	@Override
 	public void contextDestroyed(ServletContextEvent event) {
 		MasterScheduler.shutdown();
+		CertificateTreeValidationService.shutdown();
+		RtrServer.stop();
 		DataAccessService.terminate();
 		servletContext = null;
 	}
@@ -1,8 +1,16 @@
 package mx.nic.lab.rpki.api.result;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonStructure;
+import javax.json.stream.JsonGenerator;
 
 import mx.nic.lab.rpki.db.pojo.ApiObject;
 import mx.nic.lab.rpki.db.pojo.ListResult;
@@ -21,15 +29,28 @@ import mx.nic.lab.rpki.db.pojo.PagingParameters;
  *   page: {
  *     limit: [integer - paging limit applied to the search],
  *     offset: [integer - paging offset applied to the search]
- *   }
+ *   },
+ *   error: [string - present only if the results couldn't be written completely]
  * }
  * </pre>
+ * 
+ * When the result is written with {@link #writeJson(JsonGenerator)} each item
+ * of the list is built and written one at a time, so the JSON of the whole
+ * list is never held in memory. The response is already committed by then, so
+ * if an item can't be built the list is ended at that item: "returned" has
+ * the number of items written and "error" is added, the JSON is still
+ * complete.
  *
  * @param <T>
  *            Type of the {@link ApiObject} used at the {@link ListResult}
  */
 public abstract class ApiListResult<T extends ApiObject> extends ApiResult {
 
+	/**
+	 * Class logger
+	 */
+	private static final Logger logger = Logger.getLogger(ApiListResult.class.getName());
+
 	private ListResult<T> listResult;
 	private PagingParameters pagingParameters;
 
@@ -37,9 +58,9 @@ public abstract class ApiListResult<T extends ApiObject> extends ApiResult {
 	public JsonStructure toJsonStructure() {
 		JsonObjectBuilder builder = Json.createObjectBuilder();
 		builder.add("results", resultToJsonStructure());
-		builder.add("found", listResult.getTotalFound());
-		builder.add("returned", listResult.getResults().size());
-		if (pagingParameters.getLimit() > 0) {
+		builder.add("found", getTotalFound());
+		builder.add("returned", getResults().size());
+		if (pagingParameters != null && pagingParameters.getLimit() > 0) {
 			JsonObjectBuilder pageBuilder = Json.createObjectBuilder();
 			pageBuilder.add("limit", pagingParameters.getLimit());
 			if (pagingParameters.getOffset() > -1) {
@@ -50,7 +71,93 @@ public abstract class ApiListResult<T extends ApiObject> extends ApiResult {
 		return builder.build();
 	}
 
-	public abstract JsonStructure resultToJsonStructure();
+	@Override
+	public boolean isStreamed() {
+		return true;
+	}
+
+	@Override
+	public boolean writeJson(JsonGenerator generator) {
+		generator.writeStartObject();
+		generator.writeStartArray("results");
+		int returned = 0;
+		String error = null;
+		for (T item : getResults()) {
+			// The item is built before it's written, so a failure never leaves it
+			// half written
+			JsonStructure itemJson;
+			try {
+				itemJson = itemToJsonStructure(item);
+			} catch (RuntimeException e) {
+				logger.log(Level.SEVERE, "Error writing the item #" + (returned + 1) + " of the results", e);
+				error = "#{error.internalError}";
+				break;
+			}
+			generator.write(itemJson);
+			returned++;
+		}
+		generator.writeEnd();
+		generator.write("found", getTotalFound());
+		generator.write("returned", returned);
+		if (pagingParameters != null && pagingParameters.getLimit() > 0) {
+			generator.writeStartObject("page");
+			generator.write("limit", pagingParameters.getLimit());
+			if (pagingParameters.getOffset() > -1) {
+				generator.write("offset", pagingParameters.getOffset());
+			}
+			generator.writeEnd();
+		}
+		if (error != null) {
+			generator.write("error", error);
+		}
+		generator.writeEnd();
+		return true;
+	}
+
+	/**
+	 * Build the JSON Array of the results
+	 * 
+	 * @return {@link JsonStructure} of the list of results
+	 */
+	public JsonStructure resultToJsonStructure() {
+		if (getResults().isEmpty()) {
+			return JsonObject.EMPTY_JSON_ARRAY;
+		}
+		JsonArrayBuilder jsonBuilder = Json.createArrayBuilder();
+		listResult.getResults().forEach(item -> {
+			jsonBuilder.add(itemToJsonStructure(item));
+		});
+		return jsonBuilder.build();
+	}
+
+	/**
+	 * @return the results of the list, empty if there's no list or it has no
+	 *         results
+	 */
+	private List<T> getResults() {
+		if (listResult == null || listResult.getResults() == null) {
+			return Collections.emptyList();
+		}
+		return listResult.getResults();
+	}
+
+	/**
+	 * @return the total of results found, 0 if there's no list
+	 */
+	private int getTotalFound() {
+		if (listResult == null || listResult.getTotalFound() == null) {
+			return 0;
+		}
+		return listResult.getTotalFound();
+	}
+
+	/**
+	 * Build the JSON of a single item of the results
+	 * 
+	 * @param item
+	 * @return {@link JsonStructure} of the item
+	 */
+	protected abstract JsonStructure itemToJsonStructure(T item);
 
 	public ListResult<T> getListResult() {
 		return listResult;
@@ -2,11 +2,13 @@ package mx.nic.lab.rpki.api.result;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.Set;
 
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonStructure;
 import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
 
 /**
  * Generic result from the API
@@ -19,6 +21,11 @@ public abstract class ApiResult {
 	 */
 	protected int code;
 
+	/**
+	 * Fields requested by the client, <code>null</code> means all the fields
+	 */
+	private Set<String> fields;
+
 	/**
 	 * Return the JSON of the result
 	 * 
@@ -26,6 +33,40 @@ public abstract class ApiResult {
 	 */
 	public abstract JsonStructure toJsonStructure();
 
+	/**
+	 * Write the JSON of the result to the <code>generator</code>. By default the
+	 * structure returned by {@link #toJsonStructure()} is written; the results
+	 * that can be written without building the whole structure should override
+	 * this method.
+	 * 
+	 * @param generator
+	 *            {@link JsonGenerator} where the result will be written
+	 * @return <code>true</code> if the result was written, <code>false</code> if
+	 *         the result has no JSON to write
+	 */
+	public boolean writeJson(JsonGenerator generator) {
+		JsonStructure jsonStructure = toJsonStructure();
+		if (jsonStructure == null) {
+			return false;
+		}
+		generator.write(jsonStructure);
+		return true;
+	}
+
+	/**
+	 * Check if the result is written directly to the response as it's produced.
+	 * The response of a streamed result is committed before it's completely
+	 * written, so only the results that can be too big to hold in memory (lists)
+	 * should be streamed; the rest are written before committing the response,
+	 * so that any error while writing them is sent as an error response.
+	 * 
+	 * @return <code>true</code> if the result is streamed, <code>false</code> by
+	 *         default
+	 */
+	public boolean isStreamed() {
+		return false;
+	}
+
 	/**
 	 * Add an Object value to the {@link JsonObjectBuilder} with the specified key
 	 * using the <code>add()</code> methods defined at {@link JsonObjectBuilder}. If
@@ -107,6 +148,17 @@ public abstract class ApiResult {
 		}
 	}
 
+	/**
+	 * Check if the <code>field</code> was requested by the client, the results
+	 * must use this to avoid computing the fields that weren't requested
+	 * 
+	 * @param field
+	 * @return <code>true</code> if the field must be included in the result
+	 */
+	protected boolean isFieldRequested(String field) {
+		return fields == null || fields.contains(field);
+	}
+
 	public int getCode() {
 		return code;
 	}
@@ -114,4 +166,12 @@ public abstract class ApiResult {
 	public void setCode(int code) {
 		this.code = code;
 	}
+
+	public Set<String> getFields() {
+		return fields;
+	}
+
+	public void setFields(Set<String> fields) {
+		this.fields = fields;
+	}
 }
@@ -1,5 +1,9 @@
 package mx.nic.lab.rpki.api.result.roa;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
 import javax.json.Json;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
@@ -18,33 +22,47 @@ import mx.nic.lab.rpki.db.pojo.Roa;
  */
 public class RoaListResult extends ApiListResult<Roa> {
 
+	/**
+	 * Fields that can be requested using the "fields" query parameter
+	 */
+	public static final List<String> FIELDS = Arrays.asList("id", "asn", "prefix", "prefixLength", "prefixMaxLength",
+			"prefixFamily", "gbrs");
+
 	public RoaListResult(ListResult<Roa> listResult, PagingParameters pagingParameters) {
+		this(listResult, pagingParameters, null);
+	}
+
+	public RoaListResult(ListResult<Roa> listResult, PagingParameters pagingParameters, Set<String> fields) {
 		super();
 		setListResult(listResult);
 		setPagingParameters(pagingParameters);
+		setFields(fields);
 	}
 
 	@Override
-	public JsonStructure resultToJsonStructure() {
-		if (getListResult() == null || getListResult().getResults().isEmpty()) {
-			return JsonObject.EMPTY_JSON_ARRAY;
-		}
-		JsonArrayBuilder jsonBuilder = Json.createArrayBuilder();
-		getListResult().getResults().forEach(roa -> {
-			jsonBuilder.add(buildSingleRoa(roa));
-		});
-		return jsonBuilder.build();
-	}
-
-	private JsonStructure buildSingleRoa(Roa roa) {
+	protected JsonStructure itemToJsonStructure(Roa roa) {
 		JsonObjectBuilder builder = Json.createObjectBuilder();
-		addKeyValueToBuilder(builder, "id", roa.getId(), true);
-		addKeyValueToBuilder(builder, "asn", roa.getAsn(), true);
-		addKeyValueToBuilder(builder, "prefix", roa.getPrefixText(), true);
-		addKeyValueToBuilder(builder, "prefixLength", roa.getPrefixLength(), true);
-		addKeyValueToBuilder(builder, "prefixMaxLength", roa.getPrefixMaxLength(), true);
-		addKeyValueToBuilder(builder, "prefixFamily", roa.getPrefixFamily(), true);
-		buildRoaGbrs(builder, roa);
+		if (isFieldRequested("id")) {
+			addKeyValueToBuilder(builder, "id", roa.getId(), true);
+		}
+		if (isFieldRequested("asn")) {
+			addKeyValueToBuilder(builder, "asn", roa.getAsn(), true);
+		}
+		if (isFieldRequested("prefix")) {
+			addKeyValueToBuilder(builder, "prefix", roa.getPrefixText(), true);
+		}
+		if (isFieldRequested("prefixLength")) {
+			addKeyValueToBuilder(builder, "prefixLength", roa.getPrefixLength(), true);
+		}
+		if (isFieldRequested("prefixMaxLength")) {
+			addKeyValueToBuilder(builder, "prefixMaxLength", roa.getPrefixMaxLength(), true);
+		}
+		if (isFieldRequested("prefixFamily")) {
+			addKeyValueToBuilder(builder, "prefixFamily", roa.getPrefixFamily(), true);
+		}
+		if (isFieldRequested("gbrs")) {
+			buildRoaGbrs(builder, roa);
+		}
 
 		return builder.build();
 	}
@@ -1,5 +1,11 @@
 package mx.nic.lab.rpki.api.result.roa;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import javax.json.Json;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
@@ -7,6 +13,7 @@ import javax.json.JsonObjectBuilder;
 import javax.json.JsonStructure;
 
 import mx.nic.lab.rpki.api.result.ApiSingleResult;
+import mx.nic.lab.rpki.api.util.CMSJsonCache;
 import mx.nic.lab.rpki.api.util.CMSUtil;
 import mx.nic.lab.rpki.db.pojo.Gbr;
 import mx.nic.lab.rpki.db.pojo.Roa;
@@ -17,9 +24,26 @@ import mx.nic.lab.rpki.db.pojo.Roa;
  */
 public class RoaSingleResult extends ApiSingleResult<Roa> {
 
+	/**
+	 * Fields that can be requested using the "fields" query parameter
+	 */
+	public static final List<String> FIELDS = Arrays.asList("id", "asn", "prefix", "prefixLength", "prefixMaxLength",
+			"prefixFamily", "cms", "gbrs");
+
+	/**
+	 * Fields of the VRP of the ROA, these don't need to decode the CMS
+	 */
+	public static final Set<String> VRP_FIELDS = Collections.unmodifiableSet(
+			new HashSet<>(Arrays.asList("id", "asn", "prefix", "prefixLength", "prefixMaxLength", "prefixFamily")));
+
 	public RoaSingleResult(Roa roa) {
+		this(roa, null);
+	}
+
+	public RoaSingleResult(Roa roa, Set<String> fields) {
 		super();
 		setApiObject(roa);
+		setFields(fields);
 	}
 
 	@Override
@@ -29,16 +53,32 @@ public class RoaSingleResult extends ApiSingleResult<Roa> {
 			return null;
 		}
 		JsonObjectBuilder builder = Json.createObjectBuilder();
-		addKeyValueToBuilder(builder, "id", roa.getId(), true);
-		addKeyValueToBuilder(builder, "asn", roa.getAsn(), true);
-		addKeyValueToBuilder(builder, "prefix", roa.getPrefixText(), true);
-		addKeyValueToBuilder(builder, "prefixLength", roa.getPrefixLength(), true);
-		addKeyValueToBuilder(builder, "prefixMaxLength", roa.getPrefixMaxLength(), true);
-		addKeyValueToBuilder(builder, "prefixFamily", roa.getPrefixFamily(), true);
-		addKeyValueToBuilder(builder, "cms",
-				CMSUtil.getCmsAsJson(roa.getRpkiObject().getEncodedRpkiObject().getEncoded(), CMSUtil.CMSProfile.ROA),
-				true);
-		buildRoaGbrs(builder, roa);
+		if (isFieldRequested("id")) {
+			addKeyValueToBuilder(builder, "id", roa.getId(), true);
+		}
+		if (isFieldRequested("asn")) {
+			addKeyValueToBuilder(builder, "asn", roa.getAsn(), true);
+		}
+		if (isFieldRequested("prefix")) {
+			addKeyValueToBuilder(builder, "prefix", roa.getPrefixText(), true);
+		}
+		if (isFieldRequested("prefixLength")) {
+			addKeyValueToBuilder(builder, "prefixLength", roa.getPrefixLength(), true);
+		}
+		if (isFieldRequested("prefixMaxLength")) {
+			addKeyValueToBuilder(builder, "prefixMaxLength", roa.getPrefixMaxLength(), true);
+		}
+		if (isFieldRequested("prefixFamily")) {
+			addKeyValueToBuilder(builder, "prefixFamily", roa.getPrefixFamily(), true);
+		}
+		// The CMS are decoded only if they're requested
+		if (isFieldRequested("cms")) {
+			addKeyValueToBuilder(builder, "cms",
+					CMSJsonCache.getCmsAsJson(roa.getRpkiObject(), CMSUtil.CMSProfile.ROA), true);
+		}
+		if (isFieldRequested("gbrs")) {
+			buildRoaGbrs(builder, roa);
+		}
 
 		return builder.build();
 	}
@@ -60,8 +100,8 @@ public class RoaSingleResult extends ApiSingleResult<Roa> {
 			JsonObjectBuilder objBuilder = Json.createObjectBuilder();
 			// The id is omitted since is used for internal purposes
 			addKeyValueToBuilder(objBuilder, "vcard", gbr.getVcard(), true);
-			addKeyValueToBuilder(objBuilder, "cms", CMSUtil.getCmsAsJson(
-					gbr.getRpkiObject().getEncodedRpkiObject().getEncoded(), CMSUtil.CMSProfile.GBR), true);
+			addKeyValueToBuilder(objBuilder, "cms",
+					CMSJsonCache.getCmsAsJson(gbr.getRpkiObject(), CMSUtil.CMSProfile.GBR), true);
 			arrayBuilder.add(objBuilder);
 		}
 		builder.add("gbrs", arrayBuilder);
@@ -0,0 +1,100 @@
+package mx.nic.lab.rpki.api.result.roa;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import javax.json.JsonStructure;
+import javax.json.stream.JsonGenerator;
+
+import mx.nic.lab.rpki.api.result.ApiResult;
+import mx.nic.lab.rpki.api.vrp.VrpDelta;
+import mx.nic.lab.rpki.api.vrp.VrpSet;
+
+/**
+ * Result of the VRP changes since a serial of a session. If the changes since
+ * the serial aren't available (e.g. the session changed) then the result
+ * indicates that a reset is required, so the client must get all the VRPs
+ * again.<br>
+ * <br>
+ * A delta can have many VRPs, so it's written as it's being read from the
+ * {@link VrpDelta}.
+ *
+ */
+public class VrpDeltaResult extends ApiResult {
+
+	private final String session;
+	private final long since;
+	private final long serial;
+	private final VrpDelta vrpDelta;
+
+	/**
+	 * @param session
+	 *            current session ID
+	 * @param since
+	 *            serial requested
+	 * @param serial
+	 *            current serial
+	 * @param vrpDelta
+	 *            changes since the requested serial, <code>null</code> if a reset
+	 *            is required
+	 */
+	public VrpDeltaResult(String session, long since, long serial, VrpDelta vrpDelta) {
+		super();
+		this.session = session;
+		this.since = since;
+		this.serial = serial;
+		this.vrpDelta = vrpDelta;
+	}
+
+	/**
+	 * The result is written as it's being read, see
+	 * {@link #writeJson(JsonGenerator)}
+	 */
+	@Override
+	public JsonStructure toJsonStructure() {
+		return null;
+	}
+
+	@Override
+	public boolean isStreamed() {
+		return true;
+	}
+
+	@Override
+	public boolean writeJson(JsonGenerator generator) {
+		generator.writeStartObject();
+		generator.write("session", session);
+		generator.write("since", since);
+		generator.write("serial", serial);
+		generator.write("reset", vrpDelta == null);
+		if (vrpDelta != null) {
+			writeVrps("announced", vrpDelta.getAnnounced(), generator);
+			writeVrps("withdrawn", vrpDelta.getWithdrawn(), generator);
+		}
+		generator.writeEnd();
+		return true;
+	}
+
+	static void writeVrps(String key, VrpSet vrps, JsonGenerator generator) {
+		generator.writeStartArray(key);
+		for (int i = 0; i < vrps.size(); i++) {
+			generator.writeStartObject();
+			generator.write("asn", vrps.getAsn(i));
+			generator.write("prefix", getPrefixText(vrps.getPrefix(i)));
+			generator.write("prefixLength", vrps.getPrefixLength(i));
+			generator.write("prefixMaxLength", vrps.getMaxLength(i));
+			generator.write("prefixFamily", vrps.isIpv4(i) ? 4 : 6);
+			generator.writeEnd();
+		}
+		generator.writeEnd();
+	}
+
+	private static String getPrefixText(byte[] prefix) {
+		try {
+			return InetAddress.getByAddress(prefix).getHostAddress();
+		} catch (UnknownHostException e) {
+			// Can't happen, the address has a valid length
+			throw new IllegalArgumentException(e);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package mx.nic.lab.rpki.api.result.roa;
+
+import javax.json.JsonStructure;
+import javax.json.stream.JsonGenerator;
+
+import mx.nic.lab.rpki.api.result.ApiResult;
+import mx.nic.lab.rpki.api.vrp.VrpIndex;
+import mx.nic.lab.rpki.api.vrp.VrpSet;
+
+/**
+ * Result of all the VRPs of a {@link VrpIndex} snapshot along with its session
+ * ID and serial, so that a client can get a baseline and then request the
+ * changes since that serial.<br>
+ * <br>
+ * A snapshot can have many VRPs, so it's written as it's being read from the
+ * {@link VrpSet}.
+ *
+ */
+public class VrpSnapshotResult extends ApiResult {
+
+	private final String session;
+	private final long serial;
+	private final VrpSet vrps;
+
+	/**
+	 * @param session
+	 *            session ID of the snapshot
+	 * @param serial
+	 *            serial of the snapshot
+	 * @param vrps
+	 *            VRPs of the snapshot
+	 */
+	public VrpSnapshotResult(String session, long serial, VrpSet vrps) {
+		super();
+		this.session = session;
+		this.serial = serial;
+		this.vrps = vrps;
+	}
+
+	/**
+	 * The result is written as it's being read, see
+	 * {@link #writeJson(JsonGenerator)}
+	 */
+	@Override
+	public JsonStructure toJsonStructure() {
+		return null;
+	}
+
+	@Override
+	public boolean isStreamed() {
+		return true;
+	}
+
+	@Override
+	public boolean writeJson(JsonGenerator generator) {
+		generator.writeStartObject();
+		generator.write("session", session);
+		generator.write("serial", serial);
+		VrpDeltaResult.writeVrps("vrps", vrps, generator);
+		generator.writeEnd();
+		return true;
+	}
+}
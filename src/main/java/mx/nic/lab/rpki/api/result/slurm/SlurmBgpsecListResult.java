@@ -1,8 +1,5 @@
 package mx.nic.lab.rpki.api.result.slurm;
 
-import javax.json.Json;
-import javax.json.JsonArrayBuilder;
-import javax.json.JsonObject;
 import javax.json.JsonStructure;
 
 import mx.nic.lab.rpki.api.result.ApiListResult;
@@ -23,17 +20,9 @@ public class SlurmBgpsecListResult extends ApiListResult<SlurmBgpsec> {
 	}
 
 	@Override
-	public JsonStructure resultToJsonStructure() {
-		if (getListResult() == null || getListResult().getResults().isEmpty()) {
-			return JsonObject.EMPTY_JSON_ARRAY;
-		}
-		JsonArrayBuilder jsonBuilder = Json.createArrayBuilder();
+	protected JsonStructure itemToJsonStructure(SlurmBgpsec obj) {
 		// Use the SlurmBgpsecSingleResult implementation
-		getListResult().getResults().forEach(obj -> {
-			SlurmBgpsecSingleResult temp = new SlurmBgpsecSingleResult(obj);
-			jsonBuilder.add(temp.toJsonStructure());
-		});
-		return jsonBuilder.build();
+		return new SlurmBgpsecSingleResult(obj).toJsonStructure();
 	}
 
 }
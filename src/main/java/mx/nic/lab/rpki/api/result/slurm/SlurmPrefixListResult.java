@@ -1,8 +1,5 @@
 package mx.nic.lab.rpki.api.result.slurm;
 
-import javax.json.Json;
-import javax.json.JsonArrayBuilder;
-import javax.json.JsonObject;
 import javax.json.JsonStructure;
 
 import mx.nic.lab.rpki.api.result.ApiListResult;
@@ -23,17 +20,9 @@ public class SlurmPrefixListResult extends ApiListResult<SlurmPrefix> {
 	}
 
 	@Override
-	public JsonStructure resultToJsonStructure() {
-		if (getListResult() == null || getListResult().getResults().isEmpty()) {
-			return JsonObject.EMPTY_JSON_ARRAY;
-		}
-		JsonArrayBuilder jsonBuilder = Json.createArrayBuilder();
+	protected JsonStructure itemToJsonStructure(SlurmPrefix obj) {
 		// Use the SlurmPrefixSingleResult implementation
-		getListResult().getResults().forEach(obj -> {
-			SlurmPrefixSingleResult temp = new SlurmPrefixSingleResult(obj);
-			jsonBuilder.add(temp.toJsonStructure());
-		});
-		return jsonBuilder.build();
+		return new SlurmPrefixSingleResult(obj).toJsonStructure();
 	}
 
 }
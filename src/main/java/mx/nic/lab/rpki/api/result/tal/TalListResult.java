@@ -24,25 +24,14 @@ public class TalListResult extends ApiListResult<Tal> {
 		setPagingParameters(pagingParameters);
 	}
 
-	@Override
-	public JsonStructure resultToJsonStructure() {
-		if (getListResult() == null || getListResult().getResults().isEmpty()) {
-			return JsonObject.EMPTY_JSON_ARRAY;
-		}
-		JsonArrayBuilder jsonBuilder = Json.createArrayBuilder();
-		getListResult().getResults().forEach(tal -> {
-			jsonBuilder.add(buildSingleTal(tal));
-		});
-		return jsonBuilder.build();
-	}
-
 	/**
 	 * Builds a single {@link Tal} object as JSON
 	 * 
 	 * @param tal
 	 * @return
 	 */
-	private JsonStructure buildSingleTal(Tal tal) {
+	@Override
+	protected JsonStructure itemToJsonStructure(Tal tal) {
 		JsonObjectBuilder builder = Json.createObjectBuilder();
 		addKeyValueToBuilder(builder, "id", tal.getId(), true);
 		addKeyValueToBuilder(builder, "publicKey", tal.getPublicKey(), true);
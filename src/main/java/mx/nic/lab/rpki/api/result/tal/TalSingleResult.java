@@ -1,6 +1,9 @@
 package mx.nic.lab.rpki.api.result.tal;
 
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 
 import javax.json.Json;
 import javax.json.JsonArrayBuilder;
@@ -9,7 +12,7 @@ import javax.json.JsonObjectBuilder;
 import javax.json.JsonStructure;
 
 import mx.nic.lab.rpki.api.result.ApiSingleResult;
-import mx.nic.lab.rpki.api.util.CMSUtil;
+import mx.nic.lab.rpki.api.util.CMSJsonCache;
 import mx.nic.lab.rpki.db.pojo.Tal;
 import mx.nic.lab.rpki.db.pojo.TalUri;
 import mx.nic.lab.rpki.db.pojo.ValidationRun;
@@ -20,9 +23,20 @@ import mx.nic.lab.rpki.db.pojo.ValidationRun;
  */
 public class TalSingleResult extends ApiSingleResult<Tal> {
 
+	/**
+	 * Fields that can be requested using the "fields" query parameter
+	 */
+	public static final List<String> FIELDS = Arrays.asList("id", "publicKey", "loadedCer", "name", "uris",
+			"validations");
+
 	public TalSingleResult(Tal tal) {
+		this(tal, null);
+	}
+
+	public TalSingleResult(Tal tal, Set<String> fields) {
 		super();
 		setApiObject(tal);
+		setFields(fields);
 	}
 
 	@Override
@@ -32,12 +46,25 @@ public class TalSingleResult extends ApiSingleResult<Tal> {
 			return null;
 		}
 		JsonObjectBuilder builder = Json.createObjectBuilder();
-		addKeyValueToBuilder(builder, "id", tal.getId(), true);
-		addKeyValueToBuilder(builder, "publicKey", tal.getPublicKey(), true);
-		addKeyValueToBuilder(builder, "loadedCer", CMSUtil.getCertAsJson(tal.getLoadedCer()), true);
-		addKeyValueToBuilder(builder, "name", tal.getName(), true);
-		buildTalUris(builder, tal);
-		buildValidationRuns(builder, tal);
+		if (isFieldRequested("id")) {
+			addKeyValueToBuilder(builder, "id", tal.getId(), true);
+		}
+		if (isFieldRequested("publicKey")) {
+			addKeyValueToBuilder(builder, "publicKey", tal.getPublicKey(), true);
+		}
+		// The certificate is decoded only if it's requested
+		if (isFieldRequested("loadedCer")) {
+			addKeyValueToBuilder(builder, "loadedCer", CMSJsonCache.getCertAsJson(tal.getLoadedCer()), true);
+		}
+		if (isFieldRequested("name")) {
+			addKeyValueToBuilder(builder, "name", tal.getName(), true);
+		}
+		if (isFieldRequested("uris")) {
+			buildTalUris(builder, tal);
+		}
+		if (isFieldRequested("validations")) {
+			buildValidationRuns(builder, tal);
+		}
 
 		return builder.build();
 	}
@@ -1,10 +1,6 @@
 package mx.nic.lab.rpki.api.result.tal;
 
-import java.util.List;
-
 import javax.json.Json;
-import javax.json.JsonArrayBuilder;
-import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonStructure;
 
@@ -26,48 +22,36 @@ public class TalValidationResult extends ApiListResult<ValidationCheck> {
 		setPagingParameters(pagingParameters);
 	}
 
-	@Override
-	public JsonStructure resultToJsonStructure() {
-		if (getListResult() == null || getListResult().getResults().isEmpty()) {
-			return JsonObject.EMPTY_JSON_ARRAY;
-		}
-		JsonArrayBuilder jsonBuilder = Json.createArrayBuilder();
-		buildValidationChecks(jsonBuilder, getListResult().getResults());
-		return jsonBuilder.build();
-	}
-
 	/**
-	 * Adds the {@link ValidationCheck} list as a JSON Array to the
-	 * <code>JsonArrayBuilder</code> sent
+	 * Builds a single {@link ValidationCheck} as JSON
 	 * 
-	 * @param builder
-	 * @param validationChecks
+	 * @param validationCheck
+	 * @return
 	 */
-	protected void buildValidationChecks(JsonArrayBuilder builder, List<ValidationCheck> validationChecks) {
-		for (ValidationCheck validationCheck : validationChecks) {
-			JsonObjectBuilder checkBuilder = Json.createObjectBuilder();
-			addKeyValueToBuilder(checkBuilder, "location", validationCheck.getLocation(), true);
-			addKeyValueToBuilder(checkBuilder, "status", validationCheck.getStatus().toString().toLowerCase(), true);
-			addKeyValueToBuilder(checkBuilder, "fileType", validationCheck.getFileType(), true);
-			if (validationCheck.getStatus() != Status.PASSED) {
-				// Prepare the key to search it at the bundles
-				// The final value is #{key}.{status}{param0}{paramN}...
-				StringBuilder keyBuilder = new StringBuilder();
-				keyBuilder.append("#{");
-				keyBuilder.append(validationCheck.getKey());
-				keyBuilder.append(".");
-				keyBuilder.append(validationCheck.getStatus().toString().toLowerCase());
-				keyBuilder.append("}");
-				if (validationCheck.getParameters() != null) {
-					for (String parameter : validationCheck.getParameters()) {
-						if (parameter != null && !parameter.trim().isEmpty()) {
-							keyBuilder.append("{").append(parameter).append("}");
-						}
+	@Override
+	protected JsonStructure itemToJsonStructure(ValidationCheck validationCheck) {
+		JsonObjectBuilder checkBuilder = Json.createObjectBuilder();
+		addKeyValueToBuilder(checkBuilder, "location", validationCheck.getLocation(), true);
+		addKeyValueToBuilder(checkBuilder, "status", validationCheck.getStatus().toString().toLowerCase(), true);
+		addKeyValueToBuilder(checkBuilder, "fileType", validationCheck.getFileType(), true);
+		if (validationCheck.getStatus() != Status.PASSED) {
+			// Prepare the key to search it at the bundles
+			// The final value is #{key}.{status}{param0}{paramN}...
+			StringBuilder keyBuilder = new StringBuilder();
+			keyBuilder.append("#{");
+			keyBuilder.append(validationCheck.getKey());
+			keyBuilder.append(".");
+			keyBuilder.append(validationCheck.getStatus().toString().toLowerCase());
+			keyBuilder.append("}");
+			if (validationCheck.getParameters() != null) {
+				for (String parameter : validationCheck.getParameters()) {
+					if (parameter != null && !parameter.trim().isEmpty()) {
+						keyBuilder.append("{").append(parameter).append("}");
 					}
 				}
-				addKeyValueToBuilder(checkBuilder, "message", keyBuilder.toString(), true);
 			}
-			builder.add(checkBuilder);
+			addKeyValueToBuilder(checkBuilder, "message", keyBuilder.toString(), true);
 		}
+		return checkBuilder.build();
 	}
 }
@@ -0,0 +1,349 @@
+package mx.nic.lab.rpki.api.result.validate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonStructure;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+
+import mx.nic.lab.rpki.api.exception.BadRequestException;
+import mx.nic.lab.rpki.api.exception.HttpException;
+import mx.nic.lab.rpki.api.result.ApiResult;
+import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
+
+/**
+ * Result of a bulk route validation. The routes are read incrementally from the
+ * request body and validated in batches (see {@link RouteValidator}), each batch
+ * is written (and flushed) to the response once it's validated, so neither the
+ * request nor the response are completely held in memory.<br>
+ * <br>
+ * The routes can be sent as a JSON array of objects, or as newline delimited
+ * JSON objects; every object must have the properties "asn", "prefix" and
+ * "prefixLength". The response has the format:
+ *
+ * <pre>
+ * {
+ *   results: [
+ *     {
+ *       route: [JSON object - route as it was received],
+ *       result: [JSON object - route validation result],
+ *       error: [string - present instead of 'result' if the route is invalid]
+ *     }
+ *   ],
+ *   returned: [integer - number of routes processed],
+ *   error: [string - present only if the body couldn't be read completely]
+ * }
+ * </pre>
+ *
+ */
+public class RouteValidationBulkResult extends ApiResult {
+
+	/**
+	 * Class logger
+	 */
+	private static final Logger logger = Logger.getLogger(RouteValidationBulkResult.class.getName());
+
+	/**
+	 * Number of routes validated at once, the response is flushed after each batch
+	 */
+	private static final int BATCH_SIZE = 1000;
+
+	/**
+	 * Validator of the routes, each route is parsed on its own and then the routes
+	 * of a batch are validated together
+	 *
+	 */
+	public interface RouteValidator {
+
+		/**
+		 * Parse a route, the arguments are received as text (as they are at the
+		 * single route validation)
+		 * 
+		 * @param asn
+		 * @param prefix
+		 * @param prefixLength
+		 * @return the parsed route
+		 * @throws HttpException
+		 *             if the route is invalid
+		 */
+		Route parse(String asn, String prefix, String prefixLength) throws HttpException;
+
+		/**
+		 * Validate a batch of routes
+		 * 
+		 * @param routes
+		 * @return the result of each route, in the same order
+		 * @throws ApiDataAccessException
+		 */
+		List<ApiResult> validate(List<Route> routes) throws ApiDataAccessException;
+	}
+
+	/**
+	 * A route to validate
+	 *
+	 */
+	public static class Route {
+
+		private final long asn;
+		private final byte[] prefix;
+		private final int prefixLength;
+
+		public Route(long asn, byte[] prefix, int prefixLength) {
+			this.asn = asn;
+			this.prefix = prefix;
+			this.prefixLength = prefixLength;
+		}
+
+		public long getAsn() {
+			return asn;
+		}
+
+		/**
+		 * @return prefix address bytes (4 for IPv4, 16 for IPv6)
+		 */
+		public byte[] getPrefix() {
+			return prefix;
+		}
+
+		public int getPrefixLength() {
+			return prefixLength;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(asn, Arrays.hashCode(prefix), prefixLength);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Route)) {
+				return false;
+			}
+			Route other = (Route) obj;
+			return asn == other.asn && prefixLength == other.prefixLength && Arrays.equals(prefix, other.prefix);
+		}
+	}
+
+	private final BufferedReader reader;
+	private final RouteValidator validator;
+
+	/**
+	 * Number of routes written
+	 */
+	private int returned;
+
+	public RouteValidationBulkResult(BufferedReader reader, RouteValidator validator) {
+		super();
+		this.reader = reader;
+		this.validator = validator;
+	}
+
+	/**
+	 * The result can only be written as it's being produced, see
+	 * {@link #writeJson(JsonGenerator)}
+	 */
+	@Override
+	public JsonStructure toJsonStructure() {
+		return null;
+	}
+
+	@Override
+	public boolean isStreamed() {
+		return true;
+	}
+
+	@Override
+	public boolean writeJson(JsonGenerator generator) {
+		generator.writeStartObject();
+		generator.writeStartArray("results");
+		List<JsonValue> batch = new ArrayList<>(BATCH_SIZE);
+		returned = 0;
+		String bodyError = null;
+		try {
+			try {
+				if (isJsonArray()) {
+					try (JsonParser parser = Json.createParser(reader)) {
+						parser.next();
+						while (parser.hasNext() && parser.next() != Event.END_ARRAY) {
+							batch.add(parser.getValue());
+							if (batch.size() == BATCH_SIZE) {
+								writeBatch(batch, generator);
+							}
+						}
+					}
+				} else {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						if (line.trim().isEmpty()) {
+							continue;
+						}
+						try (JsonReader lineReader = Json.createReader(new StringReader(line))) {
+							batch.add(lineReader.readValue());
+						} catch (JsonException e) {
+							// Keep the invalid line, it will be reported as an error
+							batch.add(Json.createValue(line));
+						}
+						if (batch.size() == BATCH_SIZE) {
+							writeBatch(batch, generator);
+						}
+					}
+				}
+			} catch (JsonException | IllegalStateException e) {
+				bodyError = "#{error.invalidJson}";
+			} catch (IOException e) {
+				logger.log(Level.SEVERE, "Error reading the routes", e);
+				bodyError = "#{error.internalError}";
+			}
+			writeBatch(batch, generator);
+		} catch (RuntimeException e) {
+			// The response is already committed, close the JSON with an error so that
+			// the client doesn't receive a truncated document
+			logger.log(Level.SEVERE, "Error validating the routes", e);
+			writeEnd(generator, "#{error.internalError}");
+			throw e;
+		}
+		writeEnd(generator, bodyError);
+		return true;
+	}
+
+	/**
+	 * Close the results array and write the number of routes processed and the
+	 * error (if any)
+	 *
+	 * @param generator
+	 * @param error
+	 *            error label, <code>null</code> if there was no error
+	 */
+	private void writeEnd(JsonGenerator generator, String error) {
+		generator.writeEnd();
+		generator.write("returned", returned);
+		if (error != null) {
+			generator.write("error", error);
+		}
+		generator.writeEnd();
+		generator.flush();
+	}
+
+	/**
+	 * Validate and write the routes of the <code>batch</code>, the response is
+	 * flushed and the batch is cleared at the end. The valid routes of the batch
+	 * are validated at once, and each result is rendered before its object is
+	 * started, so an unchecked exception never leaves a route object half
+	 * written.
+	 *
+	 * @param batch
+	 * @param generator
+	 */
+	private void writeBatch(List<JsonValue> batch, JsonGenerator generator) {
+		if (batch.isEmpty()) {
+			generator.flush();
+			return;
+		}
+		String[] errors = new String[batch.size()];
+		List<Route> routes = new ArrayList<>(batch.size());
+		for (int i = 0; i < batch.size(); i++) {
+			JsonValue route = batch.get(i);
+			try {
+				if (route.getValueType() != JsonValue.ValueType.OBJECT) {
+					throw new BadRequestException("#{error.invalidJson}");
+				}
+				JsonObject routeObject = route.asJsonObject();
+				routes.add(validator.parse(getText(routeObject, "asn"), getText(routeObject, "prefix"),
+						getText(routeObject, "prefixLength")));
+			} catch (HttpException e) {
+				errors[i] = e.getMessage();
+			}
+		}
+		List<ApiResult> results = null;
+		String batchError = null;
+		if (!routes.isEmpty()) {
+			try {
+				results = validator.validate(routes);
+			} catch (ApiDataAccessException e) {
+				logger.log(Level.SEVERE, e.getMessage(), e);
+				batchError = "#{error.internalError}";
+			}
+		}
+		int resultIndex = 0;
+		for (int i = 0; i < batch.size(); i++) {
+			JsonValue route = batch.get(i);
+			JsonStructure json = null;
+			String error = errors[i];
+			if (error == null) {
+				ApiResult result = results != null ? results.get(resultIndex) : null;
+				resultIndex++;
+				if (batchError != null) {
+					error = batchError;
+				} else if (result != null) {
+					json = result.toJsonStructure();
+				}
+			}
+			generator.writeStartObject();
+			generator.write("route", route);
+			if (error != null) {
+				generator.write("error", error);
+			} else if (json != null) {
+				generator.write("result", json);
+			} else {
+				generator.writeNull("result");
+			}
+			generator.writeEnd();
+			returned++;
+		}
+		batch.clear();
+		generator.flush();
+	}
+
+	/**
+	 * Check if the body is a JSON array, the reader isn't consumed
+	 *
+	 * @return <code>true</code> if the first non whitespace character is '['
+	 * @throws IOException
+	 */
+	private boolean isJsonArray() throws IOException {
+		int read;
+		do {
+			reader.mark(1);
+			read = reader.read();
+		} while (read != -1 && Character.isWhitespace(read));
+		reader.reset();
+		return read == '[';
+	}
+
+	/**
+	 * Get the value of the <code>key</code> as text, whether it's a JSON string or
+	 * a JSON number
+	 *
+	 * @param object
+	 * @param key
+	 * @return the text value, or <code>null</code> if the key isn't present
+	 */
+	private static String getText(JsonObject object, String key) {
+		JsonValue value = object.get(key);
+		if (value == null || value.getValueType() == JsonValue.ValueType.NULL) {
+			return null;
+		}
+		if (value instanceof JsonString) {
+			return ((JsonString) value).getString();
+		}
+		return value.toString();
+	}
+}
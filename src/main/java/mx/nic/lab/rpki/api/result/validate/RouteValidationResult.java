@@ -10,14 +10,21 @@ import mx.nic.lab.rpki.api.result.slurm.SlurmPrefixSingleResult;
 import mx.nic.lab.rpki.db.pojo.RouteValidation;
 
 /**
- * Result that represents a route validation
+ * Result that represents a route validation, the matched ROA has only the
+ * properties of its VRP unless the detail is requested
  *
  */
 public class RouteValidationResult extends ApiSingleResult<RouteValidation> {
 
-	public RouteValidationResult(RouteValidation routeValidation) {
+	/**
+	 * Indicates if the matched ROA must have all its properties (e.g. the CMS)
+	 */
+	private boolean detail;
+
+	public RouteValidationResult(RouteValidation routeValidation, boolean detail) {
 		super();
 		setApiObject(routeValidation);
+		this.detail = detail;
 	}
 
 	@Override
@@ -33,7 +40,8 @@ public class RouteValidationResult extends ApiSingleResult<RouteValidation> {
 		addKeyValueToBuilder(builder, "fullCheck", routeValidation.getFullCheck(), true);
 		if (routeValidation.getRoaMatch() != null) {
 			// Use the existent ROA result
-			RoaSingleResult roaResult = new RoaSingleResult(routeValidation.getRoaMatch());
+			RoaSingleResult roaResult = new RoaSingleResult(routeValidation.getRoaMatch(),
+					detail ? null : RoaSingleResult.VRP_FIELDS);
 			addKeyValueToBuilder(builder, "match", roaResult.toJsonStructure(), false);
 		}
 		if (routeValidation.getSlurmMatch() != null) {
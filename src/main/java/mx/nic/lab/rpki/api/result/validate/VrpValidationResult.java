@@ -0,0 +1,108 @@
+package mx.nic.lab.rpki.api.result.validate;
+
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonStructure;
+
+import mx.nic.lab.rpki.api.result.ApiSingleResult;
+import mx.nic.lab.rpki.api.result.roa.RoaSingleResult;
+import mx.nic.lab.rpki.api.result.slurm.SlurmPrefixSingleResult;
+import mx.nic.lab.rpki.api.vrp.VrpValidation;
+import mx.nic.lab.rpki.db.pojo.Roa;
+import mx.nic.lab.rpki.db.pojo.SlurmPrefix;
+
+/**
+ * Result that represents a route validation made against the in memory VRP
+ * index, it has the same properties as {@link RouteValidationResult} plus the
+ * session ID and serial of the snapshot used. By default the match only has
+ * the properties of the matched VRP ("id", "asn", "prefix", "prefixLength",
+ * "prefixMaxLength" and "prefixFamily"), taken from the snapshot itself. If
+ * the detail was requested, the matched ROA (or SLURM assertion) is the one
+ * loaded from the DA implementation; if it no longer exists, only the VRP
+ * properties of the match are returned.
+ *
+ */
+public class VrpValidationResult extends ApiSingleResult<VrpValidation> {
+
+	/**
+	 * Session ID of the VRP snapshot used to validate
+	 */
+	private String session;
+
+	/**
+	 * Serial of the VRP snapshot used to validate
+	 */
+	private long serial;
+
+	/**
+	 * ROA that holds the matched VRP, <code>null</code> if the detail wasn't
+	 * requested
+	 */
+	private Roa roaMatch;
+
+	/**
+	 * SLURM prefix assertion of the matched VRP, <code>null</code> if the detail
+	 * wasn't requested
+	 */
+	private SlurmPrefix slurmMatch;
+
+	public VrpValidationResult(VrpValidation vrpValidation, Roa roaMatch, SlurmPrefix slurmMatch, String session,
+			long serial) {
+		super();
+		setApiObject(vrpValidation);
+		this.roaMatch = roaMatch;
+		this.slurmMatch = slurmMatch;
+		this.session = session;
+		this.serial = serial;
+	}
+
+	@Override
+	public JsonStructure toJsonStructure() {
+		VrpValidation vrpValidation = getApiObject();
+		if (vrpValidation == null) {
+			return null;
+		}
+		JsonObjectBuilder builder = Json.createObjectBuilder();
+		addKeyValueToBuilder(builder, "validityState", vrpValidation.getValidityState(), true);
+		addKeyValueToBuilder(builder, "prefixState", vrpValidation.getPrefixState(), true);
+		addKeyValueToBuilder(builder, "asState", vrpValidation.getAsState(), true);
+		addKeyValueToBuilder(builder, "fullCheck", vrpValidation.isFullCheck(), true);
+		addKeyValueToBuilder(builder, "session", session, true);
+		addKeyValueToBuilder(builder, "serial", serial, true);
+		if (roaMatch != null) {
+			// Use the existent ROA result
+			RoaSingleResult roaResult = new RoaSingleResult(roaMatch);
+			addKeyValueToBuilder(builder, "match", roaResult.toJsonStructure(), false);
+		}
+		if (slurmMatch != null) {
+			SlurmPrefixSingleResult slurmResult = new SlurmPrefixSingleResult(slurmMatch);
+			addKeyValueToBuilder(builder, "slurmMatch", slurmResult.toJsonStructure(), false);
+		}
+		VrpValidation.Match match = vrpValidation.getMatch();
+		if (match != null && roaMatch == null && slurmMatch == null) {
+			// Only the VRP (the detail wasn't requested or it was removed after the
+			// snapshot was built)
+			addKeyValueToBuilder(builder, match.isSlurmAssertion() ? "slurmMatch" : "match",
+					getMatchBuilder(match), false);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Get the properties of the matched VRP, the "id" is the ID of the ROA or of
+	 * the SLURM prefix assertion
+	 * 
+	 * @param match
+	 * @return the builder of the match object
+	 */
+	static JsonObjectBuilder getMatchBuilder(VrpValidation.Match match) {
+		JsonObjectBuilder matchBuilder = Json.createObjectBuilder();
+		matchBuilder.add("id", match.isSlurmAssertion() ? match.getSlurmPrefixId() : match.getRoaId());
+		matchBuilder.add("asn", match.getAsn());
+		matchBuilder.add("prefix", match.getPrefixText());
+		matchBuilder.add("prefixLength", match.getPrefixLength());
+		matchBuilder.add("prefixMaxLength", match.getPrefixMaxLength());
+		matchBuilder.add("prefixFamily", match.getPrefixFamily());
+		return matchBuilder;
+	}
+}
@@ -0,0 +1,132 @@
+package mx.nic.lab.rpki.api.rtr;
+
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mx.nic.lab.rpki.api.config.ApiConfiguration;
+import mx.nic.lab.rpki.api.vrp.VrpDelta;
+import mx.nic.lab.rpki.api.vrp.VrpIndex;
+import mx.nic.lab.rpki.api.vrp.VrpSet;
+
+/**
+ * Data served by the {@link RtrServer}: the VRPs of the current
+ * {@link VrpIndex} (which already have the SLURM applied), identified by the
+ * session ID and a serial as RFC 8210 dictates.<br>
+ * <br>
+ * An instance is an immutable snapshot, the current instance is replaced
+ * atomically each time that the served VRPs change (see {@link #update()}).
+ * The serial is independent of the {@link VrpIndex} serial since the RTR
+ * serial is a 32 bits number that starts at 0.
+ *
+ */
+public class RtrCache {
+
+	/**
+	 * Class logger
+	 */
+	private static final Logger logger = Logger.getLogger(RtrCache.class.getName());
+
+	/**
+	 * Max value of a serial, the serial is a 32 bits unsigned number
+	 */
+	private static final long MAX_SERIAL = 0xFFFFFFFFL;
+
+	/**
+	 * Session ID of this instance of the cache, it's random so that the routers
+	 * detect that the serials started again after a restart
+	 */
+	private static final int SESSION_ID = new SecureRandom().nextInt(0x10000);
+
+	/**
+	 * Current served data, <code>null</code> until there are validated VRPs
+	 */
+	private static final AtomicReference<RtrCache> current = new AtomicReference<>();
+
+	private final long serial;
+	private final VrpSet vrps;
+	private final List<VrpDelta> deltas;
+
+	private RtrCache(long serial, VrpSet vrps, List<VrpDelta> deltas) {
+		this.serial = serial;
+		this.vrps = vrps;
+		this.deltas = deltas;
+	}
+
+	/**
+	 * Publish the VRPs of the current {@link VrpIndex} if they changed, the
+	 * routers are notified of the new serial (see
+	 * {@link RtrServer#notifySessions()})
+	 */
+	public static void update() {
+		VrpIndex vrpIndex = VrpIndex.getCurrent();
+		if (vrpIndex == null) {
+			return;
+		}
+		publish(vrpIndex.getVrps(), ApiConfiguration.getVrpDeltaHistory());
+	}
+
+	/**
+	 * Publish the <code>vrps</code> if they changed, see {@link #update()}
+	 *
+	 * @param vrps
+	 * @param maxHistory
+	 *            number of deltas to keep
+	 */
+	static synchronized void publish(VrpSet vrps, int maxHistory) {
+		RtrCache previous = current.get();
+		if (previous != null && previous.vrps.sameVrps(vrps)) {
+			return;
+		}
+		RtrCache updated;
+		if (previous == null) {
+			updated = new RtrCache(0, vrps, Collections.emptyList());
+		} else {
+			long serial = previous.serial == MAX_SERIAL ? 0 : previous.serial + 1;
+			List<VrpDelta> deltas = serial == 0 ? Collections.emptyList()
+					: VrpDelta.append(previous.deltas, VrpDelta.compute(previous.vrps, vrps, serial), maxHistory);
+			updated = new RtrCache(serial, vrps, deltas);
+		}
+		current.set(updated);
+		logger.log(Level.INFO, "RTR data updated to serial " + updated.serial + " with " + vrps.size() + " VRPs");
+		RtrServer.notifySessions();
+	}
+
+	/**
+	 * @return the current data, or <code>null</code> if there are no validated VRPs
+	 *         yet
+	 */
+	public static RtrCache getCurrent() {
+		return current.get();
+	}
+
+	/**
+	 * @return the session ID of the cache, a 16 bits number
+	 */
+	public static int getSessionId() {
+		return SESSION_ID;
+	}
+
+	public long getSerial() {
+		return serial;
+	}
+
+	public VrpSet getVrps() {
+		return vrps;
+	}
+
+	/**
+	 * Get the changes of the VRPs since the <code>since</code> serial, see
+	 * {@link VrpDelta#since(List, long, long)}
+	 *
+	 * @param since
+	 * @return the {@link VrpDelta}, or <code>null</code> if the changes since the
+	 *         serial aren't kept
+	 */
+	public VrpDelta getDelta(long since) {
+		return VrpDelta.since(deltas, since, serial);
+	}
+}
@@ -0,0 +1,191 @@
+package mx.nic.lab.rpki.api.rtr;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import mx.nic.lab.rpki.api.vrp.VrpSet;
+
+/**
+ * Constants and encoding of the RPKI-to-Router protocol PDUs, as RFC 8210 (and
+ * RFC 6810 for the version 0) dictates. Every PDU starts with a header of 8
+ * bytes: version, type, session ID (or zero, or error code) and length.
+ *
+ */
+public class RtrPdu {
+
+	/**
+	 * Max protocol version supported
+	 */
+	public static final int MAX_VERSION = 1;
+
+	public static final int HEADER_LENGTH = 8;
+
+	// PDU types
+	public static final int SERIAL_NOTIFY = 0;
+	public static final int SERIAL_QUERY = 1;
+	public static final int RESET_QUERY = 2;
+	public static final int CACHE_RESPONSE = 3;
+	public static final int IPV4_PREFIX = 4;
+	public static final int IPV6_PREFIX = 6;
+	public static final int END_OF_DATA = 7;
+	public static final int CACHE_RESET = 8;
+	public static final int ROUTER_KEY = 9;
+	public static final int ERROR_REPORT = 10;
+
+	// PDU lengths
+	public static final int SERIAL_NOTIFY_LENGTH = 12;
+	public static final int SERIAL_QUERY_LENGTH = 12;
+	public static final int RESET_QUERY_LENGTH = 8;
+	public static final int IPV4_PREFIX_LENGTH = 20;
+	public static final int IPV6_PREFIX_LENGTH = 32;
+	public static final int END_OF_DATA_V0_LENGTH = 12;
+	public static final int END_OF_DATA_V1_LENGTH = 24;
+
+	// Error codes
+	public static final int ERROR_CORRUPT_DATA = 0;
+	public static final int ERROR_INTERNAL_ERROR = 1;
+	public static final int ERROR_NO_DATA_AVAILABLE = 2;
+	public static final int ERROR_INVALID_REQUEST = 3;
+	public static final int ERROR_UNSUPPORTED_VERSION = 4;
+	public static final int ERROR_UNSUPPORTED_PDU_TYPE = 5;
+	public static final int ERROR_UNEXPECTED_VERSION = 8;
+
+	// Timing parameters (seconds) sent at the End of Data, the defaults of RFC 8210
+	public static final int REFRESH_INTERVAL = 3600;
+	public static final int RETRY_INTERVAL = 600;
+	public static final int EXPIRE_INTERVAL = 7200;
+
+	private static final int FLAG_ANNOUNCEMENT = 1;
+	private static final int FLAG_WITHDRAWAL = 0;
+
+	private RtrPdu() {
+		// No code
+	}
+
+	public static void putSerialNotify(ByteBuffer buffer, int version, int sessionId, long serial) {
+		putHeader(buffer, version, SERIAL_NOTIFY, sessionId, SERIAL_NOTIFY_LENGTH);
+		buffer.putInt((int) serial);
+	}
+
+	public static void putCacheResponse(ByteBuffer buffer, int version, int sessionId) {
+		putHeader(buffer, version, CACHE_RESPONSE, sessionId, HEADER_LENGTH);
+	}
+
+	public static void putCacheReset(ByteBuffer buffer, int version) {
+		putHeader(buffer, version, CACHE_RESET, 0, HEADER_LENGTH);
+	}
+
+	/**
+	 * @param version
+	 * @return the length of the End of Data PDU for the protocol version
+	 */
+	public static int getEndOfDataLength(int version) {
+		return version == 0 ? END_OF_DATA_V0_LENGTH : END_OF_DATA_V1_LENGTH;
+	}
+
+	/**
+	 * Put an End of Data PDU, the timing parameters are sent only since version 1
+	 *
+	 * @param buffer
+	 * @param version
+	 * @param sessionId
+	 * @param serial
+	 */
+	public static void putEndOfData(ByteBuffer buffer, int version, int sessionId, long serial) {
+		putHeader(buffer, version, END_OF_DATA, sessionId, getEndOfDataLength(version));
+		buffer.putInt((int) serial);
+		if (version > 0) {
+			buffer.putInt(REFRESH_INTERVAL);
+			buffer.putInt(RETRY_INTERVAL);
+			buffer.putInt(EXPIRE_INTERVAL);
+		}
+	}
+
+	/**
+	 * @param vrps
+	 * @param index
+	 * @return the length of the prefix PDU of the VRP
+	 */
+	public static int getPrefixLength(VrpSet vrps, int index) {
+		return vrps.isIpv4(index) ? IPV4_PREFIX_LENGTH : IPV6_PREFIX_LENGTH;
+	}
+
+	/**
+	 * Put an IPv4 or IPv6 Prefix PDU with the VRP at <code>index</code>
+	 *
+	 * @param buffer
+	 * @param version
+	 * @param vrps
+	 * @param index
+	 * @param announcement
+	 *            <code>true</code> to announce the VRP, <code>false</code> to
+	 *            withdraw it
+	 */
+	public static void putPrefix(ByteBuffer buffer, int version, VrpSet vrps, int index, boolean announcement) {
+		boolean ipv4 = vrps.isIpv4(index);
+		putHeader(buffer, version, ipv4 ? IPV4_PREFIX : IPV6_PREFIX, 0, getPrefixLength(vrps, index));
+		buffer.put((byte) (announcement ? FLAG_ANNOUNCEMENT : FLAG_WITHDRAWAL));
+		buffer.put((byte) vrps.getPrefixLength(index));
+		buffer.put((byte) vrps.getMaxLength(index));
+		buffer.put((byte) 0);
+		vrps.putPrefix(index, buffer);
+		buffer.putInt((int) vrps.getAsn(index));
+	}
+
+	/**
+	 * Encode an Error Report PDU
+	 *
+	 * @param version
+	 * @param errorCode
+	 * @param erroneousPdu
+	 *            PDU that caused the error, may be <code>null</code>
+	 * @param text
+	 *            diagnostic text, may be <code>null</code>
+	 * @return the encoded PDU
+	 */
+	public static byte[] encodeErrorReport(int version, int errorCode, byte[] erroneousPdu, String text) {
+		byte[] encapsulated = erroneousPdu != null ? erroneousPdu : new byte[0];
+		byte[] textBytes = text != null ? text.getBytes(StandardCharsets.UTF_8) : new byte[0];
+		int length = HEADER_LENGTH + 4 + encapsulated.length + 4 + textBytes.length;
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		putHeader(buffer, version, ERROR_REPORT, errorCode, length);
+		buffer.putInt(encapsulated.length);
+		buffer.put(encapsulated);
+		buffer.putInt(textBytes.length);
+		buffer.put(textBytes);
+		return buffer.array();
+	}
+
+	/**
+	 * Decode the diagnostic text of an Error Report PDU
+	 *
+	 * @param pdu
+	 *            the whole PDU
+	 * @return the text, or <code>null</code> if the PDU is malformed
+	 */
+	public static String decodeErrorText(ByteBuffer pdu) {
+		int start = pdu.position();
+		int length = pdu.getInt(start + 4);
+		int encapsulatedLength = pdu.getInt(start + HEADER_LENGTH);
+		if (encapsulatedLength < 0 || (long) HEADER_LENGTH + 8 + encapsulatedLength > length) {
+			return null;
+		}
+		int textOffset = HEADER_LENGTH + 4 + encapsulatedLength;
+		int textLength = pdu.getInt(start + textOffset);
+		if (textLength < 0 || (long) textOffset + 4 + textLength > length) {
+			return null;
+		}
+		byte[] text = new byte[textLength];
+		for (int i = 0; i < textLength; i++) {
+			text[i] = pdu.get(start + textOffset + 4 + i);
+		}
+		return new String(text, StandardCharsets.UTF_8);
+	}
+
+	private static void putHeader(ByteBuffer buffer, int version, int type, int sessionId, int length) {
+		buffer.put((byte) version);
+		buffer.put((byte) type);
+		buffer.putShort((short) sessionId);
+		buffer.putInt(length);
+	}
+}
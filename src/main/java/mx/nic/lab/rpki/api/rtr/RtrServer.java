@@ -0,0 +1,265 @@
+package mx.nic.lab.rpki.api.rtr;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mx.nic.lab.rpki.api.config.ApiConfiguration;
+
+/**
+ * RPKI-to-Router (RFC 8210) server, it serves the VRPs of the {@link RtrCache}
+ * to the connected routers. The server uses a single thread and a
+ * {@link Selector}, every socket is non-blocking so the thread is never held
+ * by a slow router; each router is handled by a {@link RtrSession}.<br>
+ * <br>
+ * The server is started only if a port is configured (see
+ * {@link ApiConfiguration#getRtrPort()}). The routers are notified each time
+ * that the {@link RtrCache} is updated (see {@link #notifySessions()}).
+ *
+ */
+public class RtrServer {
+
+	/**
+	 * Class logger
+	 */
+	private static final Logger logger = Logger.getLogger(RtrServer.class.getName());
+
+	/**
+	 * Max time (milliseconds) to wait for the server thread to stop
+	 */
+	private static final long STOP_TIMEOUT = 5000;
+
+	private static Selector selector;
+	private static ServerSocketChannel serverChannel;
+	private static Thread serverThread;
+	private static volatile boolean running;
+
+	/**
+	 * Flag to send a Serial Notify to the sessions at the server thread
+	 */
+	private static final AtomicBoolean notifyPending = new AtomicBoolean();
+
+	private RtrServer() {
+		// No code
+	}
+
+	/**
+	 * Start listening at the configured port, nothing is done if the port isn't
+	 * configured
+	 *
+	 * @throws IOException
+	 *             if the port couldn't be opened
+	 */
+	public static void start() throws IOException {
+		int port = ApiConfiguration.getRtrPort();
+		if (port == 0) {
+			return;
+		}
+		start(new InetSocketAddress(port));
+	}
+
+	/**
+	 * Start listening at the <code>address</code>, nothing is done if the server
+	 * is already running
+	 *
+	 * @param address
+	 * @throws IOException
+	 *             if the port couldn't be opened
+	 */
+	static synchronized void start(InetSocketAddress address) throws IOException {
+		if (running) {
+			return;
+		}
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		try {
+			serverChannel.configureBlocking(false);
+			serverChannel.bind(address);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			serverChannel.close();
+			selector.close();
+			throw e;
+		}
+		running = true;
+		serverThread = new Thread(RtrServer::serve, "rtr-server");
+		serverThread.setDaemon(true);
+		serverThread.start();
+		logger.log(Level.INFO, "RTR server listening at port " + getLocalPort());
+	}
+
+	/**
+	 * @return the port where the server is listening
+	 * @throws IOException
+	 *             if the server socket is closed
+	 */
+	static int getLocalPort() throws IOException {
+		return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+	}
+
+	/**
+	 * Stop the server, all the sessions are closed
+	 */
+	public static synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		selector.wakeup();
+		try {
+			serverThread.join(STOP_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		logger.log(Level.INFO, "RTR server stopped");
+	}
+
+	/**
+	 * Send a Serial Notify with the current {@link RtrCache} serial to all the
+	 * sessions, the notification is sent by the server thread
+	 */
+	public static void notifySessions() {
+		if (!running) {
+			return;
+		}
+		notifyPending.set(true);
+		selector.wakeup();
+	}
+
+	/**
+	 * Server loop: accept the new routers and serve the sessions ready to read or
+	 * write, until the server is stopped
+	 */
+	private static void serve() {
+		try {
+			while (running) {
+				selector.select();
+				if (notifyPending.getAndSet(false)) {
+					notifySerial();
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (key.isValid()) {
+						serveKey(key);
+					}
+				}
+			}
+		} catch (IOException | ClosedSelectorException e) {
+			logger.log(Level.SEVERE, "RTR server error, the server is stopped", e);
+			running = false;
+		} finally {
+			closeAll();
+		}
+	}
+
+	/**
+	 * Serve a selected key: accept a router or serve its session. Any error of a
+	 * session closes only that session, so that the rest of the routers are
+	 * still served.
+	 *
+	 * @param key
+	 */
+	private static void serveKey(SelectionKey key) {
+		if (key.isAcceptable()) {
+			accept();
+			return;
+		}
+		RtrSession session = (RtrSession) key.attachment();
+		try {
+			if (key.isReadable()) {
+				session.read();
+			}
+			if (key.isValid() && key.isWritable()) {
+				session.write();
+			}
+		} catch (IOException e) {
+			logger.log(Level.FINE, "RTR session error, closing it", e);
+			session.close();
+		} catch (RuntimeException e) {
+			logger.log(Level.SEVERE, "Unexpected RTR session error, closing it", e);
+			session.close();
+		}
+	}
+
+	/**
+	 * Accept a pending router connection and start its session
+	 */
+	private static void accept() {
+		SocketChannel channel = null;
+		try {
+			channel = serverChannel.accept();
+			if (channel == null) {
+				return;
+			}
+			channel.configureBlocking(false);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+			key.attach(new RtrSession(channel, key));
+			logger.log(Level.FINE, "RTR session started with " + channel.getRemoteAddress());
+		} catch (IOException | RuntimeException e) {
+			logger.log(Level.WARNING, "Error accepting an RTR session", e);
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e1) {
+					// Already logged
+				}
+			}
+		}
+	}
+
+	/**
+	 * Send a Serial Notify to the sessions
+	 */
+	private static void notifySerial() {
+		RtrCache cache = RtrCache.getCurrent();
+		if (cache == null) {
+			return;
+		}
+		for (SelectionKey key : selector.keys()) {
+			if (!key.isValid() || !(key.attachment() instanceof RtrSession)) {
+				continue;
+			}
+			RtrSession session = (RtrSession) key.attachment();
+			try {
+				session.notifySerial(cache);
+			} catch (IOException e) {
+				logger.log(Level.FINE, "RTR session error, closing it", e);
+				session.close();
+			} catch (RuntimeException e) {
+				logger.log(Level.SEVERE, "Unexpected RTR session error, closing it", e);
+				session.close();
+			}
+		}
+	}
+
+	/**
+	 * Close the sessions, the server socket and the selector
+	 */
+	private static void closeAll() {
+		try {
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() instanceof RtrSession) {
+					((RtrSession) key.attachment()).close();
+				}
+			}
+		} catch (ClosedSelectorException e) {
+			// Nothing to close
+		}
+		try {
+			serverChannel.close();
+			selector.close();
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Error closing the RTR server", e);
+		}
+	}
+}
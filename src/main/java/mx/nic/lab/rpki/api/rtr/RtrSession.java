@@ -0,0 +1,378 @@
+package mx.nic.lab.rpki.api.rtr;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mx.nic.lab.rpki.api.vrp.VrpDelta;
+import mx.nic.lab.rpki.api.vrp.VrpSet;
+
+/**
+ * Session of a router connected to the {@link RtrServer}. The session is used
+ * only by the selector thread of the server, the socket is non-blocking so the
+ * PDUs received are accumulated until they're complete, and the responses are
+ * queued and encoded lazily as the socket accepts more data; so a response
+ * with all the VRPs doesn't need to be encoded at once.<br>
+ * <br>
+ * The protocol version is negotiated with the first PDU received from the
+ * router, as RFC 8210 dictates.
+ *
+ */
+class RtrSession {
+
+	/**
+	 * Class logger
+	 */
+	private static final Logger logger = Logger.getLogger(RtrSession.class.getName());
+
+	/**
+	 * Initial size of the read buffer, it grows if a bigger PDU is received
+	 */
+	private static final int READ_BUFFER_SIZE = 64;
+
+	/**
+	 * Max length of a PDU received from the router, the routers only send queries
+	 * and error reports
+	 */
+	private static final int MAX_PDU_LENGTH = 4096;
+
+	/**
+	 * Size of the write buffer, it's allocated only while there are pending
+	 * responses
+	 */
+	private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+
+	/**
+	 * Version not negotiated yet
+	 */
+	private static final int NO_VERSION = -1;
+
+	private final SocketChannel channel;
+	private final SelectionKey key;
+	private final SocketAddress remoteAddress;
+	private final Deque<Response> responses = new ArrayDeque<>();
+	private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+	private ByteBuffer writeBuffer;
+	private int version = NO_VERSION;
+
+	/**
+	 * The session is closed once the pending responses are sent
+	 */
+	private boolean closing;
+
+	RtrSession(SocketChannel channel, SelectionKey key) throws IOException {
+		this.channel = channel;
+		this.key = key;
+		this.remoteAddress = channel.getRemoteAddress();
+	}
+
+	/**
+	 * Read the available data and process the complete PDUs, the responses are
+	 * sent right away if the socket accepts them
+	 *
+	 * @throws IOException
+	 */
+	void read() throws IOException {
+		if (channel.read(readBuffer) < 0) {
+			logger.log(Level.FINE, "RTR session with " + remoteAddress + " closed by the router");
+			close();
+			return;
+		}
+		readBuffer.flip();
+		int neededCapacity = 0;
+		while (!closing && readBuffer.remaining() >= RtrPdu.HEADER_LENGTH) {
+			int start = readBuffer.position();
+			int length = readBuffer.getInt(start + 4);
+			if (length < RtrPdu.HEADER_LENGTH || length > MAX_PDU_LENGTH) {
+				ByteBuffer header = readBuffer.duplicate();
+				header.limit(start + RtrPdu.HEADER_LENGTH);
+				sendError(RtrPdu.ERROR_CORRUPT_DATA, header, "Invalid PDU length " + length);
+				break;
+			}
+			if (readBuffer.remaining() < length) {
+				neededCapacity = length;
+				break;
+			}
+			ByteBuffer pdu = readBuffer.duplicate();
+			pdu.limit(start + length);
+			process(pdu);
+			readBuffer.position(start + length);
+		}
+		readBuffer.compact();
+		if (neededCapacity > readBuffer.capacity()) {
+			readBuffer.flip();
+			readBuffer = ByteBuffer.allocate(neededCapacity).put(readBuffer);
+		}
+		write();
+	}
+
+	/**
+	 * Send the pending responses until they're all sent or the socket doesn't
+	 * accept more data, in such case the session waits until the socket is
+	 * writable again
+	 *
+	 * @throws IOException
+	 */
+	void write() throws IOException {
+		while (writeBuffer != null || !responses.isEmpty()) {
+			if (writeBuffer == null) {
+				writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+			}
+			while (!responses.isEmpty() && responses.peek().put(writeBuffer)) {
+				responses.poll();
+			}
+			writeBuffer.flip();
+			channel.write(writeBuffer);
+			boolean pending = writeBuffer.hasRemaining();
+			writeBuffer.compact();
+			if (pending) {
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				return;
+			}
+			if (responses.isEmpty()) {
+				writeBuffer = null;
+			}
+		}
+		if (closing) {
+			close();
+			return;
+		}
+		key.interestOps(SelectionKey.OP_READ);
+	}
+
+	/**
+	 * Queue a Serial Notify PDU, only if the router already started the
+	 * conversation
+	 *
+	 * @param cache
+	 * @throws IOException
+	 */
+	void notifySerial(RtrCache cache) throws IOException {
+		if (version == NO_VERSION || closing) {
+			return;
+		}
+		ByteBuffer pdu = ByteBuffer.allocate(RtrPdu.SERIAL_NOTIFY_LENGTH);
+		RtrPdu.putSerialNotify(pdu, version, RtrCache.getSessionId(), cache.getSerial());
+		responses.add(new FixedResponse(pdu.array()));
+		write();
+	}
+
+	/**
+	 * Close the socket, the pending responses are discarded
+	 */
+	void close() {
+		key.cancel();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			logger.log(Level.FINE, "Error closing the RTR session with " + remoteAddress, e);
+		}
+	}
+
+	/**
+	 * Process a complete PDU received from the router
+	 *
+	 * @param pdu
+	 *            buffer whose remaining bytes are the PDU
+	 */
+	private void process(ByteBuffer pdu) {
+		int start = pdu.position();
+		int pduVersion = pdu.get(start) & 0xFF;
+		int type = pdu.get(start + 1) & 0xFF;
+		int length = pdu.remaining();
+		if (type == RtrPdu.ERROR_REPORT) {
+			String text = length >= RtrPdu.HEADER_LENGTH + 8 ? RtrPdu.decodeErrorText(pdu) : null;
+			logger.log(Level.WARNING, "Error report received from router " + remoteAddress + ", code "
+					+ pdu.getShort(start + 2) + ": " + text);
+			closing = true;
+			return;
+		}
+		if (version == NO_VERSION) {
+			if (pduVersion > RtrPdu.MAX_VERSION) {
+				sendError(RtrPdu.ERROR_UNSUPPORTED_VERSION, pdu, "Unsupported protocol version " + pduVersion);
+				return;
+			}
+			version = pduVersion;
+		} else if (pduVersion != version) {
+			sendError(RtrPdu.ERROR_UNEXPECTED_VERSION, pdu, "The session uses the protocol version " + version);
+			return;
+		}
+		switch (type) {
+		case RtrPdu.SERIAL_QUERY:
+			if (length != RtrPdu.SERIAL_QUERY_LENGTH) {
+				sendError(RtrPdu.ERROR_CORRUPT_DATA, pdu, "Invalid Serial Query length");
+				return;
+			}
+			serialQuery(pdu, pdu.getShort(start + 2) & 0xFFFF, pdu.getInt(start + 8) & 0xFFFFFFFFL);
+			break;
+		case RtrPdu.RESET_QUERY:
+			if (length != RtrPdu.RESET_QUERY_LENGTH) {
+				sendError(RtrPdu.ERROR_CORRUPT_DATA, pdu, "Invalid Reset Query length");
+				return;
+			}
+			resetQuery(pdu);
+			break;
+		case RtrPdu.SERIAL_NOTIFY:
+		case RtrPdu.CACHE_RESPONSE:
+		case RtrPdu.IPV4_PREFIX:
+		case RtrPdu.IPV6_PREFIX:
+		case RtrPdu.END_OF_DATA:
+		case RtrPdu.CACHE_RESET:
+		case RtrPdu.ROUTER_KEY:
+			sendError(RtrPdu.ERROR_INVALID_REQUEST, pdu, "PDU type " + type + " is only sent by caches");
+			break;
+		default:
+			sendError(RtrPdu.ERROR_UNSUPPORTED_PDU_TYPE, pdu, "Unsupported PDU type " + type);
+			break;
+		}
+	}
+
+	/**
+	 * Respond with the changes since the <code>serial</code>, or with a Cache
+	 * Reset if the changes aren't kept or the session ID is from another session
+	 *
+	 * @param pdu
+	 * @param sessionId
+	 * @param serial
+	 */
+	private void serialQuery(ByteBuffer pdu, int sessionId, long serial) {
+		RtrCache cache = RtrCache.getCurrent();
+		if (cache == null) {
+			sendError(RtrPdu.ERROR_NO_DATA_AVAILABLE, pdu, "No data available");
+			return;
+		}
+		VrpDelta delta = sessionId == RtrCache.getSessionId() ? cache.getDelta(serial) : null;
+		if (delta == null) {
+			ByteBuffer cacheReset = ByteBuffer.allocate(RtrPdu.HEADER_LENGTH);
+			RtrPdu.putCacheReset(cacheReset, version);
+			responses.add(new FixedResponse(cacheReset.array()));
+			return;
+		}
+		responses.add(new DataResponse(cache.getSerial(), delta.getWithdrawn(), delta.getAnnounced()));
+	}
+
+	/**
+	 * Respond with all the VRPs
+	 *
+	 * @param pdu
+	 */
+	private void resetQuery(ByteBuffer pdu) {
+		RtrCache cache = RtrCache.getCurrent();
+		if (cache == null) {
+			sendError(RtrPdu.ERROR_NO_DATA_AVAILABLE, pdu, "No data available");
+			return;
+		}
+		responses.add(new DataResponse(cache.getSerial(), VrpSet.EMPTY, cache.getVrps()));
+	}
+
+	/**
+	 * Queue an Error Report, every error is fatal (the session is closed once
+	 * the report is sent) except the "No Data Available" error
+	 *
+	 * @param errorCode
+	 * @param pdu
+	 *            buffer whose remaining bytes are the erroneous PDU
+	 * @param text
+	 */
+	private void sendError(int errorCode, ByteBuffer pdu, String text) {
+		byte[] erroneousPdu = new byte[pdu.remaining()];
+		pdu.duplicate().get(erroneousPdu);
+		int reportVersion = version != NO_VERSION ? version : RtrPdu.MAX_VERSION;
+		responses.add(new FixedResponse(RtrPdu.encodeErrorReport(reportVersion, errorCode, erroneousPdu, text)));
+		if (errorCode != RtrPdu.ERROR_NO_DATA_AVAILABLE) {
+			logger.log(Level.INFO, "Closing RTR session with " + remoteAddress + ": " + text);
+			closing = true;
+		}
+	}
+
+	/**
+	 * Response queued to be sent to the router
+	 *
+	 */
+	private interface Response {
+
+		/**
+		 * Put as many PDUs of the response as the <code>buffer</code> can hold
+		 *
+		 * @param buffer
+		 * @return <code>true</code> if the whole response was put
+		 */
+		boolean put(ByteBuffer buffer);
+	}
+
+	/**
+	 * Response of a single encoded PDU
+	 *
+	 */
+	private static class FixedResponse implements Response {
+
+		private final byte[] pdu;
+
+		public FixedResponse(byte[] pdu) {
+			this.pdu = pdu;
+		}
+
+		@Override
+		public boolean put(ByteBuffer buffer) {
+			if (buffer.remaining() < pdu.length) {
+				return false;
+			}
+			buffer.put(pdu);
+			return true;
+		}
+	}
+
+	/**
+	 * Response to a query: Cache Response, the withdrawn VRPs, the announced VRPs
+	 * and End of Data
+	 *
+	 */
+	private class DataResponse implements Response {
+
+		private final long serial;
+		private final VrpSet withdrawn;
+		private final VrpSet announced;
+		private boolean started;
+		private int withdrawnIndex;
+		private int announcedIndex;
+
+		public DataResponse(long serial, VrpSet withdrawn, VrpSet announced) {
+			this.serial = serial;
+			this.withdrawn = withdrawn;
+			this.announced = announced;
+		}
+
+		@Override
+		public boolean put(ByteBuffer buffer) {
+			if (!started) {
+				if (buffer.remaining() < RtrPdu.HEADER_LENGTH) {
+					return false;
+				}
+				RtrPdu.putCacheResponse(buffer, version, RtrCache.getSessionId());
+				started = true;
+			}
+			while (withdrawnIndex < withdrawn.size()
+					&& buffer.remaining() >= RtrPdu.getPrefixLength(withdrawn, withdrawnIndex)) {
+				RtrPdu.putPrefix(buffer, version, withdrawn, withdrawnIndex++, false);
+			}
+			if (withdrawnIndex < withdrawn.size()) {
+				return false;
+			}
+			while (announcedIndex < announced.size()
+					&& buffer.remaining() >= RtrPdu.getPrefixLength(announced, announcedIndex)) {
+				RtrPdu.putPrefix(buffer, version, announced, announcedIndex++, true);
+			}
+			if (announcedIndex < announced.size() || buffer.remaining() < RtrPdu.getEndOfDataLength(version)) {
+				return false;
+			}
+			RtrPdu.putEndOfData(buffer, version, RtrCache.getSessionId(), serial);
+			return true;
+		}
+	}
+}
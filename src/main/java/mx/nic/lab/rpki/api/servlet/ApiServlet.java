@@ -1,15 +1,16 @@
 package mx.nic.lab.rpki.api.servlet;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.json.JsonStructure;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -22,6 +23,7 @@ import mx.nic.lab.rpki.api.exception.MethodNotAllowedException;
 import mx.nic.lab.rpki.api.exception.NotFoundException;
 import mx.nic.lab.rpki.api.result.ApiResult;
 import mx.nic.lab.rpki.api.result.error.ErrorResult;
+import mx.nic.lab.rpki.api.util.LocaleJsonGenerator;
 import mx.nic.lab.rpki.api.util.Util;
 import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
 import mx.nic.lab.rpki.db.exception.ValidationException;
@@ -63,33 +65,6 @@ public abstract class ApiServlet extends HttpServlet {
 		handleRequest(RequestMethod.DELETE, req, resp);
 	}
 
-	/**
-	 * Get the complete JSON string, replacing all the labels "#{label}" with its
-	 * corresponding locale value. If there's no bundle available or no property
-	 * defined, an empty String is used to replace the corresponding label.<br>
-	 * <br>
-	 * If the label has parameters concatenated (e.g. #{label}{param1}{param2} see
-	 * more at
-	 * {@link mx.nic.lab.rpki.api.util.Util#concatenateParamsToLabel(String, Object...)})
-	 * then take those values into account to replace any parameters indicated at
-	 * the label. The order of the parameter affects the replacement order, so the
-	 * parameter <code>{0}</code> will be replaced with the first param value, the
-	 * <code>{1}</code> with the second, and so on... <br>
-	 * <br>
-	 * Finally, the <code>response</code> is modified adding the 'Content-Language'
-	 * header to indicate which language was used.
-	 * 
-	 * @param locale
-	 * @param jsonString
-	 * @param response
-	 * @return JSON string with labels replaced
-	 */
-	private String getLocaleJson(Locale locale, String jsonString, HttpServletResponse response) {
-		jsonString = Util.getJsonWithLocale(locale, jsonString);
-		response.setHeader("Content-Language", locale.toLanguageTag());
-		return jsonString;
-	}
-
 	/**
 	 * Generic handle of all supported requests, gets the {@link ApiResult} and
 	 * builds the response (error or success) to send
@@ -139,6 +114,21 @@ public abstract class ApiServlet extends HttpServlet {
 		if (result == null) {
 			result = new ErrorResult(new NotFoundException());
 		}
+
+		// The list results are written directly to the response, so a big list is
+		// never held in memory. The rest are written before committing the
+		// response, so that an error while writing them is sent as an error.
+		String body = null;
+		if (!result.isStreamed()) {
+			try {
+				body = writeResult(result, req);
+			} catch (RuntimeException e) {
+				logger.log(Level.SEVERE, "Error writing the result", e);
+				result = new ErrorResult(new InternalServerErrorException());
+				body = writeResult(result, req);
+			}
+		}
+
 		// No code was explicitly assigned, assume an OK response
 		if (result.getCode() == 0) {
 			result.setCode(HttpServletResponse.SC_OK);
@@ -150,11 +140,40 @@ public abstract class ApiServlet extends HttpServlet {
 		resp.setContentType("application/json");
 		resp.setHeader("Access-Control-Allow-Origin", "*");
 
-		JsonStructure jsonResponse = result.toJsonStructure();
-		if (jsonResponse != null) {
-			String body = getLocaleJson(req.getLocale(), jsonResponse.toString(), resp);
-			resp.getWriter().print(body);
+		resp.setHeader("Content-Language", req.getLocale().toLanguageTag());
+
+		if (body != null) {
+			resp.getWriter().write(body);
+			return;
+		}
+		if (!result.isStreamed()) {
+			// The result has no JSON to write
+			return;
+		}
+		// The labels are replaced with its locale value as they are written
+		JsonGenerator generator = new LocaleJsonGenerator(Json.createGenerator(resp.getWriter()), req.getLocale());
+		if (result.writeJson(generator)) {
+			generator.close();
+		}
+	}
+
+	/**
+	 * Write the JSON of the <code>result</code> to a string, the labels are
+	 * replaced with its locale value as they are written
+	 * 
+	 * @param result
+	 * @param req
+	 * @return the JSON of the result, or <code>null</code> if the result has no
+	 *         JSON to write
+	 */
+	private static String writeResult(ApiResult result, HttpServletRequest req) {
+		StringWriter writer = new StringWriter();
+		JsonGenerator generator = new LocaleJsonGenerator(Json.createGenerator(writer), req.getLocale());
+		if (!result.writeJson(generator)) {
+			return null;
 		}
+		generator.close();
+		return writer.toString();
 	}
 
 	/**
@@ -0,0 +1,106 @@
+package mx.nic.lab.rpki.api.servlet.roa;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+
+import mx.nic.lab.rpki.api.exception.BadRequestException;
+import mx.nic.lab.rpki.api.exception.HttpException;
+import mx.nic.lab.rpki.api.result.ApiResult;
+import mx.nic.lab.rpki.api.result.roa.VrpDeltaResult;
+import mx.nic.lab.rpki.api.servlet.ApiServlet;
+import mx.nic.lab.rpki.api.servlet.RequestMethod;
+import mx.nic.lab.rpki.api.util.Util;
+import mx.nic.lab.rpki.api.vrp.VrpDelta;
+import mx.nic.lab.rpki.api.vrp.VrpIndex;
+import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
+
+/**
+ * Servlet to provide the changes of the VRPs since a serial of a session, the
+ * changes are taken from the in memory {@link VrpIndex}. If the session isn't
+ * the current one, a reset is indicated.
+ *
+ */
+@WebServlet(name = "roaDelta", value = { "/roa/delta" })
+public class RoaDeltaServlet extends ApiServlet {
+
+	/**
+	 * Serial version ID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Query parameter of the serial from which the changes are requested
+	 */
+	private static final String PARAM_SINCE = "since";
+
+	/**
+	 * Query parameter of the session ID of the <code>since</code> serial
+	 */
+	static final String PARAM_SESSION = "session";
+
+	@Override
+	protected ApiResult doApiRequest(RequestMethod requestMethod, HttpServletRequest request)
+			throws HttpException, ApiDataAccessException {
+		long since = getSerialParameter(request, PARAM_SINCE);
+		String session = getSessionParameter(request);
+		VrpIndex vrpIndex = VrpIndex.getCurrent();
+		if (vrpIndex == null) {
+			return null;
+		}
+		// The serials of another session are unknown, so a reset is required
+		VrpDelta vrpDelta = session.equals(VrpIndex.getSessionId()) ? vrpIndex.getDelta(since) : null;
+		return new VrpDeltaResult(VrpIndex.getSessionId(), since, vrpIndex.getSerial(), vrpDelta);
+	}
+
+	/**
+	 * Get a serial from the request
+	 *
+	 * @param request
+	 * @param param
+	 *            query parameter of the serial
+	 * @return the serial
+	 * @throws BadRequestException
+	 *             if the parameter is missing or isn't a valid serial
+	 */
+	static long getSerialParameter(HttpServletRequest request, String param) throws BadRequestException {
+		String serialStr = request.getParameter(param);
+		long serial;
+		try {
+			serial = Long.parseLong(serialStr == null ? "" : serialStr.trim());
+		} catch (NumberFormatException e) {
+			throw new BadRequestException(
+					Util.concatenateParamsToLabel("#{error.invalidParameter}", param, "serial number"), e);
+		}
+		if (serial < 0) {
+			throw new BadRequestException(
+					Util.concatenateParamsToLabel("#{error.invalidParameter}", param, "serial number"));
+		}
+		return serial;
+	}
+
+	/**
+	 * Get the session ID from the request
+	 *
+	 * @param request
+	 * @return the session ID
+	 * @throws BadRequestException
+	 *             if the parameter is missing or empty
+	 */
+	static String getSessionParameter(HttpServletRequest request) throws BadRequestException {
+		String session = request.getParameter(PARAM_SESSION);
+		if (session == null || session.trim().isEmpty()) {
+			throw new BadRequestException(
+					Util.concatenateParamsToLabel("#{error.invalidParameter}", PARAM_SESSION, "session ID"));
+		}
+		return session.trim();
+	}
+
+	@Override
+	protected List<RequestMethod> getSupportedRequestMethods() {
+		return Arrays.asList(RequestMethod.GET);
+	}
+
+}
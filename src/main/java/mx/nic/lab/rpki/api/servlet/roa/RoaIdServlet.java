@@ -2,6 +2,7 @@ package mx.nic.lab.rpki.api.servlet.roa;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -38,11 +39,12 @@ public class RoaIdServlet extends RoaServlet {
 		} catch (NumberFormatException e) {
 			throw new BadRequestException("#{error.invalidId}", e);
 		}
+		Set<String> fields = Util.getFieldsFromRequest(request, RoaSingleResult.FIELDS);
 		Roa roa = dao.getById(id);
 		if (roa == null) {
 			return null;
 		}
-		return new RoaSingleResult(roa);
+		return new RoaSingleResult(roa, fields);
 	}
 
 	@Override
@@ -4,6 +4,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -12,6 +13,7 @@ import mx.nic.lab.rpki.api.exception.HttpException;
 import mx.nic.lab.rpki.api.result.ApiResult;
 import mx.nic.lab.rpki.api.result.roa.RoaListResult;
 import mx.nic.lab.rpki.api.servlet.RequestMethod;
+import mx.nic.lab.rpki.api.util.Util;
 import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
 import mx.nic.lab.rpki.db.pojo.ListResult;
 import mx.nic.lab.rpki.db.pojo.PagingParameters;
@@ -58,8 +60,9 @@ public class RoaListServlet extends RoaServlet {
 	protected ApiResult doApiDaRequest(RequestMethod requestMethod, HttpServletRequest request, RoaDAO dao)
 			throws HttpException, ApiDataAccessException {
 		PagingParameters pagingParameters = getPagingParameters(request);
+		Set<String> fields = Util.getFieldsFromRequest(request, RoaListResult.FIELDS);
 		ListResult<Roa> roas = dao.getAll(pagingParameters);
-		return new RoaListResult(roas, pagingParameters);
+		return new RoaListResult(roas, pagingParameters, fields);
 	}
 
 	@Override
@@ -0,0 +1,67 @@
+package mx.nic.lab.rpki.api.servlet.roa;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+
+import mx.nic.lab.rpki.api.exception.HttpException;
+import mx.nic.lab.rpki.api.result.ApiResult;
+import mx.nic.lab.rpki.api.result.roa.VrpSnapshotResult;
+import mx.nic.lab.rpki.api.servlet.ApiServlet;
+import mx.nic.lab.rpki.api.servlet.RequestMethod;
+import mx.nic.lab.rpki.api.vrp.VrpIndex;
+import mx.nic.lab.rpki.api.vrp.VrpSet;
+import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
+
+/**
+ * Servlet to provide all the VRPs of the current {@link VrpIndex} snapshot and
+ * its session ID and serial, the VRPs are the same used at /validate and the
+ * baseline of the changes at /roa/delta. The VRPs at a recent serial of the
+ * current session can also be requested (see {@link VrpIndex#getVrps(long)}),
+ * if they aren't available the result is empty.
+ *
+ */
+@WebServlet(name = "roaSnapshot", value = { "/roa/snapshot" })
+public class RoaSnapshotServlet extends ApiServlet {
+
+	/**
+	 * Serial version ID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Query parameter of the serial of the requested VRPs, if it isn't present
+	 * the VRPs of the current serial are returned
+	 */
+	private static final String PARAM_SERIAL = "serial";
+
+	@Override
+	protected ApiResult doApiRequest(RequestMethod requestMethod, HttpServletRequest request)
+			throws HttpException, ApiDataAccessException {
+		VrpIndex vrpIndex = VrpIndex.getCurrent();
+		if (request.getParameter(PARAM_SERIAL) == null) {
+			if (vrpIndex == null) {
+				return null;
+			}
+			return new VrpSnapshotResult(VrpIndex.getSessionId(), vrpIndex.getSerial(), vrpIndex.getVrps());
+		}
+		long serial = RoaDeltaServlet.getSerialParameter(request, PARAM_SERIAL);
+		String session = RoaDeltaServlet.getSessionParameter(request);
+		if (vrpIndex == null || !session.equals(VrpIndex.getSessionId())) {
+			return null;
+		}
+		VrpSet vrps = vrpIndex.getVrps(serial);
+		if (vrps == null) {
+			return null;
+		}
+		return new VrpSnapshotResult(VrpIndex.getSessionId(), serial, vrps);
+	}
+
+	@Override
+	protected List<RequestMethod> getSupportedRequestMethods() {
+		return Arrays.asList(RequestMethod.GET);
+	}
+
+}
@@ -2,6 +2,7 @@ package mx.nic.lab.rpki.api.servlet.tal;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -38,11 +39,12 @@ public class TalIdServlet extends TalServlet {
 		} catch (NumberFormatException e) {
 			throw new BadRequestException("#{error.invalidId}", e);
 		}
+		Set<String> fields = Util.getFieldsFromRequest(request, TalSingleResult.FIELDS);
 		Tal tal = dao.getById(id);
 		if (tal == null) {
 			return null;
 		}
-		return new TalSingleResult(tal);
+		return new TalSingleResult(tal, fields);
 	}
 
 	@Override
@@ -0,0 +1,128 @@
+package mx.nic.lab.rpki.api.servlet.validate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+
+import mx.nic.lab.rpki.api.exception.BadRequestException;
+import mx.nic.lab.rpki.api.exception.HttpException;
+import mx.nic.lab.rpki.api.exception.InternalServerErrorException;
+import mx.nic.lab.rpki.api.result.ApiResult;
+import mx.nic.lab.rpki.api.result.validate.RouteValidationBulkResult;
+import mx.nic.lab.rpki.api.result.validate.RouteValidationBulkResult.Route;
+import mx.nic.lab.rpki.api.result.validate.RouteValidationBulkResult.RouteValidator;
+import mx.nic.lab.rpki.api.servlet.DataAccessServlet;
+import mx.nic.lab.rpki.api.servlet.RequestMethod;
+import mx.nic.lab.rpki.api.vrp.VrpIndex;
+import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
+import mx.nic.lab.rpki.db.service.DataAccessService;
+import mx.nic.lab.rpki.db.spi.RouteValidationDAO;
+
+/**
+ * Servlet to simulate the validation of multiple routes in a single request
+ * (POST), the routes are received at the body (see
+ * {@link RouteValidationBulkResult}) and each one is validated the same way as
+ * in {@link RouteValidationServlet}. The matches only have the properties of
+ * the matched VRP, the detail isn't available at bulk.
+ *
+ */
+@WebServlet(name = "routeValidationBulk", value = { "/validate/bulk" })
+public class RouteValidationBulkServlet extends DataAccessServlet<RouteValidationDAO> {
+
+	/**
+	 * Serial version ID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	protected ApiResult doApiDaRequest(RequestMethod requestMethod, HttpServletRequest request, RouteValidationDAO dao)
+			throws HttpException, ApiDataAccessException {
+		boolean fullCheck = RouteValidationServlet.parseFullCheck(request);
+		BufferedReader reader;
+		try {
+			if (request.getCharacterEncoding() == null) {
+				request.setCharacterEncoding("UTF-8");
+			}
+			reader = request.getReader();
+		} catch (UnsupportedEncodingException e) {
+			throw new BadRequestException("#{error.notUtfEncoded}", e);
+		} catch (IOException e) {
+			throw new InternalServerErrorException(e);
+		}
+		// All the routes are validated with the same snapshot
+		VrpIndex vrpIndex = VrpIndex.getCurrent();
+		return new RouteValidationBulkResult(reader, new BulkRouteValidator(dao, vrpIndex, fullCheck));
+	}
+
+	/**
+	 * Validator of the bulk routes: if the index is loaded, the matches are
+	 * written straight from its VRPs; otherwise each distinct route of a batch is
+	 * validated once by the DA implementation
+	 *
+	 */
+	private static class BulkRouteValidator implements RouteValidator {
+
+		private final RouteValidationDAO dao;
+		private final VrpIndex vrpIndex;
+		private final boolean fullCheck;
+
+		public BulkRouteValidator(RouteValidationDAO dao, VrpIndex vrpIndex, boolean fullCheck) {
+			this.dao = dao;
+			this.vrpIndex = vrpIndex;
+			this.fullCheck = fullCheck;
+		}
+
+		@Override
+		public Route parse(String asnStr, String prefixStr, String prefixLengthStr) throws HttpException {
+			if (asnStr == null || prefixStr == null || prefixLengthStr == null) {
+				throw new BadRequestException("#{error.missingArguments}");
+			}
+			long asn = RouteValidationServlet.parseAsn(asnStr);
+			byte[] prefix = RouteValidationServlet.parsePrefix(prefixStr);
+			int prefixLength = RouteValidationServlet.parsePrefixLength(prefixLengthStr, prefix);
+			return new Route(asn, prefix, prefixLength);
+		}
+
+		@Override
+		public List<ApiResult> validate(List<Route> routes) throws ApiDataAccessException {
+			List<ApiResult> results = new ArrayList<>(routes.size());
+			Map<Route, ApiResult> validated = vrpIndex == null ? new HashMap<>() : null;
+			for (Route route : routes) {
+				ApiResult result = validated != null ? validated.get(route) : null;
+				if (result == null) {
+					result = RouteValidationServlet.validateRoute(dao, vrpIndex, route.getAsn(), route.getPrefix(),
+							route.getPrefixLength(), fullCheck, false);
+					if (validated != null) {
+						validated.put(route, result);
+					}
+				}
+				results.add(result);
+			}
+			return results;
+		}
+	}
+
+	@Override
+	protected String getServedObjectName() {
+		return "routeValidationBulk";
+	}
+
+	@Override
+	protected List<RequestMethod> getSupportedRequestMethods() {
+		return Arrays.asList(RequestMethod.POST);
+	}
+
+	@Override
+	protected RouteValidationDAO initAccessDAO() throws ApiDataAccessException {
+		return DataAccessService.getRouteValidationDAO();
+	}
+
+}
@@ -1,9 +1,6 @@
 package mx.nic.lab.rpki.api.servlet.validate;
 
 import java.math.BigInteger;
-import java.net.Inet4Address;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -14,17 +11,28 @@ import mx.nic.lab.rpki.api.exception.BadRequestException;
 import mx.nic.lab.rpki.api.exception.HttpException;
 import mx.nic.lab.rpki.api.result.ApiResult;
 import mx.nic.lab.rpki.api.result.validate.RouteValidationResult;
+import mx.nic.lab.rpki.api.result.validate.VrpValidationResult;
 import mx.nic.lab.rpki.api.servlet.DataAccessServlet;
 import mx.nic.lab.rpki.api.servlet.RequestMethod;
+import mx.nic.lab.rpki.api.util.IpAddressUtil;
 import mx.nic.lab.rpki.api.util.Util;
+import mx.nic.lab.rpki.api.vrp.VrpIndex;
+import mx.nic.lab.rpki.api.vrp.VrpValidation;
 import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
 import mx.nic.lab.rpki.db.pojo.ApiObject;
+import mx.nic.lab.rpki.db.pojo.Roa;
 import mx.nic.lab.rpki.db.pojo.RouteValidation;
+import mx.nic.lab.rpki.db.pojo.SlurmPrefix;
 import mx.nic.lab.rpki.db.service.DataAccessService;
 import mx.nic.lab.rpki.db.spi.RouteValidationDAO;
 
 /**
- * Servlet to simulate a route validation
+ * Servlet to simulate a route validation.<br>
+ * <br>
+ * The match of the result only has the properties of the matched VRP ("id",
+ * "asn", "prefix", "prefixLength", "prefixMaxLength" and "prefixFamily"), the
+ * whole ROA (e.g. its CMS) or SLURM assertion is returned only if the query
+ * parameter "detail=true" is sent.
  *
  */
 @WebServlet(name = "routeValidation", value = { "/validate/*" })
@@ -41,6 +49,13 @@ public class RouteValidationServlet extends DataAccessServlet<RouteValidationDAO
 	 */
 	private static final String PARAM_FULL_CHECK = "fullCheck";
 
+	/**
+	 * Optional query parameter to indicate if the matched ROA (or SLURM
+	 * assertion) must be loaded with all its properties (e.g. the CMS), if
+	 * <code>false</code> then only the properties of the matched VRP are returned
+	 */
+	private static final String PARAM_DETAIL = "detail";
+
 	@Override
 	protected ApiResult doApiDaRequest(RequestMethod requestMethod, HttpServletRequest request, RouteValidationDAO dao)
 			throws HttpException, ApiDataAccessException {
@@ -50,47 +65,158 @@ public class RouteValidationServlet extends DataAccessServlet<RouteValidationDAO
 		if (additionalPathInfo.size() != 3) {
 			throw new BadRequestException("#{error.missingArguments}");
 		}
-		// Only the exact match ("true") will be treated as such
-		String fullCheckStr = request.getParameter(PARAM_FULL_CHECK);
-		if (fullCheckStr != null && !fullCheckStr.trim().equals("true") && !fullCheckStr.trim().equals("false")) {
+		boolean fullCheck = parseFullCheck(request);
+		boolean detail = parseDetail(request);
+		// Basic validations
+		long asn = parseAsn(additionalPathInfo.get(0));
+		byte[] prefix = parsePrefix(additionalPathInfo.get(1));
+		int prefixLength = parsePrefixLength(additionalPathInfo.get(2), prefix);
+		return validateRoute(dao, VrpIndex.getCurrent(), asn, prefix, prefixLength, fullCheck, detail);
+	}
+
+	/**
+	 * Get the optional query parameter {@link #PARAM_FULL_CHECK}, only the exact
+	 * match ("true") will be treated as such
+	 * 
+	 * @param request
+	 * @return the value of the parameter, <code>false</code> if it wasn't sent
+	 * @throws BadRequestException
+	 *             if the parameter has an invalid value
+	 */
+	static boolean parseFullCheck(HttpServletRequest request) throws BadRequestException {
+		return parseBooleanParameter(request, PARAM_FULL_CHECK);
+	}
+
+	/**
+	 * Get the optional query parameter {@link #PARAM_DETAIL}, only the exact match
+	 * ("true") will be treated as such
+	 * 
+	 * @param request
+	 * @return the value of the parameter, <code>false</code> if it wasn't sent
+	 * @throws BadRequestException
+	 *             if the parameter has an invalid value
+	 */
+	static boolean parseDetail(HttpServletRequest request) throws BadRequestException {
+		return parseBooleanParameter(request, PARAM_DETAIL);
+	}
+
+	private static boolean parseBooleanParameter(HttpServletRequest request, String param)
+			throws BadRequestException {
+		String valueStr = request.getParameter(param);
+		if (valueStr != null && !valueStr.trim().equals("true") && !valueStr.trim().equals("false")) {
 			throw new BadRequestException(
-					Util.concatenateParamsToLabel("#{error.invalidParameter}", PARAM_FULL_CHECK, "true, false"));
+					Util.concatenateParamsToLabel("#{error.invalidParameter}", param, "true, false"));
 		}
-		boolean fullCheck = fullCheckStr == null ? false : Boolean.parseBoolean(fullCheckStr.trim());
-		// Basic validations
-		Long asn = null;
-		try {
-			asn = Long.parseLong(additionalPathInfo.get(0));
-			if (asn < ApiObject.ASN_MIN_VALUE || asn > ApiObject.ASN_MAX_VALUE) {
-				throw new BadRequestException("#{error.route.validation.asn.outOfRange}");
+		return valueStr == null ? false : Boolean.parseBoolean(valueStr.trim());
+	}
+
+	/**
+	 * Validate the route using the in memory index if it's already loaded,
+	 * otherwise use the DA implementation. When the index is used, the match is
+	 * built from the VRP of the index, so the DA implementation isn't touched;
+	 * only if <code>detail</code> is requested, the matched ROA (or SLURM
+	 * assertion) is loaded by its ID.
+	 * 
+	 * @param dao
+	 * @param vrpIndex
+	 *            snapshot of the in memory index, <code>null</code> if it isn't
+	 *            loaded
+	 * @param asn
+	 * @param prefix
+	 *            prefix address bytes (4 for IPv4, 16 for IPv6)
+	 * @param prefixLength
+	 * @param fullCheck
+	 * @param detail
+	 *            if the match must have all the properties of the ROA (or SLURM
+	 *            assertion), otherwise it only has the properties of the VRP
+	 * @return the {@link ApiResult} of the validation
+	 * @throws ApiDataAccessException
+	 */
+	static ApiResult validateRoute(RouteValidationDAO dao, VrpIndex vrpIndex, long asn, byte[] prefix,
+			int prefixLength, boolean fullCheck, boolean detail) throws ApiDataAccessException {
+		if (vrpIndex != null) {
+			VrpValidation vrpValidation = vrpIndex.validate(asn, prefix, prefixLength, fullCheck);
+			VrpValidation.Match match = vrpValidation.getMatch();
+			Roa roaMatch = null;
+			SlurmPrefix slurmMatch = null;
+			if (detail && match != null && match.isSlurmAssertion()) {
+				slurmMatch = DataAccessService.getSlurmPrefixDAO().getById(match.getSlurmPrefixId());
+			} else if (detail && match != null) {
+				roaMatch = DataAccessService.getRoaDAO().getById(match.getRoaId());
 			}
+			return new VrpValidationResult(vrpValidation, roaMatch, slurmMatch, VrpIndex.getSessionId(),
+					vrpIndex.getSerial());
+		}
+		int familyType = prefix.length == 4 ? 4 : 6;
+		RouteValidation routeValidation = dao.validate(asn, prefix, prefixLength, familyType, fullCheck);
+		return new RouteValidationResult(routeValidation, detail);
+	}
+
+	/**
+	 * Parse and validate the ASN of a route
+	 * 
+	 * @param asnStr
+	 * @return the ASN
+	 * @throws BadRequestException
+	 *             if the ASN is invalid or out of range
+	 */
+	static long parseAsn(String asnStr) throws BadRequestException {
+		long asn;
+		try {
+			asn = Long.parseLong(asnStr);
 		} catch (NumberFormatException e) {
 			throw new BadRequestException("#{error.route.validation.asn.invalid}", e);
 		}
-		InetAddress prefix = null;
-		try {
-			prefix = InetAddress.getByName(additionalPathInfo.get(1));
-		} catch (UnknownHostException e) {
-			throw new BadRequestException("#{error.route.validation.prefix.notIp}", e);
+		if (asn < ApiObject.ASN_MIN_VALUE || asn > ApiObject.ASN_MAX_VALUE) {
+			throw new BadRequestException("#{error.route.validation.asn.outOfRange}");
+		}
+		return asn;
+	}
+
+	/**
+	 * Parse the prefix of a route, it must be an IP address literal (a host name
+	 * is never resolved)
+	 * 
+	 * @param prefixStr
+	 * @return the prefix address bytes (4 for IPv4, 16 for IPv6)
+	 * @throws BadRequestException
+	 *             if the prefix isn't an IP address
+	 */
+	static byte[] parsePrefix(String prefixStr) throws BadRequestException {
+		byte[] prefix = IpAddressUtil.parse(prefixStr);
+		if (prefix == null) {
+			throw new BadRequestException("#{error.route.validation.prefix.notIp}");
 		}
-		Integer prefixLength = null;
-		int familyType = -1;
+		return prefix;
+	}
+
+	/**
+	 * Parse and validate the prefix length of a route, it also checks that the
+	 * <code>prefix</code> is a valid IP block using the length
+	 * 
+	 * @param prefixLengthStr
+	 * @param prefix
+	 *            prefix address bytes (4 for IPv4, 16 for IPv6)
+	 * @return the prefix length
+	 * @throws BadRequestException
+	 *             if the length is invalid or out of range, or if the prefix isn't
+	 *             a valid IP block
+	 */
+	static int parsePrefixLength(String prefixLengthStr, byte[] prefix) throws BadRequestException {
+		int prefixLength;
 		try {
-			prefixLength = Integer.parseInt(additionalPathInfo.get(2));
-			int maxLength = prefix instanceof Inet4Address ? 32 : 128;
-			if (prefixLength < 1 || prefixLength > maxLength) {
-				throw new BadRequestException("#{error.route.validation.prefixLength.outOfRange}");
-			}
-			familyType = prefix instanceof Inet4Address ? 4 : 6;
+			prefixLength = Integer.parseInt(prefixLengthStr);
 		} catch (NumberFormatException e) {
 			throw new BadRequestException("#{error.route.validation.prefixLength.invalid}", e);
 		}
-		if (!isValidPrefix(prefix.getAddress(), prefixLength)) {
+		int maxLength = prefix.length * 8;
+		if (prefixLength < 1 || prefixLength > maxLength) {
+			throw new BadRequestException("#{error.route.validation.prefixLength.outOfRange}");
+		}
+		if (!isValidPrefix(prefix, prefixLength)) {
 			throw new BadRequestException("#{error.route.validation.prefix.invalid}");
 		}
-
-		RouteValidation routeValidation = dao.validate(asn, prefix.getAddress(), prefixLength, familyType, fullCheck);
-		return new RouteValidationResult(routeValidation);
+		return prefixLength;
 	}
 
 	/**
@@ -100,7 +226,7 @@ public class RouteValidationServlet extends DataAccessServlet<RouteValidationDAO
 	 * @param prefixLength
 	 * @return
 	 */
-	private boolean isValidPrefix(byte[] prefix, Integer prefixLength) {
+	private static boolean isValidPrefix(byte[] prefix, int prefixLength) {
 		int bytesBase = prefixLength / 8;
 		int bitsBase = prefixLength % 8;
 		byte[] prefixLengthMask = new byte[prefix.length];
@@ -0,0 +1,202 @@
+package mx.nic.lab.rpki.api.slurm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
+import mx.nic.lab.rpki.db.pojo.SlurmPrefix;
+import mx.nic.lab.rpki.db.service.DataAccessService;
+import mx.nic.lab.rpki.db.spi.SlurmPrefixDAO;
+
+/**
+ * In memory representation of the SLURM prefix filters and assertions (RFC
+ * 8416), compiled so that it can be applied to each VRP without querying the
+ * DA implementation:
+ * <ul>
+ * <li>The filters with a prefix are placed at a binary trie (one per address
+ * family), so the filters that cover a VRP are found walking the bits of its
+ * prefix.</li>
+ * <li>The filters with only an ASN are placed at a hash set.</li>
+ * <li>The assertions are kept as a list to be added to the output, each one
+ * with its ID so that a VRP asserted by the SLURM can be traced back to
+ * it.</li>
+ * </ul>
+ * An instance is immutable, the current instance is replaced atomically each
+ * time that the SLURM is loaded (see {@link #rebuild()}).
+ *
+ */
+public class CompiledSlurm {
+
+	/**
+	 * Class logger
+	 */
+	private static final Logger logger = Logger.getLogger(CompiledSlurm.class.getName());
+
+	/**
+	 * SLURM without filters nor assertions
+	 */
+	private static final CompiledSlurm EMPTY = new CompiledSlurm(new HashSet<>(), new FilterNode(), new FilterNode(),
+			Collections.emptyList());
+
+	/**
+	 * Current compiled SLURM
+	 */
+	private static volatile CompiledSlurm current = EMPTY;
+
+	private final Set<Long> asnFilters;
+	private final FilterNode ipv4Filters;
+	private final FilterNode ipv6Filters;
+	private final List<SlurmPrefix> assertions;
+
+	private CompiledSlurm(Set<Long> asnFilters, FilterNode ipv4Filters, FilterNode ipv6Filters,
+			List<SlurmPrefix> assertions) {
+		this.asnFilters = asnFilters;
+		this.ipv4Filters = ipv4Filters;
+		this.ipv6Filters = ipv6Filters;
+		this.assertions = assertions;
+	}
+
+	/**
+	 * Compile the SLURM prefixes from the DA implementation and publish them. If
+	 * there's an error loading the prefixes, the current SLURM remains.
+	 */
+	public static synchronized void rebuild() {
+		SlurmPrefixDAO slurmPrefixDao = DataAccessService.getSlurmPrefixDAO();
+		if (slurmPrefixDao == null) {
+			return;
+		}
+		List<SlurmPrefix> slurmPrefixes;
+		try {
+			slurmPrefixes = slurmPrefixDao.getAll(null).getResults();
+		} catch (ApiDataAccessException e) {
+			logger.log(Level.SEVERE, "Error getting the SLURM prefixes, the compiled SLURM won't be updated", e);
+			return;
+		}
+		Set<Long> asnFilters = new HashSet<>();
+		FilterNode ipv4Filters = new FilterNode();
+		FilterNode ipv6Filters = new FilterNode();
+		List<SlurmPrefix> assertions = new ArrayList<>();
+		int filters = 0;
+		for (SlurmPrefix slurmPrefix : slurmPrefixes) {
+			byte[] prefix = slurmPrefix.getStartPrefix();
+			if (SlurmPrefix.TYPE_ASSERTION.equals(slurmPrefix.getType())) {
+				assertions.add(slurmPrefix);
+				continue;
+			}
+			if (!SlurmPrefix.TYPE_FILTER.equals(slurmPrefix.getType())) {
+				continue;
+			}
+			filters++;
+			if (prefix == null) {
+				asnFilters.add(slurmPrefix.getAsn());
+				continue;
+			}
+			FilterNode node = prefix.length == 4 ? ipv4Filters : ipv6Filters;
+			for (int depth = 0; depth < slurmPrefix.getPrefixLength(); depth++) {
+				node = node.getOrCreateChild(bit(prefix, depth));
+			}
+			node.addFilter(slurmPrefix.getAsn());
+		}
+		current = new CompiledSlurm(asnFilters, ipv4Filters, ipv6Filters, assertions);
+		logger.log(Level.INFO,
+				"SLURM compiled with " + filters + " prefix filters and " + assertions.size() + " prefix assertions");
+	}
+
+	/**
+	 * @return the current compiled SLURM, it's empty if the SLURM hasn't been
+	 *         loaded
+	 */
+	public static CompiledSlurm getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Check if a VRP is removed by any filter: the VRP matches a filter if its
+	 * prefix is covered by the prefix of the filter and its ASN is the ASN of the
+	 * filter, a filter without prefix (or ASN) matches any prefix (or ASN)
+	 *
+	 * @param prefix
+	 *            prefix address bytes (4 for IPv4, 16 for IPv6)
+	 * @param prefixLength
+	 * @param asn
+	 * @return <code>true</code> if the VRP is filtered
+	 */
+	public boolean isFiltered(byte[] prefix, int prefixLength, long asn) {
+		if (asnFilters.contains(asn)) {
+			return true;
+		}
+		FilterNode node = prefix.length == 4 ? ipv4Filters : ipv6Filters;
+		for (int depth = 0; node != null; depth++) {
+			if (node.matches(asn)) {
+				return true;
+			}
+			if (depth == prefixLength) {
+				break;
+			}
+			node = node.getChild(bit(prefix, depth));
+		}
+		return false;
+	}
+
+	/**
+	 * @return the SLURM prefix assertions, each one is a VRP to add
+	 */
+	public List<SlurmPrefix> getAssertions() {
+		return assertions;
+	}
+
+	private static int bit(byte[] prefix, int position) {
+		return (prefix[position >>> 3] >>> (7 - (position & 7))) & 1;
+	}
+
+	/**
+	 * Node of the filters trie, it holds the filters whose prefix is the path to
+	 * the node
+	 *
+	 */
+	private static class FilterNode {
+
+		private final FilterNode[] children = new FilterNode[2];
+
+		/**
+		 * There's a filter without ASN at the node
+		 */
+		private boolean anyAsn;
+
+		/**
+		 * ASNs of the filters at the node, <code>null</code> if there are none
+		 */
+		private Set<Long> asns;
+
+		public FilterNode getChild(int bit) {
+			return children[bit];
+		}
+
+		public FilterNode getOrCreateChild(int bit) {
+			if (children[bit] == null) {
+				children[bit] = new FilterNode();
+			}
+			return children[bit];
+		}
+
+		public void addFilter(Long asn) {
+			if (asn == null) {
+				anyAsn = true;
+				return;
+			}
+			if (asns == null) {
+				asns = new HashSet<>();
+			}
+			asns.add(asn);
+		}
+
+		public boolean matches(long asn) {
+			return anyAsn || (asns != null && asns.contains(asn));
+		}
+	}
+}
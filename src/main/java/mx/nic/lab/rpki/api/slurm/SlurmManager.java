@@ -1,34 +1,51 @@
 package mx.nic.lab.rpki.api.slurm;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonArrayBuilder;
+import javax.json.JsonException;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonStructure;
+import javax.json.JsonValue;
+import javax.json.JsonValue.ValueType;
 import javax.json.JsonWriter;
 import javax.json.JsonWriterFactory;
 import javax.json.stream.JsonGenerator;
 import javax.json.stream.JsonParser;
 
 import mx.nic.lab.rpki.api.config.ApiConfiguration;
+import mx.nic.lab.rpki.api.rtr.RtrCache;
+import mx.nic.lab.rpki.api.vrp.VrpIndex;
 import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
 import mx.nic.lab.rpki.db.exception.InitializationException;
 import mx.nic.lab.rpki.db.pojo.ListResult;
@@ -59,12 +76,25 @@ public class SlurmManager {
 	private static final Logger logger = Logger.getLogger(SlurmManager.class.getName());
 
 	/**
-	 * Actions that can be performed at the SLURM file
-	 *
+	 * Lock held while the SLURM file is written by the API or loaded into the DA
+	 * implementation
 	 */
-	private enum Action {
-		ADD_OBJECT, REMOVE_OBJECT
-	}
+	private static final Object slurmLock = new Object();
+
+	/**
+	 * Changes to the SLURM file waiting to be written, all the pending changes
+	 * are written at once (see {@link #updateFile(FileChange)})
+	 */
+	private static final List<FileChange> pendingChanges = new ArrayList<>();
+
+	/**
+	 * SLURM last written (or read) by the API and its SHA-256, it's used as long
+	 * as the file keeps the same modification time and size
+	 */
+	private static JsonObject cachedSlurm;
+	private static byte[] cachedSlurmChecksum;
+	private static FileTime cachedSlurmModifiedTime;
+	private static long cachedSlurmSize;
 
 	/**
 	 * Validate the configured SLURM, sync with DA implementation, and place a
@@ -89,6 +119,7 @@ public class SlurmManager {
 			}
 			throw new InitializationException("Invalid SLURM at " + slurmLocationFile + ". " + sb.toString());
 		}
+		CompiledSlurm.rebuild();
 		// The file changes will be watched by another process (not the main
 		// process/thread)
 	}
@@ -116,50 +147,83 @@ public class SlurmManager {
 	}
 
 	/**
-	 * Load the SLURM from the configured SLURM location
+	 * Load the SLURM from the configured SLURM location, the file is parsed and
+	 * validated in a single pass (see {@link SlurmParser}). If the SLURM at the
+	 * DA implementation has the same checksum as the file (e.g. the API wrote
+	 * it), the file is only hashed.
 	 * 
 	 * @param exceptions
 	 *            list of exceptions where any error will be concatenated
+	 * @return <code>true</code> if the SLURM at the DA implementation was updated
 	 */
-	public static void loadSlurmFromFile(List<Exception> exceptions) {
-		try (FileReader fr = new FileReader(slurmLocationFile); JsonParser parser = Json.createParser(fr)) {
-			parser.next();
-			JsonObject jsonObject = parser.getObject();
-			if (!SlurmUtil.isValidSlurm(jsonObject, exceptions)) {
-				logger.log(Level.WARNING, "Invalid SLURM detected");
-				return;
-			}
-			byte[] currentChecksum = null;
-			MessageDigest md = null;
-			try {
-				md = MessageDigest.getInstance("SHA-256");
-			} catch (NoSuchAlgorithmException e) {
-				exceptions.add(e);
-				return;
-			}
-			md.update(Files.readAllBytes(slurmLocationFile.toPath().normalize()));
-			currentChecksum = md.digest();
-			// Compare the last checksum, if different then check against DA implementation
-			// (the file has the priority)
-			SlurmDAO dao = DataAccessService.getSlurmDAO();
-			byte[] lastChecksum;
-			try {
-				lastChecksum = dao.getLastChecksum();
-			} catch (ApiDataAccessException e) {
-				exceptions.add(new Exception("The last checksum of the SLURM at database couldn't be fetched", e));
-				return;
-			}
-			// Update DB (if needed)
-			if (lastChecksum == null || !Arrays.equals(lastChecksum, currentChecksum)) {
-				logger.log(Level.INFO, "Updating SLURM at DA implementation");
-				updateSlurmDb(jsonObject, currentChecksum);
+	public static boolean loadSlurmFromFile(List<Exception> exceptions) {
+		synchronized (slurmLock) {
+			return loadSlurm(exceptions);
+		}
+	}
+
+	/**
+	 * Load the SLURM from the configured SLURM location, the caller must hold
+	 * {@link #slurmLock}
+	 * 
+	 * @param exceptions
+	 *            list of exceptions where any error will be concatenated
+	 * @return <code>true</code> if the SLURM at the DA implementation was updated
+	 */
+	private static boolean loadSlurm(List<Exception> exceptions) {
+		// Compare the last checksum, if different then check against DA implementation
+		// (the file has the priority)
+		SlurmDAO dao = DataAccessService.getSlurmDAO();
+		byte[] lastChecksum;
+		try {
+			lastChecksum = dao.getLastChecksum();
+		} catch (ApiDataAccessException e) {
+			exceptions.add(new Exception("The last checksum of the SLURM at database couldn't be fetched", e));
+			return false;
+		}
+		if (lastChecksum != null && Arrays.equals(lastChecksum, getFileChecksum())) {
+			logger.log(Level.INFO, "The SLURM at DA implementation is already in sync with the file");
+			return false;
+		}
+		SlurmParser slurmParser = new SlurmParser();
+		if (!slurmParser.parse(slurmLocationFile, exceptions)) {
+			logger.log(Level.WARNING, "Invalid SLURM detected");
+			return false;
+		}
+		byte[] currentChecksum = slurmParser.getChecksum();
+		// Update DB (if needed)
+		if (lastChecksum != null && Arrays.equals(lastChecksum, currentChecksum)) {
+			return false;
+		}
+		logger.log(Level.INFO, "Updating SLURM at DA implementation");
+		updateSlurmDb(slurmParser, currentChecksum);
+		return true;
+	}
+
+	/**
+	 * Get the SHA-256 of the SLURM file, the file is only hashed, not parsed
+	 * 
+	 * @return the checksum, or <code>null</code> if the file couldn't be read
+	 */
+	private static byte[] getFileChecksum() {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			logger.log(Level.WARNING, "The SLURM checksum couldn't be calculated", e);
+			return null;
+		}
+		byte[] buffer = new byte[8192];
+		try (InputStream in = new DigestInputStream(Files.newInputStream(slurmLocationFile.toPath().normalize()),
+				md)) {
+			while (in.read(buffer) != -1) {
+				// Just read
 			}
 		} catch (IOException e) {
-			exceptions.add(new Exception("Failed to load SLURM " + slurmLocationFile + ": " + e.getMessage(), e));
-		} catch (IllegalStateException e) {
-			exceptions
-					.add(new Exception("Invalid JSON object at SLURM " + slurmLocationFile + ": " + e.getMessage(), e));
+			logger.log(Level.FINE, "The SLURM couldn't be read to get its checksum", e);
+			return null;
 		}
+		return md.digest();
 	}
 
 	/**
@@ -175,7 +239,8 @@ public class SlurmManager {
 		if (rootProp == null || childProp == null) {
 			return false;
 		}
-		return removeObjectFromFile(rootProp, childProp, slurmPrefix.getOrder());
+		return removeObjectFromFile(rootProp, childProp, slurmPrefix.getOrder(),
+				(jsonObject) -> isSamePrefix(jsonObject, slurmPrefix), slurmPrefix);
 	}
 
 	/**
@@ -193,7 +258,7 @@ public class SlurmManager {
 			return false;
 		}
 		JsonObject newObject = SlurmUtil.getPrefixBuilder(slurmPrefix).build();
-		return addObjectToFile(rootProp, childProp, newObject);
+		return addObjectToFile(rootProp, childProp, newObject, slurmPrefix);
 	}
 
 	/**
@@ -209,7 +274,8 @@ public class SlurmManager {
 		if (rootProp == null || childProp == null) {
 			return false;
 		}
-		return removeObjectFromFile(rootProp, childProp, slurmBgpsec.getOrder());
+		return removeObjectFromFile(rootProp, childProp, slurmBgpsec.getOrder(),
+				(jsonObject) -> isSameBgpsec(jsonObject, slurmBgpsec), slurmBgpsec);
 	}
 
 	/**
@@ -227,7 +293,7 @@ public class SlurmManager {
 			return false;
 		}
 		JsonObject newObject = SlurmUtil.getBgpsecBuilder(slurmBgpsec).build();
-		return addObjectToFile(rootProp, childProp, newObject);
+		return addObjectToFile(rootProp, childProp, newObject, slurmBgpsec);
 	}
 
 	/**
@@ -320,9 +386,10 @@ public class SlurmManager {
 	 * Update the SLRUM at the Data Access Implementation
 	 * 
 	 * @param newSlurm
+	 *            parsed SLURM
 	 * @param newChecksum
 	 */
-	private static void updateSlurmDb(JsonObject newSlurm, byte[] newChecksum) {
+	private static void updateSlurmDb(SlurmParser newSlurm, byte[] newChecksum) {
 		if (!updatePrefixes(newSlurm)) {
 			logger.log(Level.WARNING, "The SLURM prefixes couldn't be updated");
 			return;
@@ -340,31 +407,49 @@ public class SlurmManager {
 
 	/**
 	 * Update the prefixes (filters and assertions) based on the SLRUM received in
-	 * <code>newSlurm</code>
+	 * <code>newSlurm</code>.<br>
+	 * <br>
+	 * The stored prefixes are loaded at once and indexed by its properties (see
+	 * {@link SlurmPrefixKey}), so the SLURM is compared against them in memory and
+	 * only the differences are written: the new prefixes are created, the
+	 * existing ones are updated only if its comment or order changed, and the
+	 * prefixes that aren't at the SLURM anymore are deleted in a single bulk
+	 * delete.
 	 * 
 	 * @param newSlurm
 	 * @return <code>boolean</code> to indicate success or failure
 	 */
-	private static boolean updatePrefixes(JsonObject newSlurm) {
+	private static boolean updatePrefixes(SlurmParser newSlurm) {
 		SlurmPrefixDAO slurmPrefixDao = DataAccessService.getSlurmPrefixDAO();
+		Map<SlurmPrefixKey, SlurmPrefix> prefixesDb = new HashMap<>();
 		Set<Long> removePrefixes = new HashSet<>();
 		try {
 			ListResult<SlurmPrefix> slurmPrefixesDb = slurmPrefixDao.getAll(null);
 			slurmPrefixesDb.getResults().forEach((result) -> {
-				removePrefixes.add(result.getId());
+				SlurmPrefix duplicated = prefixesDb.put(new SlurmPrefixKey(result), result);
+				if (duplicated != null) {
+					removePrefixes.add(duplicated.getId());
+				}
 			});
 		} catch (ApiDataAccessException e) {
 			logger.log(Level.SEVERE, "Error getting all the prefixes", e);
 			return false;
 		}
-		if (!updatePrefixesByType(newSlurm, SlurmPrefix.TYPE_FILTER, slurmPrefixDao, removePrefixes)) {
-			logger.log(Level.WARNING, "Someting went wrong updating prefixes " + SlurmPrefix.TYPE_FILTER);
-			return false;
-		}
-		if (!updatePrefixesByType(newSlurm, SlurmPrefix.TYPE_ASSERTION, slurmPrefixDao, removePrefixes)) {
-			logger.log(Level.WARNING, "Someting went wrong updating prefixes " + SlurmPrefix.TYPE_ASSERTION);
-			return false;
-		}
+		List<SlurmPrefix> createPrefixes = new ArrayList<>();
+		Map<Long, String> updateComments = new HashMap<>();
+		Map<Long, Integer> updateOrders = new HashMap<>();
+		diffPrefixes(newSlurm.getPrefixFilters(), prefixesDb, createPrefixes, updateComments, updateOrders);
+		diffPrefixes(newSlurm.getPrefixAssertions(), prefixesDb, createPrefixes, updateComments, updateOrders);
+		// The prefixes left weren't found at the SLURM
+		prefixesDb.values().forEach((prefixDb) -> {
+			removePrefixes.add(prefixDb.getId());
+		});
+		logger.log(Level.INFO,
+				"SLURM prefixes diff: " + createPrefixes.size() + " new, " + updateComments.size()
+						+ " comments updated, " + updateOrders.size() + " orders updated, " + removePrefixes.size()
+						+ " removed");
+
+		boolean result = true;
 		if (!removePrefixes.isEmpty()) {
 			try {
 				slurmPrefixDao.bulkDelete(removePrefixes);
@@ -373,68 +458,36 @@ public class SlurmManager {
 				return false;
 			}
 		}
-		return true;
-	}
-
-	/**
-	 * Update the prefixes according to its type (filter or assertion)
-	 * 
-	 * @param newSlurm
-	 * @param type
-	 * @param slurmPrefixDao
-	 * @param removePrefixes
-	 * @return <code>boolean</code> to indicate success or failure
-	 */
-	private static boolean updatePrefixesByType(JsonObject newSlurm, String type, SlurmPrefixDAO slurmPrefixDao,
-			Set<Long> removePrefixes) {
-		boolean result = true;
-		String rootProperty = getPrefixRootProperty(type);
-		String childProperty = getPrefixChildProperty(type);
-		if (rootProperty == null || childProperty == null) {
-			return false;
-		}
-		JsonObject jsonRoot = newSlurm.getJsonObject(rootProperty);
-		JsonArray jsonChild = jsonRoot.getJsonArray(childProperty);
-		List<JsonObject> prefixes = null;
-		try {
-			prefixes = jsonChild.getValuesAs(JsonObject.class);
-		} catch (ClassCastException e) {
-			logger.log(Level.SEVERE, "Error geting a prefix " + type + " as JSON object from the SLURM at "
-					+ rootProperty.concat(childProperty), e);
-			return false;
-		}
-		for (int index = 0; index < jsonChild.size(); index++) {
-			JsonObject jsonPrefix = prefixes.get(index);
-			SlurmPrefix slurmPrefixFile = SlurmUtil.getAndvalidatePrefix(jsonPrefix, type);
-			SlurmPrefix slurmPrefixDb = null;
+		for (Map.Entry<Long, String> updateComment : updateComments.entrySet()) {
 			try {
-				slurmPrefixDb = slurmPrefixDao.getPrefixByProperties(slurmPrefixFile.getAsn(),
-						slurmPrefixFile.getStartPrefix(), slurmPrefixFile.getPrefixLength(),
-						slurmPrefixFile.getPrefixMaxLength(), type);
-				// The object doesn't exists, attempt to create
-				if (slurmPrefixDb == null) {
-					slurmPrefixFile.setOrder(index);
-					if (!slurmPrefixDao.create(slurmPrefixFile)) {
-						logger.log(Level.SEVERE, "The object couldn't be created: " + slurmPrefixFile.toString());
-						result = false;
-					}
-					continue;
+				if (slurmPrefixDao.updateComment(updateComment.getKey(), updateComment.getValue()) != 1) {
+					logger.log(Level.SEVERE,
+							"The comment of the object " + updateComment.getKey() + " couldn't be updated");
+					result = false;
 				}
-				// Compare the comment
-				if (!slurmPrefixDb.getComment().equals(slurmPrefixFile.getComment())) {
-					if (slurmPrefixDao.updateComment(slurmPrefixDb.getId(), slurmPrefixFile.getComment()) != 1) {
-						logger.log(Level.SEVERE, "The object comment couldn't be updated: " + slurmPrefixDb.toString());
-						result = false;
-					}
+			} catch (ApiDataAccessException e) {
+				logger.log(Level.SEVERE, "Error performing an action at the Data Access Implementation", e);
+				result = false;
+			}
+		}
+		for (Map.Entry<Long, Integer> updateOrder : updateOrders.entrySet()) {
+			try {
+				if (slurmPrefixDao.updateOrder(updateOrder.getKey(), updateOrder.getValue()) != 1) {
+					logger.log(Level.SEVERE,
+							"The order of the object " + updateOrder.getKey() + " couldn't be updated");
+					result = false;
 				}
-				// Compare the order
-				if (slurmPrefixDb.getOrder() == null || slurmPrefixDb.getOrder() != index) {
-					if (slurmPrefixDao.updateOrder(slurmPrefixDb.getId(), index) != 1) {
-						logger.log(Level.SEVERE, "The object order couldn't be updated: " + slurmPrefixDb.toString());
-						result = false;
-					}
+			} catch (ApiDataAccessException e) {
+				logger.log(Level.SEVERE, "Error performing an action at the Data Access Implementation", e);
+				result = false;
+			}
+		}
+		for (SlurmPrefix createPrefix : createPrefixes) {
+			try {
+				if (!slurmPrefixDao.create(createPrefix)) {
+					logger.log(Level.SEVERE, "The object couldn't be created: " + createPrefix.toString());
+					result = false;
 				}
-				removePrefixes.remove(slurmPrefixDb.getId());
 			} catch (ApiDataAccessException e) {
 				logger.log(Level.SEVERE, "Error performing an action at the Data Access Implementation", e);
 				result = false;
@@ -443,6 +496,51 @@ public class SlurmManager {
 		return result;
 	}
 
+	/**
+	 * Compare the prefixes of a type (filter or assertion) at the SLURM against
+	 * the stored prefixes. The matched prefixes are removed from
+	 * <code>prefixesDb</code>, so the prefixes left there must be deleted.
+	 * 
+	 * @param prefixes
+	 *            prefixes of the SLURM, in the same order as the file
+	 * @param prefixesDb
+	 *            stored prefixes indexed by its properties
+	 * @param createPrefixes
+	 *            list where the prefixes to create are added
+	 * @param updateComments
+	 *            map where the new comments are added, by prefix ID
+	 * @param updateOrders
+	 *            map where the new orders are added, by prefix ID
+	 */
+	private static void diffPrefixes(List<SlurmPrefix> prefixes, Map<SlurmPrefixKey, SlurmPrefix> prefixesDb,
+			List<SlurmPrefix> createPrefixes, Map<Long, String> updateComments, Map<Long, Integer> updateOrders) {
+		Set<SlurmPrefixKey> fileKeys = new HashSet<>();
+		for (int index = 0; index < prefixes.size(); index++) {
+			SlurmPrefix slurmPrefixFile = prefixes.get(index);
+			SlurmPrefixKey key = new SlurmPrefixKey(slurmPrefixFile);
+			if (!fileKeys.add(key)) {
+				logger.log(Level.WARNING, "Duplicated prefix " + slurmPrefixFile.getType()
+						+ " at the SLURM, only the first one is used: " + slurmPrefixFile.toString());
+				continue;
+			}
+			SlurmPrefix slurmPrefixDb = prefixesDb.remove(key);
+			// The object doesn't exists, it must be created
+			if (slurmPrefixDb == null) {
+				slurmPrefixFile.setOrder(index);
+				createPrefixes.add(slurmPrefixFile);
+				continue;
+			}
+			// Compare the comment
+			if (!Objects.equals(slurmPrefixDb.getComment(), slurmPrefixFile.getComment())) {
+				updateComments.put(slurmPrefixDb.getId(), slurmPrefixFile.getComment());
+			}
+			// Compare the order
+			if (slurmPrefixDb.getOrder() == null || slurmPrefixDb.getOrder() != index) {
+				updateOrders.put(slurmPrefixDb.getId(), index);
+			}
+		}
+	}
+
 	/**
 	 * Update the SLURM BGPsec (filters and assertions) based on the SLRUM received
 	 * in <code>newSlurm</code>
@@ -450,7 +548,7 @@ public class SlurmManager {
 	 * @param newSlurm
 	 * @return <code>boolean</code> to indicate success or failure
 	 */
-	private static boolean updateBgpsecs(JsonObject newSlurm) {
+	private static boolean updateBgpsecs(SlurmParser newSlurm) {
 		SlurmBgpsecDAO slurmBgpsecDao = DataAccessService.getSlurmBgpsecDAO();
 		Set<Long> removeBgpsecs = new HashSet<>();
 		try {
@@ -462,11 +560,11 @@ public class SlurmManager {
 			logger.log(Level.SEVERE, "Error getting all the BGPsecs", e);
 			return false;
 		}
-		if (!updateBgpsecsByType(newSlurm, SlurmBgpsec.TYPE_FILTER, slurmBgpsecDao, removeBgpsecs)) {
+		if (!updateBgpsecsByType(newSlurm.getBgpsecFilters(), slurmBgpsecDao, removeBgpsecs)) {
 			logger.log(Level.WARNING, "Someting went wrong updating BGPsecs " + SlurmBgpsec.TYPE_FILTER);
 			return false;
 		}
-		if (!updateBgpsecsByType(newSlurm, SlurmBgpsec.TYPE_ASSERTION, slurmBgpsecDao, removeBgpsecs)) {
+		if (!updateBgpsecsByType(newSlurm.getBgpsecAssertions(), slurmBgpsecDao, removeBgpsecs)) {
 			logger.log(Level.WARNING, "Someting went wrong updating BGPsecs " + SlurmBgpsec.TYPE_ASSERTION);
 			return false;
 		}
@@ -482,39 +580,23 @@ public class SlurmManager {
 	}
 
 	/**
-	 * Update the SLURM BGPsecs according to its type (filter or assertion)
+	 * Update the SLURM BGPsecs of a type (filter or assertion)
 	 * 
-	 * @param newSlurm
-	 * @param type
+	 * @param bgpsecs
+	 *            BGPsecs of the SLURM, in the same order as the file
 	 * @param slurmBgpsecDao
 	 * @param removeBgpsecs
 	 * @return <code>boolean</code> to indicate success or failure
 	 */
-	private static boolean updateBgpsecsByType(JsonObject newSlurm, String type, SlurmBgpsecDAO slurmBgpsecDao,
+	private static boolean updateBgpsecsByType(List<SlurmBgpsec> bgpsecs, SlurmBgpsecDAO slurmBgpsecDao,
 			Set<Long> removeBgpsecs) {
 		boolean result = true;
-		String rootProperty = getBgpsecRootProperty(type);
-		String childProperty = getBgpsecChildProperty(type);
-		if (rootProperty == null || childProperty == null) {
-			return false;
-		}
-		JsonObject jsonRoot = newSlurm.getJsonObject(rootProperty);
-		JsonArray jsonChild = jsonRoot.getJsonArray(childProperty);
-		List<JsonObject> bgpsecs = null;
-		try {
-			bgpsecs = jsonChild.getValuesAs(JsonObject.class);
-		} catch (ClassCastException e) {
-			logger.log(Level.SEVERE, "Error geting a BGPsec " + type + " as JSON object from the SLURM at "
-					+ rootProperty.concat(childProperty), e);
-			return false;
-		}
-		for (int index = 0; index < jsonChild.size(); index++) {
-			JsonObject jsonBgpsec = bgpsecs.get(index);
-			SlurmBgpsec slurmBgpsecFile = SlurmUtil.getAndvalidateBgpsec(jsonBgpsec, type);
+		for (int index = 0; index < bgpsecs.size(); index++) {
+			SlurmBgpsec slurmBgpsecFile = bgpsecs.get(index);
 			SlurmBgpsec slurmBgpsecDb = null;
 			try {
 				slurmBgpsecDb = slurmBgpsecDao.getBgpsecByProperties(slurmBgpsecFile.getAsn(), slurmBgpsecFile.getSki(),
-						slurmBgpsecFile.getRouterPublicKey(), type);
+						slurmBgpsecFile.getRouterPublicKey(), slurmBgpsecFile.getType());
 				// The object doesn't exists, attempt to create
 				if (slurmBgpsecDb == null) {
 					if (!slurmBgpsecDao.create(slurmBgpsecFile)) {
@@ -558,10 +640,21 @@ public class SlurmManager {
 	 *            deleted
 	 * @param deleteIndex
 	 *            Position of the object to delete at the JSON array
-	 * @return
+	 * @param matcher
+	 *            checks that the object at <code>deleteIndex</code> is the
+	 *            expected object
+	 * @param slurmObject
+	 *            the {@link SlurmPrefix} or {@link SlurmBgpsec} stored at the DA
+	 *            implementation
+	 * @return <code>boolean</code> to indicate success or failure of the operation
 	 */
-	private static boolean removeObjectFromFile(String rootProperty, String childProperty, int deleteIndex) {
-		return updateFile(rootProperty, childProperty, Action.REMOVE_OBJECT, null, deleteIndex);
+	private static boolean removeObjectFromFile(String rootProperty, String childProperty, Integer deleteIndex,
+			Predicate<JsonObject> matcher, Object slurmObject) {
+		if (deleteIndex == null) {
+			logger.log(Level.WARNING, "The object to remove from the SLURM doesn't have an order");
+			return false;
+		}
+		return updateFile(new FileChange(rootProperty, childProperty, null, deleteIndex, matcher, slurmObject));
 	}
 
 	/**
@@ -576,62 +669,454 @@ public class SlurmManager {
 	 *            added
 	 * @param jsonObject
 	 *            JSON object to add
+	 * @param slurmObject
+	 *            the {@link SlurmPrefix} or {@link SlurmBgpsec} of the
+	 *            <code>jsonObject</code>
 	 * @return <code>boolean</code> to indicate success or failure of the operation
 	 */
-	private static boolean addObjectToFile(String rootProperty, String childProperty, JsonObject jsonObject) {
-		return updateFile(rootProperty, childProperty, Action.ADD_OBJECT, jsonObject, -1);
+	private static boolean addObjectToFile(String rootProperty, String childProperty, JsonObject jsonObject,
+			Object slurmObject) {
+		return updateFile(new FileChange(rootProperty, childProperty, jsonObject, -1, null, slurmObject));
 	}
 
 	/**
-	 * Updates the SLURM file according to the <code>action</code> specified, the
-	 * action is performed at the array <code>rootProperty.childProperty</code>.<br>
+	 * Queue the <code>change</code> and wait until it's written to the SLURM
+	 * file.<br>
+	 * <br>
+	 * The changes are written in batches: the thread that gets the lock writes
+	 * every pending change (its own and the ones queued by other threads while
+	 * the previous batch was written), so a burst of changes costs a single
+	 * rewrite of the file instead of one per change.<br>
 	 * <br>
-	 * The <code>jsonObject</code> will be added if the action is
-	 * {@link Action#ADD_OBJECT}; if the action is {@link Action#REMOVE_OBJECT},
-	 * then the object located at <code>deleteIndex</code> will be deleted.
+	 * Once the lock is released, the thread that wrote the batch applies the new
+	 * SLURM to the VRPs that are already in memory (see
+	 * {@link VrpIndex#refilter()}), so the other writers aren't blocked meanwhile.
 	 * 
-	 * @param rootProperty
-	 * @param childProperty
-	 * @param action
-	 * @param jsonObject
-	 * @param deleteIndex
-	 * @return <code>boolean</code> to indicate success or failure of the operation
+	 * @param change
+	 * @return <code>boolean</code> to indicate success or failure of the change
 	 */
-	private static boolean updateFile(String rootProperty, String childProperty, Action action, JsonObject jsonObject,
-			int deleteIndex) {
-		JsonObject originalSlurm = null;
-		try (FileReader fr = new FileReader(slurmLocationFile); JsonParser parser = Json.createParser(fr)) {
-			parser.next();
-			originalSlurm = parser.getObject();
-		} catch (IOException e) {
-			logger.log(Level.WARNING, "Failed to load SLURM " + slurmLocationFile + ":" + e.getMessage(), e);
-			e.printStackTrace();
-			return false;
-		} catch (IllegalStateException e) {
-			logger.log(Level.WARNING, "Invalid JSON object at SLURM " + slurmLocationFile + ": " + e.getMessage(), e);
+	private static boolean updateFile(FileChange change) {
+		synchronized (pendingChanges) {
+			pendingChanges.add(change);
+		}
+		boolean written = false;
+		synchronized (slurmLock) {
+			if (!change.done) {
+				List<FileChange> batch;
+				synchronized (pendingChanges) {
+					batch = new ArrayList<>(pendingChanges);
+					pendingChanges.clear();
+				}
+				written = writeChanges(batch);
+			}
+		}
+		if (written) {
+			// The SLURM changes the effective VRPs
+			CompiledSlurm.rebuild();
+			VrpIndex.refilter();
+			RtrCache.update();
+		}
+		return change.success;
+	}
+
+	/**
+	 * Apply the <code>changes</code> to the SLURM and write it, then apply the
+	 * same changes to the DA implementation. The caller must hold
+	 * {@link #slurmLock}.<br>
+	 * <br>
+	 * Only the new objects are validated, the rest of the SLURM was validated when
+	 * it was loaded. If the DA implementation isn't in sync with the SLURM that
+	 * was modified (e.g. the file was edited and the watcher hasn't loaded it
+	 * yet), the whole new SLURM is validated and loaded instead.
+	 * 
+	 * @param changes
+	 * @return <code>true</code> if the SLURM was written
+	 */
+	private static boolean writeChanges(List<FileChange> changes) {
+		JsonObject originalSlurm = getCachedSlurm();
+		if (originalSlurm == null) {
+			changes.forEach((change) -> change.complete(false));
 			return false;
 		}
+		byte[] originalChecksum = cachedSlurmChecksum;
+		// Group the changes by the array that they modify
+		Map<String, Map<String, List<FileChange>>> changesByArray = new LinkedHashMap<>();
+		for (FileChange change : changes) {
+			changesByArray.computeIfAbsent(change.rootProperty, (key) -> new LinkedHashMap<>())
+					.computeIfAbsent(change.childProperty, (key) -> new ArrayList<>()).add(change);
+		}
 		JsonObjectBuilder mainBuilder = Json.createObjectBuilder(originalSlurm);
-		JsonObjectBuilder rootBuilder = Json.createObjectBuilder(originalSlurm.getJsonObject(rootProperty));
-		JsonArrayBuilder childBuilder = Json
-				.createArrayBuilder(originalSlurm.getJsonObject(rootProperty).getJsonArray(childProperty));
-
-		if (action == Action.ADD_OBJECT) {
-			childBuilder.add(jsonObject);
-		} else if (action == Action.REMOVE_OBJECT) {
-			childBuilder.remove(deleteIndex);
+		List<ArrayChanges> arraysChanges = new ArrayList<>();
+		List<FileChange> applied = new ArrayList<>();
+		for (Entry<String, Map<String, List<FileChange>>> rootEntry : changesByArray.entrySet()) {
+			JsonValue rootValue = originalSlurm.get(rootEntry.getKey());
+			JsonObject rootObject = rootValue != null && rootValue.getValueType() == ValueType.OBJECT
+					? (JsonObject) rootValue
+					: null;
+			JsonObjectBuilder rootBuilder = rootObject != null ? Json.createObjectBuilder(rootObject) : null;
+			for (Entry<String, List<FileChange>> childEntry : rootEntry.getValue().entrySet()) {
+				JsonValue childValue = rootObject != null ? rootObject.get(childEntry.getKey()) : null;
+				if (childValue == null || childValue.getValueType() != ValueType.ARRAY) {
+					logger.log(Level.WARNING, "The SLURM doesn't have the array "
+							+ rootEntry.getKey().concat(".").concat(childEntry.getKey()));
+					childEntry.getValue().forEach((change) -> change.complete(false));
+					continue;
+				}
+				ArrayChanges arrayChanges = new ArrayChanges(rootEntry.getKey(), childEntry.getKey());
+				rootBuilder.add(childEntry.getKey(),
+						applyChanges((JsonArray) childValue, childEntry.getValue(), arrayChanges));
+				arraysChanges.add(arrayChanges);
+				applied.addAll(arrayChanges.removed);
+				applied.addAll(arrayChanges.added);
+			}
+			if (rootBuilder != null) {
+				mainBuilder.add(rootEntry.getKey(), rootBuilder);
+			}
+		}
+		if (applied.isEmpty()) {
+			return false;
 		}
-		rootBuilder.add(childProperty, childBuilder);
-		mainBuilder.add(rootProperty, rootBuilder);
 		JsonObject newSlurm = mainBuilder.build();
+		byte[] content = jsonFormat(newSlurm, JsonGenerator.PRETTY_PRINTING).getBytes();
+		byte[] checksum;
+		try {
+			checksum = MessageDigest.getInstance("SHA-256").digest(content);
+		} catch (NoSuchAlgorithmException e) {
+			logger.log(Level.WARNING, "The SLURM checksum couldn't be calculated", e);
+			applied.forEach((change) -> change.complete(false));
+			return false;
+		}
+		boolean dbInSync;
+		try {
+			dbInSync = Arrays.equals(DataAccessService.getSlurmDAO().getLastChecksum(), originalChecksum);
+		} catch (ApiDataAccessException e) {
+			logger.log(Level.WARNING, "The last checksum of the SLURM at database couldn't be fetched", e);
+			dbInSync = false;
+		}
+		SlurmParser slurmParser = null;
+		if (!dbInSync) {
+			// Never write an invalid SLURM
+			slurmParser = new SlurmParser();
+			List<Exception> exceptions = new ArrayList<>();
+			if (!slurmParser.parse(newSlurm, checksum, exceptions)) {
+				logger.log(Level.WARNING, "The SLURM wasn't written since it would be invalid: " + exceptions);
+				applied.forEach((change) -> change.complete(false));
+				return false;
+			}
+		}
+		if (!writeSlurmFile(content)) {
+			applied.forEach((change) -> change.complete(false));
+			return false;
+		}
+		cachedSlurm = newSlurm;
+		cachedSlurmChecksum = checksum;
+		logger.log(Level.INFO, "Updating SLURM at DA implementation after " + applied.size() + " changes");
+		if (slurmParser != null) {
+			updateSlurmDb(slurmParser, checksum);
+		} else {
+			updateSlurmDb(arraysChanges, checksum);
+		}
+		applied.forEach((change) -> change.complete(true));
+		return true;
+	}
+
+	/**
+	 * Apply the <code>changes</code> to a JSON array of the SLURM, the removal
+	 * indexes refer to the original array. The objects to add are validated, and
+	 * the changes that can't be applied are completed as failed.
+	 * 
+	 * @param array
+	 *            original array
+	 * @param changes
+	 *            changes to apply
+	 * @param arrayChanges
+	 *            where the applied changes are recorded
+	 * @return the new array
+	 */
+	private static JsonArrayBuilder applyChanges(JsonArray array, List<FileChange> changes,
+			ArrayChanges arrayChanges) {
+		Set<Integer> removeIndexes = new HashSet<>();
+		for (FileChange change : changes) {
+			if (change.addObject != null) {
+				try {
+					if (arrayChanges.isPrefix()) {
+						SlurmUtil.getAndvalidatePrefix(change.addObject, arrayChanges.getType());
+					} else {
+						SlurmUtil.getAndvalidateBgpsec(change.addObject, arrayChanges.getType());
+					}
+				} catch (IllegalArgumentException e) {
+					logger.log(Level.WARNING, "The object to add to the SLURM is invalid: " + e.getMessage());
+					change.complete(false);
+					continue;
+				}
+				arrayChanges.added.add(change);
+				continue;
+			}
+			int index = change.removeIndex;
+			if (index < 0 || index >= array.size() || removeIndexes.contains(index)
+					|| array.get(index).getValueType() != ValueType.OBJECT
+					|| !change.removeMatcher.test(array.getJsonObject(index))) {
+				logger.log(Level.WARNING, "The object to remove wasn't found at the SLURM, index " + index);
+				change.complete(false);
+				continue;
+			}
+			removeIndexes.add(index);
+			arrayChanges.removed.add(change);
+		}
+		arrayChanges.setRemovedIndexes(removeIndexes);
+		JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
+		for (int i = 0; i < array.size(); i++) {
+			if (!removeIndexes.contains(i)) {
+				arrayBuilder.add(array.get(i));
+			}
+		}
+		int addIndex = array.size() - removeIndexes.size();
+		for (FileChange change : arrayChanges.added) {
+			change.addIndex = addIndex++;
+			arrayBuilder.add(change.addObject);
+		}
+		return arrayBuilder;
+	}
+
+	/**
+	 * Update the SLURM at the Data Access Implementation applying only the changes
+	 * written to the file: the removed objects are deleted, the new objects get
+	 * its order (or are created if the DA implementation doesn't have them yet),
+	 * and the order of the objects after a removed one is fixed. The checksum is
+	 * updated only if every change was applied, otherwise the watcher will load
+	 * the whole file.
+	 * 
+	 * @param arraysChanges
+	 *            changes applied to each array of the SLURM
+	 * @param newChecksum
+	 */
+	private static void updateSlurmDb(List<ArrayChanges> arraysChanges, byte[] newChecksum) {
+		for (ArrayChanges arrayChanges : arraysChanges) {
+			boolean result;
+			try {
+				result = arrayChanges.isPrefix() ? updatePrefixes(arrayChanges) : updateBgpsecs(arrayChanges);
+			} catch (ApiDataAccessException e) {
+				logger.log(Level.SEVERE, "Error performing an action at the Data Access Implementation", e);
+				result = false;
+			}
+			if (!result) {
+				logger.log(Level.WARNING, "The SLURM " + arrayChanges.childProperty + " couldn't be updated");
+				return;
+			}
+		}
 		try {
-			Files.write(slurmLocationFile.toPath().normalize(),
-					jsonFormat(newSlurm, JsonGenerator.PRETTY_PRINTING).getBytes());
+			DataAccessService.getSlurmDAO().updateLastChecksum(newChecksum);
+		} catch (ApiDataAccessException e) {
+			logger.log(Level.SEVERE, "Error updating SLURM checksum", e);
+		}
+	}
+
+	/**
+	 * Apply the <code>arrayChanges</code> to the prefixes of its type
+	 * 
+	 * @param arrayChanges
+	 * @return <code>boolean</code> to indicate success or failure
+	 * @throws ApiDataAccessException
+	 */
+	private static boolean updatePrefixes(ArrayChanges arrayChanges) throws ApiDataAccessException {
+		SlurmPrefixDAO slurmPrefixDao = DataAccessService.getSlurmPrefixDAO();
+		Set<Long> removePrefixes = new HashSet<>();
+		arrayChanges.removed.forEach((change) -> removePrefixes.add(((SlurmPrefix) change.slurmObject).getId()));
+		Map<SlurmPrefixKey, FileChange> addPrefixes = new HashMap<>();
+		arrayChanges.added.forEach(
+				(change) -> addPrefixes.put(new SlurmPrefixKey((SlurmPrefix) change.slurmObject), change));
+		if (!removePrefixes.isEmpty()) {
+			slurmPrefixDao.bulkDelete(removePrefixes);
+		}
+		boolean result = true;
+		for (SlurmPrefix prefixDb : slurmPrefixDao.getAllByType(arrayChanges.getType(), null).getResults()) {
+			if (removePrefixes.contains(prefixDb.getId())) {
+				continue;
+			}
+			FileChange added = addPrefixes.remove(new SlurmPrefixKey(prefixDb));
+			Integer order = added != null ? added.addIndex : arrayChanges.getNewIndex(prefixDb.getOrder());
+			if (order != null && !order.equals(prefixDb.getOrder())
+					&& slurmPrefixDao.updateOrder(prefixDb.getId(), order) != 1) {
+				logger.log(Level.SEVERE, "The order of the object " + prefixDb.getId() + " couldn't be updated");
+				result = false;
+			}
+		}
+		for (FileChange added : addPrefixes.values()) {
+			SlurmPrefix createPrefix = (SlurmPrefix) added.slurmObject;
+			createPrefix.setOrder(added.addIndex);
+			if (!slurmPrefixDao.create(createPrefix)) {
+				logger.log(Level.SEVERE, "The object couldn't be created: " + createPrefix.toString());
+				result = false;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Apply the <code>arrayChanges</code> to the BGPsecs of its type
+	 * 
+	 * @param arrayChanges
+	 * @return <code>boolean</code> to indicate success or failure
+	 * @throws ApiDataAccessException
+	 */
+	private static boolean updateBgpsecs(ArrayChanges arrayChanges) throws ApiDataAccessException {
+		SlurmBgpsecDAO slurmBgpsecDao = DataAccessService.getSlurmBgpsecDAO();
+		Set<Long> removeBgpsecs = new HashSet<>();
+		arrayChanges.removed.forEach((change) -> removeBgpsecs.add(((SlurmBgpsec) change.slurmObject).getId()));
+		Map<SlurmBgpsecKey, FileChange> addBgpsecs = new HashMap<>();
+		arrayChanges.added.forEach(
+				(change) -> addBgpsecs.put(new SlurmBgpsecKey((SlurmBgpsec) change.slurmObject), change));
+		if (!removeBgpsecs.isEmpty()) {
+			slurmBgpsecDao.bulkDelete(removeBgpsecs);
+		}
+		boolean result = true;
+		for (SlurmBgpsec bgpsecDb : slurmBgpsecDao.getAllByType(arrayChanges.getType(), null).getResults()) {
+			if (removeBgpsecs.contains(bgpsecDb.getId())) {
+				continue;
+			}
+			FileChange added = addBgpsecs.remove(new SlurmBgpsecKey(bgpsecDb));
+			Integer order = added != null ? added.addIndex : arrayChanges.getNewIndex(bgpsecDb.getOrder());
+			if (order != null && !order.equals(bgpsecDb.getOrder())
+					&& slurmBgpsecDao.updateOrder(bgpsecDb.getId(), order) != 1) {
+				logger.log(Level.SEVERE, "The order of the object " + bgpsecDb.getId() + " couldn't be updated");
+				result = false;
+			}
+		}
+		for (FileChange added : addBgpsecs.values()) {
+			SlurmBgpsec createBgpsec = (SlurmBgpsec) added.slurmObject;
+			createBgpsec.setOrder(added.addIndex);
+			if (!slurmBgpsecDao.create(createBgpsec)) {
+				logger.log(Level.SEVERE, "The object couldn't be created: " + createBgpsec.toString());
+				result = false;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the SLURM as a JSON object, the file is read only if it changed since
+	 * the last time that the API read or wrote it. The caller must hold
+	 * {@link #slurmLock}.
+	 * 
+	 * @return the SLURM, or <code>null</code> if it couldn't be read
+	 */
+	private static JsonObject getCachedSlurm() {
+		Path slurmPath = slurmLocationFile.toPath().normalize();
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(slurmPath, BasicFileAttributes.class);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Failed to load SLURM " + slurmLocationFile + ":" + e.getMessage(), e);
+			return null;
+		}
+		if (cachedSlurm != null && attributes.lastModifiedTime().equals(cachedSlurmModifiedTime)
+				&& attributes.size() == cachedSlurmSize) {
+			return cachedSlurm;
+		}
+		cachedSlurm = null;
+		byte[] content;
+		byte[] checksum;
+		JsonObject slurm;
+		try {
+			content = Files.readAllBytes(slurmPath);
+			checksum = MessageDigest.getInstance("SHA-256").digest(content);
+		} catch (IOException | NoSuchAlgorithmException e) {
+			logger.log(Level.WARNING, "Failed to load SLURM " + slurmLocationFile + ":" + e.getMessage(), e);
+			return null;
+		}
+		try (JsonParser parser = Json.createParser(new ByteArrayInputStream(content))) {
+			parser.next();
+			slurm = parser.getObject();
+		} catch (JsonException | IllegalStateException e) {
+			logger.log(Level.WARNING, "Invalid JSON object at SLURM " + slurmLocationFile + ": " + e.getMessage(), e);
+			return null;
+		}
+		cachedSlurm = slurm;
+		cachedSlurmChecksum = checksum;
+		cachedSlurmModifiedTime = attributes.lastModifiedTime();
+		cachedSlurmSize = attributes.size();
+		return slurm;
+	}
+
+	/**
+	 * Write the <code>content</code> to the SLURM file atomically: the content is
+	 * written to a temporary file at the same directory and then moved to the
+	 * SLURM location, so a reader never sees a partial SLURM.
+	 * 
+	 * @param content
+	 * @return <code>boolean</code> to indicate success or failure
+	 */
+	private static boolean writeSlurmFile(byte[] content) {
+		Path slurmPath = slurmLocationFile.toPath().normalize();
+		Path tempPath = null;
+		try {
+			tempPath = Files.createTempFile(slurmPath.toAbsolutePath().getParent(), "." + slurmPath.getFileName(),
+					".tmp");
+			Files.write(tempPath, content);
+			// Keep the permissions of the original file
+			PosixFileAttributeView posixView = Files.getFileAttributeView(slurmPath, PosixFileAttributeView.class);
+			if (posixView != null) {
+				Files.setPosixFilePermissions(tempPath, posixView.readAttributes().permissions());
+			}
+			// The move keeps the attributes of the temporary file
+			BasicFileAttributes attributes = Files.readAttributes(tempPath, BasicFileAttributes.class);
+			try {
+				Files.move(tempPath, slurmPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempPath, slurmPath, StandardCopyOption.REPLACE_EXISTING);
+			}
+			cachedSlurmModifiedTime = attributes.lastModifiedTime();
+			cachedSlurmSize = attributes.size();
+			return true;
 		} catch (IOException e) {
 			logger.log(Level.WARNING, "Failed to write into SLURM " + slurmLocationFile + ":" + e.getMessage(), e);
+			if (tempPath != null) {
+				try {
+					Files.deleteIfExists(tempPath);
+				} catch (IOException e1) {
+					// Already logged
+				}
+			}
 			return false;
 		}
-		return true;
+	}
+
+	/**
+	 * Check if the <code>jsonObject</code> from the SLURM is the
+	 * <code>slurmPrefix</code>
+	 * 
+	 * @param jsonObject
+	 * @param slurmPrefix
+	 * @return <code>true</code> if both have the same properties
+	 */
+	private static boolean isSamePrefix(JsonObject jsonObject, SlurmPrefix slurmPrefix) {
+		SlurmPrefix filePrefix;
+		try {
+			filePrefix = SlurmUtil.getAndvalidatePrefix(jsonObject, slurmPrefix.getType());
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		return new SlurmPrefixKey(filePrefix).equals(new SlurmPrefixKey(slurmPrefix));
+	}
+
+	/**
+	 * Check if the <code>jsonObject</code> from the SLURM is the
+	 * <code>slurmBgpsec</code>
+	 * 
+	 * @param jsonObject
+	 * @param slurmBgpsec
+	 * @return <code>true</code> if both have the same properties
+	 */
+	private static boolean isSameBgpsec(JsonObject jsonObject, SlurmBgpsec slurmBgpsec) {
+		SlurmBgpsec fileBgpsec;
+		try {
+			fileBgpsec = SlurmUtil.getAndvalidateBgpsec(jsonObject, slurmBgpsec.getType());
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		return Objects.equals(fileBgpsec.getAsn(), slurmBgpsec.getAsn())
+				&& Objects.equals(fileBgpsec.getSki(), slurmBgpsec.getSki())
+				&& Objects.equals(fileBgpsec.getRouterPublicKey(), slurmBgpsec.getRouterPublicKey());
 	}
 
 	/**
@@ -640,4 +1125,195 @@ public class SlurmManager {
 	public static File getSlurmLocationFile() {
 		return slurmLocationFile;
 	}
+
+	/**
+	 * Key that identifies a SLURM prefix by its properties: ASN, prefix, prefix
+	 * length, max prefix length and type
+	 *
+	 */
+	private static class SlurmPrefixKey {
+
+		private final Long asn;
+		private final byte[] startPrefix;
+		private final Integer prefixLength;
+		private final Integer prefixMaxLength;
+		private final String type;
+
+		public SlurmPrefixKey(SlurmPrefix slurmPrefix) {
+			this.asn = slurmPrefix.getAsn();
+			this.startPrefix = slurmPrefix.getStartPrefix();
+			this.prefixLength = slurmPrefix.getPrefixLength();
+			this.prefixMaxLength = slurmPrefix.getPrefixMaxLength();
+			this.type = slurmPrefix.getType();
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(asn, Arrays.hashCode(startPrefix), prefixLength, prefixMaxLength, type);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof SlurmPrefixKey)) {
+				return false;
+			}
+			SlurmPrefixKey other = (SlurmPrefixKey) obj;
+			return Objects.equals(asn, other.asn) && Arrays.equals(startPrefix, other.startPrefix)
+					&& Objects.equals(prefixLength, other.prefixLength)
+					&& Objects.equals(prefixMaxLength, other.prefixMaxLength) && Objects.equals(type, other.type);
+		}
+	}
+
+	/**
+	 * Key that identifies a SLURM BGPsec by its properties: ASN, SKI, router
+	 * public key and type
+	 *
+	 */
+	private static class SlurmBgpsecKey {
+
+		private final Long asn;
+		private final String ski;
+		private final String routerPublicKey;
+		private final String type;
+
+		public SlurmBgpsecKey(SlurmBgpsec slurmBgpsec) {
+			this.asn = slurmBgpsec.getAsn();
+			this.ski = slurmBgpsec.getSki();
+			this.routerPublicKey = slurmBgpsec.getRouterPublicKey();
+			this.type = slurmBgpsec.getType();
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(asn, ski, routerPublicKey, type);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof SlurmBgpsecKey)) {
+				return false;
+			}
+			SlurmBgpsecKey other = (SlurmBgpsecKey) obj;
+			return Objects.equals(asn, other.asn) && Objects.equals(ski, other.ski)
+					&& Objects.equals(routerPublicKey, other.routerPublicKey) && Objects.equals(type, other.type);
+		}
+	}
+
+	/**
+	 * Changes applied to a JSON array of the SLURM, used to apply the same changes
+	 * to the DA implementation
+	 *
+	 */
+	private static class ArrayChanges {
+
+		private final String rootProperty;
+		private final String childProperty;
+		private final List<FileChange> removed = new ArrayList<>();
+		private final List<FileChange> added = new ArrayList<>();
+
+		/**
+		 * Removed indexes of the original array, sorted
+		 */
+		private int[] removedIndexes;
+
+		public ArrayChanges(String rootProperty, String childProperty) {
+			this.rootProperty = rootProperty;
+			this.childProperty = childProperty;
+		}
+
+		public void setRemovedIndexes(Set<Integer> removeIndexes) {
+			removedIndexes = removeIndexes.stream().mapToInt(Integer::intValue).sorted().toArray();
+		}
+
+		/**
+		 * @return <code>true</code> if the array has prefixes, otherwise it has
+		 *         BGPsecs
+		 */
+		public boolean isPrefix() {
+			return childProperty.equals(Slurm.PREFIX_FILTERS) || childProperty.equals(Slurm.PREFIX_ASSERTIONS);
+		}
+
+		/**
+		 * @return the type (filter or assertion) of the objects of the array
+		 */
+		public String getType() {
+			if (isPrefix()) {
+				return rootProperty.equals(Slurm.VALIDATION_OUTPUT_FILTERS) ? SlurmPrefix.TYPE_FILTER
+						: SlurmPrefix.TYPE_ASSERTION;
+			}
+			return rootProperty.equals(Slurm.VALIDATION_OUTPUT_FILTERS) ? SlurmBgpsec.TYPE_FILTER
+					: SlurmBgpsec.TYPE_ASSERTION;
+		}
+
+		/**
+		 * Get the index at the new array of an object of the original array
+		 * 
+		 * @param index
+		 *            index at the original array
+		 * @return the new index, or <code>null</code> if the object was removed or
+		 *         the <code>index</code> is <code>null</code>
+		 */
+		public Integer getNewIndex(Integer index) {
+			if (index == null) {
+				return null;
+			}
+			int position = Arrays.binarySearch(removedIndexes, index);
+			return position >= 0 ? null : index + position + 1;
+		}
+	}
+
+	/**
+	 * Change to the SLURM file: either add an object to an array, or remove the
+	 * object at an index of the array
+	 *
+	 */
+	private static class FileChange {
+
+		private final String rootProperty;
+		private final String childProperty;
+
+		/**
+		 * Object to add, <code>null</code> if the change is a removal
+		 */
+		private final JsonObject addObject;
+		private final int removeIndex;
+		private final Predicate<JsonObject> removeMatcher;
+
+		/**
+		 * The {@link SlurmPrefix} or {@link SlurmBgpsec} added or removed
+		 */
+		private final Object slurmObject;
+
+		/**
+		 * Index of the added object at the new array
+		 */
+		private int addIndex = -1;
+
+		/**
+		 * Result of the change, both are guarded by {@link SlurmManager#slurmLock}
+		 */
+		private boolean done;
+		private boolean success;
+
+		public FileChange(String rootProperty, String childProperty, JsonObject addObject, int removeIndex,
+				Predicate<JsonObject> removeMatcher, Object slurmObject) {
+			this.rootProperty = rootProperty;
+			this.childProperty = childProperty;
+			this.addObject = addObject;
+			this.removeIndex = removeIndex;
+			this.removeMatcher = removeMatcher;
+			this.slurmObject = slurmObject;
+		}
+
+		public void complete(boolean success) {
+			this.done = true;
+			this.success = success;
+		}
+	}
 }
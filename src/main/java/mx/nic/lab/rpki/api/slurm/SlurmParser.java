@@ -0,0 +1,408 @@
+package mx.nic.lab.rpki.api.slurm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import javax.json.JsonValue.ValueType;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+
+import mx.nic.lab.rpki.api.util.Util;
+import mx.nic.lab.rpki.db.pojo.Slurm;
+import mx.nic.lab.rpki.db.pojo.SlurmBgpsec;
+import mx.nic.lab.rpki.db.pojo.SlurmPrefix;
+
+/**
+ * Single pass parser of a SLURM file (RFC 8416). The file is read once as a
+ * stream of JSON events: the SHA-256 of the file is calculated while it's read
+ * (using a {@link DigestInputStream}), and each prefix and BGPsec is validated
+ * as soon as its JSON object is read (see
+ * {@link SlurmUtil#getAndvalidatePrefix(JsonObject, String)} and
+ * {@link SlurmUtil#getAndvalidateBgpsec(JsonObject, String)}), so the whole
+ * JSON tree is never held in memory; only the validated objects are kept.
+ *
+ */
+public class SlurmParser {
+
+	private final List<SlurmPrefix> prefixFilters = new ArrayList<>();
+	private final List<SlurmPrefix> prefixAssertions = new ArrayList<>();
+	private final List<SlurmBgpsec> bgpsecFilters = new ArrayList<>();
+	private final List<SlurmBgpsec> bgpsecAssertions = new ArrayList<>();
+	private byte[] checksum;
+
+	/**
+	 * Parse and validate the SLURM <code>file</code>, an instance is expected to
+	 * parse a single SLURM
+	 *
+	 * @param file
+	 * @param exceptions
+	 *            list of exceptions where any error will be concatenated
+	 * @return <code>boolean</code> to indicate if the SLURM is valid, if it isn't
+	 *         the errors are at <code>exceptions</code>
+	 */
+	public boolean parse(File file, List<Exception> exceptions) {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			exceptions.add(e);
+			return false;
+		}
+		try (DigestInputStream in = new DigestInputStream(new FileInputStream(file), md);
+				JsonParser parser = Json.createParser(in)) {
+			if (!parser.hasNext() || parser.next() != Event.START_OBJECT) {
+				exceptions.add(new IllegalArgumentException("The SLURM must be a JSON object"));
+				return false;
+			}
+			if (!parseSlurm(parser, exceptions)) {
+				return false;
+			}
+			// Read whatever is left so that the checksum covers the whole file
+			drain(in);
+		} catch (IOException e) {
+			exceptions.add(new Exception("Failed to load SLURM " + file + ": " + e.getMessage(), e));
+			return false;
+		} catch (JsonException | IllegalStateException e) {
+			exceptions.add(new Exception("Invalid JSON object at SLURM " + file + ": " + e.getMessage(), e));
+			return false;
+		}
+		checksum = md.digest();
+		return true;
+	}
+
+	/**
+	 * Validate a SLURM that is already loaded as a JSON object (e.g. the SLURM
+	 * that the API is about to write), only its prefixes and BGPsecs are
+	 * validated
+	 *
+	 * @param slurm
+	 * @param checksum
+	 *            SHA-256 of the SLURM content
+	 * @param exceptions
+	 *            list of exceptions where any error will be concatenated
+	 * @return <code>boolean</code> to indicate if the SLURM is valid, if it isn't
+	 *         the errors are at <code>exceptions</code>
+	 */
+	public boolean parse(JsonObject slurm, byte[] checksum, List<Exception> exceptions) {
+		JsonArray prefixFiltersArray = getArray(slurm, Slurm.VALIDATION_OUTPUT_FILTERS, Slurm.PREFIX_FILTERS,
+				exceptions);
+		JsonArray bgpsecFiltersArray = getArray(slurm, Slurm.VALIDATION_OUTPUT_FILTERS, Slurm.BGPSEC_FILTERS,
+				exceptions);
+		JsonArray prefixAssertionsArray = getArray(slurm, Slurm.LOCALLY_ADDED_ASSERTIONS, Slurm.PREFIX_ASSERTIONS,
+				exceptions);
+		JsonArray bgpsecAssertionsArray = getArray(slurm, Slurm.LOCALLY_ADDED_ASSERTIONS, Slurm.BGPSEC_ASSERTIONS,
+				exceptions);
+		if (prefixFiltersArray == null || bgpsecFiltersArray == null || prefixAssertionsArray == null
+				|| bgpsecAssertionsArray == null) {
+			return false;
+		}
+		boolean allValid = validateArray(prefixFiltersArray, "prefix", SlurmPrefix.TYPE_FILTER,
+				SlurmUtil::getAndvalidatePrefix, prefixFilters, exceptions);
+		allValid &= validateArray(bgpsecFiltersArray, "bgpsec", SlurmBgpsec.TYPE_FILTER,
+				SlurmUtil::getAndvalidateBgpsec, bgpsecFilters, exceptions);
+		allValid &= validateArray(prefixAssertionsArray, "prefix", SlurmPrefix.TYPE_ASSERTION,
+				SlurmUtil::getAndvalidatePrefix, prefixAssertions, exceptions);
+		allValid &= validateArray(bgpsecAssertionsArray, "bgpsec", SlurmBgpsec.TYPE_ASSERTION,
+				SlurmUtil::getAndvalidateBgpsec, bgpsecAssertions, exceptions);
+		if (!allValid) {
+			return false;
+		}
+		this.checksum = checksum;
+		return true;
+	}
+
+	/**
+	 * @return the SHA-256 of the parsed SLURM
+	 */
+	public byte[] getChecksum() {
+		return checksum;
+	}
+
+	public List<SlurmPrefix> getPrefixFilters() {
+		return prefixFilters;
+	}
+
+	public List<SlurmPrefix> getPrefixAssertions() {
+		return prefixAssertions;
+	}
+
+	public List<SlurmBgpsec> getBgpsecFilters() {
+		return bgpsecFilters;
+	}
+
+	public List<SlurmBgpsec> getBgpsecAssertions() {
+		return bgpsecAssertions;
+	}
+
+	/**
+	 * Parse the root object of the SLURM, the parser must be at its
+	 * {@link Event#START_OBJECT}
+	 *
+	 * @param parser
+	 * @param exceptions
+	 * @return <code>boolean</code> to indicate the validity of the object
+	 */
+	private boolean parseSlurm(JsonParser parser, List<Exception> exceptions) {
+		Set<String> keys = new HashSet<>();
+		while (parser.next() == Event.KEY_NAME) {
+			String key = parser.getString();
+			keys.add(key);
+			Event value = parser.next();
+			switch (key) {
+			case Slurm.SLURM_VERSION:
+				if (value != Event.VALUE_NUMBER) {
+					exceptions.add(new IllegalArgumentException("'" + key + "' must a number with value '1'"));
+					return false;
+				}
+				if (parser.getInt() != 1) {
+					exceptions.add(new IllegalArgumentException("'" + key + "' must have the value '1'"));
+					return false;
+				}
+				break;
+			case Slurm.VALIDATION_OUTPUT_FILTERS:
+				if (value != Event.START_OBJECT) {
+					exceptions.add(new IllegalArgumentException("'" + key + "' must be a JSON object"));
+					return false;
+				}
+				if (!parseFilters(parser, exceptions)) {
+					return false;
+				}
+				break;
+			case Slurm.LOCALLY_ADDED_ASSERTIONS:
+				if (value != Event.START_OBJECT) {
+					exceptions.add(new IllegalArgumentException("'" + key + "' must be a JSON object"));
+					return false;
+				}
+				if (!parseAssertions(parser, exceptions)) {
+					return false;
+				}
+				break;
+			default:
+				exceptions.add(new IllegalArgumentException("Invalid key '" + key + "' at JSON object"));
+				return false;
+			}
+		}
+		if (keys.size() != 3) {
+			exceptions.add(new IllegalArgumentException(
+					"The JSON object must contain exactly 3 properties: " + Slurm.SLURM_VERSION + ", "
+							+ Slurm.VALIDATION_OUTPUT_FILTERS + ", and " + Slurm.LOCALLY_ADDED_ASSERTIONS));
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Parse the property 'validationOutputFilters' of the SLURM, the parser must
+	 * be at its {@link Event#START_OBJECT}
+	 *
+	 * @param parser
+	 * @param exceptions
+	 * @return <code>boolean</code> to indicate the validity of the object
+	 */
+	private boolean parseFilters(JsonParser parser, List<Exception> exceptions) {
+		Set<String> keys = new HashSet<>();
+		boolean allValid = true;
+		while (parser.next() == Event.KEY_NAME) {
+			String key = parser.getString();
+			keys.add(key);
+			Event value = parser.next();
+			if (!key.equals(Slurm.PREFIX_FILTERS) && !key.equals(Slurm.BGPSEC_FILTERS)) {
+				exceptions.add(new IllegalArgumentException(
+						"Invalid key '" + key + "' at JSON object 'validationOutputFilters'"));
+				return false;
+			}
+			if (value != Event.START_ARRAY) {
+				exceptions.add(new IllegalArgumentException("'" + key + "' must be a JSON array"));
+				return false;
+			}
+			if (key.equals(Slurm.PREFIX_FILTERS)) {
+				allValid &= parseArray(parser, "prefix", SlurmPrefix.TYPE_FILTER, SlurmUtil::getAndvalidatePrefix,
+						prefixFilters, exceptions);
+			} else {
+				allValid &= parseArray(parser, "bgpsec", SlurmBgpsec.TYPE_FILTER, SlurmUtil::getAndvalidateBgpsec,
+						bgpsecFilters, exceptions);
+			}
+		}
+		if (keys.size() != 2) {
+			exceptions.add(new IllegalArgumentException(
+					"The JSON object 'validationOutputFilters' must contain exactly 2 properties: "
+							+ Slurm.PREFIX_FILTERS + ", and " + Slurm.BGPSEC_FILTERS));
+			return false;
+		}
+		return allValid;
+	}
+
+	/**
+	 * Parse the property 'locallyAddedAssertions' of the SLURM, the parser must be
+	 * at its {@link Event#START_OBJECT}
+	 *
+	 * @param parser
+	 * @param exceptions
+	 * @return <code>boolean</code> to indicate the validity of the object
+	 */
+	private boolean parseAssertions(JsonParser parser, List<Exception> exceptions) {
+		Set<String> keys = new HashSet<>();
+		boolean allValid = true;
+		while (parser.next() == Event.KEY_NAME) {
+			String key = parser.getString();
+			keys.add(key);
+			Event value = parser.next();
+			if (!key.equals(Slurm.PREFIX_ASSERTIONS) && !key.equals(Slurm.BGPSEC_ASSERTIONS)) {
+				exceptions.add(new IllegalArgumentException(
+						"Invalid key '" + key + "' at JSON object 'locallyAddedAssertions'"));
+				return false;
+			}
+			if (value != Event.START_ARRAY) {
+				exceptions.add(new IllegalArgumentException("'" + key + "' must be a JSON array"));
+				return false;
+			}
+			if (key.equals(Slurm.PREFIX_ASSERTIONS)) {
+				allValid &= parseArray(parser, "prefix", SlurmPrefix.TYPE_ASSERTION, SlurmUtil::getAndvalidatePrefix,
+						prefixAssertions, exceptions);
+			} else {
+				allValid &= parseArray(parser, "bgpsec", SlurmBgpsec.TYPE_ASSERTION, SlurmUtil::getAndvalidateBgpsec,
+						bgpsecAssertions, exceptions);
+			}
+		}
+		if (keys.size() != 2) {
+			exceptions.add(new IllegalArgumentException(
+					"The JSON object 'locallyAddedAssertions' must contain exactly 2 properties: "
+							+ Slurm.PREFIX_ASSERTIONS + ", and " + Slurm.BGPSEC_ASSERTIONS));
+			return false;
+		}
+		return allValid;
+	}
+
+	/**
+	 * Parse an array of prefixes or BGPsecs, the parser must be at its
+	 * {@link Event#START_ARRAY}. Each element is read and validated on its own,
+	 * all the elements are validated even if there are invalid ones.
+	 *
+	 * @param parser
+	 * @param objectName
+	 *            name of the objects used at the error messages
+	 * @param type
+	 *            type of the objects (filter or assertion)
+	 * @param validator
+	 *            function that validates a JSON object and returns the object
+	 * @param results
+	 *            list where the valid objects are added
+	 * @param exceptions
+	 * @return <code>boolean</code> to indicate if all the objects were valid
+	 */
+	private static <T> boolean parseArray(JsonParser parser, String objectName, String type,
+			BiFunction<JsonObject, String, T> validator, List<T> results, List<Exception> exceptions) {
+		boolean allValid = true;
+		int position = 0;
+		while (parser.next() != Event.END_ARRAY) {
+			position++;
+			allValid &= validate(parser.getValue(), position, objectName, type, validator, results, exceptions);
+		}
+		return allValid;
+	}
+
+	/**
+	 * Validate each element of an array of prefixes or BGPsecs, all the elements
+	 * are validated even if there are invalid ones.
+	 *
+	 * @param array
+	 * @param objectName
+	 *            name of the objects used at the error messages
+	 * @param type
+	 *            type of the objects (filter or assertion)
+	 * @param validator
+	 *            function that validates a JSON object and returns the object
+	 * @param results
+	 *            list where the valid objects are added
+	 * @param exceptions
+	 * @return <code>boolean</code> to indicate if all the objects were valid
+	 */
+	private static <T> boolean validateArray(JsonArray array, String objectName, String type,
+			BiFunction<JsonObject, String, T> validator, List<T> results, List<Exception> exceptions) {
+		boolean allValid = true;
+		for (int i = 0; i < array.size(); i++) {
+			allValid &= validate(array.get(i), i + 1, objectName, type, validator, results, exceptions);
+		}
+		return allValid;
+	}
+
+	/**
+	 * Validate a prefix or BGPsec, the valid object is added to
+	 * <code>results</code>
+	 *
+	 * @param value
+	 *            value read from the array
+	 * @param position
+	 *            position of the value at the array, starting at 1
+	 * @param objectName
+	 * @param type
+	 * @param validator
+	 * @param results
+	 * @param exceptions
+	 * @return <code>boolean</code> to indicate if the object is valid
+	 */
+	private static <T> boolean validate(JsonValue value, int position, String objectName, String type,
+			BiFunction<JsonObject, String, T> validator, List<T> results, List<Exception> exceptions) {
+		if (value.getValueType() != ValueType.OBJECT) {
+			exceptions.add(new IllegalArgumentException(
+					"The " + objectName + " " + type + " #" + position + " must be a JSON object"));
+			return false;
+		}
+		try {
+			results.add(validator.apply((JsonObject) value, type));
+			return true;
+		} catch (IllegalArgumentException e) {
+			String message = Util.getJsonWithLocale(Locale.getDefault(), "\"" + e.getMessage() + "\"");
+			exceptions.add(new IllegalArgumentException(
+					"The " + objectName + " " + type + " #" + position + " has the error: " + message));
+			return false;
+		}
+	}
+
+	/**
+	 * Get the array <code>rootProperty.childProperty</code> of a SLURM
+	 *
+	 * @param slurm
+	 * @param rootProperty
+	 * @param childProperty
+	 * @param exceptions
+	 * @return the array, or <code>null</code> if the SLURM doesn't have it
+	 */
+	private static JsonArray getArray(JsonObject slurm, String rootProperty, String childProperty,
+			List<Exception> exceptions) {
+		JsonValue root = slurm.get(rootProperty);
+		if (root == null || root.getValueType() != ValueType.OBJECT) {
+			exceptions.add(new IllegalArgumentException("'" + rootProperty + "' must be a JSON object"));
+			return null;
+		}
+		JsonValue child = ((JsonObject) root).get(childProperty);
+		if (child == null || child.getValueType() != ValueType.ARRAY) {
+			exceptions.add(new IllegalArgumentException("'" + childProperty + "' must be a JSON array"));
+			return null;
+		}
+		return (JsonArray) child;
+	}
+
+	private static void drain(InputStream in) throws IOException {
+		byte[] buffer = new byte[8192];
+		while (in.read(buffer) != -1) {
+			// Just read
+		}
+	}
+}
@@ -1,25 +1,28 @@
 package mx.nic.lab.rpki.api.slurm;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Set;
 
 import javax.json.Json;
-import javax.json.JsonArray;
 import javax.json.JsonNumber;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.JsonValue.ValueType;
 
 import org.bouncycastle.util.encoders.DecoderException;
 import org.bouncycastle.util.encoders.Hex;
 
 import mx.nic.lab.rpki.api.util.CMSUtil;
+import mx.nic.lab.rpki.api.util.IpAddressUtil;
 import mx.nic.lab.rpki.api.util.Util;
 import mx.nic.lab.rpki.db.pojo.ApiObject;
-import mx.nic.lab.rpki.db.pojo.Slurm;
 import mx.nic.lab.rpki.db.pojo.SlurmBgpsec;
 import mx.nic.lab.rpki.db.pojo.SlurmPrefix;
 
@@ -29,6 +32,23 @@ import mx.nic.lab.rpki.db.pojo.SlurmPrefix;
  */
 public class SlurmUtil {
 
+	/**
+	 * Valid keys of a SLURM prefix
+	 */
+	private static final Set<String> PREFIX_KEYS = Collections
+			.unmodifiableSet(new HashSet<>(Arrays.asList("prefix", "asn", "maxPrefixLength", "comment")));
+
+	/**
+	 * Valid keys of a SLURM BGPsec
+	 */
+	private static final Set<String> BGPSEC_KEYS = Collections
+			.unmodifiableSet(new HashSet<>(Arrays.asList("asn", "SKI", "routerPublicKey", "comment")));
+
+	/**
+	 * Max number of digits of a prefix length
+	 */
+	private static final int PREFIX_LENGTH_MAX_DIGITS = 3;
+
 	private SlurmUtil() {
 		// No code
 	}
@@ -49,93 +69,53 @@ public class SlurmUtil {
 	public static SlurmPrefix getAndvalidatePrefix(JsonObject object, String type) throws IllegalArgumentException {
 		SlurmPrefix slurmPrefix = new SlurmPrefix();
 		slurmPrefix.setType(type);
-		// Check for extra keys (invalid keys)
-		List<String> invalidKeys = new ArrayList<>();
-		for (String key : object.keySet()) {
-			if (!key.matches("(prefix|asn|maxPrefixLength|comment)")) {
-				invalidKeys.add(key);
-			} else if (type.equals(SlurmPrefix.TYPE_FILTER) && key.equals("maxPrefixLength")) {
-				// Can't be present in a filter
-				invalidKeys.add(key);
-			}
-		}
-		if (!invalidKeys.isEmpty()) {
-			throw new IllegalArgumentException(
-					Util.concatenateParamsToLabel("#{error.invalid.keys}", invalidKeys.toString()));
-		}
-		String prefixRcv = null;
-		try {
-			prefixRcv = object.getString("prefix");
-		} catch (NullPointerException npe) {
-			if (type.equals(SlurmPrefix.TYPE_ASSERTION)) {
-				throw new IllegalArgumentException("#{error.slurm.prefix.prefixRequired}");
-			}
-		} catch (ClassCastException cce) {
-			throw new IllegalArgumentException(
-					Util.concatenateParamsToLabel("#{error.invalid.dataType}", "prefix", "String"));
+		// Check for extra keys (invalid keys), a filter can't have a
+		// "maxPrefixLength"
+		checkKeys(object, PREFIX_KEYS, type.equals(SlurmPrefix.TYPE_FILTER) ? "maxPrefixLength" : null);
+
+		String prefixRcv = getString(object, "prefix");
+		if (prefixRcv == null && type.equals(SlurmPrefix.TYPE_ASSERTION)) {
+			throw new IllegalArgumentException("#{error.slurm.prefix.prefixRequired}");
 		}
 		if (prefixRcv != null) {
-			String[] prefixArr = prefixRcv.split("/");
-			if (prefixArr.length != 2) {
+			int slash = prefixRcv.indexOf('/');
+			if (slash < 0 || prefixRcv.indexOf('/', slash + 1) >= 0) {
 				throw new IllegalArgumentException(
 						Util.concatenateParamsToLabel("#{error.invalid.format}", "prefix", "[prefix]/[prefix_length]"));
 			}
-
-			try {
-				InetAddress prefixAddress = InetAddress.getByName(prefixArr[0]);
-				slurmPrefix.setStartPrefix(prefixAddress.getAddress());
-				slurmPrefix.setPrefixText(prefixAddress.getHostAddress());
-			} catch (UnknownHostException e) {
+			byte[] prefixAddress = IpAddressUtil.parse(prefixRcv, 0, slash);
+			if (prefixAddress == null) {
 				throw new IllegalArgumentException("#{error.slurm.prefix.invalid}");
 			}
-			try {
-				int prefixLength = Integer.valueOf(prefixArr[1]);
-				slurmPrefix.setPrefixLength(prefixLength);
-			} catch (NumberFormatException nfe) {
+			slurmPrefix.setStartPrefix(prefixAddress);
+			slurmPrefix.setPrefixText(IpAddressUtil.format(prefixAddress));
+			int prefixLength = parsePrefixLength(prefixRcv, slash + 1);
+			if (prefixLength < 0) {
 				throw new IllegalArgumentException(
 						Util.concatenateParamsToLabel("#{error.invalid.dataType}", "prefix length", "Number"));
 			}
+			slurmPrefix.setPrefixLength(prefixLength);
 		}
-		try {
-			// There's no "getLong" method
-			JsonNumber number = object.getJsonNumber("asn");
-			if (number != null) {
-				slurmPrefix.setAsn(number.longValueExact());
-			} else if (type.equals(SlurmPrefix.TYPE_ASSERTION)) {
+
+		slurmPrefix.setAsn(getAsn(object));
+		if (slurmPrefix.getAsn() == null) {
+			if (type.equals(SlurmPrefix.TYPE_ASSERTION)) {
 				throw new IllegalArgumentException("#{error.slurm.asnRequired}");
-			} else if (slurmPrefix.getStartPrefix() == null) {
+			}
+			if (slurmPrefix.getStartPrefix() == null) {
 				// In a Filter is optional, but either a prefix or an asn must be present
 				throw new IllegalArgumentException("#{error.slurm.prefix.prefixOrAsnRequired}");
 			}
-		} catch (ClassCastException cce) {
-			throw new IllegalArgumentException(
-					Util.concatenateParamsToLabel("#{error.invalid.dataType}", "asn", "Number"));
-		} catch (ArithmeticException e) {
-			throw new IllegalArgumentException(Util.concatenateParamsToLabel("#{error.slurm.asnFormat}",
-					ApiObject.ASN_MIN_VALUE, ApiObject.ASN_MAX_VALUE));
 		}
 
-		try {
-			slurmPrefix.setPrefixMaxLength(object.getInt("maxPrefixLength"));
-		} catch (NullPointerException npe) {
-			// Optional in both cases, do nothing
-		} catch (ClassCastException cce) {
-			throw new IllegalArgumentException(
-					Util.concatenateParamsToLabel("#{error.invalid.dataType}", "maxPrefixLength", "Number"));
+		// Optional in both cases
+		JsonNumber maxPrefixLength = getNumber(object, "maxPrefixLength");
+		if (maxPrefixLength != null) {
+			slurmPrefix.setPrefixMaxLength(maxPrefixLength.intValue());
 		}
 
-		try {
-			String value = object.getString("comment");
-			if (value.trim().isEmpty()) {
-				throw new IllegalArgumentException("#{error.slurm.commentEmpty}");
-			}
-			slurmPrefix.setComment(value.trim());
-		} catch (NullPointerException npe) {
-			// It's RECOMMENDED, so (for now) leave it as optional
-		} catch (ClassCastException cce) {
-			throw new IllegalArgumentException(
-					Util.concatenateParamsToLabel("#{error.invalid.dataType}", "comment", "String"));
-		}
+		// It's RECOMMENDED, so (for now) leave it as optional
+		slurmPrefix.setComment(getNotEmptyString(object, "comment", "#{error.slurm.commentEmpty}"));
 		return slurmPrefix;
 	}
 
@@ -155,95 +135,43 @@ public class SlurmUtil {
 	public static SlurmBgpsec getAndvalidateBgpsec(JsonObject object, String type) throws IllegalArgumentException {
 		SlurmBgpsec slurmBgpsec = new SlurmBgpsec();
 		slurmBgpsec.setType(type);
-		// Check for extra keys (invalid keys)
-		List<String> invalidKeys = new ArrayList<>();
-		for (String key : object.keySet()) {
-			if (!key.matches("(asn|SKI|routerPublicKey|comment)")) {
-				invalidKeys.add(key);
-			} else if (type.equals(SlurmBgpsec.TYPE_FILTER) && key.equals("routerPublicKey")) {
-				// Can't be present in a filter
-				invalidKeys.add(key);
-			}
-		}
-		if (!invalidKeys.isEmpty()) {
-			throw new IllegalArgumentException(
-					Util.concatenateParamsToLabel("#{error.invalid.keys}", invalidKeys.toString()));
-		}
+		// Check for extra keys (invalid keys), a filter can't have a
+		// "routerPublicKey"
+		checkKeys(object, BGPSEC_KEYS, type.equals(SlurmBgpsec.TYPE_FILTER) ? "routerPublicKey" : null);
 
-		try {
-			// There's no "getLong" method
-			JsonNumber number = object.getJsonNumber("asn");
-			if (number != null) {
-				slurmBgpsec.setAsn(number.longValueExact());
-			} else if (type.equals(SlurmBgpsec.TYPE_ASSERTION)) {
-				throw new IllegalArgumentException("#{error.slurm.asnRequired}");
-			}
-		} catch (ClassCastException cce) {
-			throw new IllegalArgumentException(
-					Util.concatenateParamsToLabel("#{error.invalid.dataType}", "asn", "Number"));
-		} catch (ArithmeticException e) {
-			throw new IllegalArgumentException(Util.concatenateParamsToLabel("#{error.slurm.asnFormat}",
-					ApiObject.ASN_MIN_VALUE, ApiObject.ASN_MAX_VALUE));
+		slurmBgpsec.setAsn(getAsn(object));
+		if (slurmBgpsec.getAsn() == null && type.equals(SlurmBgpsec.TYPE_ASSERTION)) {
+			throw new IllegalArgumentException("#{error.slurm.asnRequired}");
 		}
 
-		try {
-			String value = object.getString("SKI");
-			// If the value is sent, it can't be an empty value
-			if (value.trim().isEmpty()) {
-				throw new IllegalArgumentException("#{error.slurm.bgpsec.skiEmpty}");
-			}
-			slurmBgpsec.setSki(value.trim());
-		} catch (NullPointerException npe) {
+		// If the value is sent, it can't be an empty value
+		slurmBgpsec.setSki(getNotEmptyString(object, "SKI", "#{error.slurm.bgpsec.skiEmpty}"));
+		if (slurmBgpsec.getSki() == null) {
 			if (type.equals(SlurmBgpsec.TYPE_ASSERTION)) {
 				throw new IllegalArgumentException("#{error.slurm.bgpsec.skiRequired}");
-			} else if (slurmBgpsec.getAsn() == null) {
+			}
+			if (slurmBgpsec.getAsn() == null) {
 				// In a Filter is optional, but either an asn or a SKI must be present
 				throw new IllegalArgumentException("#{error.slurm.bgpsec.asnOrSkiRequired}");
 			}
-		} catch (ClassCastException cce) {
-			throw new IllegalArgumentException(
-					Util.concatenateParamsToLabel("#{error.invalid.dataType}", "SKI", "String"));
 		}
 
-		try {
-			String value = object.getString("routerPublicKey");
-			if (value.trim().isEmpty()) {
-				throw new IllegalArgumentException("#{error.slurm.bgpsec.routerPublicKeyEmpty}");
-			}
-			slurmBgpsec.setRouterPublicKey(value.trim());
-		} catch (NullPointerException npe) {
-			if (type.equals(SlurmBgpsec.TYPE_ASSERTION)) {
-				throw new IllegalArgumentException("#{error.slurm.bgpsec.routerPublicKeyRequired}");
-			}
-		} catch (ClassCastException cce) {
-			throw new IllegalArgumentException(
-					Util.concatenateParamsToLabel("#{error.invalid.dataType}", "routerPublicKey", "String"));
+		slurmBgpsec.setRouterPublicKey(
+				getNotEmptyString(object, "routerPublicKey", "#{error.slurm.bgpsec.routerPublicKeyEmpty}"));
+		if (slurmBgpsec.getRouterPublicKey() == null && type.equals(SlurmBgpsec.TYPE_ASSERTION)) {
+			throw new IllegalArgumentException("#{error.slurm.bgpsec.routerPublicKeyRequired}");
 		}
 
-		try {
-			String value = object.getString("comment");
-			if (value.trim().isEmpty()) {
-				throw new IllegalArgumentException("#{error.slurm.commentEmpty}");
-			}
-			slurmBgpsec.setComment(value.trim());
-		} catch (NullPointerException npe) {
-			// It's RECOMMENDED, so (for now) leave it as optional
-		} catch (ClassCastException cce) {
-			throw new IllegalArgumentException(
-					Util.concatenateParamsToLabel("#{error.invalid.dataType}", "comment", "String"));
-		}
+		// It's RECOMMENDED, so (for now) leave it as optional
+		slurmBgpsec.setComment(getNotEmptyString(object, "comment", "#{error.slurm.commentEmpty}"));
 
 		// Check SKI and routerPublicKey are sent base64 encoded, and verify its
 		// value
-		if (slurmBgpsec.getSki() != null && !slurmBgpsec.getSki().trim().isEmpty()) {
+		if (slurmBgpsec.getSki() != null) {
+			byte[] hexBytes;
 			try {
-				byte[] decodedSki = Base64.getDecoder().decode(slurmBgpsec.getSki().getBytes());
-				byte[] hexBytes = Hex.decode(decodedSki);
-				// Is the 160-bit SHA-1 hash (RFC 8416 section 3.3.2 citing RFC 6487 section
-				// 4.8.2)
-				if (hexBytes.length != 20) {
-					throw new IllegalArgumentException("#{error.slurm.bgpsec.skiInvalid}");
-				}
+				byte[] decodedSki = Base64.getDecoder().decode(slurmBgpsec.getSki());
+				hexBytes = Hex.decode(decodedSki);
 			} catch (IllegalArgumentException e) {
 				throw new IllegalArgumentException(
 						Util.concatenateParamsToLabel("#{error.slurm.bgpsec.notBase64}", "SKI"));
@@ -251,18 +179,24 @@ public class SlurmUtil {
 				throw new IllegalArgumentException(
 						Util.concatenateParamsToLabel("#{error.slurm.bgpsec.notHex}", "SKI"));
 			}
+			// Is the 160-bit SHA-1 hash (RFC 8416 section 3.3.2 citing RFC 6487 section
+			// 4.8.2)
+			if (hexBytes.length != 20) {
+				throw new IllegalArgumentException("#{error.slurm.bgpsec.skiInvalid}");
+			}
 		}
 
-		if (slurmBgpsec.getRouterPublicKey() != null && !slurmBgpsec.getRouterPublicKey().trim().isEmpty()) {
+		if (slurmBgpsec.getRouterPublicKey() != null) {
+			byte[] decodedPk;
 			try {
-				byte[] decodedPk = Base64.getDecoder().decode(slurmBgpsec.getRouterPublicKey().getBytes());
-				if (!CMSUtil.isValidSubjectPublicKey(decodedPk)) {
-					throw new IllegalArgumentException("#{error.slurm.bgpsec.routerPublicKeyInvalid}");
-				}
+				decodedPk = Base64.getDecoder().decode(slurmBgpsec.getRouterPublicKey());
 			} catch (IllegalArgumentException e) {
 				throw new IllegalArgumentException(
 						Util.concatenateParamsToLabel("#{error.slurm.bgpsec.notBase64}", "routerPublicKey"));
 			}
+			if (!CMSUtil.isValidSubjectPublicKey(decodedPk)) {
+				throw new IllegalArgumentException("#{error.slurm.bgpsec.routerPublicKeyInvalid}");
+			}
 		}
 		return slurmBgpsec;
 	}
@@ -322,237 +256,145 @@ public class SlurmUtil {
 	}
 
 	/**
-	 * Validate the JSON object as a SLURM file
+	 * Check that the object only has valid keys
 	 * 
-	 * @param jsonObject
-	 *            JSON object representing a SLURM
-	 * @param exceptions
-	 *            {@link List} of exceptions where any {@link Exception} found will
-	 *            be concatenated
-	 * @return <code>boolean</code> to indicate the validity of the object
+	 * @param object
+	 * @param validKeys
+	 * @param forbiddenKey
+	 *            key that is valid but can't be present due to the type of the
+	 *            object, may be <code>null</code>
+	 * @throws IllegalArgumentException
+	 *             with the invalid keys found
 	 */
-	public static boolean isValidSlurm(JsonObject jsonObject, List<Exception> exceptions) {
-		if (jsonObject.keySet().size() != 3) {
-			exceptions.add(new IllegalArgumentException(
-					"The JSON object must contain exactly 3 properties: " + Slurm.SLURM_VERSION + ", "
-							+ Slurm.VALIDATION_OUTPUT_FILTERS + ", and " + Slurm.LOCALLY_ADDED_ASSERTIONS));
-			return false;
-		}
-		for (String key : jsonObject.keySet()) {
-			if (!key.matches("(" + Slurm.SLURM_VERSION + "|" + Slurm.VALIDATION_OUTPUT_FILTERS + "|"
-					+ Slurm.LOCALLY_ADDED_ASSERTIONS + ")")) {
-				exceptions.add(new IllegalArgumentException("Invalid key '" + key + "' at JSON object"));
-				return false;
-			}
-			switch (key) {
-			case Slurm.SLURM_VERSION:
-				try {
-					if (jsonObject.getInt(key) != 1) {
-						exceptions.add(new IllegalArgumentException("'" + key + "' must have the value '1'"));
-						return false;
-					}
-				} catch (ClassCastException e) {
-					exceptions.add(new IllegalArgumentException("'" + key + "' must a number with value '1'"));
-					return false;
-				}
-				break;
-			case Slurm.VALIDATION_OUTPUT_FILTERS:
-				JsonObject filters = null;
-				try {
-					filters = jsonObject.getJsonObject(key);
-				} catch (ClassCastException e) {
-					exceptions.add(new IllegalArgumentException("'" + key + "' must be a JSON object"));
-					return false;
-				}
-				if (!areValidFilters(filters, exceptions)) {
-					return false;
-				}
-				break;
-			case Slurm.LOCALLY_ADDED_ASSERTIONS:
-				JsonObject assertions = null;
-				try {
-					assertions = jsonObject.getJsonObject(key);
-				} catch (ClassCastException e) {
-					exceptions.add(new IllegalArgumentException("'" + key + "' must be a JSON object"));
-					return false;
-				}
-				if (!areValidAssertions(assertions, exceptions)) {
-					return false;
+	private static void checkKeys(JsonObject object, Set<String> validKeys, String forbiddenKey)
+			throws IllegalArgumentException {
+		List<String> invalidKeys = null;
+		for (String key : object.keySet()) {
+			if (!validKeys.contains(key) || key.equals(forbiddenKey)) {
+				if (invalidKeys == null) {
+					invalidKeys = new ArrayList<>();
 				}
-				break;
+				invalidKeys.add(key);
 			}
 		}
-		return true;
+		if (invalidKeys != null) {
+			throw new IllegalArgumentException(
+					Util.concatenateParamsToLabel("#{error.invalid.keys}", invalidKeys.toString()));
+		}
 	}
 
 	/**
-	 * Validate the JSON object as the property 'validationOutputFilters' of the
-	 * SLURM
+	 * Get an optional string property of the object
 	 * 
-	 * @param jsonObject
-	 *            JSON object representing 'validationOutputFilters'
-	 * @param exceptions
-	 *            {@link List} of exceptions where any {@link Exception} found will
-	 *            be concatenated
-	 * @return <code>boolean</code> to indicate the validity of the object
+	 * @param object
+	 * @param key
+	 * @return the value of the property, or <code>null</code> if it isn't present
+	 * @throws IllegalArgumentException
+	 *             if the value isn't a string
 	 */
-	private static boolean areValidFilters(JsonObject jsonObject, List<Exception> exceptions) {
-		if (jsonObject.keySet().size() != 2) {
-			exceptions.add(new IllegalArgumentException(
-					"The JSON object 'validationOutputFilters' must contain exactly 2 properties: "
-							+ Slurm.PREFIX_FILTERS + ", and " + Slurm.BGPSEC_FILTERS));
-			return false;
+	private static String getString(JsonObject object, String key) throws IllegalArgumentException {
+		JsonValue value = object.get(key);
+		if (value == null) {
+			return null;
 		}
-		for (String key : jsonObject.keySet()) {
-			if (!key.matches("(" + Slurm.PREFIX_FILTERS + "|" + Slurm.BGPSEC_FILTERS + ")")) {
-				exceptions.add(new IllegalArgumentException(
-						"Invalid key '" + key + "' at JSON object 'validationOutputFilters'"));
-				return false;
-			}
-			switch (key) {
-			case Slurm.PREFIX_FILTERS:
-				JsonArray prefixes = null;
-				try {
-					prefixes = jsonObject.getJsonArray(key);
-				} catch (ClassCastException e) {
-					exceptions.add(new IllegalArgumentException("'" + key + "' must be a JSON array"));
-					return false;
-				}
-				if (!areValidPrefixes(prefixes, SlurmPrefix.TYPE_FILTER, exceptions)) {
-					return false;
-				}
-				break;
-			case Slurm.BGPSEC_FILTERS:
-				JsonArray bgpsecs = null;
-				try {
-					bgpsecs = jsonObject.getJsonArray(key);
-				} catch (ClassCastException e) {
-					exceptions.add(new IllegalArgumentException("'" + key + "' must be a JSON array"));
-					return false;
-				}
-				if (!areValidBgpsecs(bgpsecs, SlurmBgpsec.TYPE_FILTER, exceptions)) {
-					return false;
-				}
-				break;
-			}
+		if (value.getValueType() != ValueType.STRING) {
+			throw new IllegalArgumentException(
+					Util.concatenateParamsToLabel("#{error.invalid.dataType}", key, "String"));
+		}
+		return ((JsonString) value).getString();
+	}
+
+	/**
+	 * Get an optional string property of the object that can't be empty if it's
+	 * present, the value is trimmed
+	 * 
+	 * @param object
+	 * @param key
+	 * @param emptyLabel
+	 *            label of the error if the value is empty
+	 * @return the trimmed value of the property, or <code>null</code> if it isn't
+	 *         present
+	 * @throws IllegalArgumentException
+	 *             if the value isn't a string or is empty
+	 */
+	private static String getNotEmptyString(JsonObject object, String key, String emptyLabel)
+			throws IllegalArgumentException {
+		String value = getString(object, key);
+		if (value == null) {
+			return null;
+		}
+		value = value.trim();
+		if (value.isEmpty()) {
+			throw new IllegalArgumentException(emptyLabel);
 		}
-		return true;
+		return value;
 	}
 
 	/**
-	 * Validate the JSON object as the property 'locallyAddedAssertions' of the
-	 * SLURM
+	 * Get an optional number property of the object
 	 * 
-	 * @param jsonObject
-	 *            JSON object representing 'locallyAddedAssertions'
-	 * @param exceptions
-	 *            {@link List} of exceptions where any {@link Exception} found will
-	 *            be concatenated
-	 * @return <code>boolean</code> to indicate the validity of the object
+	 * @param object
+	 * @param key
+	 * @return the value of the property, or <code>null</code> if it isn't present
+	 * @throws IllegalArgumentException
+	 *             if the value isn't a number
 	 */
-	private static boolean areValidAssertions(JsonObject jsonObject, List<Exception> exceptions) {
-		if (jsonObject.keySet().size() != 2) {
-			exceptions.add(new IllegalArgumentException(
-					"The JSON object 'locallyAddedAssertions' must contain exactly 2 properties: "
-							+ Slurm.PREFIX_ASSERTIONS + ", and " + Slurm.BGPSEC_ASSERTIONS));
-			return false;
+	private static JsonNumber getNumber(JsonObject object, String key) throws IllegalArgumentException {
+		JsonValue value = object.get(key);
+		if (value == null) {
+			return null;
 		}
-		for (String key : jsonObject.keySet()) {
-			if (!key.matches("(" + Slurm.PREFIX_ASSERTIONS + "|" + Slurm.BGPSEC_ASSERTIONS + ")")) {
-				exceptions.add(new IllegalArgumentException(
-						"Invalid key '" + key + "' at JSON object 'locallyAddedAssertions'"));
-				return false;
-			}
-			switch (key) {
-			case Slurm.PREFIX_ASSERTIONS:
-				JsonArray prefixes = null;
-				try {
-					prefixes = jsonObject.getJsonArray(key);
-				} catch (ClassCastException e) {
-					exceptions.add(new IllegalArgumentException("'" + key + "' must be a JSON array"));
-					return false;
-				}
-				if (!areValidPrefixes(prefixes, SlurmPrefix.TYPE_ASSERTION, exceptions)) {
-					return false;
-				}
-				break;
-			case Slurm.BGPSEC_ASSERTIONS:
-				JsonArray bgpsecs = null;
-				try {
-					bgpsecs = jsonObject.getJsonArray(key);
-				} catch (ClassCastException e) {
-					exceptions.add(new IllegalArgumentException("'" + key + "' must be a JSON array"));
-					return false;
-				}
-				if (!areValidBgpsecs(bgpsecs, SlurmBgpsec.TYPE_ASSERTION, exceptions)) {
-					return false;
-				}
-				break;
-			}
+		if (value.getValueType() != ValueType.NUMBER) {
+			throw new IllegalArgumentException(
+					Util.concatenateParamsToLabel("#{error.invalid.dataType}", key, "Number"));
 		}
-		return true;
+		return (JsonNumber) value;
 	}
 
 	/**
-	 * Validate all the prefixes contained at the SLURM
+	 * Get the optional "asn" property of the object
 	 * 
-	 * @param jsonArray
-	 *            array of prefixes
-	 * @param type
-	 *            type of prefixes to validate (filter or assertion)
-	 * @param exceptions
-	 * @return <code>boolean</code> to indicate if all the objects were valid
+	 * @param object
+	 * @return the ASN, or <code>null</code> if it isn't present
+	 * @throws IllegalArgumentException
+	 *             if the value isn't a number or isn't an integer
 	 */
-	private static boolean areValidPrefixes(JsonArray jsonArray, String type, List<Exception> exceptions) {
-		boolean allValid = true;
-		JsonObject object = null;
-		for (int i = 0; i < jsonArray.size(); i++) {
-			try {
-				object = jsonArray.getJsonObject(i);
-				getAndvalidatePrefix(object, type);
-			} catch (ClassCastException e) {
-				exceptions.add(
-						new IllegalArgumentException("The prefix " + type + " #" + (i + 1) + " must be a JSON object"));
-				allValid = false;
-			} catch (IllegalArgumentException e) {
-				String message = Util.getJsonWithLocale(Locale.getDefault(), "\"" + e.getMessage() + "\"");
-				exceptions.add(new IllegalArgumentException(
-						"The prefix " + type + " #" + (i + 1) + " has the error: " + message));
-				allValid = false;
-			}
+	private static Long getAsn(JsonObject object) throws IllegalArgumentException {
+		// There's no "getLong" method
+		JsonNumber number = getNumber(object, "asn");
+		if (number == null) {
+			return null;
+		}
+		try {
+			return number.longValueExact();
+		} catch (ArithmeticException e) {
+			throw new IllegalArgumentException(Util.concatenateParamsToLabel("#{error.slurm.asnFormat}",
+					ApiObject.ASN_MIN_VALUE, ApiObject.ASN_MAX_VALUE));
 		}
-		return allValid;
 	}
 
 	/**
-	 * Validate all the BGPsec's contained at the SLURM
+	 * Parse the prefix length of a prefix text, starting at <code>start</code>
+	 * and up to the end of the text
 	 * 
-	 * @param jsonArray
-	 *            array of BGPsec's
-	 * @param type
-	 *            type of BGPsec's to validate (filter or assertion)
-	 * @param exceptions
-	 * @return <code>boolean</code> to indicate if all the objects were valid
+	 * @param prefixText
+	 * @param start
+	 * @return the prefix length, or -1 if it isn't a number
 	 */
-	private static boolean areValidBgpsecs(JsonArray jsonArray, String type, List<Exception> exceptions) {
-		boolean allValid = true;
-		JsonObject object = null;
-		for (int i = 0; i < jsonArray.size(); i++) {
-			try {
-				object = jsonArray.getJsonObject(i);
-				getAndvalidateBgpsec(object, type);
-			} catch (ClassCastException e) {
-				exceptions.add(
-						new IllegalArgumentException("The bgpsec " + type + " #" + (i + 1) + " must be a JSON object"));
-				allValid = false;
-			} catch (IllegalArgumentException e) {
-				String message = Util.getJsonWithLocale(Locale.getDefault(), "\"" + e.getMessage() + "\"");
-				exceptions.add(new IllegalArgumentException(
-						"The bgpsec " + type + " #" + (i + 1) + " has the error: " + message));
-				allValid = false;
+	private static int parsePrefixLength(String prefixText, int start) {
+		int end = prefixText.length();
+		if (start == end || end - start > PREFIX_LENGTH_MAX_DIGITS) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			char c = prefixText.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
 			}
+			value = value * 10 + (c - '0');
 		}
-		return allValid;
+		return value;
 	}
 
 }
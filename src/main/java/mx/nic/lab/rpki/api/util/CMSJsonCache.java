@@ -0,0 +1,121 @@
+package mx.nic.lab.rpki.api.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.json.JsonObject;
+
+import mx.nic.lab.rpki.api.config.ApiConfiguration;
+import mx.nic.lab.rpki.api.util.CMSUtil.CMSProfile;
+import mx.nic.lab.rpki.db.pojo.RpkiObject;
+import mx.nic.lab.rpki.db.util.Sha256;
+
+/**
+ * Cache of the JSON representations built by {@link CMSUtil}, the entries are
+ * addressed by the SHA-256 of the encoded object, so an entry is valid as long
+ * as the content exists and there's no need to invalidate it.<br>
+ * <br>
+ * The cache is bounded by {@link ApiConfiguration#getCmsCacheMaxEntries()}, the
+ * least recently used entry is evicted once the limit is reached.
+ *
+ */
+public class CMSJsonCache {
+
+	/**
+	 * Type of the cached JSON, part of the key since the same content could be
+	 * parsed in different ways
+	 */
+	private enum JsonType {
+		ROA, GBR, CERT
+	}
+
+	/**
+	 * Cached JSONs, the key is the hex SHA-256 of the content concatenated with
+	 * the {@link JsonType}
+	 */
+	private static final Map<String, JsonObject> cache = new LinkedHashMap<String, JsonObject>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, JsonObject> eldest) {
+			return size() > getMaxEntries();
+		}
+	};
+
+	private CMSJsonCache() {
+		// No code
+	}
+
+	/**
+	 * Get the CMS of the {@link RpkiObject} as JSON, see
+	 * {@link CMSUtil#getCmsAsJson(byte[], CMSProfile)}
+	 *
+	 * @param rpkiObject
+	 * @param cmsProfile
+	 * @return CMS as a {@link JsonObject}
+	 */
+	public static JsonObject getCmsAsJson(RpkiObject rpkiObject, CMSProfile cmsProfile) {
+		byte[] cmsData = rpkiObject.getEncodedRpkiObject().getEncoded();
+		if (cmsData == null) {
+			return null;
+		}
+		byte[] sha256 = rpkiObject.getSha256() != null ? rpkiObject.getSha256() : Sha256.hash(cmsData);
+		String key = Hex.format(sha256) + (cmsProfile == CMSProfile.ROA ? JsonType.ROA : JsonType.GBR);
+		JsonObject json = get(key);
+		if (json == null) {
+			json = CMSUtil.getCmsAsJson(cmsData, cmsProfile);
+			put(key, json);
+		}
+		return json;
+	}
+
+	/**
+	 * Get the certificate as JSON, see {@link CMSUtil#getCertAsJson(byte[])}
+	 *
+	 * @param certificateData
+	 * @return Certificate as a {@link JsonObject}
+	 */
+	public static JsonObject getCertAsJson(byte[] certificateData) {
+		if (certificateData == null) {
+			return null;
+		}
+		String key = Hex.format(Sha256.hash(certificateData)) + JsonType.CERT;
+		JsonObject json = get(key);
+		if (json == null) {
+			json = CMSUtil.getCertAsJson(certificateData);
+			put(key, json);
+		}
+		return json;
+	}
+
+	private static JsonObject get(String key) {
+		if (getMaxEntries() == 0) {
+			return null;
+		}
+		synchronized (cache) {
+			return cache.get(key);
+		}
+	}
+
+	/**
+	 * Store the JSON, <code>null</code> values aren't stored so that the content is
+	 * parsed again (and the error is logged) the next time
+	 *
+	 * @param key
+	 * @param json
+	 */
+	private static void put(String key, JsonObject json) {
+		if (json == null || getMaxEntries() == 0) {
+			return;
+		}
+		synchronized (cache) {
+			cache.put(key, json);
+		}
+	}
+
+	private static int getMaxEntries() {
+		Integer maxEntries = ApiConfiguration.getCmsCacheMaxEntries();
+		return maxEntries != null ? maxEntries : 0;
+	}
+}
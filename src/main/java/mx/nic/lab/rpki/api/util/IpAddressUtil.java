@@ -0,0 +1,215 @@
+package mx.nic.lab.rpki.api.util;
+
+/**
+ * Parser and formatter of IP address literals. Unlike
+ * {@link java.net.InetAddress#getByName(String)}, a host name is never
+ * resolved and no objects other than the resulting bytes are created, so it
+ * can be used for each one of many addresses.
+ *
+ */
+public class IpAddressUtil {
+
+	private IpAddressUtil() {
+		// No code
+	}
+
+	/**
+	 * Parse an IPv4 (dotted decimal) or IPv6 (RFC 4291 section 2.2) address
+	 * literal
+	 *
+	 * @param text
+	 * @return the address bytes (4 for IPv4, 16 for IPv6), or <code>null</code>
+	 *         if the text isn't a valid literal
+	 */
+	public static byte[] parse(String text) {
+		if (text == null) {
+			return null;
+		}
+		return parse(text, 0, text.length());
+	}
+
+	/**
+	 * Parse the IP address literal at <code>text[start, end)</code>, see
+	 * {@link #parse(String)}
+	 *
+	 * @param text
+	 * @param start
+	 * @param end
+	 * @return the address bytes (4 for IPv4, 16 for IPv6), or <code>null</code>
+	 *         if the text isn't a valid literal
+	 */
+	public static byte[] parse(String text, int start, int end) {
+		if (start >= end) {
+			return null;
+		}
+		int colon = text.indexOf(':', start);
+		if (colon < 0 || colon >= end) {
+			byte[] address = new byte[4];
+			return parseIpv4(text, start, end, address, 0) ? address : null;
+		}
+		return parseIpv6(text, start, end);
+	}
+
+	/**
+	 * Format the address bytes the same way that
+	 * {@link java.net.InetAddress#getHostAddress()} does: dotted decimal for IPv4
+	 * and eight hexadecimal groups (not compressed) for IPv6
+	 *
+	 * @param address
+	 *            address bytes (4 for IPv4, 16 for IPv6)
+	 * @return the address as text
+	 */
+	public static String format(byte[] address) {
+		StringBuilder sb = new StringBuilder(39);
+		if (address.length == 4) {
+			for (int i = 0; i < 4; i++) {
+				if (i > 0) {
+					sb.append('.');
+				}
+				sb.append(address[i] & 0xFF);
+			}
+			return sb.toString();
+		}
+		for (int i = 0; i < 16; i += 2) {
+			if (i > 0) {
+				sb.append(':');
+			}
+			sb.append(Integer.toHexString(((address[i] & 0xFF) << 8) | (address[i + 1] & 0xFF)));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Parse the dotted decimal IPv4 address at
+	 * <code>text[start, end)</code>
+	 *
+	 * @param text
+	 * @param start
+	 * @param end
+	 * @param address
+	 *            where the 4 bytes are written
+	 * @param offset
+	 *            position of <code>address</code> where the bytes start
+	 * @return <code>true</code> if the address is valid
+	 */
+	private static boolean parseIpv4(String text, int start, int end, byte[] address, int offset) {
+		int part = 0;
+		int value = 0;
+		int digits = 0;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c == '.') {
+				if (digits == 0 || part == 3) {
+					return false;
+				}
+				address[offset + part++] = (byte) value;
+				value = 0;
+				digits = 0;
+			} else if (c >= '0' && c <= '9') {
+				value = value * 10 + (c - '0');
+				if (++digits > 3 || value > 255) {
+					return false;
+				}
+			} else {
+				return false;
+			}
+		}
+		if (digits == 0 || part != 3) {
+			return false;
+		}
+		address[offset + 3] = (byte) value;
+		return true;
+	}
+
+	/**
+	 * Parse the IPv6 address at <code>text[start, end)</code>, the groups may be
+	 * compressed with "::" and the last 32 bits may be written as an IPv4 address
+	 *
+	 * @param text
+	 * @param start
+	 * @param end
+	 * @return the 16 address bytes, or <code>null</code> if the address isn't
+	 *         valid
+	 */
+	private static byte[] parseIpv6(String text, int start, int end) {
+		byte[] address = new byte[16];
+		// Next byte to write and the byte where the "::" was found
+		int position = 0;
+		int compressed = -1;
+		int i = start;
+		if (text.charAt(start) == ':') {
+			if (end - start < 2 || text.charAt(start + 1) != ':') {
+				return null;
+			}
+			compressed = 0;
+			i = start + 2;
+		}
+		while (i < end) {
+			if (position == 16) {
+				return null;
+			}
+			int groupStart = i;
+			int value = 0;
+			int digit;
+			while (i < end && (digit = hexDigit(text.charAt(i))) >= 0) {
+				if (i - groupStart == 4) {
+					return null;
+				}
+				value = (value << 4) | digit;
+				i++;
+			}
+			if (i < end && text.charAt(i) == '.') {
+				// IPv4 address at the last 32 bits
+				if (position > 12 || !parseIpv4(text, groupStart, end, address, position)) {
+					return null;
+				}
+				position += 4;
+				break;
+			}
+			if (i == groupStart) {
+				return null;
+			}
+			address[position++] = (byte) (value >>> 8);
+			address[position++] = (byte) value;
+			if (i == end) {
+				break;
+			}
+			if (text.charAt(i++) != ':' || i == end) {
+				return null;
+			}
+			if (text.charAt(i) == ':') {
+				if (compressed >= 0) {
+					return null;
+				}
+				compressed = position;
+				i++;
+			}
+		}
+		if (compressed < 0) {
+			return position == 16 ? address : null;
+		}
+		// The "::" must represent at least one group
+		if (position == 16) {
+			return null;
+		}
+		int tail = position - compressed;
+		System.arraycopy(address, compressed, address, 16 - tail, tail);
+		for (int j = compressed; j < 16 - tail; j++) {
+			address[j] = 0;
+		}
+		return address;
+	}
+
+	private static int hexDigit(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+}
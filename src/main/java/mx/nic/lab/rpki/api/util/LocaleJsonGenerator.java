@@ -0,0 +1,237 @@
+package mx.nic.lab.rpki.api.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Locale;
+import java.util.Map.Entry;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * {@link JsonGenerator} that replaces the labels "#{label}" of every string
+ * value with its corresponding locale value (see
+ * {@link Util#getValueWithLocale(Locale, String)}) before writing it to the
+ * wrapped generator. This way the labels are replaced per value while the JSON
+ * is written, instead of searching them in the whole JSON string.<br>
+ * <br>
+ * The {@link JsonValue}s written are traversed by this generator, so that the
+ * nested strings are also localized.
+ *
+ */
+public class LocaleJsonGenerator implements JsonGenerator {
+
+	private final JsonGenerator generator;
+	private final Locale locale;
+
+	public LocaleJsonGenerator(JsonGenerator generator, Locale locale) {
+		this.generator = generator;
+		this.locale = locale;
+	}
+
+	@Override
+	public JsonGenerator writeStartObject() {
+		generator.writeStartObject();
+		return this;
+	}
+
+	@Override
+	public JsonGenerator writeStartObject(String name) {
+		generator.writeStartObject(name);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator writeKey(String name) {
+		generator.writeKey(name);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator writeStartArray() {
+		generator.writeStartArray();
+		return this;
+	}
+
+	@Override
+	public JsonGenerator writeStartArray(String name) {
+		generator.writeStartArray(name);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator write(String name, JsonValue value) {
+		switch (value.getValueType()) {
+		case OBJECT:
+			writeStartObject(name);
+			writeObjectContent(value.asJsonObject());
+			return writeEnd();
+		case ARRAY:
+			writeStartArray(name);
+			writeArrayContent(value.asJsonArray());
+			return writeEnd();
+		case STRING:
+			return write(name, ((JsonString) value).getString());
+		default:
+			generator.write(name, value);
+			return this;
+		}
+	}
+
+	@Override
+	public JsonGenerator write(String name, String value) {
+		generator.write(name, Util.getValueWithLocale(locale, value));
+		return this;
+	}
+
+	@Override
+	public JsonGenerator write(String name, BigInteger value) {
+		generator.write(name, value);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator write(String name, BigDecimal value) {
+		generator.write(name, value);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator write(String name, int value) {
+		generator.write(name, value);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator write(String name, long value) {
+		generator.write(name, value);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator write(String name, double value) {
+		generator.write(name, value);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator write(String name, boolean value) {
+		generator.write(name, value);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator writeNull(String name) {
+		generator.writeNull(name);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator writeEnd() {
+		generator.writeEnd();
+		return this;
+	}
+
+	@Override
+	public JsonGenerator write(JsonValue value) {
+		switch (value.getValueType()) {
+		case OBJECT:
+			writeStartObject();
+			writeObjectContent(value.asJsonObject());
+			return writeEnd();
+		case ARRAY:
+			writeStartArray();
+			writeArrayContent(value.asJsonArray());
+			return writeEnd();
+		case STRING:
+			return write(((JsonString) value).getString());
+		default:
+			generator.write(value);
+			return this;
+		}
+	}
+
+	@Override
+	public JsonGenerator write(String value) {
+		generator.write(Util.getValueWithLocale(locale, value));
+		return this;
+	}
+
+	@Override
+	public JsonGenerator write(BigDecimal value) {
+		generator.write(value);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator write(BigInteger value) {
+		generator.write(value);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator write(int value) {
+		generator.write(value);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator write(long value) {
+		generator.write(value);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator write(double value) {
+		generator.write(value);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator write(boolean value) {
+		generator.write(value);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator writeNull() {
+		generator.writeNull();
+		return this;
+	}
+
+	@Override
+	public void close() {
+		generator.close();
+	}
+
+	@Override
+	public void flush() {
+		generator.flush();
+	}
+
+	/**
+	 * Write each property of the <code>object</code>, the object must be already
+	 * started
+	 *
+	 * @param object
+	 */
+	private void writeObjectContent(JsonObject object) {
+		for (Entry<String, JsonValue> entry : object.entrySet()) {
+			write(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Write each value of the <code>array</code>, the array must be already started
+	 *
+	 * @param array
+	 */
+	private void writeArrayContent(JsonArray array) {
+		for (JsonValue value : array) {
+			write(value);
+		}
+	}
+}
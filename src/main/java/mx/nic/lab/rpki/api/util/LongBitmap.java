@@ -0,0 +1,79 @@
+package mx.nic.lab.rpki.api.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Compact set of positive <code>long</code> values (e.g. database IDs), the
+ * values are stored as bits in blocks of 65536 values each. A block is created
+ * only when one of its values is added, so a set of close values (as the IDs
+ * usually are) uses around one bit per value.<br>
+ * <br>
+ * The set is thread safe, the bits are set atomically so that only one of the
+ * threads adding the same value gets <code>true</code> from {@link #add(long)}.
+ *
+ */
+public class LongBitmap {
+
+	/**
+	 * Number of low bits of a value used as its position inside a block
+	 */
+	private static final int BLOCK_BITS = 16;
+
+	/**
+	 * Number of <code>long</code> words of each block
+	 */
+	private static final int BLOCK_WORDS = 1 << (BLOCK_BITS - 6);
+
+	/**
+	 * Mask to get the position of a value inside its block
+	 */
+	private static final long BLOCK_MASK = (1L << BLOCK_BITS) - 1;
+
+	private final Map<Long, AtomicLongArray> blocks = new ConcurrentHashMap<>();
+	private final AtomicLong cardinality = new AtomicLong();
+
+	/**
+	 * Add the <code>value</code> to the set
+	 *
+	 * @param value
+	 * @return <code>true</code> if the value wasn't already at the set
+	 */
+	public boolean add(long value) {
+		AtomicLongArray block = blocks.computeIfAbsent(value >>> BLOCK_BITS,
+				(key) -> new AtomicLongArray(BLOCK_WORDS));
+		int bit = (int) (value & BLOCK_MASK);
+		long mask = 1L << bit;
+		long word;
+		do {
+			word = block.get(bit >>> 6);
+			if ((word & mask) != 0) {
+				return false;
+			}
+		} while (!block.compareAndSet(bit >>> 6, word, word | mask));
+		cardinality.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * @param value
+	 * @return <code>true</code> if the value is at the set
+	 */
+	public boolean contains(long value) {
+		AtomicLongArray block = blocks.get(value >>> BLOCK_BITS);
+		if (block == null) {
+			return false;
+		}
+		int bit = (int) (value & BLOCK_MASK);
+		return (block.get(bit >>> 6) & (1L << bit)) != 0;
+	}
+
+	/**
+	 * @return the number of values at the set
+	 */
+	public long getCardinality() {
+		return cardinality.get();
+	}
+}
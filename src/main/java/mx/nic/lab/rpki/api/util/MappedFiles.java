@@ -0,0 +1,76 @@
+package mx.nic.lab.rpki.api.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility to read files through NIO without copying its content to the heap.
+ * The small files are read into a direct buffer owned by the current thread, the
+ * big files are memory mapped; in both cases the content is consumed directly
+ * from the buffer.
+ *
+ */
+public class MappedFiles {
+
+	/**
+	 * Files bigger than this size (in bytes) are memory mapped, mapping a file has
+	 * a cost that isn't worth for the small ones
+	 */
+	private static final int MAP_THRESHOLD = 64 * 1024;
+
+	/**
+	 * Direct buffer of each thread, used to read the small files
+	 */
+	private static final ThreadLocal<ByteBuffer> buffers = ThreadLocal
+			.withInitial(() -> ByteBuffer.allocateDirect(MAP_THRESHOLD));
+
+	/**
+	 * SHA-256 digest of each thread
+	 */
+	private static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	});
+
+	private MappedFiles() {
+		// No code
+	}
+
+	/**
+	 * Calculate the SHA-256 of the file content, the content isn't copied to the
+	 * heap
+	 *
+	 * @param file
+	 * @return the SHA-256 of the file
+	 * @throws IOException
+	 *             if the file couldn't be read
+	 */
+	public static byte[] sha256(Path file) throws IOException {
+		MessageDigest digest = digests.get();
+		digest.reset();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > MAP_THRESHOLD) {
+				digest.update(channel.map(MapMode.READ_ONLY, 0, size));
+			} else {
+				ByteBuffer buffer = buffers.get();
+				buffer.clear();
+				while (channel.read(buffer) > 0 && buffer.hasRemaining()) {
+					// Keep reading until the buffer is full or the file ends
+				}
+				buffer.flip();
+				digest.update(buffer);
+			}
+		}
+		return digest.digest();
+	}
+}
@@ -12,12 +12,15 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -55,6 +58,23 @@ public class Util {
 	 */
 	private static final List<String> bundles = Arrays.asList("labels/errors", "validation", "labels/validation");
 
+	/**
+	 * Pattern of a label as a JSON string, the 1st group has the key and the
+	 * parameters values (if they are present)
+	 */
+	private static final Pattern labelPattern = Pattern.compile("\"\\#\\{([^\"]+)\\}\"");
+
+	/**
+	 * Max number of key+locale entries kept at the {@link #localizedLabels} cache
+	 */
+	private static final int MAX_LOCALIZED_LABELS = 2048;
+
+	/**
+	 * Cache of the labels already resolved from the bundles, the key is the label
+	 * key and the locale (see {@link #getLocalizedLabel(String, Locale)})
+	 */
+	private static final Map<List<Object>, LocalizedLabel> localizedLabels = new ConcurrentHashMap<>();
+
 	/**
 	 * Return the additional path info of a request URI as a String List, i.e. If
 	 * the request's URI is "/server/ip/192.0.2.0/24", and the servlet path where
@@ -122,6 +142,40 @@ public class Util {
 		return sb.toString();
 	}
 
+	/**
+	 * Get the fields requested at the "fields" query parameter, the fields are
+	 * separated by commas (e.g. "fields=asn,prefix"). If the parameter wasn't
+	 * received, then <code>null</code> is returned to indicate that all the fields
+	 * are requested.
+	 * 
+	 * @param request
+	 * @param validFields
+	 *            fields that can be requested
+	 * @return {@link Set} of requested fields, or <code>null</code> if all are
+	 *         requested
+	 * @throws BadRequestException
+	 *             if a field is empty or isn't one of the <code>validFields</code>
+	 */
+	public static Set<String> getFieldsFromRequest(HttpServletRequest request, List<String> validFields)
+			throws BadRequestException {
+		// Query parameter name to indicate the fields to return
+		final String FIELDS = "fields";
+		String rcvdFields = request.getParameter(FIELDS);
+		if (rcvdFields == null) {
+			return null;
+		}
+		Set<String> fields = new HashSet<>();
+		for (String field : rcvdFields.split(",", -1)) {
+			field = field.trim();
+			if (!validFields.contains(field)) {
+				throw new BadRequestException(Util.concatenateParamsToLabel("#{error.invalidParameter}", FIELDS,
+						String.join(",", validFields)));
+			}
+			fields.add(field);
+		}
+		return fields;
+	}
+
 	/**
 	 * Get the date as a formatted String
 	 * 
@@ -328,38 +382,86 @@ public class Util {
 		if (jsonString == null) {
 			return jsonString;
 		}
-		// Match by groups, the 4th group determines the key to lookup at the bundles
-		// and the parameters values (if they are present)
-		String labelPattern = "(\")((\\#\\{)([^\"]+)(\\}))(\")";
-		Matcher labelMatcher = Pattern.compile(labelPattern).matcher(jsonString);
-		try {
-			String replacement;
-			while (labelMatcher.find()) {
-				String[] values = labelMatcher.group(4).split("\\}\\{");
-				String key = values[0];
-				replacement = getValueFromBundles(key, locale);
-				// Check for parameters and store its value
-				if (values.length > 1) {
-					List<String> parameterValues = new ArrayList<>();
-					for (int i = 1; i < values.length; i++) {
-						parameterValues.add(values[i]);
-					}
-					replacement = MessageFormat
-							.format(replacement, parameterValues.toArray(new Object[parameterValues.size()])).trim();
-				}
-				replacement = "\"" + replacement + "\"";
-				jsonString = jsonString.replace(labelMatcher.group(), replacement);
-			}
+		// Single pass: copy the text between labels and append each replacement
+		Matcher labelMatcher = labelPattern.matcher(jsonString);
+		if (!labelMatcher.find()) {
+			return jsonString;
+		}
+		StringBuilder sb = new StringBuilder(jsonString.length());
+		int last = 0;
+		do {
+			sb.append(jsonString, last, labelMatcher.start());
+			sb.append('"').append(localizeLabel(labelMatcher.group(1), locale)).append('"');
+			last = labelMatcher.end();
+		} while (labelMatcher.find());
+		sb.append(jsonString, last, jsonString.length());
+		return sb.toString();
+	}
+
+	/**
+	 * Get the value of a single JSON string replacing the label "#{label}" with its
+	 * corresponding locale value, the label must be the whole string (just as
+	 * {@link #getJsonWithLocale(Locale, String)} expects it). If the
+	 * <code>value</code> isn't a label, then it's returned as is.
+	 * 
+	 * @param locale
+	 * @param value
+	 * @return the value with the label replaced
+	 */
+	public static String getValueWithLocale(Locale locale, String value) {
+		if (value == null || value.length() < 4 || !value.startsWith("#{") || !value.endsWith("}")
+				|| value.indexOf('"') >= 0) {
+			return value;
+		}
+		return localizeLabel(value.substring(2, value.length() - 1), locale);
+	}
+
+	/**
+	 * Replace the label content (the key, optionally followed by its parameters
+	 * "{param1}{param2}") with its locale value
+	 * 
+	 * @param labelContent
+	 * @param locale
+	 * @return the locale value, or an empty string if the key wasn't found
+	 */
+	private static String localizeLabel(String labelContent, Locale locale) {
+		int paramsStart = labelContent.indexOf("}{");
+		if (paramsStart < 0) {
+			return getLocalizedLabel(labelContent, locale).getText();
+		}
+		LocalizedLabel label = getLocalizedLabel(labelContent.substring(0, paramsStart), locale);
+		return label.format(labelContent.substring(paramsStart + 2).split("\\}\\{"));
+	}
 
+	/**
+	 * Get the {@link LocalizedLabel} of the <code>key</code> from the cache, or
+	 * load it from the bundles if it isn't cached yet. The cache is cleared once it
+	 * reaches its max size, so that it can't grow indefinitely due to the requested
+	 * locales.
+	 * 
+	 * @param key
+	 * @param locale
+	 * @return
+	 */
+	private static LocalizedLabel getLocalizedLabel(String key, Locale locale) {
+		List<Object> cacheKey = Arrays.asList(key, locale);
+		LocalizedLabel label = localizedLabels.get(cacheKey);
+		if (label != null) {
+			return label;
+		}
+		try {
+			label = new LocalizedLabel(getValueFromBundles(key, locale), locale);
 		} catch (MissingResourceException e) {
-			// Not even a default bundle was found (that's bad), this is an internal error,
-			// replace the labels with empty strings and log
+			// The key wasn't found (that's bad), this is an internal error, the label
+			// will be replaced with an empty string
 			Logger.getGlobal().log(Level.SEVERE, "Error loading bundle, still replacing labels", e);
-			while (labelMatcher.find()) {
-				jsonString = jsonString.replace(labelMatcher.group(), "\"\"");
-			}
+			label = new LocalizedLabel("", locale);
 		}
-		return jsonString;
+		if (localizedLabels.size() >= MAX_LOCALIZED_LABELS) {
+			localizedLabels.clear();
+		}
+		localizedLabels.put(cacheKey, label);
+		return label;
 	}
 
 	/**
@@ -463,4 +565,39 @@ public class Util {
 		// Nothing found return null
 		return null;
 	}
+
+	/**
+	 * Value of a label already resolved from the bundles, the
+	 * {@link MessageFormat} is created only if the label is used with parameters
+	 *
+	 */
+	private static class LocalizedLabel {
+
+		private final String text;
+		private final Locale locale;
+		private MessageFormat messageFormat;
+
+		public LocalizedLabel(String text, Locale locale) {
+			this.text = text;
+			this.locale = locale;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		/**
+		 * Format the text using the <code>params</code>, {@link MessageFormat} isn't
+		 * thread safe so the formatting is synchronized
+		 * 
+		 * @param params
+		 * @return the formatted text
+		 */
+		public synchronized String format(Object[] params) {
+			if (messageFormat == null) {
+				messageFormat = new MessageFormat(text, locale);
+			}
+			return messageFormat.format(params).trim();
+		}
+	}
 }
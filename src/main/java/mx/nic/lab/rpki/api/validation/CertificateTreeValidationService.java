@@ -40,11 +40,13 @@ import static net.ripe.rpki.commons.validation.ValidationString.VALIDATOR_TRUST_
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,6 +54,7 @@ import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import com.google.common.base.Objects;
 
+import mx.nic.lab.rpki.api.config.ApiConfiguration;
 import mx.nic.lab.rpki.api.util.Hex;
 import mx.nic.lab.rpki.api.util.RsyncUtils;
 import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
@@ -65,6 +68,7 @@ import mx.nic.lab.rpki.db.spi.RpkiRepositoryDAO;
 import net.ripe.rpki.commons.crypto.CertificateRepositoryObject;
 import net.ripe.rpki.commons.crypto.cms.manifest.ManifestCms;
 import net.ripe.rpki.commons.crypto.crl.X509Crl;
+import net.ripe.rpki.commons.crypto.util.CertificateRepositoryObjectFactory;
 import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate;
 import net.ripe.rpki.commons.util.RepositoryObjectType;
 import net.ripe.rpki.commons.validation.ValidationLocation;
@@ -79,12 +83,24 @@ public class CertificateTreeValidationService extends ValidationService {
 
 	private static final ValidationOptions VALIDATION_OPTIONS = new ValidationOptions();
 
+	/**
+	 * Pool where the CA subtrees are validated in parallel, created on its first
+	 * use (see {@link #getPool()})
+	 */
+	private static ForkJoinPool pool;
+
+	/**
+	 * Flag to indicate that the pool was shutdown, so it isn't created again
+	 */
+	private static boolean poolShutdown;
+
 	private CertificateTreeValidationService() {
 		// No code
 	}
 
 	public static void validate(long trustAnchorId, ValidationRun validationRun) {
-		Map<URI, RpkiRepository> registeredRepositories = new HashMap<>();
+		// The CA subtrees can be validated concurrently, so the map must be safe
+		Map<URI, RpkiRepository> registeredRepositories = new ConcurrentHashMap<>();
 
 		Tal trustAnchor;
 		try {
@@ -122,7 +138,14 @@ public class CertificateTreeValidationService extends ValidationService {
 			if (locationUri == null) {
 				return;
 			}
-			validateCertificateAuthority(trustAnchor, registeredRepositories, context, validationResult);
+			ForkJoinPool pool = getPool();
+			if (pool == null) {
+				validateCertificateAuthority(trustAnchor, registeredRepositories, context, validationResult, false);
+			} else {
+				CertificateAuthorityTask task = new CertificateAuthorityTask(trustAnchor, registeredRepositories,
+						context, validationResult);
+				pool.invoke(task);
+			}
 		} finally {
 			validationRun.completeWith(validationResult);
 			logger.info("tree validation " + validationRun.getStatus() + " for " + trustAnchor.getName() + " with id "
@@ -130,10 +153,56 @@ public class CertificateTreeValidationService extends ValidationService {
 		}
 	}
 
+	/**
+	 * Get the pool used to validate the CA subtrees in parallel (it's also used to
+	 * trace the subtrees at {@link RpkiObjectCleanupService}), if the configured
+	 * parallelism is 1 then there's no pool and <code>null</code> is returned
+	 * 
+	 * @return the {@link ForkJoinPool} or <code>null</code> if the tree must be
+	 *         validated sequentially
+	 */
+	static synchronized ForkJoinPool getPool() {
+		Integer parallelism = ApiConfiguration.getValidationTreeParallelism();
+		if (parallelism == null || parallelism <= 1 || poolShutdown) {
+			return null;
+		}
+		if (pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+		return pool;
+	}
+
+	/**
+	 * Shutdown the pool used to validate the CA subtrees, the running tasks are
+	 * cancelled; once it's shutdown the trees are validated sequentially
+	 */
+	public static synchronized void shutdown() {
+		poolShutdown = true;
+		if (pool != null) {
+			pool.shutdownNow();
+			pool = null;
+		}
+	}
+
+	/**
+	 * Validate the CA of the <code>context</code> and its subtree. If
+	 * <code>fork</code> is <code>true</code>, each child CA is validated as a
+	 * {@link CertificateAuthorityTask} forked at the current pool with its own
+	 * {@link ValidationResult}; the tasks are joined and its results merged before
+	 * returning.
+	 * 
+	 * @param trustAnchor
+	 * @param registeredRepositories
+	 * @param context
+	 * @param validationResult
+	 * @param fork
+	 * @return the list of validated objects of the CA subtree
+	 */
 	private static List<RpkiObject> validateCertificateAuthority(Tal trustAnchor,
 			Map<URI, RpkiRepository> registeredRepositories, CertificateRepositoryObjectValidationContext context,
-			ValidationResult validationResult) {
+			ValidationResult validationResult, boolean fork) {
 		final List<RpkiObject> validatedObjects = new ArrayList<>();
+		final List<CertificateAuthorityTask> childTasks = new ArrayList<>();
 
 		ValidationLocation certificateLocation = validationResult.getCurrentLocation();
 		ValidationResult temporary = ValidationResult.withLocation(certificateLocation);
@@ -156,7 +225,7 @@ public class CertificateTreeValidationService extends ValidationService {
 
 			Optional<ManifestCms> maybeManifest = manifestObject.flatMap(x -> {
 				try {
-					return getRpkiObjectDAO().findCertificateRepositoryObject(x.getId(), ManifestCms.class, temporary);
+					return DecodedObjectCache.findCertificateRepositoryObject(x, ManifestCms.class, temporary);
 				} catch (ApiDataAccessException e) {
 					logger.log(Level.SEVERE, e.getMessage(), e);
 					temporary.error(ValidationString.VALIDATOR_OBJECT_PROCESSING_EXCEPTION);
@@ -194,7 +263,7 @@ public class CertificateTreeValidationService extends ValidationService {
 			temporary.setLocation(new ValidationLocation(crlUri));
 			Optional<X509Crl> crl = crlObject.flatMap(x -> {
 				try {
-					return getRpkiObjectDAO().findCertificateRepositoryObject(x.getId(), X509Crl.class, temporary);
+					return DecodedObjectCache.findCertificateRepositoryObject(x, X509Crl.class, temporary);
 				} catch (ApiDataAccessException e) {
 					logger.log(Level.SEVERE, e.getMessage(), e);
 					temporary.error(ValidationString.VALIDATOR_OBJECT_PROCESSING_EXCEPTION);
@@ -225,8 +294,7 @@ public class CertificateTreeValidationService extends ValidationService {
 
 				Optional<CertificateRepositoryObject> maybeCertificateRepositoryObject = null;
 				try {
-					maybeCertificateRepositoryObject = getRpkiObjectDAO().findCertificateRepositoryObject(obj.getId(),
-							CertificateRepositoryObject.class, temporary);
+					maybeCertificateRepositoryObject = decodeCertificateRepositoryObject(obj, temporary);
 				} catch (ApiDataAccessException e) {
 					temporary.error(ValidationString.VALIDATOR_OBJECT_PROCESSING_EXCEPTION, location.toASCIIString());
 				}
@@ -248,11 +316,24 @@ public class CertificateTreeValidationService extends ValidationService {
 
 						CertificateRepositoryObjectValidationContext childContext = context.createChildContext(location,
 								(X509ResourceCertificate) certificateRepositoryObject);
-						validatedObjects.addAll(validateCertificateAuthority(trustAnchor, registeredRepositories,
-								childContext, temporary));
+						if (fork) {
+							CertificateAuthorityTask childTask = new CertificateAuthorityTask(trustAnchor,
+									registeredRepositories, childContext,
+									ValidationResult.withLocation(new ValidationLocation(location)));
+							childTask.fork();
+							childTasks.add(childTask);
+						} else {
+							validatedObjects.addAll(validateCertificateAuthority(trustAnchor, registeredRepositories,
+									childContext, temporary, false));
+						}
 					}
 				});
 			});
+			// Wait for the child CAs and merge its results
+			for (CertificateAuthorityTask childTask : childTasks) {
+				validatedObjects.addAll(childTask.join());
+				temporary.addAll(childTask.getValidationResult());
+			}
 		} catch (Exception e) {
 			logger.log(Level.INFO, e.getMessage(), e);
 			validationResult.error(ErrorCodes.UNHANDLED_EXCEPTION, e.toString(), ExceptionUtils.getStackTrace(e));
@@ -263,28 +344,108 @@ public class CertificateTreeValidationService extends ValidationService {
 		return validatedObjects;
 	}
 
+	/**
+	 * Validation of a CA subtree as a {@link RecursiveTask}, the task has its own
+	 * {@link ValidationResult} since it isn't thread safe; the parent task merges
+	 * it once the task is joined.
+	 *
+	 */
+	private static class CertificateAuthorityTask extends RecursiveTask<List<RpkiObject>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Tal trustAnchor;
+		private final Map<URI, RpkiRepository> registeredRepositories;
+		private final CertificateRepositoryObjectValidationContext context;
+		private final ValidationResult validationResult;
+
+		public CertificateAuthorityTask(Tal trustAnchor, Map<URI, RpkiRepository> registeredRepositories,
+				CertificateRepositoryObjectValidationContext context, ValidationResult validationResult) {
+			this.trustAnchor = trustAnchor;
+			this.registeredRepositories = registeredRepositories;
+			this.context = context;
+			this.validationResult = validationResult;
+		}
+
+		@Override
+		protected List<RpkiObject> compute() {
+			return validateCertificateAuthority(trustAnchor, registeredRepositories, context, validationResult, true);
+		}
+
+		public ValidationResult getValidationResult() {
+			return validationResult;
+		}
+	}
+
+	/**
+	 * Get the repository of the CA of the <code>context</code>, loading (or
+	 * creating) it if it isn't registered yet. The repository is loaded outside of
+	 * the map so that the DB isn't queried while holding the lock of a map bin;
+	 * the loads are serialized so that the same repository isn't created twice
+	 * by concurrent subtrees.
+	 * 
+	 * @param trustAnchor
+	 * @param registeredRepositories
+	 * @param context
+	 * @return the repository, or <code>null</code> if it couldn't be loaded
+	 */
 	private static RpkiRepository registerRepository(Tal trustAnchor, Map<URI, RpkiRepository> registeredRepositories,
 			CertificateRepositoryObjectValidationContext context) {
 		// Set only the rsync uri
-		return registeredRepositories.computeIfAbsent(context.getRepositoryURI(), (uri) -> {
-			return loadOrCreateRepository(uri, trustAnchor);
-		});
+		URI uri = context.getRepositoryURI();
+		RpkiRepository rpkiRepository = registeredRepositories.get(uri);
+		if (rpkiRepository != null) {
+			return rpkiRepository;
+		}
+		synchronized (registeredRepositories) {
+			rpkiRepository = registeredRepositories.get(uri);
+			if (rpkiRepository != null) {
+				return rpkiRepository;
+			}
+			rpkiRepository = loadOrCreateRepository(uri, trustAnchor);
+			if (rpkiRepository != null) {
+				registeredRepositories.putIfAbsent(uri, rpkiRepository);
+			}
+			return rpkiRepository;
+		}
 	}
 
+	/**
+	 * Get the {@link RpkiObject}s listed at the <code>manifest</code>. All the
+	 * objects are searched at once using
+	 * {@link mx.nic.lab.rpki.db.spi.RpkiObjectDAO#findObjectsInManifest(ManifestCms)},
+	 * if that search fails then each entry is searched by its hash.
+	 * 
+	 * @param manifest
+	 * @param manifestUri
+	 * @param validationResult
+	 * @return map of the location and the object found for each entry
+	 */
 	private static Map<URI, RpkiObject> retrieveManifestEntries(ManifestCms manifest, URI manifestUri,
 			ValidationResult validationResult) {
+		Map<String, RpkiObject> objectsInManifest = null;
+		try {
+			objectsInManifest = getRpkiObjectDAO().findObjectsInManifest(manifest);
+		} catch (ApiDataAccessException e) {
+			logger.log(Level.WARNING,
+					"Error getting the objects of the manifest " + manifestUri + ", searching them one by one", e);
+		}
 		Map<URI, RpkiObject> result = new LinkedHashMap<>();
 		for (Map.Entry<String, byte[]> entry : manifest.getFiles().entrySet()) {
 			URI location = manifestUri.resolve(entry.getKey());
 			validationResult.setLocation(new ValidationLocation(location));
 
 			Optional<RpkiObject> object = null;
-			try {
-				object = getRpkiObjectDAO().findBySha256(entry.getValue());
-			} catch (ApiDataAccessException e) {
-				logger.log(Level.SEVERE, e.getMessage(), e);
-				validationResult.error(ValidationString.VALIDATOR_OBJECT_PROCESSING_EXCEPTION);
-				continue;
+			if (objectsInManifest != null) {
+				object = Optional.ofNullable(objectsInManifest.get(entry.getKey()));
+			} else {
+				try {
+					object = getRpkiObjectDAO().findBySha256(entry.getValue());
+				} catch (ApiDataAccessException e) {
+					logger.log(Level.SEVERE, e.getMessage(), e);
+					validationResult.error(ValidationString.VALIDATOR_OBJECT_PROCESSING_EXCEPTION);
+					continue;
+				}
 			}
 			validationResult.rejectIfFalse(object.isPresent(), VALIDATOR_MANIFEST_ENTRY_FOUND,
 					manifestUri.toASCIIString());
@@ -302,6 +463,27 @@ public class CertificateTreeValidationService extends ValidationService {
 		return result;
 	}
 
+	/**
+	 * Decode the {@link CertificateRepositoryObject} of the <code>obj</code>. The
+	 * object is decoded from its encoded content if it was already loaded (e.g. by
+	 * the manifest search), otherwise it's requested to the DAO. In both cases the
+	 * {@link DecodedObjectCache} is used.
+	 * 
+	 * @param obj
+	 * @param validationResult
+	 * @return the decoded object, empty if it couldn't be decoded
+	 * @throws ApiDataAccessException
+	 */
+	private static Optional<CertificateRepositoryObject> decodeCertificateRepositoryObject(RpkiObject obj,
+			ValidationResult validationResult) throws ApiDataAccessException {
+		if (obj.getEncodedRpkiObject() == null || obj.getEncodedRpkiObject().getEncoded() == null) {
+			return DecodedObjectCache.findCertificateRepositoryObject(obj, CertificateRepositoryObject.class,
+					validationResult);
+		}
+		return DecodedObjectCache.decode(obj, validationResult, decodeResult -> CertificateRepositoryObjectFactory
+				.createCertificateRepositoryObject(obj.getEncodedRpkiObject().getEncoded(), decodeResult));
+	}
+
 	public static RpkiRepository loadOrCreateRepository(URI uri, Tal trustAnchor) {
 		String uriString = uri.toASCIIString();
 		RpkiRepositoryDAO rpkiRepositories = DataAccessService.getRpkiRepositoryDAO();
@@ -322,6 +504,9 @@ public class CertificateTreeValidationService extends ValidationService {
 			logger.log(Level.SEVERE, "Error getting repository with URI" + uriString, e);
 			return null;
 		}
+		if (rpkiRepository == null) {
+			return null;
+		}
 
 		RpkiRepository parentRepository = findRsyncParentRepository(uri);
 		if (parentRepository != null) {
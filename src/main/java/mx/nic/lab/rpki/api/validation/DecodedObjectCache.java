@@ -0,0 +1,221 @@
+package mx.nic.lab.rpki.api.validation;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import mx.nic.lab.rpki.api.config.ApiConfiguration;
+import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
+import mx.nic.lab.rpki.db.pojo.RpkiObject;
+import net.ripe.rpki.commons.crypto.CertificateRepositoryObject;
+import net.ripe.rpki.commons.validation.ValidationCheck;
+import net.ripe.rpki.commons.validation.ValidationResult;
+
+/**
+ * Cache of the decoded {@link CertificateRepositoryObject}s, addressed by the
+ * SHA-256 of its {@link RpkiObject}. The cache is bounded by the sum of the
+ * encoded size of its objects (see
+ * {@link ApiConfiguration#getDecodedObjectCacheMaxBytes()}), the least
+ * recently used objects are evicted once the limit is reached.<br>
+ * <br>
+ * Since the SHA-256 addresses the content, a cached object is never stale: the
+ * objects deleted from the database are just evicted as any other object that
+ * isn't used anymore.<br>
+ * <br>
+ * The checks made while an object is decoded are cached along with it, and
+ * they're added to the {@link ValidationResult} of each cache hit at its
+ * current location, so a hit results in the same checks as a miss.
+ *
+ */
+public class DecodedObjectCache extends ValidationService {
+
+	/**
+	 * Cached objects, in access order
+	 */
+	private static final Map<ByteBuffer, CachedObject> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * Sum of the encoded size of the cached objects
+	 */
+	private static long cachedBytes = 0;
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+
+	private DecodedObjectCache() {
+		// No code
+	}
+
+	/**
+	 * Get the decoded object from the cache, or from the DAO if it isn't cached,
+	 * see
+	 * {@link mx.nic.lab.rpki.db.spi.RpkiObjectDAO#findCertificateRepositoryObject}
+	 *
+	 * @param rpkiObject
+	 * @param clazz
+	 * @param validationResult
+	 * @return the decoded object, empty if it couldn't be found or decoded
+	 * @throws ApiDataAccessException
+	 */
+	public static <T extends CertificateRepositoryObject> Optional<T> findCertificateRepositoryObject(
+			RpkiObject rpkiObject, Class<T> clazz, ValidationResult validationResult) throws ApiDataAccessException {
+		T cached = get(rpkiObject, clazz, validationResult);
+		if (cached != null) {
+			return Optional.of(cached);
+		}
+		ValidationResult decodeResult = ValidationResult.withLocation(validationResult.getCurrentLocation());
+		Optional<T> decoded = getRpkiObjectDAO().findCertificateRepositoryObject(rpkiObject.getId(), clazz,
+				decodeResult);
+		validationResult.addAll(decodeResult);
+		decoded.ifPresent(obj -> put(rpkiObject, obj, decodeResult));
+		return decoded;
+	}
+
+	/**
+	 * Get the decoded object from the cache, or decode it using the
+	 * <code>decoder</code> if it isn't cached
+	 *
+	 * @param rpkiObject
+	 * @param validationResult
+	 * @param decoder
+	 *            decodes the object adding its checks to the received
+	 *            {@link ValidationResult}, returns <code>null</code> if it
+	 *            couldn't be decoded
+	 * @return the decoded object, empty if it couldn't be decoded
+	 */
+	public static Optional<CertificateRepositoryObject> decode(RpkiObject rpkiObject,
+			ValidationResult validationResult, Function<ValidationResult, CertificateRepositoryObject> decoder) {
+		CertificateRepositoryObject cached = get(rpkiObject, CertificateRepositoryObject.class, validationResult);
+		if (cached != null) {
+			return Optional.of(cached);
+		}
+		ValidationResult decodeResult = ValidationResult.withLocation(validationResult.getCurrentLocation());
+		CertificateRepositoryObject decoded = decoder.apply(decodeResult);
+		validationResult.addAll(decodeResult);
+		if (decoded != null) {
+			put(rpkiObject, decoded, decodeResult);
+		}
+		return Optional.ofNullable(decoded);
+	}
+
+	public static long getHits() {
+		return hits.get();
+	}
+
+	public static long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of cached objects
+	 */
+	public static int getSize() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * @return the sum of the encoded size (in bytes) of the cached objects
+	 */
+	public static long getWeight() {
+		synchronized (cache) {
+			return cachedBytes;
+		}
+	}
+
+	/**
+	 * Get the cached object, only if it's an instance of <code>clazz</code>. The
+	 * cached checks are added to the <code>validationResult</code>.
+	 *
+	 * @param rpkiObject
+	 * @param clazz
+	 * @param validationResult
+	 * @return the cached object or <code>null</code> if there's no object (of the
+	 *         class) cached
+	 */
+	private static <T extends CertificateRepositoryObject> T get(RpkiObject rpkiObject, Class<T> clazz,
+			ValidationResult validationResult) {
+		if (getMaxBytes() == 0 || rpkiObject.getSha256() == null) {
+			return null;
+		}
+		CachedObject cached;
+		synchronized (cache) {
+			cached = cache.get(ByteBuffer.wrap(rpkiObject.getSha256()));
+		}
+		if (cached == null || !clazz.isInstance(cached.object)) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		for (ValidationCheck check : cached.checks) {
+			switch (check.getStatus()) {
+			case PASSED:
+				validationResult.pass(check.getKey(), check.getParams());
+				break;
+			case WARNING:
+				validationResult.warn(check.getKey(), check.getParams());
+				break;
+			default:
+				validationResult.error(check.getKey(), check.getParams());
+				break;
+			}
+		}
+		return clazz.cast(cached.object);
+	}
+
+	/**
+	 * Store the object and its checks, and evict the least recently used objects
+	 * if the limit is exceeded, an object bigger than the limit isn't stored
+	 *
+	 * @param rpkiObject
+	 * @param obj
+	 * @param decodeResult
+	 *            result with the checks made while the object was decoded
+	 */
+	private static void put(RpkiObject rpkiObject, CertificateRepositoryObject obj, ValidationResult decodeResult) {
+		long maxBytes = getMaxBytes();
+		long weight = obj.getEncoded().length;
+		if (weight > maxBytes || rpkiObject.getSha256() == null) {
+			return;
+		}
+		CachedObject cachedObject = new CachedObject(obj, decodeResult.getAllValidationChecksForCurrentLocation());
+		synchronized (cache) {
+			CachedObject previous = cache.put(ByteBuffer.wrap(rpkiObject.getSha256()), cachedObject);
+			if (previous != null) {
+				cachedBytes -= previous.object.getEncoded().length;
+			}
+			cachedBytes += weight;
+			Iterator<CachedObject> iterator = cache.values().iterator();
+			while (cachedBytes > maxBytes && iterator.hasNext()) {
+				cachedBytes -= iterator.next().object.getEncoded().length;
+				iterator.remove();
+			}
+		}
+	}
+
+	private static long getMaxBytes() {
+		Integer maxBytes = ApiConfiguration.getDecodedObjectCacheMaxBytes();
+		return maxBytes != null ? maxBytes : 0;
+	}
+
+	/**
+	 * Decoded object and the checks made while it was decoded
+	 *
+	 */
+	private static class CachedObject {
+
+		private final CertificateRepositoryObject object;
+		private final List<ValidationCheck> checks;
+
+		public CachedObject(CertificateRepositoryObject object, List<ValidationCheck> checks) {
+			this.object = object;
+			this.checks = checks;
+		}
+	}
+}
@@ -1,9 +1,12 @@
 package mx.nic.lab.rpki.api.validation;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.quartz.CronScheduleBuilder;
+import org.quartz.JobDataMap;
 import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
 import org.quartz.SimpleScheduleBuilder;
@@ -62,6 +65,17 @@ public class MasterScheduler {
 			throw new InitializationException("Error registering SLURM watcher job", e);
 		}
 
+		if (ApiConfiguration.getRepositoryWatcherDebounce() > 0) {
+			try {
+				scheduler.scheduleJob(QuartzRepositoryWatcherJob.buildJob(),
+						TriggerBuilder.newTrigger().startNow().withSchedule(
+								SimpleScheduleBuilder.simpleSchedule().withMisfireHandlingInstructionIgnoreMisfires())
+								.build());
+			} catch (SchedulerException e) {
+				throw new InitializationException("Error registering repositories watcher job", e);
+			}
+		}
+
 		try {
 			scheduler.start();
 		} catch (SchedulerException e) {
@@ -76,6 +90,25 @@ public class MasterScheduler {
 		}
 	}
 
+	/**
+	 * Trigger the TALs validation job
+	 * 
+	 * @param talIds
+	 *            IDs of the TALs to validate, if <code>null</code> then all the
+	 *            TALs are validated
+	 */
+	public static void triggerTrustAnchorValidation(Set<Long> talIds) {
+		JobDataMap jobDataMap = new JobDataMap();
+		if (talIds != null) {
+			jobDataMap.put(QuartzTrustAnchorValidationJob.TAL_IDS_KEY, new HashSet<>(talIds));
+		}
+		try {
+			scheduler.triggerJob(QuartzTrustAnchorValidationJob.getJobKey(), jobDataMap);
+		} catch (SchedulerException e) {
+			logger.log(Level.SEVERE, "Error triggering TALs validation job", e);
+		}
+	}
+
 	/**
 	 * Trigger the SLURM validation job
 	 */
@@ -93,6 +126,7 @@ public class MasterScheduler {
 	public static void shutdown() {
 		// Stop it manually to kill the thread that is handled apart from Quartz
 		QuartzSlurmWatcherJob.stop();
+		QuartzRepositoryWatcherJob.stop();
 		try {
 			if (scheduler != null && scheduler.isStarted()) {
 				scheduler.shutdown();
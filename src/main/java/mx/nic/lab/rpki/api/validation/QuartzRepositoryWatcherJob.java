@@ -0,0 +1,258 @@
+package mx.nic.lab.rpki.api.validation;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobKey;
+import org.quartz.SchedulerException;
+
+import mx.nic.lab.rpki.api.config.ApiConfiguration;
+import mx.nic.lab.rpki.api.util.RsyncUtils;
+import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
+import mx.nic.lab.rpki.db.pojo.RpkiRepository;
+import mx.nic.lab.rpki.db.pojo.Tal;
+
+/**
+ * {@link Job} used to add a {@link WatchService} at the downloaded repositories
+ * directory configured by the application.<br>
+ * <br>
+ * This Job is expected to be executed only once (at application start) to leave
+ * the WatchService "listening" to updates at the repositories; the changed
+ * paths are accumulated until there are no more updates during
+ * {@link ApiConfiguration#getRepositoryWatcherDebounce()} milliseconds, then
+ * the validation of the TALs whose repositories changed is triggered using the
+ * {@link QuartzTrustAnchorValidationJob}. The scheduled validation is still
+ * executed in case that an update isn't detected.<br>
+ * <br>
+ * Each directory takes a watch from the OS (e.g. inotify, limited by
+ * <code>max_user_watches</code>); if a directory can't be registered, its
+ * updates could be missed, so since then every update detected triggers the
+ * validation of all the TALs.
+ *
+ */
+@DisallowConcurrentExecution
+public class QuartzRepositoryWatcherJob implements Job {
+
+	/**
+	 * {@link WatchService} to monitor changes on the repositories, each directory
+	 * is registered since the service doesn't watch the subdirectories
+	 */
+	private static WatchService watchService;
+
+	/**
+	 * Root of the watched directories
+	 */
+	private static Path repositoriesDir;
+
+	/**
+	 * Flag set when a directory couldn't be registered at the watch service
+	 */
+	private static volatile boolean registrationFailed = false;
+
+	/**
+	 * Class logger
+	 */
+	private static final Logger logger = Logger.getLogger(QuartzRepositoryWatcherJob.class.getName());
+
+	@Override
+	public void execute(JobExecutionContext context) throws JobExecutionException {
+		if (watchService == null) {
+			throw new JobExecutionException("The WatchService isn't configured");
+		}
+		long debounce = ApiConfiguration.getRepositoryWatcherDebounce();
+		Set<Path> changedPaths = new HashSet<>();
+		try {
+			while (true) {
+				WatchKey watchKey = changedPaths.isEmpty() ? watchService.take()
+						: watchService.poll(debounce, TimeUnit.MILLISECONDS);
+				if (watchKey == null) {
+					// No more updates during the debounce time
+					triggerValidation(changedPaths);
+					changedPaths.clear();
+					continue;
+				}
+				Path dir = (Path) watchKey.watchable();
+				for (WatchEvent<?> event : watchKey.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						// Some updates were lost, validate everything
+						changedPaths.add(repositoriesDir);
+						continue;
+					}
+					Path changedPath = dir.resolve((Path) event.context());
+					logger.log(Level.FINE, "File " + changedPath + " update detected, kind: " + event.kind());
+					changedPaths.add(changedPath);
+					if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changedPath)) {
+						registerAll(changedPath);
+					}
+				}
+				if (!watchKey.reset() && dir.equals(repositoriesDir)) {
+					break;
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			logger.log(Level.INFO, "Stopping repositories watch service", e);
+		}
+	}
+
+	/**
+	 * Trigger the validation of the TALs affected by the <code>changedPaths</code>,
+	 * if the affected TALs can't be determined then all of them are validated
+	 *
+	 * @param changedPaths
+	 */
+	private static void triggerValidation(Set<Path> changedPaths) {
+		Set<Long> talIds = null;
+		// If not all the directories are watched, the affected TALs are unknown
+		if (!registrationFailed && !changedPaths.contains(repositoriesDir)) {
+			try {
+				talIds = findAffectedTals(changedPaths);
+			} catch (ApiDataAccessException | IOException e) {
+				logger.log(Level.WARNING, "Error getting the TALs affected by the repositories update", e);
+			}
+		}
+		if (talIds != null && talIds.isEmpty()) {
+			logger.log(Level.FINE, "No TAL affected by the repositories update");
+			return;
+		}
+		logger.log(Level.INFO, "Triggering TAL validation for " + (talIds == null ? "all the TALs" : talIds));
+		MasterScheduler.triggerTrustAnchorValidation(talIds);
+	}
+
+	/**
+	 * Get the IDs of the TALs that have a repository (or its certificate) at any
+	 * of the <code>changedPaths</code>
+	 *
+	 * @param changedPaths
+	 * @return the IDs of the affected TALs
+	 * @throws ApiDataAccessException
+	 * @throws IOException
+	 */
+	private static Set<Long> findAffectedTals(Set<Path> changedPaths) throws ApiDataAccessException, IOException {
+		Set<Long> talIds = new HashSet<>();
+		for (Tal tal : ValidationService.getTalDAO().getAll(null).getResults()) {
+			List<Path> talPaths = new ArrayList<>();
+			talPaths.add(localPath(tal.getTalUris().get(0).getLocation()));
+			try (Stream<RpkiRepository> repositories = ValidationService.getRpkiRepositoryDAO()
+					.findRsyncRepositories(tal.getId())) {
+				for (RpkiRepository repository : (Iterable<RpkiRepository>) repositories::iterator) {
+					talPaths.add(localPath(repository.getLocationUri()));
+				}
+			}
+			for (Path changedPath : changedPaths) {
+				if (talPaths.stream().anyMatch(talPath -> changedPath.startsWith(talPath))) {
+					talIds.add(tal.getId());
+					break;
+				}
+			}
+		}
+		return talIds;
+	}
+
+	private static Path localPath(String rsyncUri) throws IOException {
+		return RsyncUtils.localFileFromRsyncUri(ValidationService.getLocalRsyncStorageDirectory(), URI.create(rsyncUri))
+				.toPath();
+	}
+
+	/**
+	 * Register the directory and all its subdirectories at the
+	 * {@link WatchService}, a directory that can't be registered is skipped and
+	 * the walk continues with the rest
+	 *
+	 * @param dir
+	 */
+	private static void registerAll(Path dir) {
+		try {
+			Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult preVisitDirectory(Path subdir, BasicFileAttributes attrs) {
+					try {
+						subdir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+								StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+					} catch (IOException e) {
+						registrationFailed(subdir, e);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException exc) {
+					registrationFailed(file, exc);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Error watching the directory " + dir + ", some updates could be missed", e);
+		}
+	}
+
+	/**
+	 * Log the directory that couldn't be registered, only the first failure is
+	 * logged as a warning
+	 *
+	 * @param dir
+	 * @param e
+	 */
+	private static void registrationFailed(Path dir, IOException e) {
+		if (registrationFailed) {
+			logger.log(Level.FINE, "Error watching the directory " + dir, e);
+			return;
+		}
+		registrationFailed = true;
+		logger.log(Level.WARNING, "Error watching the directory " + dir + " (the limit of watches could be reached),"
+				+ " since now every update detected validates all the TALs", e);
+	}
+
+	static JobDetail buildJob() throws SchedulerException {
+		try {
+			repositoriesDir = ValidationService.getLocalRsyncStorageDirectory().getCanonicalFile().toPath();
+			watchService = FileSystems.getDefault().newWatchService();
+		} catch (IOException e) {
+			throw new SchedulerException("Error creating the watch service for the repositories", e);
+		}
+		registerAll(repositoriesDir);
+		return JobBuilder.newJob(QuartzRepositoryWatcherJob.class).withIdentity(getJobKey()).build();
+	}
+
+	static JobKey getJobKey() {
+		return new JobKey(String.format("%s", QuartzRepositoryWatcherJob.class.getName()));
+	}
+
+	/**
+	 * Stop watching the repositories
+	 */
+	public static void stop() {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "Error closing the repositories watch service", e);
+			}
+		}
+	}
+}
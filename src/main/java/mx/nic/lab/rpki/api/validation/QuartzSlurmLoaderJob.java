@@ -11,11 +11,15 @@ import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 import org.quartz.JobKey;
 
+import mx.nic.lab.rpki.api.rtr.RtrCache;
+import mx.nic.lab.rpki.api.slurm.CompiledSlurm;
 import mx.nic.lab.rpki.api.slurm.SlurmManager;
+import mx.nic.lab.rpki.api.vrp.VrpIndex;
 
 /**
  * {@link Job} used to load the SLURM from a file. This Job is expected to be
- * executed only on demand.
+ * executed only on demand. The SLURM is applied to the VRPs only if the file
+ * was loaded into the DA implementation, the API applies its own updates.
  *
  */
 @DisallowConcurrentExecution
@@ -23,8 +27,17 @@ public class QuartzSlurmLoaderJob implements Job {
 
 	@Override
 	public void execute(JobExecutionContext context) throws JobExecutionException {
+		if (loadSlurm()) {
+			// The SLURM changes the effective VRPs
+			CompiledSlurm.rebuild();
+			VrpIndex.refilter();
+			RtrCache.update();
+		}
+	}
+
+	private static boolean loadSlurm() throws JobExecutionException {
 		List<Exception> exceptions = new ArrayList<>();
-		SlurmManager.loadSlurmFromFile(exceptions);
+		boolean loaded = SlurmManager.loadSlurmFromFile(exceptions);
 		if (!exceptions.isEmpty()) {
 			StringBuilder sb = new StringBuilder();
 			for (Exception e : exceptions) {
@@ -37,6 +50,7 @@ public class QuartzSlurmLoaderJob implements Job {
 			throw new JobExecutionException("Error loading or using the SLURM at " + SlurmManager.getSlurmLocationFile()
 					+ ". " + sb.toString());
 		}
+		return loaded;
 	}
 
 	static JobDetail buildJob() {
@@ -29,6 +29,8 @@
  */
 package mx.nic.lab.rpki.api.validation;
 
+import java.util.Set;
+
 import org.quartz.DisallowConcurrentExecution;
 import org.quartz.Job;
 import org.quartz.JobBuilder;
@@ -40,9 +42,16 @@ import org.quartz.JobKey;
 @DisallowConcurrentExecution
 public class QuartzTrustAnchorValidationJob implements Job {
 
+	/**
+	 * Key of the IDs of the TALs to validate at the job data, if there are no IDs
+	 * then all the TALs are validated
+	 */
+	static final String TAL_IDS_KEY = "talIds";
+
+	@SuppressWarnings("unchecked")
 	@Override
 	public void execute(JobExecutionContext context) throws JobExecutionException {
-		TrustAnchorValidationService.validate();
+		TrustAnchorValidationService.validate((Set<Long>) context.getMergedJobDataMap().get(TAL_IDS_KEY));
 	}
 
 	static JobDetail buildJob() {
@@ -0,0 +1,312 @@
+package mx.nic.lab.rpki.api.validation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mx.nic.lab.rpki.api.config.ApiConfiguration;
+import mx.nic.lab.rpki.api.util.Hex;
+import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
+import mx.nic.lab.rpki.db.service.DataAccessService;
+import mx.nic.lab.rpki.db.util.Sha256;
+
+/**
+ * Index of the repository files already stored, each path is mapped to the
+ * size, last modified time and SHA-256 that the file had when it was stored,
+ * and to the repository it was stored for.
+ * The repository validation uses it to skip the files that haven't changed
+ * since the last run, so that only the new or modified files are read, hashed
+ * and parsed.<br>
+ * <br>
+ * The index is saved to the file configured at
+ * {@link ApiConfiguration#getRepositoryFileIndexLocation()} (if there's one) so
+ * that it survives restarts. Since a skipped file is never searched at the
+ * database, the index must forget the files whose objects could be deleted (see
+ * {@link #retainReached(Predicate)}). The index file also holds the identity of
+ * the database (see {@link #setDatabaseIdentity(Properties)}) and some of its
+ * objects are searched when it's loaded, so an index of another database or of
+ * a database that was emptied is discarded.
+ *
+ */
+public class RepositoryFileIndex {
+
+	private static final Logger logger = Logger.getLogger(RepositoryFileIndex.class.getName());
+
+	/**
+	 * Separator of the values at each line of the index file
+	 */
+	private static final String SEPARATOR = "\t";
+
+	/**
+	 * Prefix of the first line of the index file, the line holds the identity of
+	 * the database
+	 */
+	private static final String DATABASE_HEADER = "#database";
+
+	/**
+	 * Maximum number of indexed objects searched at the database when the index
+	 * is loaded
+	 */
+	private static final int LOAD_SAMPLE_SIZE = 16;
+
+	/**
+	 * Indexed files, the key is the absolute path of the file
+	 */
+	private static final Map<String, IndexEntry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Flag to load the index file only once
+	 */
+	private static boolean loaded = false;
+
+	/**
+	 * Identity of the database where the indexed objects are stored
+	 */
+	private static String databaseIdentity = "";
+
+	private RepositoryFileIndex() {
+		// No code
+	}
+
+	/**
+	 * Set the identity of the database from the data access configuration, an
+	 * index file with another identity isn't loaded. It must be set before the
+	 * first repository validation.
+	 *
+	 * @param dataAccessConfig
+	 */
+	public static void setDatabaseIdentity(Properties dataAccessConfig) {
+		StringBuilder sb = new StringBuilder();
+		new TreeMap<>(dataAccessConfig).forEach((key, value) -> sb.append(key).append('=').append(value).append('\n'));
+		databaseIdentity = Hex.format(Sha256.hash(sb.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Check if the <code>file</code> is indexed for the same repository and its
+	 * size and last modified time are the same as the ones indexed. A file of
+	 * another repository must be processed so that the object is related to the
+	 * repository.
+	 *
+	 * @param file
+	 * @param attrs
+	 * @param rpkiRepositoryId
+	 * @return <code>true</code> if the file hasn't changed since it was indexed
+	 */
+	public static boolean isUnchanged(Path file, BasicFileAttributes attrs, Long rpkiRepositoryId) {
+		load();
+		IndexEntry entry = entries.get(file.toAbsolutePath().toString());
+		return entry != null && entry.size == attrs.size() && entry.lastModified == attrs.lastModifiedTime().toMillis()
+				&& Objects.equals(entry.rpkiRepositoryId, rpkiRepositoryId);
+	}
+
+	/**
+	 * Create the entry of a file, the entry isn't indexed until it's added with
+	 * {@link #putAll(Map)}
+	 *
+	 * @param attrs
+	 * @param sha256
+	 * @param rpkiRepositoryId
+	 * @return the new {@link IndexEntry}
+	 */
+	public static IndexEntry createEntry(BasicFileAttributes attrs, byte[] sha256, Long rpkiRepositoryId) {
+		return new IndexEntry(attrs.size(), attrs.lastModifiedTime().toMillis(), Hex.format(sha256),
+				rpkiRepositoryId);
+	}
+
+	/**
+	 * Index the files, this must be done once the objects of the files are stored
+	 *
+	 * @param indexedFiles
+	 *            map of the file path and its entry
+	 */
+	public static void putAll(Map<Path, IndexEntry> indexedFiles) {
+		load();
+		indexedFiles.forEach((file, entry) -> entries.put(file.toAbsolutePath().toString(), entry));
+	}
+
+	/**
+	 * Remove the indexed files whose object wasn't reached, so that those files
+	 * are processed again at the next run. The index is saved if a file was
+	 * removed.
+	 *
+	 * @param isReached
+	 *            test of the hex SHA-256 of an indexed object
+	 * @return the number of removed files
+	 */
+	public static int retainReached(Predicate<String> isReached) {
+		load();
+		int removed = 0;
+		for (Iterator<IndexEntry> it = entries.values().iterator(); it.hasNext();) {
+			if (!isReached.test(it.next().sha256)) {
+				it.remove();
+				removed++;
+			}
+		}
+		if (removed > 0) {
+			save();
+		}
+		return removed;
+	}
+
+	/**
+	 * Load the index from its file (if there's one configured), this is done only
+	 * once
+	 */
+	private static synchronized void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		Path indexFile = getIndexFile();
+		if (indexFile == null || !Files.isRegularFile(indexFile)) {
+			return;
+		}
+		try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			if (line == null || !line.equals(DATABASE_HEADER + SEPARATOR + databaseIdentity)) {
+				logger.log(Level.INFO, "The repository file index belongs to another database, all the files will be "
+						+ "processed");
+				return;
+			}
+			while ((line = reader.readLine()) != null) {
+				// size, last modified, sha256, repository ID and path (the path is the last
+				// since it could contain the separator)
+				String[] values = line.split(SEPARATOR, 5);
+				if (values.length != 5) {
+					continue;
+				}
+				try {
+					Long rpkiRepositoryId = values[3].isEmpty() ? null : Long.valueOf(values[3]);
+					entries.put(values[4], new IndexEntry(Long.parseLong(values[0]), Long.parseLong(values[1]),
+							values[2], rpkiRepositoryId));
+				} catch (NumberFormatException e) {
+					logger.log(Level.FINE, "Invalid line at the repository file index: " + line);
+				}
+			}
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "The repository file index couldn't be loaded, all the files will be processed",
+					e);
+			entries.clear();
+			return;
+		}
+		if (!isStored(sample())) {
+			logger.log(Level.INFO, "The objects of the repository file index aren't stored at the database, all the "
+					+ "files will be processed");
+			entries.clear();
+			return;
+		}
+		logger.log(Level.INFO, "Loaded " + entries.size() + " entries from the repository file index");
+	}
+
+	/**
+	 * Take up to {@link #LOAD_SAMPLE_SIZE} entries spread through the index
+	 *
+	 * @return the sampled entries
+	 */
+	private static List<IndexEntry> sample() {
+		List<IndexEntry> sample = new ArrayList<>();
+		int step = Math.max(1, entries.size() / LOAD_SAMPLE_SIZE);
+		int i = 0;
+		for (IndexEntry entry : entries.values()) {
+			if (i++ % step == 0 && sample.size() < LOAD_SAMPLE_SIZE) {
+				sample.add(entry);
+			}
+		}
+		return sample;
+	}
+
+	/**
+	 * Check that the objects of the entries are stored at the database
+	 *
+	 * @param sample
+	 * @return <code>false</code> if an object isn't stored or the database
+	 *         couldn't be queried
+	 */
+	private static boolean isStored(List<IndexEntry> sample) {
+		try {
+			for (IndexEntry entry : sample) {
+				if (!DataAccessService.getRpkiObjectDAO().findBySha256(Hex.parse(entry.sha256)).isPresent()) {
+					return false;
+				}
+			}
+			return true;
+		} catch (ApiDataAccessException e) {
+			logger.log(Level.WARNING, "There was an error searching the indexed objects", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Save the index to its file (if there's one configured). The index is written
+	 * to a temporary file that replaces the current one, so that a failure
+	 * doesn't leave an incomplete index.
+	 */
+	public static synchronized void save() {
+		Path indexFile = getIndexFile();
+		if (indexFile == null) {
+			return;
+		}
+		Path tempFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+				writer.write(DATABASE_HEADER + SEPARATOR + databaseIdentity);
+				writer.newLine();
+				for (Map.Entry<String, IndexEntry> entry : entries.entrySet()) {
+					IndexEntry value = entry.getValue();
+					String rpkiRepositoryId = value.rpkiRepositoryId != null ? value.rpkiRepositoryId.toString() : "";
+					writer.write(value.size + SEPARATOR + value.lastModified + SEPARATOR + value.sha256 + SEPARATOR
+							+ rpkiRepositoryId + SEPARATOR + entry.getKey());
+					writer.newLine();
+				}
+			}
+			Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "The repository file index couldn't be saved", e);
+		}
+	}
+
+	private static Path getIndexFile() {
+		String location = ApiConfiguration.getRepositoryFileIndexLocation();
+		return location != null ? Paths.get(location) : null;
+	}
+
+	/**
+	 * Size, last modified time, hex SHA-256 and repository ID of an indexed file
+	 *
+	 */
+	public static class IndexEntry {
+
+		private final long size;
+		private final long lastModified;
+		private final String sha256;
+		private final Long rpkiRepositoryId;
+
+		private IndexEntry(long size, long lastModified, String sha256, Long rpkiRepositoryId) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.sha256 = sha256;
+			this.rpkiRepositoryId = rpkiRepositoryId;
+		}
+
+		public String getSha256() {
+			return sha256;
+		}
+	}
+}
@@ -0,0 +1,481 @@
+package mx.nic.lab.rpki.api.validation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import mx.nic.lab.rpki.api.config.ApiConfiguration;
+import mx.nic.lab.rpki.api.util.Hex;
+import mx.nic.lab.rpki.api.util.MappedFiles;
+import mx.nic.lab.rpki.api.validation.RepositoryFileIndex.IndexEntry;
+import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
+import mx.nic.lab.rpki.db.exception.ErrorCodes;
+import mx.nic.lab.rpki.db.pojo.RpkiObject;
+import mx.nic.lab.rpki.db.pojo.ValidationRun;
+import mx.nic.lab.rpki.db.util.Sha256;
+import net.ripe.rpki.commons.crypto.CertificateRepositoryObject;
+import net.ripe.rpki.commons.crypto.util.CertificateRepositoryObjectFactory;
+import net.ripe.rpki.commons.validation.ValidationResult;
+
+/**
+ * Pipeline to store the objects of the rsync repositories: the repository walk
+ * submits each file (see {@link #submit(Path, BasicFileAttributes, String, Long)})
+ * to a bounded queue, a pool of workers reads, hashes and parses the files, and
+ * a single writer stores the new objects in batches using
+ * {@link mx.nic.lab.rpki.db.spi.RpkiObjectDAO#bulkCreate(Set)}.<br>
+ * <br>
+ * The number of workers, the size of the queues and the size of the batches
+ * are configured at {@link ApiConfiguration}. If the workers queue is full, the
+ * file is processed by the walking thread, so the walk can't get too far ahead
+ * of the workers.<br>
+ * <br>
+ * The objects are only modified by the writer: if a worker finds an object that
+ * already exists (at the database or sent by another worker), it sends the
+ * location and repository to the writer, who adds them to the object before or
+ * after it's stored. If a batch can't be stored, it's split in halves that are
+ * stored separately, so only the objects that fail are left out. An object
+ * that fails because it was already stored (e.g. by the pipeline of another
+ * TAL validated at the same time) is taken from the database instead, and the
+ * repositories where it was found are added to it.
+ *
+ */
+public class RepositoryObjectsPipeline extends ValidationService {
+
+	private static final Logger logger = Logger.getLogger(RepositoryObjectsPipeline.class.getName());
+
+	/**
+	 * Marks the end of the files sent to the writer
+	 */
+	private static final StoredFile END = new StoredFile(null, null, null, null, null, null);
+
+	/**
+	 * Time to wait for space at the writer queue before checking that the writer
+	 * is still running
+	 */
+	private static final long SEND_TIMEOUT_SECONDS = 1L;
+
+	/**
+	 * Store of the objects at the DA implementation
+	 */
+	private static final ObjectStore DAO_STORE = new ObjectStore() {
+
+		@Override
+		public Optional<RpkiObject> findBySha256(byte[] sha256) throws ApiDataAccessException {
+			return getRpkiObjectDAO().findBySha256(sha256);
+		}
+
+		@Override
+		public void bulkCreate(Set<RpkiObject> objects) throws ApiDataAccessException {
+			getRpkiObjectDAO().bulkCreate(objects);
+		}
+
+		@Override
+		public void addRpkiRepository(RpkiObject object, Long rpkiRepositoryId) throws ApiDataAccessException {
+			getRpkiObjectDAO().addRpkiRepository(object, rpkiRepositoryId);
+		}
+	};
+
+	private final ValidationRun validationRun;
+	private final ValidationResult validationResult;
+	private final ObjectStore store;
+	private final Map<String, RpkiObject> objectsBySha256 = new ConcurrentHashMap<>();
+	private final Set<String> storedObjects = ConcurrentHashMap.newKeySet();
+	private final ExecutorService workers;
+	private final BlockingQueue<StoredFile> storedFiles;
+	private final int batchSize;
+	private final Thread writer;
+
+	// State of the writer, only used by its thread
+	private final Map<String, PendingObject> batch = new LinkedHashMap<>();
+	private final Map<String, List<StoredFile>> deferredLocations = new HashMap<>();
+	private final Map<Path, IndexEntry> indexedFiles = new HashMap<>();
+
+	/**
+	 * Create the pipeline and start its writer, {@link #finish()} must be called
+	 * once all the files are submitted
+	 *
+	 * @param validationRun
+	 * @param validationResult
+	 *            result where the results of each file are merged
+	 */
+	public RepositoryObjectsPipeline(ValidationRun validationRun, ValidationResult validationResult) {
+		this(validationRun, validationResult, DAO_STORE, ApiConfiguration.getRepositoryIngestionWorkers(),
+				ApiConfiguration.getRepositoryIngestionQueueSize(), ApiConfiguration.getRepositoryIngestionBatchSize());
+	}
+
+	RepositoryObjectsPipeline(ValidationRun validationRun, ValidationResult validationResult, ObjectStore store,
+			int workersCount, int queueSize, int batchSize) {
+		this.validationRun = validationRun;
+		this.validationResult = validationResult;
+		this.store = store;
+		this.workers = new ThreadPoolExecutor(workersCount, workersCount, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize), new ThreadPoolExecutor.CallerRunsPolicy());
+		this.storedFiles = new ArrayBlockingQueue<>(queueSize);
+		this.batchSize = batchSize;
+		this.writer = new Thread(this::writeObjects, "rpki-objects-writer");
+		this.writer.start();
+	}
+
+	/**
+	 * Submit a file to be processed by the workers
+	 *
+	 * @param file
+	 * @param attrs
+	 * @param location
+	 *            location (URI) of the file at the repository
+	 * @param rpkiRepositoryId
+	 *            ID of the repository where the file is located
+	 */
+	public void submit(Path file, BasicFileAttributes attrs, String location, Long rpkiRepositoryId) {
+		workers.execute(() -> process(file, attrs, location, rpkiRepositoryId));
+	}
+
+	/**
+	 * Wait for the workers to process all the submitted files and for the writer
+	 * to store all the new objects
+	 */
+	public void finish() {
+		workers.shutdown();
+		try {
+			while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+				logger.log(Level.FINE, "Waiting for the repository objects to be processed");
+			}
+			send(END);
+			writer.join();
+		} catch (InterruptedException e) {
+			logger.log(Level.WARNING, "Interrupted while waiting for the repository objects to be stored", e);
+			workers.shutdownNow();
+			writer.interrupt();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Hash, read and parse the file. If the object already exists (at the database
+	 * or processed by another worker) then its location and repository are sent
+	 * to the writer, otherwise the new object is sent to the writer.<br>
+	 * <br>
+	 * The file is hashed without copying it to the heap (see
+	 * {@link MappedFiles#sha256(Path)}), its content is read only if it must be
+	 * parsed.
+	 *
+	 * @param file
+	 * @param attrs
+	 * @param location
+	 * @param rpkiRepositoryId
+	 */
+	private void process(Path file, BasicFileAttributes attrs, String location, Long rpkiRepositoryId) {
+		logger.log(Level.FINE, "at file " + file + " in location " + location);
+		ValidationResult fileResult = ValidationResult.withLocation(location);
+		try {
+			byte[] sha256 = MappedFiles.sha256(file);
+			String hexSha256 = Hex.format(sha256);
+			IndexEntry indexEntry = RepositoryFileIndex.createEntry(attrs, sha256, rpkiRepositoryId);
+
+			// The database is queried without holding any lock of the map
+			RpkiObject existing = objectsBySha256.get(hexSha256);
+			if (existing == null) {
+				try {
+					existing = store.findBySha256(sha256).orElse(null);
+				} catch (ApiDataAccessException e) {
+					logger.log(Level.WARNING, "There was an error fetching the object by its sha256 " + hexSha256, e);
+					return;
+				}
+				if (existing != null) {
+					storedObjects.add(hexSha256);
+					objectsBySha256.putIfAbsent(hexSha256, existing);
+				}
+			}
+			if (existing != null) {
+				send(new StoredFile(file, null, indexEntry, hexSha256, location, rpkiRepositoryId));
+				return;
+			}
+
+			byte[] content = Files.readAllBytes(file);
+			if (!Arrays.equals(sha256, Sha256.hash(content))) {
+				// The file changed after it was hashed, it will be processed at the next run
+				logger.log(Level.INFO, "The file " + file + " changed while it was processed, skipping it");
+				return;
+			}
+			CertificateRepositoryObject obj = CertificateRepositoryObjectFactory
+					.createCertificateRepositoryObject(content, fileResult);
+			synchronized (validationRun) {
+				validationRun.addChecks(fileResult);
+			}
+			if (fileResult.hasFailureForCurrentLocation()) {
+				logger.log(Level.INFO, "parsing " + file + " failed: " + fileResult.getFailuresForCurrentLocation());
+				return;
+			}
+
+			RpkiObject object = new RpkiObject(location, rpkiRepositoryId, obj);
+			// If another worker got the same object first, only the location is sent
+			RpkiObject previous = objectsBySha256.putIfAbsent(hexSha256, object);
+			send(new StoredFile(file, previous == null ? object : null, indexEntry, hexSha256, location,
+					rpkiRepositoryId));
+		} catch (IOException e) {
+			fileResult.error(ErrorCodes.RSYNC_REPOSITORY_IO, e.toString(), ExceptionUtils.getStackTrace(e));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			synchronized (validationResult) {
+				validationResult.addAll(fileResult);
+			}
+		}
+	}
+
+	/**
+	 * Send the file to the writer, waiting for space at the queue only while the
+	 * writer is running
+	 *
+	 * @param storedFile
+	 * @throws InterruptedException
+	 */
+	private void send(StoredFile storedFile) throws InterruptedException {
+		while (!storedFiles.offer(storedFile, SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+			if (!writer.isAlive()) {
+				logger.log(Level.WARNING, "The writer isn't running, the file " + storedFile.file + " won't be stored");
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Writer loop: take the processed files and store the new objects in batches,
+	 * until the {@link #END} mark is taken. An error with a file is logged and the
+	 * loop continues, so that the workers are never left waiting for the writer.
+	 */
+	private void writeObjects() {
+		try {
+			StoredFile storedFile;
+			while ((storedFile = storedFiles.take()) != END) {
+				try {
+					accept(storedFile);
+					if (batch.size() >= batchSize) {
+						writeBatch();
+					}
+				} catch (RuntimeException e) {
+					logger.log(Level.SEVERE, "There was an error storing the file " + storedFile.file, e);
+				}
+			}
+			writeBatch();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			logger.log(Level.SEVERE, "There was an error storing the last RPKI objects", e);
+		}
+		if (!deferredLocations.isEmpty()) {
+			logger.log(Level.INFO, deferredLocations.size() + " objects weren't stored, their files will be "
+					+ "processed at the next run");
+		}
+	}
+
+	/**
+	 * Add a new object to the batch, or the location of an object that already
+	 * exists
+	 *
+	 * @param storedFile
+	 */
+	private void accept(StoredFile storedFile) {
+		if (storedFile.object == null) {
+			addLocation(storedFile);
+			return;
+		}
+		PendingObject pending = new PendingObject(storedFile.hexSha256, storedFile.object);
+		pending.files.put(storedFile.file, storedFile.indexEntry);
+		pending.rpkiRepositoryIds.add(storedFile.rpkiRepositoryId);
+		batch.put(storedFile.hexSha256, pending);
+		// Locations sent by other workers before the object arrived
+		List<StoredFile> deferred = deferredLocations.remove(storedFile.hexSha256);
+		if (deferred != null) {
+			deferred.forEach(this::addLocation);
+		}
+	}
+
+	/**
+	 * Add the location and repository of the file to the object. If the object is
+	 * stored, the repository is also added at the database; if it's still
+	 * waiting to be sent by another worker, the location is added when it
+	 * arrives.
+	 *
+	 * @param storedFile
+	 */
+	private void addLocation(StoredFile storedFile) {
+		PendingObject pending = batch.get(storedFile.hexSha256);
+		if (pending != null) {
+			pending.object.addLocation(storedFile.location);
+			pending.object.addRpkiRepository(storedFile.rpkiRepositoryId);
+			pending.files.put(storedFile.file, storedFile.indexEntry);
+			pending.rpkiRepositoryIds.add(storedFile.rpkiRepositoryId);
+			return;
+		}
+		RpkiObject existing = objectsBySha256.get(storedFile.hexSha256);
+		if (!storedObjects.contains(storedFile.hexSha256)) {
+			deferredLocations.computeIfAbsent(storedFile.hexSha256, k -> new ArrayList<>()).add(storedFile);
+			return;
+		}
+		existing.addLocation(storedFile.location);
+		if (existing.addRpkiRepository(storedFile.rpkiRepositoryId)) {
+			try {
+				store.addRpkiRepository(existing, storedFile.rpkiRepositoryId);
+			} catch (ApiDataAccessException e) {
+				// The file isn't indexed, so it's processed again at the next run
+				logger.log(Level.WARNING, "There was an error updating the object " + existing, e);
+				return;
+			}
+		}
+		indexedFiles.put(storedFile.file, storedFile.indexEntry);
+	}
+
+	/**
+	 * Store the batch of new objects, the files are indexed only if their objects
+	 * were stored. The batch and the indexed files are cleared at the end.
+	 */
+	private void writeBatch() {
+		try {
+			if (!batch.isEmpty()) {
+				storeObjects(new ArrayList<>(batch.values()));
+			}
+			RepositoryFileIndex.putAll(indexedFiles);
+		} finally {
+			batch.clear();
+			indexedFiles.clear();
+		}
+	}
+
+	/**
+	 * Store the objects at once, if that fails they're split in halves that are
+	 * stored separately until the objects that fail are found
+	 *
+	 * @param objects
+	 * @return the number of stored objects
+	 */
+	private int storeObjects(List<PendingObject> objects) {
+		Set<RpkiObject> toStore = new HashSet<>();
+		objects.forEach(pending -> toStore.add(pending.object));
+		try {
+			store.bulkCreate(toStore);
+		} catch (ApiDataAccessException | RuntimeException e) {
+			if (objects.size() == 1) {
+				if (useStoredObject(objects.get(0))) {
+					return 1;
+				}
+				logger.log(Level.SEVERE, "There was an error storing the RPKI object " + objects.get(0).object, e);
+				return 0;
+			}
+			logger.log(Level.WARNING, "There was an error storing " + objects.size()
+					+ " RPKI objects, they'll be stored in halves", e);
+			int half = objects.size() / 2;
+			return storeObjects(objects.subList(0, half)) + storeObjects(objects.subList(half, objects.size()));
+		}
+		for (PendingObject pending : objects) {
+			storedObjects.add(pending.hexSha256);
+			indexedFiles.putAll(pending.files);
+		}
+		return objects.size();
+	}
+
+	/**
+	 * Use the stored object instead of the one that couldn't be stored (if it was
+	 * stored in the meantime), the repositories where the object was found are
+	 * added to the stored object
+	 *
+	 * @param pending
+	 * @return <code>true</code> if the object is stored
+	 */
+	private boolean useStoredObject(PendingObject pending) {
+		try {
+			RpkiObject stored = store.findBySha256(Hex.parse(pending.hexSha256)).orElse(null);
+			if (stored == null) {
+				return false;
+			}
+			for (Long rpkiRepositoryId : pending.rpkiRepositoryIds) {
+				if (stored.addRpkiRepository(rpkiRepositoryId)) {
+					store.addRpkiRepository(stored, rpkiRepositoryId);
+				}
+			}
+			objectsBySha256.put(pending.hexSha256, stored);
+			storedObjects.add(pending.hexSha256);
+			indexedFiles.putAll(pending.files);
+			return true;
+		} catch (ApiDataAccessException e) {
+			logger.log(Level.WARNING, "There was an error updating the stored object " + pending.hexSha256, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Operations used to store the objects, the DA implementation is used unless
+	 * another store is given (e.g. to test the pipeline)
+	 *
+	 */
+	interface ObjectStore {
+
+		Optional<RpkiObject> findBySha256(byte[] sha256) throws ApiDataAccessException;
+
+		void bulkCreate(Set<RpkiObject> objects) throws ApiDataAccessException;
+
+		void addRpkiRepository(RpkiObject object, Long rpkiRepositoryId) throws ApiDataAccessException;
+	}
+
+	/**
+	 * New object at the batch, the files and the repositories where it was found
+	 *
+	 */
+	private static class PendingObject {
+
+		private final String hexSha256;
+		private final RpkiObject object;
+		private final Map<Path, IndexEntry> files = new HashMap<>();
+		private final Set<Long> rpkiRepositoryIds = new HashSet<>();
+
+		public PendingObject(String hexSha256, RpkiObject object) {
+			this.hexSha256 = hexSha256;
+			this.object = object;
+		}
+	}
+
+	/**
+	 * File processed by a worker, the object is <code>null</code> if it already
+	 * exists; in that case the location and repository must be added to it
+	 *
+	 */
+	private static class StoredFile {
+
+		private final Path file;
+		private final RpkiObject object;
+		private final IndexEntry indexEntry;
+		private final String hexSha256;
+		private final String location;
+		private final Long rpkiRepositoryId;
+
+		public StoredFile(Path file, RpkiObject object, IndexEntry indexEntry, String hexSha256, String location,
+				Long rpkiRepositoryId) {
+			this.file = file;
+			this.object = object;
+			this.indexEntry = indexEntry;
+			this.hexSha256 = hexSha256;
+			this.location = location;
+			this.rpkiRepositoryId = rpkiRepositoryId;
+		}
+	}
+}
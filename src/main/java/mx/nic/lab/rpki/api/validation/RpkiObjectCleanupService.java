@@ -30,12 +30,19 @@
 package mx.nic.lab.rpki.api.validation;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import mx.nic.lab.rpki.api.config.ApiConfiguration;
+import mx.nic.lab.rpki.api.util.LongBitmap;
 import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
 import mx.nic.lab.rpki.db.pojo.RpkiObject;
 import mx.nic.lab.rpki.db.pojo.Tal;
@@ -54,49 +61,130 @@ public class RpkiObjectCleanupService extends ValidationService {
 	/**
 	 * Marks all RPKI objects that are reachable from a trust anchor by following
 	 * the entries in the manifests. Objects that are no longer reachable will be
-	 * deleted after a configurable grace duration.
+	 * deleted after a configurable grace duration.<br>
+	 * <br>
+	 * Each trust anchor and each CA subtree is traced as a {@link TraceTask} at
+	 * the pool of {@link CertificateTreeValidationService#getPool()}, or
+	 * sequentially if there's no pool.
 	 */
 	public static long cleanupRpkiObjects() {
 		Instant now = Instant.now();
-		Set<RpkiObject> reachedObjects = new HashSet<>();
+		ReachedObjects reachedObjects = new ReachedObjects(ApiConfiguration.getRpkiObjectCleanupBatchSize());
+		List<TraceTask> trustAnchorTasks = new ArrayList<>();
 		try {
+			ForkJoinPool pool = CertificateTreeValidationService.getPool();
 			for (Tal trustAnchor : getTalDAO().getAll(null).getResults()) {
 				logger.info("tracing objects for trust anchor " + trustAnchor.getName() + " with id "
 						+ trustAnchor.getId());
 				X509ResourceCertificate resourceCertificate = trustAnchor.getCertificate();
-				if (resourceCertificate != null) {
-					traceCertificateAuthority(now, resourceCertificate, reachedObjects);
+				if (resourceCertificate == null) {
+					continue;
+				}
+				if (pool == null) {
+					traceCertificateAuthority(now, resourceCertificate, reachedObjects, null);
+				} else {
+					TraceTask task = new TraceTask(now, trustAnchor.getName(), resourceCertificate, reachedObjects);
+					pool.execute(task);
+					trustAnchorTasks.add(task);
+				}
+			}
+			for (TraceTask task : trustAnchorTasks) {
+				task.join();
+				if (task.getError() != null) {
+					throw task.getError();
 				}
 			}
 		} catch (ApiDataAccessException e) {
 			logger.log(Level.SEVERE, "There was an error getting the TALs, exiting cleanup", e);
+			// Let the running tasks finish before exiting
+			trustAnchorTasks.forEach(TraceTask::quietlyJoin);
 			return -1L;
 		}
-		try {
-			getRpkiObjectDAO().updateReachedObjects(reachedObjects);
-		} catch (ApiDataAccessException e) {
-			logger.log(Level.SEVERE, "There was an error updating the reached objects, exiting cleanup", e);
+		reachedObjects.flush();
+		if (reachedObjects.getError() != null) {
+			logger.log(Level.SEVERE, "There was an error updating the reached objects, exiting cleanup",
+					reachedObjects.getError());
 			return -1L;
 		}
+		logger.info("Marked " + reachedObjects.getCount() + " RPKI objects as reachable");
 
-		return deleteUnreachableObjects(now);
+		return deleteUnreachableObjects(now, reachedObjects);
 	}
 
-	private static long deleteUnreachableObjects(Instant now) {
+	/**
+	 * Delete the objects that haven't been reached since the grace duration, in
+	 * chunks of at most {@link ApiConfiguration#getRpkiObjectCleanupDeleteSize()}
+	 * objects with a pause between each one so that other database operations can
+	 * be served. Each chunk is selected by ID, so the objects that share an
+	 * instant (e.g. the objects of a removed TAL) are split as well.
+	 * 
+	 * @param now
+	 *            instant of the current mark phase
+	 * @param reachedObjects
+	 *            objects reached at the current mark phase
+	 * @return the number of deleted objects, or -1 if there was an error
+	 */
+	private static synchronized long deleteUnreachableObjects(Instant now, ReachedObjects reachedObjects) {
 		Instant unreachableSince = now.minus(getRpkiObjectCleanupGrace());
+		int chunkSize = ApiConfiguration.getRpkiObjectCleanupDeleteSize();
+		long pause = ApiConfiguration.getRpkiObjectCleanupDeletePause();
 		long count = 0;
+		int chunks = 0;
 		try {
-			count = getRpkiObjectDAO().deleteUnreachableObjects(unreachableSince);
+			while (true) {
+				List<Long> ids = getRpkiObjectDAO().findUnreachableObjectIds(unreachableSince, chunkSize);
+				if (ids.isEmpty()) {
+					break;
+				}
+				if (chunks > 0 && pause > 0) {
+					Thread.sleep(pause);
+				}
+				int deleted = getRpkiObjectDAO().bulkDelete(new HashSet<>(ids));
+				count += deleted;
+				chunks++;
+				logger.log(Level.INFO, "Removed " + deleted + " RPKI objects not marked reachable since "
+						+ unreachableSince + " (chunk " + chunks + ", " + count + " removed so far)");
+				if (ids.size() < chunkSize || deleted == 0) {
+					// Nothing left, or the objects couldn't be deleted (avoid looping
+					// over the same chunk)
+					break;
+				}
+			}
 		} catch (ApiDataAccessException e) {
 			logger.log(Level.SEVERE, "There was an error deleting the unreachable objects, exiting cleanup", e);
-			return -1L;
+			count = -1L;
+		} catch (InterruptedException e) {
+			logger.log(Level.WARNING, "Interrupted while deleting the unreachable objects, exiting cleanup", e);
+			Thread.currentThread().interrupt();
+		}
+		if (count >= 0) {
+			logger.info("Removed " + count + " RPKI objects that have not been marked reachable since "
+					+ unreachableSince + " in " + chunks + " chunks");
+		}
+		// The removed objects could belong to files that are still indexed as stored,
+		// the files of the objects that weren't reached at this mark phase are
+		// processed again
+		if (count != 0) {
+			int removedFiles = RepositoryFileIndex.retainReached(reachedObjects::isReached);
+			logger.log(Level.INFO, "Removed " + removedFiles + " files of unreached objects from the file index");
 		}
-		logger.info("Removed " + count + " RPKI objects that have not been marked reachable since " + unreachableSince);
 		return count;
 	}
 
+	/**
+	 * Trace the manifest of the CA and its entries. If <code>childTasks</code>
+	 * isn't <code>null</code>, each child CA found is traced as a
+	 * {@link TraceTask} forked at the current pool and added to the list, the
+	 * caller must join them.
+	 * 
+	 * @param now
+	 * @param resourceCertificate
+	 * @param reachedObjects
+	 * @param childTasks
+	 * @throws ApiDataAccessException
+	 */
 	private static void traceCertificateAuthority(Instant now, X509ResourceCertificate resourceCertificate,
-			Set<RpkiObject> reachedObjects) throws ApiDataAccessException {
+			ReachedObjects reachedObjects, List<TraceTask> childTasks) throws ApiDataAccessException {
 		if (resourceCertificate == null || resourceCertificate.getManifestUri() == null) {
 			return;
 		}
@@ -104,39 +192,38 @@ public class RpkiObjectCleanupService extends ValidationService {
 		Optional<RpkiObject> maybeManifest = getRpkiObjectDAO().findLatestByTypeAndAuthorityKeyIdentifier(
 				RpkiObject.Type.MFT, resourceCertificate.getSubjectKeyIdentifier());
 		maybeManifest.ifPresent(manifest -> {
-			markAndTraceObject(now, "manifest.mft", manifest, reachedObjects);
+			markAndTraceObject(now, "manifest.mft", manifest, reachedObjects, childTasks);
 		});
 	}
 
 	private static void markAndTraceObject(Instant now, String name, RpkiObject rpkiObject,
-			Set<RpkiObject> reachedObjects) {
-		// Compare object instance identity to see if we've already visited
-		// the `rpkiObject` in the current run.
-		if (now == rpkiObject.getLastMarkedReachableAt()) {
+			ReachedObjects reachedObjects, List<TraceTask> childTasks) {
+		// Check if we've already visited the `rpkiObject` in the current run
+		if (!reachedObjects.mark(now, rpkiObject)) {
 			logger.log(Level.FINE, "object already marked, skipping " + rpkiObject);
+			return;
 		}
 
-		rpkiObject.markReachable(now);
-		reachedObjects.add(rpkiObject);
 		switch (rpkiObject.getType()) {
 		case MFT:
-			traceManifest(now, name, rpkiObject, reachedObjects);
+			traceManifest(now, name, rpkiObject, reachedObjects, childTasks);
 			break;
 		case CER:
-			traceCaCertificate(now, name, rpkiObject, reachedObjects);
+			traceCaCertificate(now, name, rpkiObject, reachedObjects, childTasks);
 			break;
 		default:
 			break;
 		}
 	}
 
-	private static void traceManifest(Instant now, String name, RpkiObject manifest, Set<RpkiObject> reachedObjects) {
+	private static void traceManifest(Instant now, String name, RpkiObject manifest, ReachedObjects reachedObjects,
+			List<TraceTask> childTasks) {
 		try {
-			getRpkiObjectDAO().findCertificateRepositoryObject(manifest.getId(), ManifestCms.class,
+			DecodedObjectCache.findCertificateRepositoryObject(manifest, ManifestCms.class,
 					ValidationResult.withLocation(name)).ifPresent(manifestCms -> {
 						try {
 							getRpkiObjectDAO().findObjectsInManifest(manifestCms).forEach((entry, rpkiObject) -> {
-								markAndTraceObject(now, entry, rpkiObject, reachedObjects);
+								markAndTraceObject(now, entry, rpkiObject, reachedObjects, childTasks);
 							});
 						} catch (ApiDataAccessException e) {
 							logger.log(Level.WARNING,
@@ -149,17 +236,23 @@ public class RpkiObjectCleanupService extends ValidationService {
 	}
 
 	private static void traceCaCertificate(Instant now, String name, RpkiObject caCertificate,
-			Set<RpkiObject> reachedObjects) {
+			ReachedObjects reachedObjects, List<TraceTask> childTasks) {
 		try {
-			getRpkiObjectDAO().findCertificateRepositoryObject(caCertificate.getId(), X509ResourceCertificate.class,
+			DecodedObjectCache.findCertificateRepositoryObject(caCertificate, X509ResourceCertificate.class,
 					ValidationResult.withLocation(name)).ifPresent(certificate -> {
-						if (certificate.isCa() && certificate.getManifestUri() != null) {
-							try {
-								traceCertificateAuthority(now, certificate, reachedObjects);
-							} catch (ApiDataAccessException e) {
-								logger.log(Level.WARNING, "There was an error tracing the cert authority for " + name,
-										e);
-							}
+						if (!certificate.isCa() || certificate.getManifestUri() == null) {
+							return;
+						}
+						if (childTasks != null) {
+							TraceTask childTask = new TraceTask(now, name, certificate, reachedObjects);
+							childTask.fork();
+							childTasks.add(childTask);
+							return;
+						}
+						try {
+							traceCertificateAuthority(now, certificate, reachedObjects, null);
+						} catch (ApiDataAccessException e) {
+							logger.log(Level.WARNING, "There was an error tracing the cert authority for " + name, e);
 						}
 					});
 		} catch (ApiDataAccessException e) {
@@ -167,4 +260,168 @@ public class RpkiObjectCleanupService extends ValidationService {
 		}
 	}
 
+	/**
+	 * Tracing of a CA subtree as a {@link RecursiveAction}, the child CAs are
+	 * traced as forked tasks that are joined before the task completes. An error
+	 * tracing the CA is kept so that the caller decides what to do with it.
+	 *
+	 */
+	private static class TraceTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Instant now;
+		private final String name;
+		private final X509ResourceCertificate certificate;
+		private final ReachedObjects reachedObjects;
+		private ApiDataAccessException error;
+
+		public TraceTask(Instant now, String name, X509ResourceCertificate certificate,
+				ReachedObjects reachedObjects) {
+			this.now = now;
+			this.name = name;
+			this.certificate = certificate;
+			this.reachedObjects = reachedObjects;
+		}
+
+		@Override
+		protected void compute() {
+			List<TraceTask> childTasks = new ArrayList<>();
+			try {
+				traceCertificateAuthority(now, certificate, reachedObjects, childTasks);
+			} catch (ApiDataAccessException e) {
+				error = e;
+			}
+			for (TraceTask childTask : childTasks) {
+				childTask.join();
+				if (childTask.getError() != null) {
+					logger.log(Level.WARNING, "There was an error tracing the cert authority for " + childTask.name,
+							childTask.getError());
+				}
+			}
+		}
+
+		public ApiDataAccessException getError() {
+			return error;
+		}
+	}
+
+	/**
+	 * Objects reached during the mark phase. Only the IDs of the reached objects
+	 * are kept for the whole phase (see {@link LongBitmap}), the objects are
+	 * persisted in chunks as they're reached so that they can be released.<br>
+	 * <br>
+	 * If a chunk can't be persisted, the error is kept and no more chunks are
+	 * persisted, the cleanup must not delete anything in that case.<br>
+	 * <br>
+	 * The objects can be marked by several {@link TraceTask}s at once: the IDs
+	 * are added atomically so each object is traced only once, and each chunk is
+	 * taken under a lock but persisted outside of it.<br>
+	 * <br>
+	 * The first 8 bytes of the SHA-256 of each reached object are also kept, so
+	 * that the files of the unreached objects can be removed from the
+	 * {@link RepositoryFileIndex} (see {@link #isReached(String)}).
+	 *
+	 */
+	private static class ReachedObjects {
+
+		private final LongBitmap reachedIds = new LongBitmap();
+		private final int chunkSize;
+		private Set<RpkiObject> pending = new HashSet<>();
+		private long[] reachedSha256 = new long[1024];
+		private int reachedSha256Count = 0;
+		private volatile ApiDataAccessException error;
+
+		public ReachedObjects(int chunkSize) {
+			this.chunkSize = chunkSize;
+		}
+
+		/**
+		 * Mark the object as reached at <code>now</code>
+		 * 
+		 * @param now
+		 * @param rpkiObject
+		 * @return <code>false</code> if the object was already reached
+		 */
+		public boolean mark(Instant now, RpkiObject rpkiObject) {
+			if (!reachedIds.add(rpkiObject.getId())) {
+				return false;
+			}
+			rpkiObject.markReachable(now);
+			Set<RpkiObject> chunk = null;
+			synchronized (this) {
+				pending.add(rpkiObject);
+				if (reachedSha256Count == reachedSha256.length) {
+					reachedSha256 = Arrays.copyOf(reachedSha256, reachedSha256Count * 2);
+				}
+				reachedSha256[reachedSha256Count++] = sha256Prefix(rpkiObject.getSha256());
+				if (pending.size() >= chunkSize) {
+					chunk = takePending();
+				}
+			}
+			if (chunk != null) {
+				persist(chunk);
+			}
+			return true;
+		}
+
+		/**
+		 * Persist the pending reached objects, this must be called once the mark
+		 * phase ends
+		 */
+		public void flush() {
+			Set<RpkiObject> chunk;
+			synchronized (this) {
+				chunk = takePending();
+				Arrays.sort(reachedSha256, 0, reachedSha256Count);
+			}
+			persist(chunk);
+		}
+
+		/**
+		 * Check if an object was reached, only valid after {@link #flush()}. Only
+		 * the first 8 bytes of the SHA-256 are compared, so an unreached object is
+		 * rarely taken as reached.
+		 *
+		 * @param hexSha256
+		 * @return <code>true</code> if the object was reached
+		 */
+		public synchronized boolean isReached(String hexSha256) {
+			long prefix = Long.parseUnsignedLong(hexSha256.substring(0, 16), 16);
+			return Arrays.binarySearch(reachedSha256, 0, reachedSha256Count, prefix) >= 0;
+		}
+
+		private static long sha256Prefix(byte[] sha256) {
+			long prefix = 0;
+			for (int i = 0; i < 8; i++) {
+				prefix = (prefix << 8) | (sha256[i] & 0xFF);
+			}
+			return prefix;
+		}
+
+		private Set<RpkiObject> takePending() {
+			Set<RpkiObject> chunk = pending;
+			pending = new HashSet<>();
+			return chunk;
+		}
+
+		private void persist(Set<RpkiObject> chunk) {
+			if (error != null || chunk.isEmpty()) {
+				return;
+			}
+			try {
+				getRpkiObjectDAO().updateReachedObjects(chunk);
+			} catch (ApiDataAccessException e) {
+				error = e;
+			}
+		}
+
+		public long getCount() {
+			return reachedIds.getCardinality();
+		}
+
+		public ApiDataAccessException getError() {
+			return error;
+		}
+	}
 }
@@ -47,16 +47,11 @@ import java.util.stream.Stream;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
-import mx.nic.lab.rpki.api.util.Hex;
 import mx.nic.lab.rpki.api.util.RsyncUtils;
 import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
 import mx.nic.lab.rpki.db.exception.ErrorCodes;
-import mx.nic.lab.rpki.db.pojo.RpkiObject;
 import mx.nic.lab.rpki.db.pojo.RpkiRepository;
 import mx.nic.lab.rpki.db.pojo.ValidationRun;
-import mx.nic.lab.rpki.db.util.Sha256;
-import net.ripe.rpki.commons.crypto.CertificateRepositoryObject;
-import net.ripe.rpki.commons.crypto.util.CertificateRepositoryObjectFactory;
 import net.ripe.rpki.commons.validation.ValidationLocation;
 import net.ripe.rpki.commons.validation.ValidationResult;
 
@@ -71,7 +66,6 @@ public class RpkiRepositoryValidationService extends ValidationService {
 	public static void validateRsyncRepositories(Long talId, ValidationRun validationRun) {
 		logger.log(Level.INFO, "Validating repositories related to TAL " + talId);
 		Set<Long> affectedTrustAnchors = new HashSet<>();
-		final Map<String, RpkiObject> objectsBySha256 = new HashMap<>();
 		final Map<URI, RpkiRepository> fetchedLocations = new HashMap<>();
 		Stream<RpkiRepository> repositories = null;
 		try {
@@ -80,12 +74,22 @@ public class RpkiRepositoryValidationService extends ValidationService {
 			logger.log(Level.WARNING, "There was an error getting the repositories, exiting repository validation", e);
 			return;
 		}
-		ValidationResult results = repositories.map((repository) -> processRsyncRepository(affectedTrustAnchors,
-				validationRun, fetchedLocations, objectsBySha256, repository))
-				.collect(() -> ValidationResult.withLocation("placeholder"), ValidationResult::addAll,
-						ValidationResult::addAll);
+		// The objects of all the repositories are processed by the same pipeline
+		ValidationResult objectResults = ValidationResult.withLocation("placeholder");
+		RepositoryObjectsPipeline pipeline = new RepositoryObjectsPipeline(validationRun, objectResults);
+		ValidationResult results;
+		try {
+			results = repositories.map((repository) -> processRsyncRepository(affectedTrustAnchors, validationRun,
+					fetchedLocations, pipeline, repository))
+					.collect(() -> ValidationResult.withLocation("placeholder"), ValidationResult::addAll,
+							ValidationResult::addAll);
+		} finally {
+			pipeline.finish();
+		}
+		results.addAll(objectResults);
 
 		validationRun.completeWith(results);
+		RepositoryFileIndex.save();
 		affectedTrustAnchors.forEach((trustAnchorId) -> {
 			CertificateTreeValidationService.validate(trustAnchorId, validationRun);
 		});
@@ -96,8 +100,7 @@ public class RpkiRepositoryValidationService extends ValidationService {
 	}
 
 	private static ValidationResult processRsyncRepository(Set<Long> affectedTrustAnchors, ValidationRun validationRun,
-			Map<URI, RpkiRepository> fetchedLocations, Map<String, RpkiObject> objectsBySha256,
-			RpkiRepository repository) {
+			Map<URI, RpkiRepository> fetchedLocations, RepositoryObjectsPipeline pipeline, RpkiRepository repository) {
 
 		final ValidationResult validationResult = ValidationResult
 				.withLocation(URI.create(repository.getLocationUri()));
@@ -110,15 +113,7 @@ public class RpkiRepositoryValidationService extends ValidationService {
 			RpkiRepository parentRepository = findDownloadedParentRepository(fetchedLocations, repository);
 			if (parentRepository == null) {
 				logger.log(Level.FINE, "Storing object downloaded for " + repository.getLocationUri());
-				Set<RpkiObject> createObjects = new HashSet<>();
-				storeObjects(targetDirectory, validationRun, validationResult, objectsBySha256, createObjects,
-						repository);
-				// Persist the objects
-				try {
-					getRpkiObjectDAO().bulkCreate(createObjects);
-				} catch (ApiDataAccessException e) {
-					logger.log(Level.SEVERE, "There was an error storing an RPKI object", e);
-				}
+				storeObjects(targetDirectory, validationResult, pipeline, repository);
 			}
 		} catch (IOException e) {
 			validationResult.error(ErrorCodes.RSYNC_REPOSITORY_IO, e.toString(), ExceptionUtils.getStackTrace(e));
@@ -147,9 +142,18 @@ public class RpkiRepositoryValidationService extends ValidationService {
 		return null;
 	}
 
-	private static void storeObjects(File targetDirectory, ValidationRun validationRun,
-			ValidationResult validationResult, Map<String, RpkiObject> objectsBySha256, Set<RpkiObject> createObjects,
-			RpkiRepository repository) throws IOException {
+	/**
+	 * Walk the <code>targetDirectory</code> and submit each new or modified file to
+	 * the <code>pipeline</code>, where the objects are read, parsed and stored
+	 * 
+	 * @param targetDirectory
+	 * @param validationResult
+	 * @param pipeline
+	 * @param repository
+	 * @throws IOException
+	 */
+	private static void storeObjects(File targetDirectory, ValidationResult validationResult,
+			RepositoryObjectsPipeline pipeline, RpkiRepository repository) throws IOException {
 		Files.walkFileTree(targetDirectory.toPath(), new SimpleFileVisitor<Path>() {
 			private URI currentLocation = URI.create(repository.getLocationUri());
 			private Long rpkiRepositoryId = repository.getId();
@@ -184,53 +188,14 @@ public class RpkiRepositoryValidationService extends ValidationService {
 			@Override
 			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
 				super.visitFile(file, attrs);
-				logger.log(Level.FINE, "at file " + file + " in location " + currentLocation);
-				validationResult
-						.setLocation(new ValidationLocation(currentLocation.resolve(file.getFileName().toString())));
-
-				byte[] content = Files.readAllBytes(file);
-				byte[] sha256 = Sha256.hash(content);
-				String hexSha256 = Hex.format(sha256);
-
-				objectsBySha256.compute(hexSha256, (key, existing) -> {
-					if (existing == null) {
-						try {
-							existing = getRpkiObjectDAO().findBySha256(sha256).orElse(null);
-						} catch (ApiDataAccessException e) {
-							logger.log(Level.WARNING,
-									"There was an error fetching the object by its sha256 " + hexSha256, e);
-							return null;
-						}
-					}
-					if (existing != null) {
-						existing.addLocation(validationResult.getCurrentLocation().getName());
-						if (existing.addRpkiRepository(rpkiRepositoryId)) {
-							try {
-								getRpkiObjectDAO().addRpkiRepository(existing, rpkiRepositoryId);
-							} catch (ApiDataAccessException e) {
-								// Return the existing object
-								logger.log(Level.WARNING, "There was an updating the object " + existing, e);
-							}
-						}
-						return existing;
-					} else {
-						CertificateRepositoryObject obj = CertificateRepositoryObjectFactory
-								.createCertificateRepositoryObject(content, validationResult);
-						validationRun.addChecks(validationResult);
-
-						if (validationResult.hasFailureForCurrentLocation()) {
-							logger.log(Level.INFO,
-									"parsing " + file + " failed: " + validationResult.getFailuresForCurrentLocation());
-							return null;
-						}
-
-						RpkiObject object = new RpkiObject(validationResult.getCurrentLocation().getName(),
-								rpkiRepositoryId, obj);
-						createObjects.add(object);
-						return object;
-					}
-				});
-
+				// The file was already stored for this repository and hasn't changed, there's
+				// nothing to do
+				if (RepositoryFileIndex.isUnchanged(file, attrs, rpkiRepositoryId)) {
+					return FileVisitResult.CONTINUE;
+				}
+				String location = new ValidationLocation(currentLocation.resolve(file.getFileName().toString()))
+						.getName();
+				pipeline.submit(file, attrs, location, rpkiRepositoryId);
 				return FileVisitResult.CONTINUE;
 			}
 		});
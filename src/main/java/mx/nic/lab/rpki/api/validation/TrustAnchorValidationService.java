@@ -33,17 +33,27 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.google.common.io.Files;
 
+import mx.nic.lab.rpki.api.config.ApiConfiguration;
 import mx.nic.lab.rpki.api.exception.TrustAnchorExtractorException;
+import mx.nic.lab.rpki.api.rtr.RtrCache;
 import mx.nic.lab.rpki.api.util.RsyncUtils;
 import mx.nic.lab.rpki.api.util.Util;
+import mx.nic.lab.rpki.api.vrp.VrpIndex;
 import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
 import mx.nic.lab.rpki.db.exception.ErrorCodes;
 import mx.nic.lab.rpki.db.exception.InitializationException;
@@ -67,10 +77,14 @@ public class TrustAnchorValidationService extends ValidationService {
 
 	/**
 	 * Run the TAL validation, this must used by recurrent calls
+	 * 
+	 * @param talIds
+	 *            IDs of the TALs to validate, if <code>null</code> then all the
+	 *            TALs are validated
 	 */
-	public static void validate() {
+	public static void validate(Set<Long> talIds) {
 		try {
-			loadAndValidateTals();
+			loadAndValidateTals(talIds);
 		} catch (InitializationException e) {
 			logger.log(Level.SEVERE, "Trust anchor validation failed", e);
 		}
@@ -79,11 +93,18 @@ public class TrustAnchorValidationService extends ValidationService {
 	/**
 	 * Loads and validate the configured TALs from the source directory, also check
 	 * if the files and the DB are synchronized to take actions (add, delete, update
-	 * the TAL).
+	 * the TAL).<br>
+	 * <br>
+	 * The TALs are validated in parallel (see
+	 * {@link ApiConfiguration#getTrustAnchorValidationParallelism()}), the cleanup
+	 * of the RPKI objects is done once all of them are validated.
 	 * 
+	 * @param talIds
+	 *            IDs of the TALs to validate, if <code>null</code> then all the
+	 *            TALs are validated
 	 * @throws InitializationException
 	 */
-	private static void loadAndValidateTals() throws InitializationException {
+	private static void loadAndValidateTals(Set<Long> talIds) throws InitializationException {
 		File talsLocation = getTalsLocation();
 		Map<Long, Tal> talsToDelete = new HashMap<>();
 		try {
@@ -92,6 +113,7 @@ public class TrustAnchorValidationService extends ValidationService {
 		} catch (ApiDataAccessException e) {
 			throw new InitializationException("Error getting existent tals data", e);
 		}
+		Map<Tal, File> talsToValidate = new LinkedHashMap<>();
 		for (File talFile : talsLocation.listFiles()) {
 			if (!talFile.isFile() || !talFile.getName().endsWith(".tal")) {
 				logger.log(Level.WARNING, talFile + " isn't a file nor has the extension .tal, it will be ommitted");
@@ -104,37 +126,11 @@ public class TrustAnchorValidationService extends ValidationService {
 					// Doesn't exists, create
 					loadedTal.setId(getTalDAO().create(loadedTal));
 					foundTal = loadedTal;
-					talsToDelete.put(foundTal.getId(), null);
 				}
-				// If there were changes at the certificate, run validation
-				ValidationResult validationResult = ValidationResult
-						.withLocation(foundTal.getTalUris().get(0).getLocation());
-				getAndValidateCertificate(foundTal, validationResult);
 				// Exists, do not delete it
-				if (talsToDelete.containsKey(foundTal.getId())) {
-					talsToDelete.put(foundTal.getId(), null);
-
-					// Create validation run with initial status (running)
-					logger.log(Level.INFO, "Start TAL validation for " + foundTal.getId() + " file " + talFile);
-					ValidationRun validationRun = new ValidationRun(ValidationRun.Type.TRUST_ANCHOR);
-					validationRun.setTalId(foundTal.getId());
-					try {
-						validationRun.setId(getValidationRunDAO().create(validationRun));
-					} catch (ApiDataAccessException e) {
-						logger.log(Level.SEVERE, "Error persisting validation run " + validationRun.toString(), e);
-						continue;
-					}
-
-					RpkiRepositoryValidationService.validateRsyncRepositories(foundTal.getId(), validationRun);
-
-					validationRun.completeWith(validationResult);
-					try {
-						getValidationRunDAO().completeValidation(validationRun);
-					} catch (ApiDataAccessException e) {
-						logger.log(Level.SEVERE,
-								"There was an error updating the TAL validation run " + validationRun.toString(), e);
-					}
-					logger.log(Level.INFO, "Complete TAL validation for " + foundTal.getId() + " file " + talFile);
+				talsToDelete.remove(foundTal.getId());
+				if (talIds == null || talIds.contains(foundTal.getId())) {
+					talsToValidate.put(foundTal, talFile);
 				}
 			} catch (TrustAnchorExtractorException e) {
 				throw new InitializationException("Error loading tal from file " + talFile, e);
@@ -142,17 +138,84 @@ public class TrustAnchorValidationService extends ValidationService {
 				throw new InitializationException("Error getting tal data from implementation " + talFile, e);
 			}
 		}
-		for (Long talId : talsToDelete.keySet()) {
-			if (talsToDelete.get(talId) != null) {
+
+		int parallelism = Math.max(1,
+				Math.min(ApiConfiguration.getTrustAnchorValidationParallelism(), talsToValidate.size()));
+		long previousHits = DecodedObjectCache.getHits();
+		long previousMisses = DecodedObjectCache.getMisses();
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<Future<?>> validations = new ArrayList<>();
+			talsToValidate.forEach((tal, talFile) -> {
+				validations.add(executor.submit(() -> validateTal(tal, talFile)));
+			});
+			for (Future<?> validation : validations) {
 				try {
-					getTalDAO().delete(talsToDelete.get(talId));
-				} catch (ApiDataAccessException e) {
-					throw new InitializationException("Error deleting tal data from implementation", e);
+					validation.get();
+				} catch (ExecutionException e) {
+					logger.log(Level.SEVERE, "There was an error validating a TAL", e.getCause());
 				}
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InitializationException("Interrupted while validating the TALs", e);
+		} finally {
+			executor.shutdown();
+		}
+		logger.log(Level.INFO,
+				"Decoded object cache at the end of the validation: " + (DecodedObjectCache.getHits() - previousHits)
+						+ " hits, " + (DecodedObjectCache.getMisses() - previousMisses) + " misses, "
+						+ DecodedObjectCache.getSize() + " objects cached weighing " + DecodedObjectCache.getWeight()
+						+ " bytes");
+
+		for (Tal talToDelete : talsToDelete.values()) {
+			try {
+				getTalDAO().delete(talToDelete);
+			} catch (ApiDataAccessException e) {
+				throw new InitializationException("Error deleting tal data from implementation", e);
+			}
 		}
 		// And cleanup the old RPKI objects
 		RpkiObjectCleanupService.cleanupRpkiObjects();
+		// Publish the validated ROAs to the route validation index
+		VrpIndex.rebuild();
+		// And to the routers
+		RtrCache.update();
+	}
+
+	/**
+	 * Validate the certificate of the TAL and its repositories, the validation is
+	 * persisted as a {@link ValidationRun}
+	 * 
+	 * @param tal
+	 * @param talFile
+	 */
+	private static void validateTal(Tal tal, File talFile) {
+		// If there were changes at the certificate, run validation
+		ValidationResult validationResult = ValidationResult.withLocation(tal.getTalUris().get(0).getLocation());
+		getAndValidateCertificate(tal, validationResult);
+
+		// Create validation run with initial status (running)
+		logger.log(Level.INFO, "Start TAL validation for " + tal.getId() + " file " + talFile);
+		ValidationRun validationRun = new ValidationRun(ValidationRun.Type.TRUST_ANCHOR);
+		validationRun.setTalId(tal.getId());
+		try {
+			validationRun.setId(getValidationRunDAO().create(validationRun));
+		} catch (ApiDataAccessException e) {
+			logger.log(Level.SEVERE, "Error persisting validation run " + validationRun.toString(), e);
+			return;
+		}
+
+		RpkiRepositoryValidationService.validateRsyncRepositories(tal.getId(), validationRun);
+
+		validationRun.completeWith(validationResult);
+		try {
+			getValidationRunDAO().completeValidation(validationRun);
+		} catch (ApiDataAccessException e) {
+			logger.log(Level.SEVERE, "There was an error updating the TAL validation run " + validationRun.toString(),
+					e);
+		}
+		logger.log(Level.INFO, "Complete TAL validation for " + tal.getId() + " file " + talFile);
 	}
 
 	/**
@@ -0,0 +1,165 @@
+package mx.nic.lab.rpki.api.vrp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import mx.nic.lab.rpki.api.config.ApiConfiguration;
+
+/**
+ * Changes of the VRPs between two snapshots (e.g. of the {@link VrpIndex}): the
+ * announced VRPs (new at the snapshot) and the withdrawn VRPs (removed at the
+ * snapshot). The delta is immutable.
+ *
+ */
+public class VrpDelta {
+
+	/**
+	 * Serial of the snapshot reached once the delta is applied
+	 */
+	private final long serial;
+
+	private final VrpSet announced;
+	private final VrpSet withdrawn;
+
+	public VrpDelta(long serial, VrpSet announced, VrpSet withdrawn) {
+		this.serial = serial;
+		this.announced = announced;
+		this.withdrawn = withdrawn;
+	}
+
+	/**
+	 * Compute the delta between two sets of VRPs
+	 *
+	 * @param from
+	 *            VRPs of the previous snapshot
+	 * @param to
+	 *            VRPs of the new snapshot
+	 * @param serial
+	 *            serial of the new snapshot
+	 * @return the {@link VrpDelta} to go from <code>from</code> to
+	 *         <code>to</code>
+	 */
+	public static VrpDelta compute(VrpSet from, VrpSet to, long serial) {
+		return new VrpDelta(serial, to.difference(from), from.difference(to));
+	}
+
+	/**
+	 * Merge this delta with the delta that follows it, the result has the net
+	 * changes of both deltas (e.g. a VRP announced at this delta and withdrawn at
+	 * the next one isn't at the result)
+	 *
+	 * @param next
+	 * @return the merged {@link VrpDelta}, with the serial of <code>next</code>
+	 */
+	public VrpDelta merge(VrpDelta next) {
+		VrpSet mergedAnnounced = announced.difference(next.withdrawn).union(next.announced.difference(withdrawn));
+		VrpSet mergedWithdrawn = withdrawn.difference(next.announced).union(next.withdrawn.difference(announced));
+		return new VrpDelta(next.serial, mergedAnnounced, mergedWithdrawn);
+	}
+
+	/**
+	 * Append the <code>delta</code> to the <code>history</code>, only the last
+	 * {@link ApiConfiguration#getVrpDeltaHistory()} deltas are kept
+	 *
+	 * @param history
+	 *            deltas of the previous snapshot, sorted by serial
+	 * @param delta
+	 *            delta to reach the new snapshot
+	 * @return a new unmodifiable list with the deltas of the new snapshot
+	 */
+	public static List<VrpDelta> append(List<VrpDelta> history, VrpDelta delta) {
+		return append(history, delta, ApiConfiguration.getVrpDeltaHistory());
+	}
+
+	/**
+	 * Append the <code>delta</code> to the <code>history</code>, only the last
+	 * <code>maxHistory</code> deltas are kept
+	 *
+	 * @param history
+	 *            deltas of the previous snapshot, sorted by serial
+	 * @param delta
+	 *            delta to reach the new snapshot
+	 * @param maxHistory
+	 *            number of deltas to keep
+	 * @return a new unmodifiable list with the deltas of the new snapshot
+	 */
+	public static List<VrpDelta> append(List<VrpDelta> history, VrpDelta delta, int maxHistory) {
+		List<VrpDelta> deltas = new ArrayList<>(history);
+		deltas.add(delta);
+		while (deltas.size() > maxHistory) {
+			deltas.remove(0);
+		}
+		return Collections.unmodifiableList(deltas);
+	}
+
+	/**
+	 * Get the net changes of the VRPs since the <code>since</code> serial up to
+	 * <code>serial</code>, merging the kept <code>deltas</code>
+	 *
+	 * @param deltas
+	 *            deltas of the snapshot, sorted by serial
+	 * @param since
+	 * @param serial
+	 *            serial of the snapshot
+	 * @return the {@link VrpDelta}, or <code>null</code> if the changes since the
+	 *         serial aren't kept (the serial is too old or unknown)
+	 */
+	public static VrpDelta since(List<VrpDelta> deltas, long since, long serial) {
+		if (since == serial) {
+			return new VrpDelta(serial, VrpSet.EMPTY, VrpSet.EMPTY);
+		}
+		if (since > serial || deltas.isEmpty() || since < deltas.get(0).getSerial() - 1) {
+			return null;
+		}
+		VrpDelta result = null;
+		for (VrpDelta delta : deltas) {
+			if (delta.getSerial() > since) {
+				result = result == null ? delta : result.merge(delta);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the VRPs that the snapshot had at the <code>at</code> serial, reverting
+	 * the kept <code>deltas</code> from the VRPs of the snapshot
+	 *
+	 * @param deltas
+	 *            deltas of the snapshot, sorted by serial
+	 * @param vrps
+	 *            VRPs of the snapshot
+	 * @param serial
+	 *            serial of the snapshot
+	 * @param at
+	 * @return the {@link VrpSet} at the serial, or <code>null</code> if the
+	 *         changes since the serial aren't kept (the serial is too old or
+	 *         unknown)
+	 */
+	public static VrpSet revert(List<VrpDelta> deltas, VrpSet vrps, long serial, long at) {
+		if (at == serial) {
+			return vrps;
+		}
+		if (at > serial || deltas.isEmpty() || at < deltas.get(0).getSerial() - 1) {
+			return null;
+		}
+		VrpSet result = vrps;
+		for (int i = deltas.size() - 1; i >= 0 && deltas.get(i).getSerial() > at; i--) {
+			VrpDelta delta = deltas.get(i);
+			result = result.difference(delta.announced).union(delta.withdrawn);
+		}
+		return result;
+	}
+
+	public long getSerial() {
+		return serial;
+	}
+
+	public VrpSet getAnnounced() {
+		return announced;
+	}
+
+	public VrpSet getWithdrawn() {
+		return withdrawn;
+	}
+}
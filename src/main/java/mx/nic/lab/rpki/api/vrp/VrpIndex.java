@@ -0,0 +1,250 @@
+package mx.nic.lab.rpki.api.vrp;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mx.nic.lab.rpki.api.config.ApiConfiguration;
+import mx.nic.lab.rpki.api.slurm.CompiledSlurm;
+import mx.nic.lab.rpki.api.util.IpAddressUtil;
+import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
+import mx.nic.lab.rpki.db.pojo.Roa;
+import mx.nic.lab.rpki.db.pojo.SlurmPrefix;
+import mx.nic.lab.rpki.db.service.DataAccessService;
+import mx.nic.lab.rpki.db.spi.RoaDAO;
+
+/**
+ * In memory index of the validated ROAs, used to validate routes without
+ * querying the DA implementation. The {@link CompiledSlurm} is applied while
+ * the index is built, so the index has the effective VRPs (RFC 8416): the VRPs
+ * removed by the SLURM filters aren't indexed and the SLURM assertions
+ * are. The VRPs of the ROAs are also kept before the SLURM is applied, so a
+ * SLURM change is applied with a single pass over them, without loading the
+ * ROAs again (see {@link #refilter()}).<br>
+ * <br>
+ * An instance is an immutable snapshot of the VRPs: it holds one
+ * {@link VrpTrie} per address family, the sorted {@link VrpSet} and a serial
+ * that increases each time that a snapshot with different VRPs is published
+ * (a snapshot with the same VRPs keeps the serial).
+ * The current instance is replaced atomically after each validation run (see
+ * {@link #rebuild()}), so the readers get a consistent view without locks as
+ * long as they use the same instance during a request.<br>
+ * <br>
+ * Each snapshot also holds the last {@link VrpDelta}s (see
+ * {@link ApiConfiguration#getVrpDeltaHistory()}), so that the changes since a
+ * recent serial can be obtained (see {@link #getDelta(long)}).<br>
+ * <br>
+ * The serials start again each time that the API starts, so they're only
+ * meaningful along with the session ID (see {@link #getSessionId()}).
+ *
+ */
+public class VrpIndex {
+
+	/**
+	 * Class logger
+	 */
+	private static final Logger logger = Logger.getLogger(VrpIndex.class.getName());
+
+	/**
+	 * Session ID of the published snapshots, it's random so that the clients
+	 * detect that the serials started again after a restart
+	 */
+	private static final String SESSION_ID = UUID.randomUUID().toString();
+
+	/**
+	 * Current published index, <code>null</code> until the first build
+	 */
+	private static final AtomicReference<VrpIndex> current = new AtomicReference<>();
+
+	private final long serial;
+	private final VrpSet vrps;
+	private final List<VrpDelta> deltas;
+	private final VrpTrie ipv4;
+	private final VrpTrie ipv6;
+
+	/**
+	 * VRPs of the ROAs before the SLURM is applied, with the ROA IDs
+	 */
+	private final VrpSet roaVrps;
+
+	private VrpIndex(long serial, VrpSet vrps, List<VrpDelta> deltas, VrpTrie ipv4, VrpTrie ipv6,
+			VrpSet roaVrps) {
+		this.serial = serial;
+		this.vrps = vrps;
+		this.deltas = deltas;
+		this.ipv4 = ipv4;
+		this.ipv6 = ipv6;
+		this.roaVrps = roaVrps;
+	}
+
+	/**
+	 * Load all the ROAs from the DA implementation, build a new index and publish
+	 * it. The tries are always rebuilt, since the ROAs that hold the VRPs may be
+	 * new even if the VRPs are the same; the serial is increased only if the VRPs
+	 * changed. If there's an error loading the ROAs, the current index remains.
+	 */
+	public static synchronized void rebuild() {
+		RoaDAO roaDao = DataAccessService.getRoaDAO();
+		if (roaDao == null) {
+			logger.log(Level.WARNING, "There's no RoaDAO implementation, the VRP index won't be built");
+			return;
+		}
+		List<Roa> roas;
+		try {
+			roas = roaDao.getAll(null).getResults();
+		} catch (ApiDataAccessException e) {
+			logger.log(Level.SEVERE, "Error getting the ROAs, the VRP index won't be updated", e);
+			return;
+		}
+		VrpSet.Builder roaVrpsBuilder = new VrpSet.Builder();
+		for (Roa roa : roas) {
+			byte[] prefix = IpAddressUtil.parse(roa.getPrefixText());
+			if (prefix == null) {
+				logger.log(Level.WARNING, "Invalid prefix at ROA " + roa.getId() + ", it won't be indexed");
+				continue;
+			}
+			roaVrpsBuilder.add(prefix, roa.getPrefixLength(), roa.getPrefixMaxLength(), roa.getAsn(), roa.getId());
+		}
+		publish(roaVrpsBuilder.build(), CompiledSlurm.getCurrent());
+	}
+
+	/**
+	 * Apply the current {@link CompiledSlurm} to the VRPs of the ROAs of the
+	 * current index and publish the result, the ROAs aren't loaded again. If the
+	 * index hasn't been built, it's built from the DA implementation (see
+	 * {@link #rebuild()}).
+	 */
+	public static synchronized void refilter() {
+		VrpIndex previous = current.get();
+		if (previous == null) {
+			rebuild();
+			return;
+		}
+		publish(previous.roaVrps, CompiledSlurm.getCurrent());
+	}
+
+	/**
+	 * Apply the <code>slurm</code> to the <code>roaVrps</code> with a single pass,
+	 * build the tries and publish the new index
+	 *
+	 * @param roaVrps
+	 *            VRPs of the ROAs, with the ROA IDs
+	 * @param slurm
+	 */
+	private static void publish(VrpSet roaVrps, CompiledSlurm slurm) {
+		VrpTrie ipv4 = new VrpTrie(32);
+		VrpTrie ipv6 = new VrpTrie(128);
+		int[] kept = new int[roaVrps.size()];
+		int count = 0;
+		for (int i = 0; i < roaVrps.size(); i++) {
+			byte[] prefix = roaVrps.getPrefix(i);
+			int prefixLength = roaVrps.getPrefixLength(i);
+			long asn = roaVrps.getAsn(i);
+			if (slurm.isFiltered(prefix, prefixLength, asn)) {
+				continue;
+			}
+			(prefix.length == 4 ? ipv4 : ipv6).add(prefix, prefixLength, asn, roaVrps.getMaxLength(i),
+					roaVrps.getId(i));
+			kept[count++] = i;
+		}
+		int filtered = roaVrps.size() - count;
+		VrpSet.Builder assertionsBuilder = new VrpSet.Builder();
+		for (SlurmPrefix assertion : slurm.getAssertions()) {
+			byte[] prefix = assertion.getStartPrefix();
+			int prefixLength = assertion.getPrefixLength();
+			int prefixMaxLength = assertion.getPrefixMaxLength() != null ? assertion.getPrefixMaxLength()
+					: prefixLength;
+			long asn = assertion.getAsn();
+			long id = VrpValidation.Match.slurmAssertionId(assertion.getId());
+			(prefix.length == 4 ? ipv4 : ipv6).add(prefix, prefixLength, asn, prefixMaxLength, id);
+			assertionsBuilder.add(prefix, prefixLength, prefixMaxLength, asn, id);
+		}
+		VrpSet vrps = roaVrps.select(kept, count).union(assertionsBuilder.build());
+		VrpIndex previous = current.get();
+		if (previous != null && previous.vrps.sameVrps(vrps)) {
+			// The ROA IDs (or the SLURM assertion IDs) of the matches may have changed
+			current.set(new VrpIndex(previous.serial, previous.vrps, previous.deltas, ipv4.trim(), ipv6.trim(),
+					roaVrps));
+			logger.log(Level.INFO, "The VRPs didn't change, the VRP index remains at serial " + previous.serial);
+			return;
+		}
+		long serial = previous != null ? previous.serial + 1 : 1;
+		List<VrpDelta> deltas = previous != null
+				? VrpDelta.append(previous.deltas, VrpDelta.compute(previous.vrps, vrps, serial))
+				: Collections.emptyList();
+		current.set(new VrpIndex(serial, vrps, deltas, ipv4.trim(), ipv6.trim(), roaVrps));
+		logger.log(Level.INFO, "VRP index updated to serial " + serial + " with " + ipv4.size() + " IPv4 and "
+				+ ipv6.size() + " IPv6 VRPs, " + filtered + " VRPs removed by the SLURM");
+	}
+
+	/**
+	 * @return the current index, or <code>null</code> if it hasn't been built
+	 */
+	public static VrpIndex getCurrent() {
+		return current.get();
+	}
+
+	/**
+	 * @return the session ID of the snapshots published since the API started
+	 */
+	public static String getSessionId() {
+		return SESSION_ID;
+	}
+
+	/**
+	 * @return the serial of the snapshot, the first published snapshot has the
+	 *         serial 1
+	 */
+	public long getSerial() {
+		return serial;
+	}
+
+	/**
+	 * @return the VRPs of the snapshot
+	 */
+	public VrpSet getVrps() {
+		return vrps;
+	}
+
+	/**
+	 * Get the VRPs that the snapshot had at the <code>at</code> serial, see
+	 * {@link VrpDelta#revert(List, VrpSet, long, long)}
+	 *
+	 * @param at
+	 * @return the {@link VrpSet}, or <code>null</code> if the changes since the
+	 *         serial aren't kept (the serial is too old or unknown)
+	 */
+	public VrpSet getVrps(long at) {
+		return VrpDelta.revert(deltas, vrps, serial, at);
+	}
+
+	/**
+	 * Get the net changes of the VRPs since the <code>since</code> serial up to the
+	 * serial of this snapshot
+	 *
+	 * @param since
+	 * @return the {@link VrpDelta}, or <code>null</code> if the changes since the
+	 *         serial aren't kept (the serial is too old or unknown)
+	 */
+	public VrpDelta getDelta(long since) {
+		return VrpDelta.since(deltas, since, serial);
+	}
+
+	/**
+	 * Validate a route origin, see
+	 * {@link VrpTrie#validate(byte[], int, long, boolean)}
+	 *
+	 * @param asn
+	 * @param prefix
+	 * @param prefixLength
+	 * @param fullCheck
+	 * @return the {@link VrpValidation} result
+	 */
+	public VrpValidation validate(long asn, byte[] prefix, int prefixLength, boolean fullCheck) {
+		VrpTrie trie = prefix.length == 4 ? ipv4 : ipv6;
+		return trie.validate(prefix, prefixLength, asn, fullCheck);
+	}
+}
@@ -0,0 +1,440 @@
+package mx.nic.lab.rpki.api.vrp;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Immutable set of Validated ROA Payloads (VRPs) stored at primitive arrays.
+ * Each VRP is the tuple (prefix, prefix length, max length, ASN), the VRPs are
+ * sorted by family (IPv4 first), prefix, prefix length, max length and ASN,
+ * without duplicates; so two sets can be compared with a single sorted pass
+ * (see {@link #compare(int, VrpSet, int)}).<br>
+ * <br>
+ * The prefix is stored as two <code>long</code>s (the high and low 64 bits of
+ * the address), an IPv4 address is stored at the low 32 bits.<br>
+ * <br>
+ * Each VRP can also have the ID of the object that holds it (e.g. the ROA), it
+ * isn't part of the VRP: it's ignored by the comparisons, and only the ID of
+ * the first VRP added is kept when there are duplicates.
+ *
+ */
+public class VrpSet {
+
+	/**
+	 * Empty set
+	 */
+	public static final VrpSet EMPTY = new Builder().build();
+
+	private final int ipv4Count;
+	private final long[] prefixHigh;
+	private final long[] prefixLow;
+	private final byte[] prefixLength;
+	private final byte[] maxLength;
+	private final int[] asn;
+	private final long[] id;
+
+	private VrpSet(int ipv4Count, long[] prefixHigh, long[] prefixLow, byte[] prefixLength, byte[] maxLength,
+			int[] asn, long[] id) {
+		this.ipv4Count = ipv4Count;
+		this.prefixHigh = prefixHigh;
+		this.prefixLow = prefixLow;
+		this.prefixLength = prefixLength;
+		this.maxLength = maxLength;
+		this.asn = asn;
+		this.id = id;
+	}
+
+	/**
+	 * @return the number of VRPs
+	 */
+	public int size() {
+		return asn.length;
+	}
+
+	/**
+	 * @return the number of IPv4 VRPs, these are the first ones of the set
+	 */
+	public int getIpv4Count() {
+		return ipv4Count;
+	}
+
+	public boolean isIpv4(int index) {
+		return index < ipv4Count;
+	}
+
+	public long getAsn(int index) {
+		return Integer.toUnsignedLong(asn[index]);
+	}
+
+	public int getPrefixLength(int index) {
+		return prefixLength[index] & 0xFF;
+	}
+
+	public int getMaxLength(int index) {
+		return maxLength[index] & 0xFF;
+	}
+
+	/**
+	 * @param index
+	 * @return the ID of the object that holds the VRP, 0 if it wasn't set
+	 */
+	public long getId(int index) {
+		return id[index];
+	}
+
+	/**
+	 * @param index
+	 * @return the prefix address bytes (4 for IPv4, 16 for IPv6)
+	 */
+	public byte[] getPrefix(int index) {
+		if (isIpv4(index)) {
+			return toBytes(prefixLow[index], 4);
+		}
+		byte[] address = new byte[16];
+		System.arraycopy(toBytes(prefixHigh[index], 8), 0, address, 0, 8);
+		System.arraycopy(toBytes(prefixLow[index], 8), 0, address, 8, 8);
+		return address;
+	}
+
+	/**
+	 * Put the prefix address bytes (4 for IPv4, 16 for IPv6) at the
+	 * <code>buffer</code>, without creating an intermediate array
+	 *
+	 * @param index
+	 * @param buffer
+	 */
+	public void putPrefix(int index, ByteBuffer buffer) {
+		if (isIpv4(index)) {
+			buffer.putInt((int) prefixLow[index]);
+			return;
+		}
+		buffer.putLong(prefixHigh[index]);
+		buffer.putLong(prefixLow[index]);
+	}
+
+	/**
+	 * Compare the VRP at <code>index</code> with the VRP at
+	 * <code>otherIndex</code> of the <code>other</code> set, using the order of
+	 * the sets
+	 *
+	 * @param index
+	 * @param other
+	 * @param otherIndex
+	 * @return a negative integer, zero, or a positive integer as this VRP is less
+	 *         than, equal to, or greater than the other VRP
+	 */
+	public int compare(int index, VrpSet other, int otherIndex) {
+		int result = Boolean.compare(other.isIpv4(otherIndex), isIpv4(index));
+		if (result == 0) {
+			result = Long.compareUnsigned(prefixHigh[index], other.prefixHigh[otherIndex]);
+		}
+		if (result == 0) {
+			result = Long.compareUnsigned(prefixLow[index], other.prefixLow[otherIndex]);
+		}
+		if (result == 0) {
+			result = Integer.compare(getPrefixLength(index), other.getPrefixLength(otherIndex));
+		}
+		if (result == 0) {
+			result = Integer.compare(getMaxLength(index), other.getMaxLength(otherIndex));
+		}
+		if (result == 0) {
+			result = Long.compare(getAsn(index), other.getAsn(otherIndex));
+		}
+		return result;
+	}
+
+	/**
+	 * @param other
+	 * @return <code>true</code> if both sets have the same VRPs
+	 */
+	public boolean sameVrps(VrpSet other) {
+		return ipv4Count == other.ipv4Count && Arrays.equals(asn, other.asn)
+				&& Arrays.equals(prefixLow, other.prefixLow) && Arrays.equals(prefixHigh, other.prefixHigh)
+				&& Arrays.equals(prefixLength, other.prefixLength) && Arrays.equals(maxLength, other.maxLength);
+	}
+
+	/**
+	 * Get the VRPs of this set that aren't at the <code>other</code> set, using a
+	 * single sorted pass over both sets
+	 *
+	 * @param other
+	 * @return a new set with the difference
+	 */
+	public VrpSet difference(VrpSet other) {
+		int[] selected = new int[size()];
+		int count = 0;
+		int j = 0;
+		for (int i = 0; i < size(); i++) {
+			while (j < other.size() && other.compare(j, this, i) < 0) {
+				j++;
+			}
+			if (j == other.size() || other.compare(j, this, i) != 0) {
+				selected[count++] = i;
+			}
+		}
+		return select(selected, count);
+	}
+
+	/**
+	 * Get the VRPs that are at this set or at the <code>other</code> set, using a
+	 * single sorted pass over both sets
+	 *
+	 * @param other
+	 * @return a new set with the union
+	 */
+	public VrpSet union(VrpSet other) {
+		VrpSet onlyOther = other.difference(this);
+		int size = size() + onlyOther.size();
+		long[] unionHigh = new long[size];
+		long[] unionLow = new long[size];
+		byte[] unionLength = new byte[size];
+		byte[] unionMaxLength = new byte[size];
+		int[] unionAsn = new int[size];
+		long[] unionId = new long[size];
+		int i = 0;
+		int j = 0;
+		for (int k = 0; k < size; k++) {
+			VrpSet source;
+			int index;
+			if (j == onlyOther.size() || (i < size() && compare(i, onlyOther, j) < 0)) {
+				source = this;
+				index = i++;
+			} else {
+				source = onlyOther;
+				index = j++;
+			}
+			unionHigh[k] = source.prefixHigh[index];
+			unionLow[k] = source.prefixLow[index];
+			unionLength[k] = source.prefixLength[index];
+			unionMaxLength[k] = source.maxLength[index];
+			unionAsn[k] = source.asn[index];
+			unionId[k] = source.id[index];
+		}
+		return new VrpSet(ipv4Count + onlyOther.ipv4Count, unionHigh, unionLow, unionLength, unionMaxLength,
+				unionAsn, unionId);
+	}
+
+	/**
+	 * Create a set with the VRPs at the <code>indexes</code>, they must be sorted
+	 *
+	 * @param indexes
+	 * @param count
+	 *            number of indexes to use
+	 * @return the new set
+	 */
+	VrpSet select(int[] indexes, int count) {
+		long[] selectedHigh = new long[count];
+		long[] selectedLow = new long[count];
+		byte[] selectedLength = new byte[count];
+		byte[] selectedMaxLength = new byte[count];
+		int[] selectedAsn = new int[count];
+		long[] selectedId = new long[count];
+		int selectedIpv4 = 0;
+		for (int k = 0; k < count; k++) {
+			int index = indexes[k];
+			selectedHigh[k] = prefixHigh[index];
+			selectedLow[k] = prefixLow[index];
+			selectedLength[k] = prefixLength[index];
+			selectedMaxLength[k] = maxLength[index];
+			selectedAsn[k] = asn[index];
+			selectedId[k] = id[index];
+			if (isIpv4(index)) {
+				selectedIpv4++;
+			}
+		}
+		return new VrpSet(selectedIpv4, selectedHigh, selectedLow, selectedLength, selectedMaxLength, selectedAsn,
+				selectedId);
+	}
+
+	private static byte[] toBytes(long value, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = length - 1; i >= 0; i--) {
+			bytes[i] = (byte) value;
+			value >>>= 8;
+		}
+		return bytes;
+	}
+
+	private static long toLong(byte[] bytes, int offset, int length) {
+		long value = 0;
+		for (int i = offset; i < offset + length; i++) {
+			value = (value << 8) | (bytes[i] & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * Builder of a {@link VrpSet}, the VRPs can be added in any order
+	 *
+	 */
+	public static class Builder {
+
+		private static final int INITIAL_CAPACITY = 1024;
+
+		private long[] prefixHigh = new long[INITIAL_CAPACITY];
+		private long[] prefixLow = new long[INITIAL_CAPACITY];
+		private byte[] prefixLength = new byte[INITIAL_CAPACITY];
+		private byte[] maxLength = new byte[INITIAL_CAPACITY];
+		private int[] asn = new int[INITIAL_CAPACITY];
+		private long[] id = new long[INITIAL_CAPACITY];
+		private boolean[] ipv4 = new boolean[INITIAL_CAPACITY];
+		private int count;
+
+		/**
+		 * Add a VRP to the set
+		 *
+		 * @param prefix
+		 *            prefix address bytes (4 for IPv4, 16 for IPv6)
+		 * @param prefixLength
+		 * @param maxLength
+		 * @param asn
+		 * @return this builder
+		 */
+		public Builder add(byte[] prefix, int prefixLength, int maxLength, long asn) {
+			return add(prefix, prefixLength, maxLength, asn, 0);
+		}
+
+		/**
+		 * Add a VRP to the set along with the ID of the object that holds it
+		 *
+		 * @param prefix
+		 *            prefix address bytes (4 for IPv4, 16 for IPv6)
+		 * @param prefixLength
+		 * @param maxLength
+		 * @param asn
+		 * @param id
+		 *            ID of the object that holds the VRP (e.g. the ROA)
+		 * @return this builder
+		 */
+		public Builder add(byte[] prefix, int prefixLength, int maxLength, long asn, long id) {
+			if (count == this.asn.length) {
+				int capacity = count * 2;
+				this.prefixHigh = Arrays.copyOf(this.prefixHigh, capacity);
+				this.prefixLow = Arrays.copyOf(this.prefixLow, capacity);
+				this.prefixLength = Arrays.copyOf(this.prefixLength, capacity);
+				this.maxLength = Arrays.copyOf(this.maxLength, capacity);
+				this.asn = Arrays.copyOf(this.asn, capacity);
+				this.id = Arrays.copyOf(this.id, capacity);
+				this.ipv4 = Arrays.copyOf(this.ipv4, capacity);
+			}
+			if (prefix.length == 4) {
+				this.prefixLow[count] = toLong(prefix, 0, 4);
+				this.ipv4[count] = true;
+			} else {
+				this.prefixHigh[count] = toLong(prefix, 0, 8);
+				this.prefixLow[count] = toLong(prefix, 8, 8);
+			}
+			this.prefixLength[count] = (byte) prefixLength;
+			this.maxLength[count] = (byte) maxLength;
+			this.asn[count] = (int) asn;
+			this.id[count] = id;
+			count++;
+			return this;
+		}
+
+		/**
+		 * Sort the added VRPs and build the set, the duplicated VRPs are removed
+		 *
+		 * @return the new {@link VrpSet}
+		 */
+		public VrpSet build() {
+			int[] order = new int[count];
+			for (int i = 0; i < count; i++) {
+				order[i] = i;
+			}
+			sort(order, new int[count]);
+
+			long[] sortedHigh = new long[count];
+			long[] sortedLow = new long[count];
+			byte[] sortedLength = new byte[count];
+			byte[] sortedMaxLength = new byte[count];
+			int[] sortedAsn = new int[count];
+			long[] sortedId = new long[count];
+			int size = 0;
+			int ipv4Count = 0;
+			for (int i = 0; i < count; i++) {
+				int index = order[i];
+				if (i > 0 && compare(index, order[i - 1]) == 0) {
+					continue;
+				}
+				sortedHigh[size] = prefixHigh[index];
+				sortedLow[size] = prefixLow[index];
+				sortedLength[size] = prefixLength[index];
+				sortedMaxLength[size] = maxLength[index];
+				sortedAsn[size] = asn[index];
+				sortedId[size] = id[index];
+				if (ipv4[index]) {
+					ipv4Count++;
+				}
+				size++;
+			}
+			return new VrpSet(ipv4Count, Arrays.copyOf(sortedHigh, size), Arrays.copyOf(sortedLow, size),
+					Arrays.copyOf(sortedLength, size), Arrays.copyOf(sortedMaxLength, size),
+					Arrays.copyOf(sortedAsn, size), Arrays.copyOf(sortedId, size));
+		}
+
+		/**
+		 * Sort the indexes of the added VRPs with a bottom-up merge sort, so that
+		 * the indexes aren't boxed to use a comparator
+		 *
+		 * @param order
+		 *            indexes to sort
+		 * @param buffer
+		 *            work array with the same length as <code>order</code>
+		 */
+		private void sort(int[] order, int[] buffer) {
+			int[] source = order;
+			int[] target = buffer;
+			for (int width = 1; width < count; width *= 2) {
+				for (int start = 0; start < count; start += 2 * width) {
+					int middle = Math.min(start + width, count);
+					int end = Math.min(start + 2 * width, count);
+					int i = start;
+					int j = middle;
+					for (int k = start; k < end; k++) {
+						if (j == end || (i < middle && compare(source[i], source[j]) <= 0)) {
+							target[k] = source[i++];
+						} else {
+							target[k] = source[j++];
+						}
+					}
+				}
+				int[] swap = source;
+				source = target;
+				target = swap;
+			}
+			if (source != order) {
+				System.arraycopy(source, 0, order, 0, count);
+			}
+		}
+
+		/**
+		 * Compare two added VRPs using the order of the sets
+		 *
+		 * @param a
+		 * @param b
+		 * @return a negative integer, zero, or a positive integer as the VRP at
+		 *         <code>a</code> is less than, equal to, or greater than the VRP at
+		 *         <code>b</code>
+		 */
+		private int compare(int a, int b) {
+			int result = Boolean.compare(ipv4[b], ipv4[a]);
+			if (result == 0) {
+				result = Long.compareUnsigned(prefixHigh[a], prefixHigh[b]);
+			}
+			if (result == 0) {
+				result = Long.compareUnsigned(prefixLow[a], prefixLow[b]);
+			}
+			if (result == 0) {
+				result = Integer.compare(prefixLength[a] & 0xFF, prefixLength[b] & 0xFF);
+			}
+			if (result == 0) {
+				result = Integer.compare(maxLength[a] & 0xFF, maxLength[b] & 0xFF);
+			}
+			if (result == 0) {
+				result = Integer.compareUnsigned(asn[a], asn[b]);
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,242 @@
+package mx.nic.lab.rpki.api.vrp;
+
+import java.util.Arrays;
+
+import mx.nic.lab.rpki.api.vrp.VrpValidation.AsState;
+import mx.nic.lab.rpki.api.vrp.VrpValidation.PrefixState;
+import mx.nic.lab.rpki.api.vrp.VrpValidation.ValidityState;
+
+/**
+ * Binary trie of Validated ROA Payloads (VRPs) of a single address family.<br>
+ * <br>
+ * The nodes and the VRPs are stored at primitive arrays: every node has two
+ * child slots (bit 0 and bit 1) and a pointer to the first VRP whose prefix
+ * ends at that node, the VRPs at the same node are chained using
+ * {@link #vrpNext}. The root node is always the node 0, so a child slot with
+ * value 0 means that there's no child.<br>
+ * <br>
+ * The trie is loaded once (using {@link #add(byte[], int, long, int, long)}),
+ * and after {@link #trim()} is called it must be treated as read only, that way
+ * it can be shared between threads without locks.
+ *
+ */
+public class VrpTrie {
+
+	/**
+	 * Value used to indicate the end of a VRP chain
+	 */
+	private static final int NONE = -1;
+
+	/**
+	 * Initial capacity of the arrays
+	 */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * Max prefix length of the family (32 for IPv4, 128 for IPv6)
+	 */
+	private final int maxPrefixLength;
+
+	/**
+	 * Child nodes, the node <code>n</code> has its childs at
+	 * <code>2n</code>(bit 0) and <code>2n + 1</code>(bit 1)
+	 */
+	private int[] children;
+
+	/**
+	 * First VRP whose prefix ends at the node
+	 */
+	private int[] firstVrp;
+
+	private int nodeCount;
+
+	private long[] vrpAsn;
+	private int[] vrpMaxLength;
+	private long[] vrpRoaId;
+	private int[] vrpNext;
+
+	private int vrpCount;
+
+	public VrpTrie(int maxPrefixLength) {
+		this.maxPrefixLength = maxPrefixLength;
+		this.children = new int[INITIAL_CAPACITY * 2];
+		this.firstVrp = new int[INITIAL_CAPACITY];
+		this.vrpAsn = new long[INITIAL_CAPACITY];
+		this.vrpMaxLength = new int[INITIAL_CAPACITY];
+		this.vrpRoaId = new long[INITIAL_CAPACITY];
+		this.vrpNext = new int[INITIAL_CAPACITY];
+		// Root node
+		this.firstVrp[0] = NONE;
+		this.nodeCount = 1;
+	}
+
+	/**
+	 * Add a VRP to the trie
+	 *
+	 * @param prefix
+	 *            prefix address bytes (4 for IPv4, 16 for IPv6)
+	 * @param prefixLength
+	 *            length of the prefix
+	 * @param asn
+	 *            ASN authorized to originate the prefix
+	 * @param maxLength
+	 *            max length authorized
+	 * @param roaId
+	 *            ID of the ROA that holds the VRP, or
+	 *            {@link VrpValidation.Match#slurmAssertionId(long)} if it was
+	 *            asserted by the SLURM
+	 */
+	public void add(byte[] prefix, int prefixLength, long asn, int maxLength, long roaId) {
+		if (prefixLength < 0 || prefixLength > maxPrefixLength || prefix.length * 8 < prefixLength) {
+			throw new IllegalArgumentException("Invalid prefix length " + prefixLength);
+		}
+		int node = 0;
+		for (int depth = 0; depth < prefixLength; depth++) {
+			int slot = 2 * node + bit(prefix, depth);
+			int child = children[slot];
+			if (child == 0) {
+				child = newNode();
+				children[slot] = child;
+			}
+			node = child;
+		}
+		if (vrpCount == vrpAsn.length) {
+			int newCapacity = vrpCount * 2;
+			vrpAsn = Arrays.copyOf(vrpAsn, newCapacity);
+			vrpMaxLength = Arrays.copyOf(vrpMaxLength, newCapacity);
+			vrpRoaId = Arrays.copyOf(vrpRoaId, newCapacity);
+			vrpNext = Arrays.copyOf(vrpNext, newCapacity);
+		}
+		int vrp = vrpCount++;
+		vrpAsn[vrp] = asn;
+		vrpMaxLength[vrp] = maxLength;
+		vrpRoaId[vrp] = roaId;
+		vrpNext[vrp] = firstVrp[node];
+		firstVrp[node] = vrp;
+	}
+
+	/**
+	 * Release the unused capacity of the arrays, must be called once all the VRPs
+	 * were added
+	 *
+	 * @return this trie
+	 */
+	public VrpTrie trim() {
+		children = Arrays.copyOf(children, nodeCount * 2);
+		firstVrp = Arrays.copyOf(firstVrp, nodeCount);
+		vrpAsn = Arrays.copyOf(vrpAsn, vrpCount);
+		vrpMaxLength = Arrays.copyOf(vrpMaxLength, vrpCount);
+		vrpRoaId = Arrays.copyOf(vrpRoaId, vrpCount);
+		vrpNext = Arrays.copyOf(vrpNext, vrpCount);
+		return this;
+	}
+
+	/**
+	 * Validate a route origin (RFC 6811) against the VRPs of the trie.<br>
+	 * <br>
+	 * If <code>fullCheck</code> is <code>false</code> only the VRPs with the exact
+	 * same prefix are considered, otherwise all the covering VRPs are considered.
+	 *
+	 * @param prefix
+	 *            prefix address bytes
+	 * @param prefixLength
+	 *            length of the prefix
+	 * @param asn
+	 *            origin ASN of the route
+	 * @param fullCheck
+	 *            consider all the covering VRPs
+	 * @return the {@link VrpValidation} result
+	 */
+	public VrpValidation validate(byte[] prefix, int prefixLength, long asn, boolean fullCheck) {
+		int validVrp = NONE;
+		int validDepth = 0;
+		int coveringVrp = NONE;
+		int coveringDepth = 0;
+		boolean prefixMatches = false;
+		boolean asnMatches = false;
+
+		int node = 0;
+		int depth = 0;
+		while (validVrp == NONE) {
+			if (fullCheck || depth == prefixLength) {
+				for (int vrp = firstVrp[node]; vrp != NONE; vrp = vrpNext[vrp]) {
+					// AS0 never authorizes an origin (RFC 6483 section 4)
+					boolean sameAsn = vrpAsn[vrp] != 0 && vrpAsn[vrp] == asn;
+					boolean lengthAllowed = prefixLength <= vrpMaxLength[vrp];
+					if (sameAsn && lengthAllowed) {
+						validVrp = vrp;
+						validDepth = depth;
+						break;
+					}
+					asnMatches |= sameAsn;
+					prefixMatches |= lengthAllowed;
+					coveringVrp = vrp;
+					coveringDepth = depth;
+				}
+			}
+			if (depth == prefixLength) {
+				break;
+			}
+			int child = children[2 * node + bit(prefix, depth)];
+			if (child == 0) {
+				break;
+			}
+			node = child;
+			depth++;
+		}
+
+		if (validVrp != NONE) {
+			return new VrpValidation(ValidityState.VALID, PrefixState.MATCH_ROA, AsState.MATCHING, fullCheck,
+					toMatch(prefix, validVrp, validDepth));
+		}
+		if (coveringVrp != NONE) {
+			return new VrpValidation(ValidityState.INVALID,
+					prefixMatches ? PrefixState.MATCH_ROA : PrefixState.MORE_SPECIFIC,
+					asnMatches ? AsState.MATCHING : AsState.NON_MATCHING, fullCheck,
+					toMatch(prefix, coveringVrp, coveringDepth));
+		}
+		return new VrpValidation(ValidityState.NOT_FOUND, PrefixState.NON_INTERSECTING, AsState.NON_MATCHING,
+				fullCheck, null);
+	}
+
+	/**
+	 * @return number of VRPs loaded at the trie
+	 */
+	public int size() {
+		return vrpCount;
+	}
+
+	/**
+	 * Build the matched VRP, the prefix is the <code>prefix</code> truncated to
+	 * <code>depth</code> bits
+	 *
+	 * @param prefix
+	 * @param vrp
+	 * @param depth
+	 * @return
+	 */
+	private VrpValidation.Match toMatch(byte[] prefix, int vrp, int depth) {
+		byte[] vrpPrefix = new byte[prefix.length];
+		int fullBytes = depth / 8;
+		System.arraycopy(prefix, 0, vrpPrefix, 0, fullBytes);
+		if (depth % 8 != 0) {
+			vrpPrefix[fullBytes] = (byte) (prefix[fullBytes] & (0xFF << (8 - depth % 8)));
+		}
+		return new VrpValidation.Match(vrpRoaId[vrp], vrpAsn[vrp], vrpPrefix, depth, vrpMaxLength[vrp]);
+	}
+
+	private int newNode() {
+		if (nodeCount == firstVrp.length) {
+			int newCapacity = nodeCount * 2;
+			children = Arrays.copyOf(children, newCapacity * 2);
+			firstVrp = Arrays.copyOf(firstVrp, newCapacity);
+		}
+		int node = nodeCount++;
+		firstVrp[node] = NONE;
+		return node;
+	}
+
+	private static int bit(byte[] address, int index) {
+		return (address[index >>> 3] >>> (7 - (index & 7))) & 1;
+	}
+}
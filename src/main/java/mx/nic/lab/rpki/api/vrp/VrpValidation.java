@@ -0,0 +1,171 @@
+package mx.nic.lab.rpki.api.vrp;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Result of a route origin validation made against a {@link VrpTrie}
+ *
+ */
+public class VrpValidation {
+
+	/**
+	 * Route validity state (RFC 6811 section 2)
+	 *
+	 */
+	public enum ValidityState {
+		VALID, INVALID, NOT_FOUND
+	}
+
+	/**
+	 * State of the prefix compared against the covering VRPs
+	 *
+	 */
+	public enum PrefixState {
+		/**
+		 * A covering VRP allows the prefix length
+		 */
+		MATCH_ROA,
+		/**
+		 * The covering VRPs have a max length lower than the prefix length
+		 */
+		MORE_SPECIFIC,
+		/**
+		 * There's no covering VRP
+		 */
+		NON_INTERSECTING
+	}
+
+	/**
+	 * State of the origin ASN compared against the covering VRPs
+	 *
+	 */
+	public enum AsState {
+		MATCHING, NON_MATCHING
+	}
+
+	private final ValidityState validityState;
+	private final PrefixState prefixState;
+	private final AsState asState;
+	private final boolean fullCheck;
+	private final Match match;
+
+	public VrpValidation(ValidityState validityState, PrefixState prefixState, AsState asState, boolean fullCheck,
+			Match match) {
+		this.validityState = validityState;
+		this.prefixState = prefixState;
+		this.asState = asState;
+		this.fullCheck = fullCheck;
+		this.match = match;
+	}
+
+	public ValidityState getValidityState() {
+		return validityState;
+	}
+
+	public PrefixState getPrefixState() {
+		return prefixState;
+	}
+
+	public AsState getAsState() {
+		return asState;
+	}
+
+	public boolean isFullCheck() {
+		return fullCheck;
+	}
+
+	/**
+	 * @return the VRP that determined the validity state, <code>null</code> if
+	 *         there wasn't any covering VRP
+	 */
+	public Match getMatch() {
+		return match;
+	}
+
+	/**
+	 * VRP that matched a route validation
+	 *
+	 */
+	public static class Match {
+
+		private final long roaId;
+		private final long asn;
+		private final byte[] prefix;
+		private final int prefixLength;
+		private final int prefixMaxLength;
+
+		public Match(long roaId, long asn, byte[] prefix, int prefixLength, int prefixMaxLength) {
+			this.roaId = roaId;
+			this.asn = asn;
+			this.prefix = prefix;
+			this.prefixLength = prefixLength;
+			this.prefixMaxLength = prefixMaxLength;
+		}
+
+		/**
+		 * Get the ID to use instead of a ROA ID for a VRP asserted by the SLURM,
+		 * the IDs of the assertions are negative so they can't collide with the
+		 * ROA IDs
+		 *
+		 * @param slurmPrefixId
+		 *            ID of the SLURM prefix assertion
+		 * @return the ID to use at the {@link VrpTrie}
+		 */
+		public static long slurmAssertionId(long slurmPrefixId) {
+			return -slurmPrefixId - 1;
+		}
+
+		/**
+		 * @return the ID of the ROA that holds the VRP, only valid if the VRP
+		 *         wasn't asserted by the SLURM
+		 */
+		public long getRoaId() {
+			return roaId;
+		}
+
+		/**
+		 * @return <code>true</code> if the VRP was asserted by the SLURM
+		 */
+		public boolean isSlurmAssertion() {
+			return roaId < 0;
+		}
+
+		/**
+		 * @return the ID of the SLURM prefix that asserted the VRP, only valid if
+		 *         {@link #isSlurmAssertion()}
+		 */
+		public long getSlurmPrefixId() {
+			return -roaId - 1;
+		}
+
+		public long getAsn() {
+			return asn;
+		}
+
+		public byte[] getPrefix() {
+			return prefix;
+		}
+
+		public String getPrefixText() {
+			try {
+				return InetAddress.getByAddress(prefix).getHostAddress();
+			} catch (UnknownHostException e) {
+				// Only thrown on illegal lengths, the trie doesn't allow them
+				throw new IllegalStateException(e);
+			}
+		}
+
+		public int getPrefixLength() {
+			return prefixLength;
+		}
+
+		public int getPrefixMaxLength() {
+			return prefixMaxLength;
+		}
+
+		public int getPrefixFamily() {
+			return prefix.length == 4 ? 4 : 6;
+		}
+	}
+}
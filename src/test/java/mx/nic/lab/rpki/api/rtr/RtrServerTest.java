@@ -0,0 +1,249 @@
+package mx.nic.lab.rpki.api.rtr;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import mx.nic.lab.rpki.api.util.IpAddressUtil;
+import mx.nic.lab.rpki.api.vrp.VrpSet;
+
+/**
+ * Tests of the {@link RtrServer} conversation with a router, using a loopback
+ * socket
+ *
+ */
+public class RtrServerTest extends TestCase {
+
+	private static final int DELTA_HISTORY = 10;
+
+	private static final int SOCKET_TIMEOUT = 10000;
+
+	private Socket socket;
+	private DataInputStream in;
+
+	@Override
+	protected void setUp() throws IOException {
+		RtrCache.publish(new VrpSet.Builder().add(ip("192.0.2.0"), 24, 24, 64500).add(ip("2001:db8::"), 32, 48, 64501)
+				.build(), DELTA_HISTORY);
+		RtrServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		if (socket != null) {
+			socket.close();
+		}
+		RtrServer.stop();
+	}
+
+	public void testResetQuery() throws IOException {
+		RtrCache cache = RtrCache.getCurrent();
+		connect();
+		send(resetQuery(1));
+		Set<String> vrps = readData(1, cache.getSerial());
+		assertEquals(toStrings(cache.getVrps()), vrps);
+	}
+
+	public void testResetQueryVersion0() throws IOException {
+		RtrCache cache = RtrCache.getCurrent();
+		connect();
+		send(resetQuery(0));
+		assertEquals(toStrings(cache.getVrps()), readData(0, cache.getSerial()));
+	}
+
+	public void testSerialQuery() throws IOException {
+		long since = RtrCache.getCurrent().getSerial();
+		VrpSet updated = new VrpSet.Builder().add(ip("192.0.2.0"), 24, 24, 64500).add(ip("198.51.100.0"), 24, 24, 64502)
+				.build();
+		RtrCache.publish(updated, DELTA_HISTORY);
+		assertEquals(since + 1, RtrCache.getCurrent().getSerial());
+
+		connect();
+		send(serialQuery(1, RtrCache.getSessionId(), since));
+		readHeader(1, RtrPdu.CACHE_RESPONSE, RtrCache.getSessionId(), RtrPdu.HEADER_LENGTH);
+		Set<String> withdrawn = new HashSet<>();
+		Set<String> announced = new HashSet<>();
+		readPrefixes(1, withdrawn, announced);
+		readEndOfData(1, since + 1);
+		assertEquals(toStrings(new VrpSet.Builder().add(ip("2001:db8::"), 32, 48, 64501).build()), withdrawn);
+		assertEquals(toStrings(new VrpSet.Builder().add(ip("198.51.100.0"), 24, 24, 64502).build()), announced);
+
+		// Nothing changed since the current serial
+		send(serialQuery(1, RtrCache.getSessionId(), since + 1));
+		assertTrue(readData(1, since + 1).isEmpty());
+	}
+
+	public void testCacheResetOtherSession() throws IOException {
+		connect();
+		int otherSession = (RtrCache.getSessionId() + 1) & 0xFFFF;
+		send(serialQuery(1, otherSession, RtrCache.getCurrent().getSerial()));
+		readHeader(1, RtrPdu.CACHE_RESET, 0, RtrPdu.HEADER_LENGTH);
+	}
+
+	public void testCacheResetUnknownSerial() throws IOException {
+		connect();
+		send(serialQuery(1, RtrCache.getSessionId(), RtrCache.getCurrent().getSerial() + 1));
+		readHeader(1, RtrPdu.CACHE_RESET, 0, RtrPdu.HEADER_LENGTH);
+	}
+
+	public void testUnsupportedVersion() throws IOException {
+		connect();
+		send(resetQuery(RtrPdu.MAX_VERSION + 1));
+		readErrorReport(RtrPdu.MAX_VERSION, RtrPdu.ERROR_UNSUPPORTED_VERSION);
+		assertClosed();
+	}
+
+	public void testUnexpectedVersion() throws IOException {
+		connect();
+		send(resetQuery(1));
+		readData(1, RtrCache.getCurrent().getSerial());
+		send(resetQuery(0));
+		readErrorReport(1, RtrPdu.ERROR_UNEXPECTED_VERSION);
+		assertClosed();
+	}
+
+	public void testCorruptLength() throws IOException {
+		connect();
+		ByteBuffer pdu = ByteBuffer.allocate(RtrPdu.HEADER_LENGTH);
+		pdu.put((byte) 1).put((byte) RtrPdu.RESET_QUERY).putShort((short) 0).putInt(4);
+		send(pdu.array());
+		readErrorReport(1, RtrPdu.ERROR_CORRUPT_DATA);
+		assertClosed();
+	}
+
+	private void connect() throws IOException {
+		socket = new Socket(InetAddress.getLoopbackAddress(), RtrServer.getLocalPort());
+		socket.setSoTimeout(SOCKET_TIMEOUT);
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+	}
+
+	private void send(byte[] pdu) throws IOException {
+		OutputStream out = socket.getOutputStream();
+		out.write(pdu);
+		out.flush();
+	}
+
+	/**
+	 * Read a whole response to a query: Cache Response, the prefixes and End of
+	 * Data
+	 *
+	 * @return the VRPs announced, no VRP must be withdrawn
+	 */
+	private Set<String> readData(int version, long serial) throws IOException {
+		readHeader(version, RtrPdu.CACHE_RESPONSE, RtrCache.getSessionId(), RtrPdu.HEADER_LENGTH);
+		Set<String> withdrawn = new HashSet<>();
+		Set<String> announced = new HashSet<>();
+		readPrefixes(version, withdrawn, announced);
+		readEndOfData(version, serial);
+		assertTrue(withdrawn.isEmpty());
+		return announced;
+	}
+
+	/**
+	 * Read the prefix PDUs until a PDU of another type is found, the header of
+	 * that PDU is left at the stream (marked). The withdrawals must be sent
+	 * before the announcements.
+	 */
+	private void readPrefixes(int version, Set<String> withdrawn, Set<String> announced) throws IOException {
+		while (true) {
+			in.mark(RtrPdu.HEADER_LENGTH);
+			assertEquals(version, in.readUnsignedByte());
+			int type = in.readUnsignedByte();
+			if (type != RtrPdu.IPV4_PREFIX && type != RtrPdu.IPV6_PREFIX) {
+				in.reset();
+				return;
+			}
+			assertEquals(0, in.readUnsignedShort());
+			byte[] prefix = new byte[type == RtrPdu.IPV4_PREFIX ? 4 : 16];
+			assertEquals(type == RtrPdu.IPV4_PREFIX ? RtrPdu.IPV4_PREFIX_LENGTH : RtrPdu.IPV6_PREFIX_LENGTH,
+					in.readInt());
+			int flags = in.readUnsignedByte();
+			int prefixLength = in.readUnsignedByte();
+			int maxLength = in.readUnsignedByte();
+			assertEquals(0, in.readUnsignedByte());
+			in.readFully(prefix);
+			long asn = in.readInt() & 0xFFFFFFFFL;
+			String vrp = toString(prefix, prefixLength, maxLength, asn);
+			if (flags == 0) {
+				assertTrue("Withdrawal after an announcement", announced.isEmpty());
+				assertTrue(withdrawn.add(vrp));
+			} else {
+				assertEquals(1, flags);
+				assertTrue(announced.add(vrp));
+			}
+		}
+	}
+
+	private void readEndOfData(int version, long serial) throws IOException {
+		readHeader(version, RtrPdu.END_OF_DATA, RtrCache.getSessionId(), RtrPdu.getEndOfDataLength(version));
+		assertEquals(serial, in.readInt() & 0xFFFFFFFFL);
+		if (version > 0) {
+			assertEquals(RtrPdu.REFRESH_INTERVAL, in.readInt());
+			assertEquals(RtrPdu.RETRY_INTERVAL, in.readInt());
+			assertEquals(RtrPdu.EXPIRE_INTERVAL, in.readInt());
+		}
+	}
+
+	private void readErrorReport(int version, int errorCode) throws IOException {
+		assertEquals(version, in.readUnsignedByte());
+		assertEquals(RtrPdu.ERROR_REPORT, in.readUnsignedByte());
+		assertEquals(errorCode, in.readUnsignedShort());
+		int length = in.readInt();
+		assertTrue(length >= RtrPdu.HEADER_LENGTH + 8);
+		in.readFully(new byte[length - RtrPdu.HEADER_LENGTH]);
+	}
+
+	private void readHeader(int version, int type, int sessionId, int length) throws IOException {
+		assertEquals(version, in.readUnsignedByte());
+		assertEquals(type, in.readUnsignedByte());
+		assertEquals(sessionId, in.readUnsignedShort());
+		assertEquals(length, in.readInt());
+	}
+
+	private void assertClosed() throws IOException {
+		try {
+			in.readByte();
+			fail("The session wasn't closed");
+		} catch (EOFException e) {
+			// Expected
+		}
+	}
+
+	private static byte[] resetQuery(int version) {
+		ByteBuffer pdu = ByteBuffer.allocate(RtrPdu.RESET_QUERY_LENGTH);
+		pdu.put((byte) version).put((byte) RtrPdu.RESET_QUERY).putShort((short) 0).putInt(RtrPdu.RESET_QUERY_LENGTH);
+		return pdu.array();
+	}
+
+	private static byte[] serialQuery(int version, int sessionId, long serial) {
+		ByteBuffer pdu = ByteBuffer.allocate(RtrPdu.SERIAL_QUERY_LENGTH);
+		pdu.put((byte) version).put((byte) RtrPdu.SERIAL_QUERY).putShort((short) sessionId)
+				.putInt(RtrPdu.SERIAL_QUERY_LENGTH).putInt((int) serial);
+		return pdu.array();
+	}
+
+	private static Set<String> toStrings(VrpSet vrps) {
+		Set<String> result = new HashSet<>();
+		for (int i = 0; i < vrps.size(); i++) {
+			result.add(toString(vrps.getPrefix(i), vrps.getPrefixLength(i), vrps.getMaxLength(i), vrps.getAsn(i)));
+		}
+		return result;
+	}
+
+	private static String toString(byte[] prefix, int prefixLength, int maxLength, long asn) {
+		return IpAddressUtil.format(prefix) + "/" + prefixLength + "-" + maxLength + " AS" + asn;
+	}
+
+	private static byte[] ip(String address) {
+		return IpAddressUtil.parse(address);
+	}
+}
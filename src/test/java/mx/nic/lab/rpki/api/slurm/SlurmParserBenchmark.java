@@ -0,0 +1,455 @@
+package mx.nic.lab.rpki.api.slurm;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.stream.JsonGenerator;
+
+import org.bouncycastle.util.encoders.DecoderException;
+import org.bouncycastle.util.encoders.Hex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import mx.nic.lab.rpki.api.util.CMSUtil;
+import mx.nic.lab.rpki.api.util.Util;
+import mx.nic.lab.rpki.db.pojo.ApiObject;
+import mx.nic.lab.rpki.db.pojo.Slurm;
+import mx.nic.lab.rpki.db.pojo.SlurmBgpsec;
+import mx.nic.lab.rpki.db.pojo.SlurmPrefix;
+
+/**
+ * JMH benchmark of the SLURM validation against the validation that was used
+ * before {@link SlurmParser} and the current {@link SlurmUtil}, copied below as
+ * {@link #legacyValidatePrefix(JsonObject, String)} and
+ * {@link #legacyValidateBgpsec(JsonObject, String)} (a regex for each key,
+ * exceptions for absent or mistyped properties and
+ * {@link InetAddress#getByName(String)} for the prefixes).
+ * <p>
+ * A SLURM with {@link #ENTRIES} prefixes and BGPsecs is generated at a
+ * temporary file, the score of each benchmark is in validated entries per
+ * second:
+ * <ul>
+ * <li><code>legacyValidators</code> and <code>slurmUtil</code> only validate
+ * the entries of the already loaded JSON tree.</li>
+ * <li><code>legacyLoad</code> loads the file the way it was done before: the
+ * whole JSON tree is read, each entry is validated once to check the SLURM and
+ * once more when it's synced, and the file is read again to get its
+ * checksum.</li>
+ * <li><code>slurmParser</code> loads the file with
+ * {@link SlurmParser#parse(File, List)}.</li>
+ * </ul>
+ * It isn't run with the tests; once the test classes are compiled, run it with
+ * {@link #main(String[])} using the test classpath.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(SlurmParserBenchmark.ENTRIES)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SlurmParserBenchmark {
+
+	static final int ENTRIES = 100_000;
+
+	private File slurmFile;
+
+	private JsonObject slurm;
+
+	@Setup
+	public void setup() throws IOException, GeneralSecurityException {
+		Random random = new Random(8416);
+		KeyPairGenerator keyGenerator = KeyPairGenerator.getInstance("EC");
+		keyGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+		String routerPublicKey = Base64.getEncoder()
+				.encodeToString(keyGenerator.generateKeyPair().getPublic().getEncoded());
+		// 40% prefix filters, 40% prefix assertions, 10% BGPsec filters and 10%
+		// BGPsec assertions
+		int prefixes = ENTRIES * 4 / 10;
+		int bgpsecs = ENTRIES / 10;
+		slurmFile = File.createTempFile("slurm-benchmark", ".json");
+		try (Writer writer = Files.newBufferedWriter(slurmFile.toPath(), StandardCharsets.UTF_8);
+				JsonGenerator generator = Json.createGenerator(writer)) {
+			generator.writeStartObject();
+			generator.write(Slurm.SLURM_VERSION, 1);
+			generator.writeStartObject(Slurm.VALIDATION_OUTPUT_FILTERS);
+			generator.writeStartArray(Slurm.PREFIX_FILTERS);
+			for (int i = 0; i < prefixes; i++) {
+				writePrefix(generator, random, i, false);
+			}
+			generator.writeEnd();
+			generator.writeStartArray(Slurm.BGPSEC_FILTERS);
+			for (int i = 0; i < bgpsecs; i++) {
+				writeBgpsec(generator, random, i, null);
+			}
+			generator.writeEnd();
+			generator.writeEnd();
+			generator.writeStartObject(Slurm.LOCALLY_ADDED_ASSERTIONS);
+			generator.writeStartArray(Slurm.PREFIX_ASSERTIONS);
+			for (int i = 0; i < prefixes; i++) {
+				writePrefix(generator, random, i, true);
+			}
+			generator.writeEnd();
+			generator.writeStartArray(Slurm.BGPSEC_ASSERTIONS);
+			for (int i = 0; i < bgpsecs; i++) {
+				writeBgpsec(generator, random, i, routerPublicKey);
+			}
+			generator.writeEnd();
+			generator.writeEnd();
+			generator.writeEnd();
+		}
+		try (JsonReader reader = Json.createReader(new FileReader(slurmFile))) {
+			slurm = reader.readObject();
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		slurmFile.delete();
+	}
+
+	@Benchmark
+	public void legacyValidators(Blackhole blackhole) {
+		validateEntries(slurm, SlurmParserBenchmark::legacyValidatePrefix, SlurmParserBenchmark::legacyValidateBgpsec,
+				blackhole);
+	}
+
+	@Benchmark
+	public void slurmUtil(Blackhole blackhole) {
+		validateEntries(slurm, SlurmUtil::getAndvalidatePrefix, SlurmUtil::getAndvalidateBgpsec, blackhole);
+	}
+
+	@Benchmark
+	public void legacyLoad(Blackhole blackhole) throws IOException, NoSuchAlgorithmException {
+		JsonObject jsonObject;
+		try (JsonReader reader = Json.createReader(new FileReader(slurmFile))) {
+			jsonObject = reader.readObject();
+		}
+		// Validated to check the SLURM, and once more while it was synced
+		validateEntries(jsonObject, SlurmParserBenchmark::legacyValidatePrefix,
+				SlurmParserBenchmark::legacyValidateBgpsec, blackhole);
+		validateEntries(jsonObject, SlurmParserBenchmark::legacyValidatePrefix,
+				SlurmParserBenchmark::legacyValidateBgpsec, blackhole);
+		MessageDigest md = MessageDigest.getInstance("SHA-256");
+		md.update(Files.readAllBytes(slurmFile.toPath().normalize()));
+		blackhole.consume(md.digest());
+	}
+
+	@Benchmark
+	public void slurmParser(Blackhole blackhole) {
+		List<Exception> exceptions = new ArrayList<>();
+		SlurmParser parser = new SlurmParser();
+		if (!parser.parse(slurmFile, exceptions)) {
+			throw new IllegalStateException("Invalid generated SLURM: " + exceptions);
+		}
+		blackhole.consume(parser);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(SlurmParserBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	private static void writePrefix(JsonGenerator generator, Random random, int index, boolean assertion) {
+		int prefixLength;
+		generator.writeStartObject();
+		generator.write("asn", 64496 + random.nextInt(1000));
+		if (random.nextInt(4) > 0) {
+			prefixLength = 16 + random.nextInt(9);
+			generator.write("prefix", (1 + random.nextInt(223)) + "." + random.nextInt(256) + "."
+					+ random.nextInt(256) + ".0/" + prefixLength);
+		} else {
+			prefixLength = 32 + random.nextInt(17);
+			generator.write("prefix",
+					"2001:db8:" + Integer.toHexString(random.nextInt(0x10000)) + "::/" + prefixLength);
+		}
+		if (assertion) {
+			generator.write("maxPrefixLength", prefixLength + random.nextInt(8));
+		}
+		generator.write("comment", "Generated entry #" + index);
+		generator.writeEnd();
+	}
+
+	private static void writeBgpsec(JsonGenerator generator, Random random, int index, String routerPublicKey) {
+		// The SKI is sent as the base64 of the hex encoded 160-bit hash
+		byte[] ski = new byte[20];
+		random.nextBytes(ski);
+		generator.writeStartObject();
+		generator.write("asn", 64496 + random.nextInt(1000));
+		generator.write("SKI", Base64.getEncoder().encodeToString(Hex.encode(ski)));
+		if (routerPublicKey != null) {
+			generator.write("routerPublicKey", routerPublicKey);
+		}
+		generator.write("comment", "Generated entry #" + index);
+		generator.writeEnd();
+	}
+
+	private static void validateEntries(JsonObject jsonObject, BiFunction<JsonObject, String, ?> prefixValidator,
+			BiFunction<JsonObject, String, ?> bgpsecValidator, Blackhole blackhole) {
+		JsonObject filters = jsonObject.getJsonObject(Slurm.VALIDATION_OUTPUT_FILTERS);
+		JsonObject assertions = jsonObject.getJsonObject(Slurm.LOCALLY_ADDED_ASSERTIONS);
+		validateArray(filters.getJsonArray(Slurm.PREFIX_FILTERS), SlurmPrefix.TYPE_FILTER, prefixValidator,
+				blackhole);
+		validateArray(filters.getJsonArray(Slurm.BGPSEC_FILTERS), SlurmBgpsec.TYPE_FILTER, bgpsecValidator,
+				blackhole);
+		validateArray(assertions.getJsonArray(Slurm.PREFIX_ASSERTIONS), SlurmPrefix.TYPE_ASSERTION,
+				prefixValidator, blackhole);
+		validateArray(assertions.getJsonArray(Slurm.BGPSEC_ASSERTIONS), SlurmBgpsec.TYPE_ASSERTION,
+				bgpsecValidator, blackhole);
+	}
+
+	private static void validateArray(JsonArray array, String type, BiFunction<JsonObject, String, ?> validator,
+			Blackhole blackhole) {
+		for (int i = 0; i < array.size(); i++) {
+			blackhole.consume(validator.apply(array.getJsonObject(i), type));
+		}
+	}
+
+	/*
+	 * Validators of SlurmUtil before they were rewritten, kept as they were to be
+	 * the baseline of the benchmark
+	 */
+	private static SlurmPrefix legacyValidatePrefix(JsonObject object, String type) throws IllegalArgumentException {
+		SlurmPrefix slurmPrefix = new SlurmPrefix();
+		slurmPrefix.setType(type);
+		// Check for extra keys (invalid keys)
+		List<String> invalidKeys = new ArrayList<>();
+		for (String key : object.keySet()) {
+			if (!key.matches("(prefix|asn|maxPrefixLength|comment)")) {
+				invalidKeys.add(key);
+			} else if (type.equals(SlurmPrefix.TYPE_FILTER) && key.equals("maxPrefixLength")) {
+				// Can't be present in a filter
+				invalidKeys.add(key);
+			}
+		}
+		if (!invalidKeys.isEmpty()) {
+			throw new IllegalArgumentException(
+					Util.concatenateParamsToLabel("#{error.invalid.keys}", invalidKeys.toString()));
+		}
+		String prefixRcv = null;
+		try {
+			prefixRcv = object.getString("prefix");
+		} catch (NullPointerException npe) {
+			if (type.equals(SlurmPrefix.TYPE_ASSERTION)) {
+				throw new IllegalArgumentException("#{error.slurm.prefix.prefixRequired}");
+			}
+		} catch (ClassCastException cce) {
+			throw new IllegalArgumentException(
+					Util.concatenateParamsToLabel("#{error.invalid.dataType}", "prefix", "String"));
+		}
+		if (prefixRcv != null) {
+			String[] prefixArr = prefixRcv.split("/");
+			if (prefixArr.length != 2) {
+				throw new IllegalArgumentException(
+						Util.concatenateParamsToLabel("#{error.invalid.format}", "prefix", "[prefix]/[prefix_length]"));
+			}
+
+			try {
+				InetAddress prefixAddress = InetAddress.getByName(prefixArr[0]);
+				slurmPrefix.setStartPrefix(prefixAddress.getAddress());
+				slurmPrefix.setPrefixText(prefixAddress.getHostAddress());
+			} catch (UnknownHostException e) {
+				throw new IllegalArgumentException("#{error.slurm.prefix.invalid}");
+			}
+			try {
+				int prefixLength = Integer.valueOf(prefixArr[1]);
+				slurmPrefix.setPrefixLength(prefixLength);
+			} catch (NumberFormatException nfe) {
+				throw new IllegalArgumentException(
+						Util.concatenateParamsToLabel("#{error.invalid.dataType}", "prefix length", "Number"));
+			}
+		}
+		try {
+			// There's no "getLong" method
+			JsonNumber number = object.getJsonNumber("asn");
+			if (number != null) {
+				slurmPrefix.setAsn(number.longValueExact());
+			} else if (type.equals(SlurmPrefix.TYPE_ASSERTION)) {
+				throw new IllegalArgumentException("#{error.slurm.asnRequired}");
+			} else if (slurmPrefix.getStartPrefix() == null) {
+				// In a Filter is optional, but either a prefix or an asn must be present
+				throw new IllegalArgumentException("#{error.slurm.prefix.prefixOrAsnRequired}");
+			}
+		} catch (ClassCastException cce) {
+			throw new IllegalArgumentException(
+					Util.concatenateParamsToLabel("#{error.invalid.dataType}", "asn", "Number"));
+		} catch (ArithmeticException e) {
+			throw new IllegalArgumentException(Util.concatenateParamsToLabel("#{error.slurm.asnFormat}",
+					ApiObject.ASN_MIN_VALUE, ApiObject.ASN_MAX_VALUE));
+		}
+
+		try {
+			slurmPrefix.setPrefixMaxLength(object.getInt("maxPrefixLength"));
+		} catch (NullPointerException npe) {
+			// Optional in both cases, do nothing
+		} catch (ClassCastException cce) {
+			throw new IllegalArgumentException(
+					Util.concatenateParamsToLabel("#{error.invalid.dataType}", "maxPrefixLength", "Number"));
+		}
+
+		try {
+			String value = object.getString("comment");
+			if (value.trim().isEmpty()) {
+				throw new IllegalArgumentException("#{error.slurm.commentEmpty}");
+			}
+			slurmPrefix.setComment(value.trim());
+		} catch (NullPointerException npe) {
+			// It's RECOMMENDED, so (for now) leave it as optional
+		} catch (ClassCastException cce) {
+			throw new IllegalArgumentException(
+					Util.concatenateParamsToLabel("#{error.invalid.dataType}", "comment", "String"));
+		}
+		return slurmPrefix;
+	}
+
+	private static SlurmBgpsec legacyValidateBgpsec(JsonObject object, String type) throws IllegalArgumentException {
+		SlurmBgpsec slurmBgpsec = new SlurmBgpsec();
+		slurmBgpsec.setType(type);
+		// Check for extra keys (invalid keys)
+		List<String> invalidKeys = new ArrayList<>();
+		for (String key : object.keySet()) {
+			if (!key.matches("(asn|SKI|routerPublicKey|comment)")) {
+				invalidKeys.add(key);
+			} else if (type.equals(SlurmBgpsec.TYPE_FILTER) && key.equals("routerPublicKey")) {
+				// Can't be present in a filter
+				invalidKeys.add(key);
+			}
+		}
+		if (!invalidKeys.isEmpty()) {
+			throw new IllegalArgumentException(
+					Util.concatenateParamsToLabel("#{error.invalid.keys}", invalidKeys.toString()));
+		}
+
+		try {
+			// There's no "getLong" method
+			JsonNumber number = object.getJsonNumber("asn");
+			if (number != null) {
+				slurmBgpsec.setAsn(number.longValueExact());
+			} else if (type.equals(SlurmBgpsec.TYPE_ASSERTION)) {
+				throw new IllegalArgumentException("#{error.slurm.asnRequired}");
+			}
+		} catch (ClassCastException cce) {
+			throw new IllegalArgumentException(
+					Util.concatenateParamsToLabel("#{error.invalid.dataType}", "asn", "Number"));
+		} catch (ArithmeticException e) {
+			throw new IllegalArgumentException(Util.concatenateParamsToLabel("#{error.slurm.asnFormat}",
+					ApiObject.ASN_MIN_VALUE, ApiObject.ASN_MAX_VALUE));
+		}
+
+		try {
+			String value = object.getString("SKI");
+			// If the value is sent, it can't be an empty value
+			if (value.trim().isEmpty()) {
+				throw new IllegalArgumentException("#{error.slurm.bgpsec.skiEmpty}");
+			}
+			slurmBgpsec.setSki(value.trim());
+		} catch (NullPointerException npe) {
+			if (type.equals(SlurmBgpsec.TYPE_ASSERTION)) {
+				throw new IllegalArgumentException("#{error.slurm.bgpsec.skiRequired}");
+			} else if (slurmBgpsec.getAsn() == null) {
+				// In a Filter is optional, but either an asn or a SKI must be present
+				throw new IllegalArgumentException("#{error.slurm.bgpsec.asnOrSkiRequired}");
+			}
+		} catch (ClassCastException cce) {
+			throw new IllegalArgumentException(
+					Util.concatenateParamsToLabel("#{error.invalid.dataType}", "SKI", "String"));
+		}
+
+		try {
+			String value = object.getString("routerPublicKey");
+			if (value.trim().isEmpty()) {
+				throw new IllegalArgumentException("#{error.slurm.bgpsec.routerPublicKeyEmpty}");
+			}
+			slurmBgpsec.setRouterPublicKey(value.trim());
+		} catch (NullPointerException npe) {
+			if (type.equals(SlurmBgpsec.TYPE_ASSERTION)) {
+				throw new IllegalArgumentException("#{error.slurm.bgpsec.routerPublicKeyRequired}");
+			}
+		} catch (ClassCastException cce) {
+			throw new IllegalArgumentException(
+					Util.concatenateParamsToLabel("#{error.invalid.dataType}", "routerPublicKey", "String"));
+		}
+
+		try {
+			String value = object.getString("comment");
+			if (value.trim().isEmpty()) {
+				throw new IllegalArgumentException("#{error.slurm.commentEmpty}");
+			}
+			slurmBgpsec.setComment(value.trim());
+		} catch (NullPointerException npe) {
+			// It's RECOMMENDED, so (for now) leave it as optional
+		} catch (ClassCastException cce) {
+			throw new IllegalArgumentException(
+					Util.concatenateParamsToLabel("#{error.invalid.dataType}", "comment", "String"));
+		}
+
+		// Check SKI and routerPublicKey are sent base64 encoded, and verify its
+		// value
+		if (slurmBgpsec.getSki() != null && !slurmBgpsec.getSki().trim().isEmpty()) {
+			try {
+				byte[] decodedSki = Base64.getDecoder().decode(slurmBgpsec.getSki().getBytes());
+				byte[] hexBytes = Hex.decode(decodedSki);
+				// Is the 160-bit SHA-1 hash (RFC 8416 section 3.3.2 citing RFC 6487 section
+				// 4.8.2)
+				if (hexBytes.length != 20) {
+					throw new IllegalArgumentException("#{error.slurm.bgpsec.skiInvalid}");
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(
+						Util.concatenateParamsToLabel("#{error.slurm.bgpsec.notBase64}", "SKI"));
+			} catch (DecoderException e) {
+				throw new IllegalArgumentException(
+						Util.concatenateParamsToLabel("#{error.slurm.bgpsec.notHex}", "SKI"));
+			}
+		}
+
+		if (slurmBgpsec.getRouterPublicKey() != null && !slurmBgpsec.getRouterPublicKey().trim().isEmpty()) {
+			try {
+				byte[] decodedPk = Base64.getDecoder().decode(slurmBgpsec.getRouterPublicKey().getBytes());
+				if (!CMSUtil.isValidSubjectPublicKey(decodedPk)) {
+					throw new IllegalArgumentException("#{error.slurm.bgpsec.routerPublicKeyInvalid}");
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(
+						Util.concatenateParamsToLabel("#{error.slurm.bgpsec.notBase64}", "routerPublicKey"));
+			}
+		}
+		return slurmBgpsec;
+	}
+}
@@ -0,0 +1,74 @@
+package mx.nic.lab.rpki.api.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the parsing of IP address literals made by
+ * {@link IpAddressUtil} against {@link InetAddress#getByName(String)}, the way
+ * that the prefixes were parsed before. Each operation parses a batch of
+ * random IPv4 and (compressed) IPv6 literals, like the prefixes of the ROAs.
+ * It isn't run with the tests; once the test classes are compiled, run it with
+ * {@link #main(String[])} using the test classpath.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IpAddressUtilBenchmark {
+
+	private static final int BATCH_SIZE = 1024;
+
+	private String[] literals;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(8210);
+		literals = new String[BATCH_SIZE];
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			if (random.nextInt(4) > 0) {
+				literals[i] = random.nextInt(224) + "." + random.nextInt(256) + "." + random.nextInt(256) + ".0";
+			} else {
+				literals[i] = "2001:db8:" + Integer.toHexString(random.nextInt(0x10000)) + "::";
+			}
+		}
+	}
+
+	@Benchmark
+	public void ipAddressUtil(Blackhole blackhole) {
+		for (String literal : literals) {
+			blackhole.consume(IpAddressUtil.parse(literal));
+		}
+	}
+
+	@Benchmark
+	public void inetAddress(Blackhole blackhole) throws UnknownHostException {
+		for (String literal : literals) {
+			blackhole.consume(InetAddress.getByName(literal).getAddress());
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(IpAddressUtilBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,183 @@
+package mx.nic.lab.rpki.api.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of the IP address literals parsed and formatted by
+ * {@link IpAddressUtil}
+ *
+ */
+public class IpAddressUtilTest extends TestCase {
+
+	public void testIpv4() {
+		assertAddress("0.0.0.0", 0, 0, 0, 0);
+		assertAddress("192.0.2.1", 192, 0, 2, 1);
+		assertAddress("255.255.255.255", 255, 255, 255, 255);
+		assertAddress("010.001.0.00", 10, 1, 0, 0);
+	}
+
+	public void testInvalidIpv4() {
+		assertInvalid("256.0.0.0");
+		assertInvalid("1.2.3");
+		assertInvalid("1.2.3.4.5");
+		assertInvalid("1..2.3");
+		assertInvalid(".1.2.3");
+		assertInvalid("1.2.3.");
+		assertInvalid("0001.2.3.4");
+		assertInvalid("1.2.3.a");
+		assertInvalid("1.2.3.4/24");
+		assertInvalid(" 1.2.3.4");
+		assertInvalid("");
+		assertNull(IpAddressUtil.parse(null));
+	}
+
+	public void testIpv6() {
+		assertAddress("1:2:3:4:5:6:7:8", 0, 1, 0, 2, 0, 3, 0, 4, 0, 5, 0, 6, 0, 7, 0, 8);
+		assertAddress("2001:DB8:ABCD:ef01::", 0x20, 0x01, 0x0d, 0xb8, 0xab, 0xcd, 0xef, 0x01, 0, 0, 0, 0, 0, 0, 0, 0);
+		assertAddress("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff", 255, 255, 255, 255, 255, 255, 255, 255, 255, 255, 255,
+				255, 255, 255, 255, 255);
+		assertAddress("0000:0000:0000:0000:0000:0000:0000:0001", 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1);
+	}
+
+	public void testCompressedIpv6() {
+		assertAddress("::", 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+		assertAddress("::1", 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1);
+		assertAddress("1::", 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+		assertAddress("1::2", 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 2);
+		assertAddress("1:2:3:4:5:6:7::", 0, 1, 0, 2, 0, 3, 0, 4, 0, 5, 0, 6, 0, 7, 0, 0);
+		assertAddress("::2:3:4:5:6:7:8", 0, 0, 0, 2, 0, 3, 0, 4, 0, 5, 0, 6, 0, 7, 0, 8);
+		assertAddress("1:2::7:8", 0, 1, 0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 7, 0, 8);
+	}
+
+	public void testEmbeddedIpv4() {
+		assertAddress("::ffff:1.2.3.4", 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 255, 255, 1, 2, 3, 4);
+		assertAddress("::1.2.3.4", 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 2, 3, 4);
+		assertAddress("1:2:3:4:5:6:1.2.3.4", 0, 1, 0, 2, 0, 3, 0, 4, 0, 5, 0, 6, 1, 2, 3, 4);
+		assertInvalid("1:2:3:4:5:6:7:1.2.3.4");
+		assertInvalid("::ffff:1.2.3");
+		assertInvalid("::ffff:1.2.3.256");
+		assertInvalid("::1.2.3.4:1");
+		assertInvalid("1.2.3.4::");
+	}
+
+	public void testOverLongGroups() {
+		assertInvalid("12345::");
+		assertInvalid("::12345");
+		assertInvalid("1:2:3:4:5:6:7:10000");
+		assertInvalid("1:2:3:4:5:6:7:8:9");
+		assertInvalid("1:2:3:4:5:6:7:8::");
+		assertInvalid("::1:2:3:4:5:6:7:8");
+	}
+
+	public void testInvalidCompression() {
+		assertInvalid("1::2::3");
+		assertInvalid("::1::");
+		assertInvalid(":::");
+		assertInvalid("1:::2");
+		assertInvalid(":1");
+		assertInvalid("1:");
+		assertInvalid(":");
+		assertInvalid("1:2:3:4:5:6:7");
+	}
+
+	public void testZoneId() {
+		// The zone IDs aren't part of the address, so they aren't accepted
+		assertInvalid("fe80::1%eth0");
+		assertInvalid("fe80::1%1");
+		assertInvalid("fe80::%");
+	}
+
+	public void testInvalidCharacters() {
+		assertInvalid("1:2:3:4:5:6:7:g");
+		assertInvalid("[::1]");
+		assertInvalid("::1/128");
+		assertInvalid("example.com");
+	}
+
+	public void testRange() {
+		assertTrue(Arrays.equals(new byte[] { (byte) 192, 0, 2, 0 }, IpAddressUtil.parse("192.0.2.0/24", 0, 9)));
+		assertTrue(Arrays.equals(IpAddressUtil.parse("2001:db8::"), IpAddressUtil.parse("2001:db8::/32", 0, 10)));
+		assertNull(IpAddressUtil.parse("192.0.2.0", 3, 3));
+	}
+
+	public void testFormat() {
+		assertEquals("192.0.2.1", IpAddressUtil.format(IpAddressUtil.parse("192.0.2.1")));
+		assertEquals("0:0:0:0:0:0:0:0", IpAddressUtil.format(IpAddressUtil.parse("::")));
+		assertEquals("2001:db8:0:0:0:0:0:1", IpAddressUtil.format(IpAddressUtil.parse("2001:DB8::1")));
+	}
+
+	/**
+	 * Compare the results with the ones of {@link InetAddress} for random
+	 * addresses, uncompressed and compressed
+	 *
+	 * @throws UnknownHostException
+	 */
+	public void testSameAsInetAddress() throws UnknownHostException {
+		Random random = new Random(4291);
+		for (int i = 0; i < 10000; i++) {
+			byte[] address = new byte[random.nextBoolean() ? 4 : 16];
+			random.nextBytes(address);
+			if (address.length == 16) {
+				// Some zero groups so that the address can be compressed
+				int start = 2 * random.nextInt(8);
+				int end = start + 2 * random.nextInt(9 - start / 2);
+				Arrays.fill(address, start, end, (byte) 0);
+				// InetAddress returns an IPv4 address for an IPv4-mapped address
+				address[10] = 0;
+			}
+			InetAddress inetAddress = InetAddress.getByAddress(address);
+			String text = inetAddress.getHostAddress();
+			assertEquals(text, IpAddressUtil.format(address));
+			assertTrue(text, Arrays.equals(address, IpAddressUtil.parse(text)));
+			if (address.length == 16) {
+				String compressed = compress(text);
+				assertTrue(compressed, Arrays.equals(InetAddress.getByName(compressed).getAddress(),
+						IpAddressUtil.parse(compressed)));
+			}
+		}
+	}
+
+	/**
+	 * Replace the longest run of zero groups with "::"
+	 */
+	private static String compress(String text) {
+		String[] groups = text.split(":");
+		int bestStart = -1;
+		int bestLength = 0;
+		for (int i = 0; i < groups.length; i++) {
+			int j = i;
+			while (j < groups.length && groups[j].equals("0")) {
+				j++;
+			}
+			if (j - i > bestLength) {
+				bestStart = i;
+				bestLength = j - i;
+			}
+		}
+		if (bestStart < 0) {
+			return text;
+		}
+		String head = String.join(":", Arrays.copyOfRange(groups, 0, bestStart));
+		String tail = String.join(":", Arrays.copyOfRange(groups, bestStart + bestLength, groups.length));
+		return head + "::" + tail;
+	}
+
+	private static void assertAddress(String text, int... expected) {
+		byte[] bytes = new byte[expected.length];
+		for (int i = 0; i < expected.length; i++) {
+			bytes[i] = (byte) expected[i];
+		}
+		byte[] address = IpAddressUtil.parse(text);
+		assertNotNull(text, address);
+		assertTrue(text, Arrays.equals(bytes, address));
+	}
+
+	private static void assertInvalid(String text) {
+		assertNull(text, IpAddressUtil.parse(text));
+	}
+}
@@ -0,0 +1,167 @@
+package mx.nic.lab.rpki.api.validation;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.joda.time.DateTime;
+
+import junit.framework.TestCase;
+import mx.nic.lab.rpki.db.exception.ApiDataAccessException;
+import mx.nic.lab.rpki.db.pojo.RpkiObject;
+import mx.nic.lab.rpki.db.pojo.ValidationRun;
+import net.ripe.rpki.commons.crypto.crl.X509Crl;
+import net.ripe.rpki.commons.crypto.crl.X509CrlBuilder;
+import net.ripe.rpki.commons.validation.ValidationResult;
+
+/**
+ * Tests of the {@link RepositoryObjectsPipeline} with a store that fails
+ *
+ */
+public class RepositoryObjectsPipelineTest extends TestCase {
+
+	private static final long FINISH_TIMEOUT_MILLIS = 30000L;
+
+	private static KeyPair keyPair;
+
+	private Path directory;
+	private List<RpkiObject> storedObjects;
+	private AtomicInteger addedRepositories;
+	private RpkiObject storedByOther;
+
+	@Override
+	protected void setUp() throws IOException, NoSuchAlgorithmException {
+		if (keyPair == null) {
+			KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+			generator.initialize(2048);
+			keyPair = generator.generateKeyPair();
+		}
+		directory = Files.createTempDirectory("pipeline-test");
+		storedObjects = new ArrayList<>();
+		addedRepositories = new AtomicInteger();
+		storedByOther = null;
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		List<Path> files = new ArrayList<>();
+		Files.list(directory).forEach(files::add);
+		for (Path file : files) {
+			Files.delete(file);
+		}
+		Files.delete(directory);
+	}
+
+	public void testFailedBatchIsStoredInHalves() throws Exception {
+		// Only one object can be stored at once
+		RepositoryObjectsPipeline pipeline = createPipeline(objects -> {
+			if (objects.size() > 1) {
+				throw new IllegalStateException("Too many objects");
+			}
+		}, 4, 2);
+		for (int i = 0; i < 10; i++) {
+			submit(pipeline, "crl" + i + ".crl", createCrl(i).getEncoded());
+		}
+		finish(pipeline);
+		assertEquals(10, storedObjects.size());
+	}
+
+	public void testFailingStoreDoesNotBlockWorkers() throws Exception {
+		RepositoryObjectsPipeline pipeline = createPipeline(objects -> {
+			throw new IllegalStateException("Database unavailable");
+		}, 1, 1);
+		for (int i = 0; i < 10; i++) {
+			submit(pipeline, "crl" + i + ".crl", createCrl(i).getEncoded());
+		}
+		finish(pipeline);
+		assertTrue(storedObjects.isEmpty());
+	}
+
+	public void testSameObjectAtSeveralFiles() throws Exception {
+		RepositoryObjectsPipeline pipeline = createPipeline(objects -> {
+			// Nothing fails
+		}, 100, 10);
+		byte[] encoded = createCrl(1).getEncoded();
+		for (int i = 0; i < 5; i++) {
+			submit(pipeline, "copy" + i + ".crl", encoded);
+		}
+		finish(pipeline);
+		// The object is stored once and the locations are added before it's stored
+		assertEquals(1, storedObjects.size());
+		assertEquals(0, addedRepositories.get());
+	}
+
+	public void testObjectStoredByAnotherPipeline() throws Exception {
+		// Another pipeline stores the object first, so the unique key fails
+		RepositoryObjectsPipeline pipeline = createPipeline(objects -> {
+			storedByOther = new RpkiObject("rsync://example.com/other/crl.crl", 2L, createCrl(1));
+			throw new IllegalStateException("Duplicate key");
+		}, 100, 10);
+		submit(pipeline, "crl.crl", createCrl(1).getEncoded());
+		finish(pipeline);
+		// The repository of this pipeline is added to the stored object
+		assertTrue(storedObjects.isEmpty());
+		assertEquals(1, addedRepositories.get());
+	}
+
+	private RepositoryObjectsPipeline createPipeline(BulkCreate bulkCreate, int batchSize, int queueSize) {
+		RepositoryObjectsPipeline.ObjectStore store = new RepositoryObjectsPipeline.ObjectStore() {
+
+			@Override
+			public Optional<RpkiObject> findBySha256(byte[] sha256) {
+				return Optional.ofNullable(storedByOther);
+			}
+
+			@Override
+			public void bulkCreate(Set<RpkiObject> objects) throws ApiDataAccessException {
+				bulkCreate.bulkCreate(objects);
+				storedObjects.addAll(objects);
+			}
+
+			@Override
+			public void addRpkiRepository(RpkiObject object, Long rpkiRepositoryId) {
+				addedRepositories.incrementAndGet();
+			}
+		};
+		return new RepositoryObjectsPipeline(new ValidationRun(ValidationRun.Type.RPKI_REPOSITORY),
+				ValidationResult.withLocation("test"), store, 2, queueSize, batchSize);
+	}
+
+	private void submit(RepositoryObjectsPipeline pipeline, String name, byte[] encoded) throws IOException {
+		Path file = Files.write(directory.resolve(name), encoded);
+		pipeline.submit(file, Files.readAttributes(file, BasicFileAttributes.class),
+				"rsync://example.com/repository/" + name, 1L);
+	}
+
+	private static X509Crl createCrl(int crlNumber) {
+		DateTime now = new DateTime();
+		return new X509CrlBuilder().withIssuerDN(new X500Principal("CN=test")).withThisUpdateTime(now)
+				.withNextUpdateTime(now.plusDays(1)).withNumber(BigInteger.valueOf(crlNumber))
+				.withAuthorityKeyIdentifier(keyPair.getPublic()).withSignatureProvider("SunRsaSign")
+				.build(keyPair.getPrivate());
+	}
+
+	private static void finish(RepositoryObjectsPipeline pipeline) throws InterruptedException {
+		Thread finisher = new Thread(pipeline::finish);
+		finisher.start();
+		finisher.join(FINISH_TIMEOUT_MILLIS);
+		assertFalse("The pipeline didn't finish", finisher.isAlive());
+	}
+
+	private interface BulkCreate {
+
+		void bulkCreate(Set<RpkiObject> objects) throws ApiDataAccessException;
+	}
+}
@@ -0,0 +1,129 @@
+package mx.nic.lab.rpki.api.vrp;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import mx.nic.lab.rpki.api.util.IpAddressUtil;
+
+/**
+ * Randomized tests of the {@link VrpSet} operations and the {@link VrpDelta}s
+ * built from them, the results are compared against a plain set of the VRPs
+ *
+ */
+public class VrpDeltaTest extends TestCase {
+
+	private static final int ROUNDS = 200;
+
+	private static final String[] PREFIXES = { "10.0.0.0", "10.1.0.0", "192.0.2.0", "255.255.255.0", "2001:db8::",
+			"2001:db8:1::", "ffff::", "::ffff:10.0.0.0" };
+
+	private final Random random = new Random(8210);
+
+	public void testBuildSortsAndRemovesDuplicates() {
+		for (int round = 0; round < ROUNDS; round++) {
+			Set<String> expected = new HashSet<>();
+			VrpSet vrps = randomSet(expected, random.nextInt(64));
+			assertSameVrps(expected, vrps);
+		}
+	}
+
+	public void testDifferenceAndUnion() {
+		for (int round = 0; round < ROUNDS; round++) {
+			Set<String> expectedA = new HashSet<>();
+			Set<String> expectedB = new HashSet<>();
+			VrpSet a = randomSet(expectedA, random.nextInt(64));
+			VrpSet b = randomSet(expectedB, random.nextInt(64));
+
+			Set<String> difference = new HashSet<>(expectedA);
+			difference.removeAll(expectedB);
+			assertSameVrps(difference, a.difference(b));
+
+			Set<String> union = new HashSet<>(expectedA);
+			union.addAll(expectedB);
+			assertSameVrps(union, a.union(b));
+			assertTrue(a.union(b).sameVrps(b.union(a)));
+		}
+	}
+
+	public void testIdsKeptWithTheVrps() {
+		byte[] prefix = IpAddressUtil.parse("192.0.2.0");
+		byte[] otherPrefix = IpAddressUtil.parse("2001:db8::");
+		VrpSet vrps = new VrpSet.Builder().add(otherPrefix, 32, 32, 64500, 3).add(prefix, 24, 24, 64500, 1)
+				.add(prefix, 24, 24, 64500, 2).build();
+		assertEquals(2, vrps.size());
+		// The ID of the first duplicate added is kept
+		assertEquals(1, vrps.getId(0));
+		assertEquals(3, vrps.getId(1));
+		VrpSet union = vrps.difference(new VrpSet.Builder().add(prefix, 24, 24, 64500).build())
+				.union(new VrpSet.Builder().add(prefix, 24, 28, 64500, 4).build());
+		assertEquals(2, union.size());
+		assertEquals(4, union.getId(0));
+		assertEquals(3, union.getId(1));
+	}
+
+	public void testDeltasSinceAndRevert() {
+		for (int round = 0; round < ROUNDS / 10; round++) {
+			List<VrpSet> snapshots = new ArrayList<>();
+			List<VrpDelta> deltas = new ArrayList<>();
+			snapshots.add(randomSet(new HashSet<>(), random.nextInt(64)));
+			int serials = 1 + random.nextInt(10);
+			for (int serial = 1; serial <= serials; serial++) {
+				VrpSet vrps = randomSet(new HashSet<>(), random.nextInt(64));
+				deltas.add(VrpDelta.compute(snapshots.get(serial - 1), vrps, serial));
+				snapshots.add(vrps);
+			}
+			VrpSet last = snapshots.get(serials);
+			for (int since = 0; since <= serials; since++) {
+				VrpDelta delta = VrpDelta.since(deltas, since, serials);
+				assertNotNull(delta);
+				VrpSet applied = snapshots.get(since).difference(delta.getWithdrawn()).union(delta.getAnnounced());
+				assertTrue(applied.sameVrps(last));
+				assertTrue(VrpDelta.revert(deltas, last, serials, since).sameVrps(snapshots.get(since)));
+			}
+			assertNull(VrpDelta.since(deltas, serials + 1, serials));
+			assertNull(VrpDelta.revert(deltas, last, serials, serials + 1));
+			// Only the kept deltas can be used
+			List<VrpDelta> kept = deltas.subList(1, deltas.size());
+			if (!kept.isEmpty()) {
+				assertNull(VrpDelta.since(kept, 0, serials));
+				assertNull(VrpDelta.revert(kept, last, serials, 0));
+				assertTrue(VrpDelta.revert(kept, last, serials, 1).sameVrps(snapshots.get(1)));
+			}
+		}
+	}
+
+	private VrpSet randomSet(Set<String> expected, int count) {
+		VrpSet.Builder builder = new VrpSet.Builder();
+		for (int i = 0; i < count; i++) {
+			byte[] prefix = IpAddressUtil.parse(PREFIXES[random.nextInt(PREFIXES.length)]);
+			int prefixLength = 8 + random.nextInt(4);
+			int maxLength = prefixLength + random.nextInt(3);
+			// Include ASNs that don't fit at a signed int
+			long asn = random.nextBoolean() ? random.nextInt(3) : 0xFFFFFFFFL - random.nextInt(3);
+			builder.add(prefix, prefixLength, maxLength, asn);
+			expected.add(toString(prefix, prefixLength, maxLength, asn));
+		}
+		return builder.build();
+	}
+
+	private static void assertSameVrps(Set<String> expected, VrpSet vrps) {
+		Set<String> actual = new HashSet<>();
+		for (int i = 0; i < vrps.size(); i++) {
+			actual.add(toString(vrps.getPrefix(i), vrps.getPrefixLength(i), vrps.getMaxLength(i), vrps.getAsn(i)));
+			assertEquals(vrps.getPrefix(i).length == 4, vrps.isIpv4(i));
+			if (i > 0) {
+				assertTrue("The VRPs aren't sorted", vrps.compare(i - 1, vrps, i) < 0);
+			}
+		}
+		assertEquals(expected.size(), vrps.size());
+		assertEquals(expected, actual);
+	}
+
+	private static String toString(byte[] prefix, int prefixLength, int maxLength, long asn) {
+		return IpAddressUtil.format(prefix) + "/" + prefixLength + "-" + maxLength + " AS" + asn;
+	}
+}
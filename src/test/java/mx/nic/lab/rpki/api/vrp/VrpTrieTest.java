@@ -0,0 +1,137 @@
+package mx.nic.lab.rpki.api.vrp;
+
+import junit.framework.TestCase;
+import mx.nic.lab.rpki.api.util.IpAddressUtil;
+import mx.nic.lab.rpki.api.vrp.VrpValidation.AsState;
+import mx.nic.lab.rpki.api.vrp.VrpValidation.PrefixState;
+import mx.nic.lab.rpki.api.vrp.VrpValidation.ValidityState;
+
+/**
+ * Tests of the route origin validation made by {@link VrpTrie}
+ *
+ */
+public class VrpTrieTest extends TestCase {
+
+	private VrpTrie ipv4;
+	private VrpTrie ipv6;
+
+	@Override
+	protected void setUp() {
+		ipv4 = new VrpTrie(32);
+		ipv4.add(ip("10.0.0.0"), 8, 64500, 16, 1);
+		ipv4.add(ip("10.1.0.0"), 16, 64501, 24, 2);
+		ipv4.add(ip("192.0.2.0"), 24, 0, 24, 3);
+		ipv4.add(ip("198.51.100.0"), 24, 64502, 24, 4);
+		ipv4.add(ip("198.51.100.0"), 24, 64503, 28, 5);
+		ipv4.trim();
+		ipv6 = new VrpTrie(128);
+		ipv6.add(ip("2001:db8::"), 32, 64500, 48, 6);
+		ipv6.trim();
+	}
+
+	public void testExactMatch() {
+		VrpValidation result = ipv4.validate(ip("10.1.0.0"), 16, 64501, false);
+		assertState(result, ValidityState.VALID, PrefixState.MATCH_ROA, AsState.MATCHING);
+		assertEquals(2, result.getMatch().getRoaId());
+		assertEquals("10.1.0.0", result.getMatch().getPrefixText());
+		assertEquals(16, result.getMatch().getPrefixLength());
+		assertEquals(24, result.getMatch().getPrefixMaxLength());
+	}
+
+	public void testCoveringVrp() {
+		// Only covered by 10.0.0.0/8, considered only on a full check
+		VrpValidation result = ipv4.validate(ip("10.2.0.0"), 16, 64500, true);
+		assertState(result, ValidityState.VALID, PrefixState.MATCH_ROA, AsState.MATCHING);
+		assertEquals(1, result.getMatch().getRoaId());
+		assertEquals("10.0.0.0", result.getMatch().getPrefixText());
+		assertEquals(8, result.getMatch().getPrefixLength());
+
+		result = ipv4.validate(ip("10.2.0.0"), 16, 64500, false);
+		assertState(result, ValidityState.NOT_FOUND, PrefixState.NON_INTERSECTING, AsState.NON_MATCHING);
+		assertNull(result.getMatch());
+	}
+
+	public void testCoveringVrpOtherAsn() {
+		// 10.1.0.0/16 is covered by both VRPs, only the /8 authorizes the ASN
+		VrpValidation result = ipv4.validate(ip("10.1.0.0"), 16, 64500, true);
+		assertState(result, ValidityState.VALID, PrefixState.MATCH_ROA, AsState.MATCHING);
+		assertEquals(1, result.getMatch().getRoaId());
+
+		result = ipv4.validate(ip("10.1.0.0"), 16, 64999, true);
+		assertState(result, ValidityState.INVALID, PrefixState.MATCH_ROA, AsState.NON_MATCHING);
+		assertNotNull(result.getMatch());
+	}
+
+	public void testMaxLength() {
+		// The max length is inclusive
+		VrpValidation result = ipv4.validate(ip("10.1.2.0"), 24, 64501, true);
+		assertState(result, ValidityState.VALID, PrefixState.MATCH_ROA, AsState.MATCHING);
+		assertEquals(2, result.getMatch().getRoaId());
+
+		result = ipv4.validate(ip("10.1.2.0"), 25, 64501, true);
+		assertState(result, ValidityState.INVALID, PrefixState.MORE_SPECIFIC, AsState.MATCHING);
+		assertEquals(2, result.getMatch().getRoaId());
+	}
+
+	public void testMaxLengthOfSamePrefix() {
+		// Two VRPs with the same prefix, only the second allows a /28
+		VrpValidation result = ipv4.validate(ip("198.51.100.16"), 28, 64503, true);
+		assertState(result, ValidityState.VALID, PrefixState.MATCH_ROA, AsState.MATCHING);
+		assertEquals(5, result.getMatch().getRoaId());
+
+		result = ipv4.validate(ip("198.51.100.16"), 28, 64502, true);
+		assertState(result, ValidityState.INVALID, PrefixState.MATCH_ROA, AsState.MATCHING);
+	}
+
+	public void testAs0NeverMatches() {
+		VrpValidation result = ipv4.validate(ip("192.0.2.0"), 24, 0, false);
+		assertState(result, ValidityState.INVALID, PrefixState.MATCH_ROA, AsState.NON_MATCHING);
+		assertEquals(3, result.getMatch().getRoaId());
+	}
+
+	public void testLessSpecificNotCovered() {
+		VrpValidation result = ipv4.validate(ip("10.0.0.0"), 7, 64500, true);
+		assertState(result, ValidityState.NOT_FOUND, PrefixState.NON_INTERSECTING, AsState.NON_MATCHING);
+		assertNull(result.getMatch());
+	}
+
+	public void testIpv6() {
+		VrpValidation result = ipv6.validate(ip("2001:db8:1::"), 48, 64500, true);
+		assertState(result, ValidityState.VALID, PrefixState.MATCH_ROA, AsState.MATCHING);
+		assertEquals("2001:db8:0:0:0:0:0:0", result.getMatch().getPrefixText());
+		assertEquals(6, result.getMatch().getPrefixFamily());
+
+		result = ipv6.validate(ip("2001:db8:1::"), 64, 64500, true);
+		assertState(result, ValidityState.INVALID, PrefixState.MORE_SPECIFIC, AsState.MATCHING);
+	}
+
+	public void testSlurmAssertionId() {
+		VrpTrie trie = new VrpTrie(32);
+		trie.add(ip("203.0.113.0"), 24, 64500, 24, VrpValidation.Match.slurmAssertionId(0));
+		trie.trim();
+		VrpValidation.Match match = trie.validate(ip("203.0.113.0"), 24, 64500, false).getMatch();
+		assertTrue(match.isSlurmAssertion());
+		assertEquals(0, match.getSlurmPrefixId());
+		assertFalse(ipv4.validate(ip("10.1.0.0"), 16, 64501, false).getMatch().isSlurmAssertion());
+	}
+
+	public void testInvalidPrefixLength() {
+		try {
+			new VrpTrie(32).add(ip("10.0.0.0"), 33, 64500, 33, 1);
+			fail("A length greater than the family length was accepted");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	private static void assertState(VrpValidation result, ValidityState validityState, PrefixState prefixState,
+			AsState asState) {
+		assertEquals(validityState, result.getValidityState());
+		assertEquals(prefixState, result.getPrefixState());
+		assertEquals(asState, result.getAsState());
+	}
+
+	private static byte[] ip(String address) {
+		return IpAddressUtil.parse(address);
+	}
+}